@@ -0,0 +1,69 @@
+package com.dadfha.lod.csv.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.dadfha.lod.csv.Schema;
+import com.dadfha.lod.csv.SchemaProcessor;
+import com.dadfha.lod.csv.SchemaTable;
+
+/**
+ * Access to the bundled data used by benchmarks.
+ *
+ * @author Wirawit
+ */
+final class BenchData {
+
+	/**
+	 * System property of the data directory, default to '../data' i.e. run from benchmarks directory.
+	 */
+	static final String DATA_DIR_PROPERTY = "csvx.data";
+
+	private BenchData() {}
+
+	static Path dir() {
+		return Paths.get(System.getProperty(DATA_DIR_PROPERTY, "../data"));
+	}
+
+	/**
+	 * Get path of a bundled file as string.
+	 * @param name file name, e.g. "uscrime.csv".
+	 * @return String
+	 * @throws IOException if the file doesn't exist.
+	 */
+	static String path(String name) throws IOException {
+		Path p = dir().resolve(name);
+		if(!Files.isRegularFile(p)) throw new IOException("Bundled data not found: " + p.toAbsolutePath() + ", set -D" + DATA_DIR_PROPERTY + "=<dir>.");
+		return p.toString();
+	}
+
+	static String read(String name) throws IOException {
+		return new String(Files.readAllBytes(Paths.get(path(name))), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Get data schema of a bundled csv and csvx pair.
+	 * @param sp
+	 * @param name base name of the pair, e.g. "uscrime".
+	 * @return Schema
+	 * @throws IOException
+	 */
+	static Schema dataSchema(SchemaProcessor sp, String name) throws IOException {
+		Schema dSchema = sp.getDataSchema(path(name + ".csv"), null, new String[] {path(name + ".csvx")});
+		if(dSchema == null) throw new IllegalStateException("Bundled csv doesn't match its schema: " + name);
+		return dSchema;
+	}
+
+	/**
+	 * Get the first data table of a data schema.
+	 * @param dSchema
+	 * @return SchemaTable
+	 */
+	static SchemaTable firstTable(Schema dSchema) {
+		return dSchema.getSchemaTables().values().iterator().next();
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.dadfha.lod.csv.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dadfha.lod.csv.Schema;
+import com.dadfha.lod.csv.SchemaProcessor;
+
+/**
+ * End-to-end getDataSchema() on each bundled csv and csvx pair, either loading the schema on every call 
+ * like csvx command does, or with the schema loaded once like csvx serve does.
+ *
+ * @author Wirawit
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+	@Param({"airp", "uktelecom", "csvtriple", "pdb", "ukstat", "thpetition", "uscrime", "test_template"})
+	public String data;
+
+	/**
+	 * Processor loading the schema on every call.
+	 */
+	private SchemaProcessor sp;
+
+	/**
+	 * Processor with the schema loaded once.
+	 */
+	private SchemaProcessor loadedSp;
+
+	private String csvPath;
+
+	private String csvxPath;
+
+	private String schemaId;
+
+	@Setup
+	public void setup() throws Exception {
+		csvPath = BenchData.path(data + ".csv");
+		csvxPath = BenchData.path(data + ".csvx");
+		sp = new SchemaProcessor(true);
+		loadedSp = new SchemaProcessor(true);
+		Schema s = loadedSp.loadSchema(csvxPath);
+		if(s == null) throw new IllegalStateException("Unable to load schema: " + csvxPath);
+		schemaId = (String) s.getProperty(SchemaProcessor.METAPROP_ID);
+	}
+
+	@Benchmark
+	public Schema getDataSchema() {
+		return sp.getDataSchema(csvPath, null, new String[] {csvxPath});
+	}
+
+	@Benchmark
+	public Schema preloadedSchema() throws Exception {
+		return loadedSp.getDataSchemaWithSchema(csvPath, schemaId);
+	}
+
+}
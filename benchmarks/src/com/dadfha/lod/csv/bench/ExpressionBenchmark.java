@@ -0,0 +1,62 @@
+package com.dadfha.lod.csv.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dadfha.lod.csv.Schema;
+import com.dadfha.lod.csv.SchemaProcessor;
+import com.dadfha.lod.csv.SchemaTable;
+
+/**
+ * Resolution of {var} expressions and schema function calls on the data schema of bundled airp.csv.
+ *
+ * @author Wirawit
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+
+	/**
+	 * Literal resolved against the data table, from a plain {var} to nested ones: 'month' refers to a capturing
+	 * group of the cell's regex, 'year' also calls a schema function with capturing groups as parameters.
+	 */
+	@Param({"{tableTitle}", "{msrYrMth.month}", "{msrYrMth.year}", "{msrYrMth.month}/{msrYrMth.year} {tableTitle}"})
+	public String literal;
+
+	private Schema dSchema;
+
+	private SchemaTable dTable;
+
+	@Setup
+	public void setup() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		dSchema = BenchData.dataSchema(sp, "airp");
+		dTable = BenchData.firstTable(dSchema);
+	}
+
+	@Benchmark
+	public String processVarEx() throws Exception {
+		return SchemaProcessor.processVarEx(literal, dTable, "bench", null);
+	}
+
+	@Benchmark
+	public String resolveFunctionCall() throws Exception {
+		return SchemaProcessor.resolveFunctionCall("jp2westYearConv('平成', '27')", dSchema);
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.dadfha.lod.csv.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.dadfha.lod.csv.Schema;
+import com.dadfha.lod.csv.SchemaCell;
+import com.dadfha.lod.csv.SchemaProcessor;
+import com.dadfha.lod.csv.SchemaTable;
+
+/**
+ * RDF generation from data schemas of bundled data: RDF template application on the cells of 
+ * test_template.csv, and Turtle serialization of whole data schemas.
+ *
+ * @author Wirawit
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RdfBenchmark {
+
+	@Param({"uktelecom", "uscrime", "airp", "pdb"})
+	public String data;
+
+	private Schema dSchema;
+
+	/**
+	 * Cells of test_template.csv data table with template mapping.
+	 */
+	private final List<SchemaCell> templated = new ArrayList<SchemaCell>();
+
+	@Setup
+	public void setup() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		dSchema = BenchData.dataSchema(sp, data);
+		SchemaTable t = BenchData.firstTable(BenchData.dataSchema(sp, "test_template"));
+		for(int row = 0; t.getRow(row) != null; row++) {
+			SchemaCell c = t.getCell(row, 0);
+			if(c != null && c.hasTemplateMapping()) templated.add(c);
+		}
+		if(templated.isEmpty()) throw new IllegalStateException("No templated cell in test_template data.");
+	}
+
+	@Benchmark
+	public void applyRdfTemplate(Blackhole bh) throws Exception {
+		for(SchemaCell c : templated) bh.consume(SchemaProcessor.applyRdfTemplate(c));
+	}
+
+	@Benchmark
+	public String serializeTtl() throws Exception {
+		return dSchema.serializeTtl();
+	}
+
+}
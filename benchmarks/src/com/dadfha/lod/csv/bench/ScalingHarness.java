@@ -0,0 +1,505 @@
+package com.dadfha.lod.csv.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.dadfha.lod.csv.BatchProcessor;
+import com.dadfha.lod.csv.CsvGenerator;
+import com.dadfha.lod.csv.Schema;
+import com.dadfha.lod.csv.SchemaProcessor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * End-to-end throughput and scaling harness, the counterpart of the JMH benchmarks for large inputs.
+ *
+ * Each run processes the same set of jobs, i.e. the input csv files each repeated to as many jobs as the largest
+ * thread count, with one processor shared by a fixed pool of threads, so runs of an operation differ only in
+ * threads and I/O mode. Inputs are generated from the schema with CsvGenerator unless given. A run records
+ * MB/s of input, rows/s, output size, peak heap, peak RSS (Linux only), GC count and time, and bytes allocated
+ * by the worker threads, and the report of all runs is written as JSON and CSV for comparing runs over time.
+ *
+ * Ex: java -cp target/benchmarks.jar com.dadfha.lod.csv.bench.ScalingHarness -schema=../data/uktelecom.csvx -size=256m
+ *
+ * @author Wirawit
+ */
+public class ScalingHarness {
+
+	/**
+	 * Output of a run.
+	 */
+	public enum IoMode {
+		/** Output is discarded, measuring processing only. */
+		DISCARD,
+		/** Output is kept in memory per job, as batch without output directory does. */
+		MEMORY,
+		/** Output is written to a file per job. */
+		FILE
+	}
+
+	@Parameters(separators = "=")
+	static class Options {
+
+		@Parameter(names = { "-schema" }, description = "csvx path.", required = true)
+		String schemaPath;
+
+		@Parameter(names = { "-csv" }, description = "Input csv path, can be repeated. Generated from the schema if not specified.")
+		List<String> csvPaths = new ArrayList<>();
+
+		@Parameter(names = { "-size" }, description = "Size of the generated input with optional unit (k, m, g).")
+		String size = "64m";
+
+		@Parameter(names = { "-seed" }, description = "Seed of the generated input.")
+		long seed = 0;
+
+		@Parameter(names = { "-threads" }, description = "Comma separated thread counts, default 1, 2, 4, ... up to the number of processors.")
+		String threads;
+
+		@Parameter(names = { "-ops" }, description = "Comma separated operations (validate, serialize, transform).")
+		String ops = "validate,serialize,transform";
+
+		@Parameter(names = { "-io" }, description = "Comma separated I/O modes (discard, memory, file).")
+		String io = "discard,memory,file";
+
+		@Parameter(names = { "-warmup" }, description = "Number of single job warm-up runs per operation.")
+		int warmup = 1;
+
+		@Parameter(names = { "-work" }, description = "Working directory for generated input and file output.")
+		String workDir = "target/scaling";
+
+		@Parameter(names = { "-report" }, description = "Report path without extension, .json and .csv are written.")
+		String report = "target/scaling-report";
+
+		@Parameter(names = { "-h", "--help" }, help = true)
+		boolean help = false;
+
+	}
+
+	/**
+	 * Measurement of a run.
+	 */
+	static final class Result {
+		String op;
+		IoMode io;
+		int threads;
+		int jobs;
+		int failedJobs;
+		long inputBytes;
+		long elapsedNanos;
+		long rows;
+		long outputChars;
+		long peakHeapBytes;
+		long peakRssBytes = -1;
+		long gcCount;
+		long gcMillis;
+		long allocatedBytes = -1;
+		String error;
+
+		double seconds() {
+			return elapsedNanos / 1e9;
+		}
+
+		double mbPerSec() {
+			return inputBytes / 1e6 / seconds();
+		}
+
+		double rowsPerSec() {
+			return rows / seconds();
+		}
+
+		double allocMbPerSec() {
+			return (allocatedBytes < 0)? -1 : allocatedBytes / 1e6 / seconds();
+		}
+	}
+
+	static final String[] CSV_HEADER = {"op", "io", "threads", "jobs", "failedJobs", "inputBytes", "elapsedMs", "mbPerSec", "rows", "rowsPerSec",
+			"outputChars", "peakHeapBytes", "peakRssBytes", "gcCount", "gcMillis", "allocatedBytes", "allocMbPerSec", "error"};
+
+	/**
+	 * Appendable counting characters appended to a target, or discarding them if there's no target.
+	 */
+	private static final class CountingAppendable implements Appendable {
+		private final Appendable target;
+		long count;
+		CountingAppendable(Appendable target) {
+			this.target = target;
+		}
+		@Override
+		public Appendable append(CharSequence csq) throws IOException {
+			count += (csq == null)? 4 : csq.length();
+			if(target != null) target.append(csq);
+			return this;
+		}
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) throws IOException {
+			count += end - start;
+			if(target != null) target.append(csq, start, end);
+			return this;
+		}
+		@Override
+		public Appendable append(char c) throws IOException {
+			count++;
+			if(target != null) target.append(c);
+			return this;
+		}
+	}
+
+	private final Options opts;
+
+	private final SchemaProcessor sp;
+
+	private final String schemaId;
+
+	private final Path workDir;
+
+	ScalingHarness(Options opts) throws IOException {
+		this.opts = opts;
+		sp = new SchemaProcessor(true);
+		Schema schema = sp.loadSchema(opts.schemaPath);
+		if(schema == null) throw new IOException("Unable to load schema: " + opts.schemaPath);
+		schemaId = (String) schema.getProperty(SchemaProcessor.METAPROP_ID);
+		workDir = Paths.get(opts.workDir);
+		Files.createDirectories(workDir);
+	}
+
+	public static void main(String... args) throws Exception {
+		Options opts = new Options();
+		JCommander jc = new JCommander(opts);
+		jc.setProgramName(ScalingHarness.class.getName());
+		try {
+			jc.parse(args);
+		} catch(ParameterException e) {
+			System.err.println("[Error] " + e.getMessage());
+			jc.usage();
+			System.exit(1);
+		}
+		if(opts.help) {
+			jc.usage();
+			return;
+		}
+		ScalingHarness harness = new ScalingHarness(opts);
+		List<Result> results = harness.run();
+		harness.writeReport(results);
+	}
+
+	/**
+	 * Run every combination of operation, I/O mode, and thread count.
+	 * @return List of Result in run order.
+	 * @throws Exception
+	 */
+	List<Result> run() throws Exception {
+		List<String> inputs = inputs();
+		List<Integer> threadCounts = threadCounts();
+		int maxThreads = Collections.max(threadCounts);
+		List<String> jobs = new ArrayList<>();
+		for(String input : inputs) {
+			for(int i = 0; i < maxThreads; i++) jobs.add(input);
+		}
+		long inputBytes = 0;
+		for(String job : jobs) inputBytes += Files.size(Paths.get(job));
+
+		List<Result> results = new ArrayList<>();
+		System.out.println(String.format(Locale.ROOT, "%-10s %-8s %7s %10s %12s %10s %10s %8s %10s",
+				"op", "io", "threads", "MB/s", "rows/s", "heap MB", "RSS MB", "GC ms", "alloc MB/s"));
+		for(String opName : split(opts.ops)) {
+			BatchProcessor.Operation op = BatchProcessor.Operation.valueOf(opName.toUpperCase(Locale.ROOT));
+			for(int i = 0; i < opts.warmup; i++) runOnce(op, IoMode.DISCARD, 1, Collections.singletonList(inputs.get(0)), 0);
+			for(String ioName : split(opts.io)) {
+				IoMode io = IoMode.valueOf(ioName.toUpperCase(Locale.ROOT));
+				if(op == BatchProcessor.Operation.VALIDATE && io != IoMode.DISCARD) continue; // validate has no output
+				for(int threads : threadCounts) {
+					Result r = runOnce(op, io, threads, jobs, inputBytes);
+					results.add(r);
+					System.out.println(String.format(Locale.ROOT, "%-10s %-8s %7d %10.1f %12.0f %10.1f %10.1f %8d %10.1f%s",
+							r.op, r.io.name().toLowerCase(Locale.ROOT), r.threads, r.mbPerSec(), r.rowsPerSec(), r.peakHeapBytes / 1e6, r.peakRssBytes / 1e6, r.gcMillis,
+							r.allocMbPerSec(), (r.error != null)? "  " + r.error : ""));
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Run jobs of an operation on a fixed thread pool and measure it.
+	 * @param op
+	 * @param io
+	 * @param threads
+	 * @param jobs csv paths.
+	 * @param inputBytes total size of the jobs' csv.
+	 * @return Result
+	 * @throws Exception
+	 */
+	private Result runOnce(BatchProcessor.Operation op, IoMode io, int threads, List<String> jobs, long inputBytes) throws Exception {
+		Result r = new Result();
+		r.op = op.name().toLowerCase(Locale.ROOT);
+		r.io = io;
+		r.threads = threads;
+		r.jobs = jobs.size();
+		r.inputBytes = inputBytes;
+
+		List<Thread> workers = Collections.synchronizedList(new ArrayList<Thread>());
+		ExecutorService executor = Executors.newFixedThreadPool(threads, task -> {
+			Thread t = new Thread(task, "scaling-" + workers.size());
+			t.setDaemon(true);
+			workers.add(t);
+			return t;
+		});
+
+		System.gc();
+		List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				heapPools.add(pool);
+			}
+		}
+		boolean rssReset = resetPeakRss();
+		long gcCount = 0, gcMillis = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount -= gc.getCollectionCount();
+			gcMillis -= gc.getCollectionTime();
+		}
+		long rows = sp.getMetrics().getRowsProcessed();
+
+		long start = System.nanoTime();
+		List<Future<Long>> futures = new ArrayList<>();
+		for(int i = 0; i < jobs.size(); i++) {
+			String csvPath = jobs.get(i);
+			Path outPath = workDir.resolve("out-" + i + BatchProcessor.OUTPUT_EXT);
+			futures.add(executor.submit(() -> runJob(op, io, csvPath, outPath)));
+		}
+		for(Future<Long> f : futures) {
+			try {
+				r.outputChars += f.get();
+			} catch(ExecutionException e) {
+				r.failedJobs++;
+				if(r.error == null) r.error = String.valueOf(e.getCause());
+			}
+		}
+		r.elapsedNanos = System.nanoTime() - start;
+
+		r.rows = sp.getMetrics().getRowsProcessed() - rows;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += gc.getCollectionCount();
+			gcMillis += gc.getCollectionTime();
+		}
+		r.gcCount = gcCount;
+		r.gcMillis = gcMillis;
+		for(MemoryPoolMXBean pool : heapPools) r.peakHeapBytes += pool.getPeakUsage().getUsed();
+		if(rssReset || r.threads == 1) r.peakRssBytes = peakRss(); // otherwise it's the peak of the whole process so far
+		r.allocatedBytes = allocatedBytes(workers);
+		executor.shutdown();
+		if(io == IoMode.FILE) {
+			for(int i = 0; i < jobs.size(); i++) Files.deleteIfExists(workDir.resolve("out-" + i + BatchProcessor.OUTPUT_EXT));
+		}
+		return r;
+	}
+
+	/**
+	 * Process a csv.
+	 * @return long number of characters output.
+	 * @throws Exception if the csv doesn't match the schema or there's a problem processing it.
+	 */
+	private long runJob(BatchProcessor.Operation op, IoMode io, String csvPath, Path outPath) throws Exception {
+		Schema dSchema = sp.getDataSchemaWithSchema(csvPath, schemaId);
+		if(dSchema == null) throw new IllegalStateException("The csv doesn't match the schema: " + csvPath);
+		if(op == BatchProcessor.Operation.VALIDATE) return 0;
+		switch(io) {
+		case MEMORY:
+			StringBuilder sb = new StringBuilder();
+			BatchProcessor.write(dSchema, op, sb);
+			return sb.length();
+		case FILE:
+			try(Writer w = Files.newBufferedWriter(outPath, StandardCharsets.UTF_8)) {
+				CountingAppendable out = new CountingAppendable(w);
+				BatchProcessor.write(dSchema, op, out);
+				return out.count;
+			}
+		default:
+			CountingAppendable out = new CountingAppendable(null);
+			BatchProcessor.write(dSchema, op, out);
+			return out.count;
+		}
+	}
+
+	/**
+	 * Get input csv paths, generating one from the schema if none is given.
+	 * @return List of csv paths.
+	 * @throws IOException
+	 */
+	private List<String> inputs() throws IOException {
+		if(!opts.csvPaths.isEmpty()) return opts.csvPaths;
+		long size = CsvGenerator.parseSize(opts.size);
+		String schemaName = Paths.get(opts.schemaPath).getFileName().toString();
+		Path csv = workDir.resolve(schemaName + "-" + opts.size + "-" + opts.seed + ".csv");
+		if(!Files.exists(csv)) {
+			Schema schema = sp.getSchema(schemaId);
+			String encoding = (String) schema.getProperty(SchemaProcessor.METAPROP_ENCODING);
+			CsvGenerator gen = new CsvGenerator(schema, opts.seed);
+			try(Writer w = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(csv), (encoding != null)? encoding : "UTF-8"), 1 << 20)) {
+				gen.generate(w, size);
+			}
+			System.out.println("Generated " + gen.getRowsGenerated() + " rows into " + csv);
+		}
+		return Collections.singletonList(csv.toString());
+	}
+
+	private List<Integer> threadCounts() {
+		List<Integer> counts = new ArrayList<>();
+		if(opts.threads != null) {
+			for(String t : split(opts.threads)) counts.add(Integer.parseInt(t));
+		} else {
+			int cpus = Runtime.getRuntime().availableProcessors();
+			for(int t = 1; t < cpus; t *= 2) counts.add(t);
+			counts.add(cpus);
+		}
+		return counts;
+	}
+
+	private static List<String> split(String s) {
+		List<String> list = new ArrayList<>();
+		for(String e : s.split(",")) {
+			if(!e.trim().isEmpty()) list.add(e.trim());
+		}
+		return list;
+	}
+
+	/**
+	 * Reset peak resident set size of the process, supported by Linux 4.0 or later.
+	 * @return whether it's reset.
+	 */
+	private static boolean resetPeakRss() {
+		try {
+			Files.write(Paths.get("/proc/self/clear_refs"), "5".getBytes(StandardCharsets.US_ASCII));
+			return true;
+		} catch(IOException | UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Get peak resident set size of the process.
+	 * @return long bytes or -1 if it's not available.
+	 */
+	private static long peakRss() {
+		try {
+			for(String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+				if(line.startsWith("VmHWM:")) return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+			}
+		} catch(IOException | NumberFormatException e) {
+			// not Linux
+		}
+		return -1;
+	}
+
+	/**
+	 * Get bytes allocated by threads while they're still alive.
+	 * @return long bytes or -1 if it's not supported.
+	 */
+	private static long allocatedBytes(List<Thread> threads) {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if(!(mx instanceof com.sun.management.ThreadMXBean)) return -1;
+		com.sun.management.ThreadMXBean amx = (com.sun.management.ThreadMXBean) mx;
+		if(!amx.isThreadAllocatedMemorySupported() || !amx.isThreadAllocatedMemoryEnabled()) return -1;
+		long bytes = 0;
+		synchronized(threads) {
+			for(Thread t : threads) bytes += Math.max(0, amx.getThreadAllocatedBytes(t.getId()));
+		}
+		return bytes;
+	}
+
+	/**
+	 * Write the report as JSON and CSV.
+	 * @param results
+	 * @throws IOException
+	 */
+	void writeReport(List<Result> results) throws IOException {
+		Path json = Paths.get(opts.report + ".json");
+		Path csv = Paths.get(opts.report + ".csv");
+		if(json.toAbsolutePath().getParent() != null) Files.createDirectories(json.toAbsolutePath().getParent());
+		try(Writer w = Files.newBufferedWriter(json, StandardCharsets.UTF_8)) {
+			writeJson(w, results);
+		}
+		try(Writer w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+			writeCsv(w, results);
+		}
+		System.out.println("Report written to " + json + " and " + csv);
+	}
+
+	void writeJson(Writer out, List<Result> results) throws IOException {
+		JsonGenerator g = new JsonFactory().createGenerator(out);
+		g.useDefaultPrettyPrinter();
+		g.writeStartObject();
+		g.writeStringField("schema", opts.schemaPath);
+		g.writeStringField("javaVersion", System.getProperty("java.version"));
+		g.writeStringField("vm", System.getProperty("java.vm.name"));
+		g.writeNumberField("processors", Runtime.getRuntime().availableProcessors());
+		g.writeNumberField("maxHeapBytes", Runtime.getRuntime().maxMemory());
+		g.writeNumberField("timestamp", System.currentTimeMillis());
+		g.writeArrayFieldStart("runs");
+		for(Result r : results) {
+			g.writeStartObject();
+			g.writeStringField("op", r.op);
+			g.writeStringField("io", r.io.name().toLowerCase(Locale.ROOT));
+			g.writeNumberField("threads", r.threads);
+			g.writeNumberField("jobs", r.jobs);
+			g.writeNumberField("failedJobs", r.failedJobs);
+			g.writeNumberField("inputBytes", r.inputBytes);
+			g.writeNumberField("elapsedMs", r.elapsedNanos / 1000000);
+			g.writeNumberField("mbPerSec", round(r.mbPerSec()));
+			g.writeNumberField("rows", r.rows);
+			g.writeNumberField("rowsPerSec", round(r.rowsPerSec()));
+			g.writeNumberField("outputChars", r.outputChars);
+			g.writeNumberField("peakHeapBytes", r.peakHeapBytes);
+			g.writeNumberField("peakRssBytes", r.peakRssBytes);
+			g.writeNumberField("gcCount", r.gcCount);
+			g.writeNumberField("gcMillis", r.gcMillis);
+			g.writeNumberField("allocatedBytes", r.allocatedBytes);
+			g.writeNumberField("allocMbPerSec", round(r.allocMbPerSec()));
+			if(r.error != null) g.writeStringField("error", r.error);
+			g.writeEndObject();
+		}
+		g.writeEndArray();
+		g.writeEndObject();
+		g.flush();
+	}
+
+	void writeCsv(Writer out, List<Result> results) throws IOException {
+		out.write(String.join(",", CSV_HEADER));
+		out.write("\n");
+		for(Result r : results) {
+			String error = (r.error == null)? "" : "\"" + r.error.replace("\"", "\"\"") + "\"";
+			out.write(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%d,%.2f,%d,%.2f,%d,%d,%d,%d,%d,%d,%.2f,%s\n",
+					r.op, r.io.name().toLowerCase(Locale.ROOT), r.threads, r.jobs, r.failedJobs, r.inputBytes, r.elapsedNanos / 1000000, r.mbPerSec(),
+					r.rows, r.rowsPerSec(), r.outputChars, r.peakHeapBytes, r.peakRssBytes, r.gcCount, r.gcMillis, r.allocatedBytes, r.allocMbPerSec(), error));
+		}
+	}
+
+	private static double round(double v) {
+		return Math.round(v * 100) / 100.0;
+	}
+
+}
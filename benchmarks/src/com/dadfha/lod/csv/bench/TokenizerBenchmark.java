@@ -0,0 +1,80 @@
+package com.dadfha.lod.csv.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.dadfha.lod.csv.SsvParser;
+import com.univocity.parsers.common.AbstractParser;
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+
+/**
+ * Tokenization of bundled CSV files by SsvParser against univocity's CsvParser, with the same settings
+ * the processor uses and the file held in memory so that only parsing is measured.
+ *
+ * @author Wirawit
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+	@Param({"uktelecom-full.csv", "uscrime.csv", "airp.csv", "pdb.csv"})
+	public String file;
+
+	private String content;
+
+	@Setup
+	public void setup() throws IOException {
+		content = BenchData.read(file);
+	}
+
+	private static CsvParserSettings settings() {
+		CsvParserSettings settings = new CsvParserSettings();
+		settings.setLineSeparatorDetectionEnabled(true);
+		settings.getFormat().setComment('\0');
+		settings.setSkipEmptyLines(true);
+		settings.setEmptyValue("");
+		settings.setHeaderExtractionEnabled(false);
+		return settings;
+	}
+
+	private int parse(AbstractParser<?> parser, Blackhole bh) {
+		parser.beginParsing(new StringReader(content));
+		int rows = 0;
+		String[] row;
+		while((row = parser.parseNext()) != null) {
+			bh.consume(row);
+			rows++;
+		}
+		return rows;
+	}
+
+	@Benchmark
+	public int csvParser(Blackhole bh) {
+		return parse(new CsvParser(settings()), bh);
+	}
+
+	@Benchmark
+	public int ssvParser(Blackhole bh) {
+		return parse(new SsvParser(settings()), bh);
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.dadfha.lod.csv.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dadfha.lod.csv.Schema;
+import com.dadfha.lod.csv.SchemaCell;
+import com.dadfha.lod.csv.SchemaProcessor;
+import com.dadfha.lod.csv.SchemaTable;
+
+/**
+ * SchemaTable.validate() of a single frozen schema cell per datatype, and per regex on string cells.
+ *
+ * @author Wirawit
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+	@Param({"string", "integer", "decimal", "double", "boolean", "dateTime"})
+	public String datatype;
+
+	/**
+	 * Regex of the cell, 'none' for no regex.
+	 */
+	@Param({"none", "[0-9A-Za-z.:+-]+", "(\\S+\\D)?(\\d+)\\D*(\\d*)"})
+	public String regex;
+
+	private SchemaTable table;
+
+	private String[] values;
+
+	private int i = 0;
+
+	@Setup
+	public void setup() {
+		Schema s = new Schema();
+		table = new SchemaTable("bench", s);
+		SchemaCell c = new SchemaCell(0, 0, table);
+		c.setDatatype(datatype);
+		if(!"none".equals(regex)) c.setRegEx(regex);
+		table.addCell(c);
+		s.addSchemaTable(table);
+		s.freeze();
+		values = values(datatype);
+	}
+
+	private static String[] values(String datatype) {
+		switch(datatype) {
+		case "integer":
+			return new String[] {"0", "42", "-7", "2015", "123456", "99", "1", "31"};
+		case "decimal":
+		case "double":
+			return new String[] {"0.5", "42.25", "-7.0", "2015.1", "1.5E3", "99.99", "1", "3.14159"};
+		case "boolean":
+			return new String[] {"true", "false", "1", "0", "true", "false", "1", "0"};
+		case "dateTime":
+			return new String[] {"2015-01-01T00:00:00", "2016-02-29T12:30:00Z", "2017-12-31T23:59:59+09:00", "2018-06-15T08:00:00",
+					"2019-03-10T10:10:10", "2020-07-04T04:04:04Z", "2021-11-11T11:11:11", "2022-08-08T08:08:08-05:00"};
+		default:
+			return new String[] {"Tokyo", "H27", "measure 2015", "NO2", "ppm", "Q3-2015", "a.b:c", "x+y-z"};
+		}
+	}
+
+	@Benchmark
+	public boolean validate() throws Exception {
+		return table.validate(0, 0, values[i++ & 7], SchemaProcessor.MODE_IGNORE_ERR_MSG);
+	}
+
+}
@@ -0,0 +1,216 @@
+package com.dadfha.lod;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Triple sink writing RDF as JSON-LD node objects with Jackson's streaming generator, without building maps
+ * of the whole document.
+ *
+ * Triples received are held until endNode(), which writes them as a node object per subject with a key per
+ * predicate, e.g. the statements of a schema entity. Written as a JSON-LD document (see startDocument() and
+ * endDocument()), the nodes are in the "@graph" array and their IRIs are compacted with the "@context" made
+ * of the base IRI and namespace prefixes. Written as newline-delimited JSON, every node is a line of its own
+ * with absolute IRIs, so lines don't depend on each other like N-Triples.
+ *
+ * @author Wirawit
+ */
+public class JsonLdWriter implements TripleSink {
+
+	private static final JsonFactory FACTORY = new JsonFactory().configure(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM, false);
+
+	private static final String RDF_TYPE = "rdf:type";
+
+	private final Appendable out;
+
+	private final JsonGenerator gen;
+
+	private final String base;
+
+	private final Map<String, String> prefixes;
+
+	/**
+	 * Whether to write newline-delimited JSON.
+	 */
+	private final boolean lines;
+
+	/**
+	 * Objects of each predicate of each subject received since the last node written.
+	 */
+	private final Map<String, Map<String, List<String[]>>> nodes = new LinkedHashMap<String, Map<String, List<String[]>>>();
+
+	/**
+	 * Constructor.
+	 * @param out
+	 * @param base base IRI to resolve relative IRIs against, can be empty for a JSON-LD document but must be 
+	 * absolute for newline-delimited JSON.
+	 * @param prefixes namespace prefixes, overriding the default ones of NTriplesWriter.
+	 * @param lines whether to write newline-delimited JSON rather than a JSON-LD document.
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the base IRI of newline-delimited JSON isn't absolute.
+	 */
+	public JsonLdWriter(Appendable out, String base, Map<String, String> prefixes, boolean lines) throws IOException {
+		if(lines && (base == null || !NTriplesWriter.isAbsolute(base))) throw new IllegalArgumentException("Newline-delimited JSON needs an absolute base IRI to resolve relative IRIs against: " + base);
+		this.out = out;
+		this.gen = createGenerator(out);
+		this.base = (base == null)? "" : base;
+		this.prefixes = NTriplesWriter.defaultPrefixes(prefixes);
+		this.lines = lines;
+	}
+
+	private JsonLdWriter(JsonLdWriter w, Appendable out) throws IOException {
+		this.out = out;
+		this.gen = createGenerator(out);
+		this.base = w.base;
+		this.prefixes = w.prefixes;
+		this.lines = w.lines;
+	}
+
+	/**
+	 * Get a writer with the same base, prefixes and format to another output, e.g. to write nodes
+	 * of newline-delimited JSON in parallel.
+	 * @param out
+	 * @return JsonLdWriter
+	 * @throws IOException
+	 */
+	public JsonLdWriter to(Appendable out) throws IOException {
+		return new JsonLdWriter(this, out);
+	}
+
+	private static JsonGenerator createGenerator(Appendable out) throws IOException {
+		JsonGenerator gen = FACTORY.createGenerator((out instanceof Writer)? (Writer) out : new Writer() {
+			@Override
+			public void write(char[] cbuf, int off, int len) throws IOException {
+				out.append(CharBuffer.wrap(cbuf, off, len));
+			}
+			@Override
+			public void flush() {}
+			@Override
+			public void close() {}
+		});
+		gen.setRootValueSeparator(null);
+		return gen;
+	}
+
+	/**
+	 * Start a JSON-LD document with its context, nothing for newline-delimited JSON.
+	 * @throws IOException
+	 */
+	public void startDocument() throws IOException {
+		if(lines) return;
+		gen.writeStartObject();
+		gen.writeObjectFieldStart("@context");
+		if(!base.isEmpty()) gen.writeStringField("@base", base);
+		for(Map.Entry<String, String> e : prefixes.entrySet()) gen.writeStringField(e.getKey(), e.getValue());
+		gen.writeEndObject();
+		gen.writeArrayFieldStart("@graph");
+	}
+
+	/**
+	 * End a JSON-LD document, nothing for newline-delimited JSON.
+	 * @throws IOException
+	 */
+	public void endDocument() throws IOException {
+		if(lines) return;
+		gen.writeEndArray();
+		gen.writeEndObject();
+		gen.flush();
+		out.append(System.lineSeparator());
+	}
+
+	@Override
+	public void triple(String subject, String predicate, String object, String datatype, String langCode) throws Exception {
+		nodes.computeIfAbsent(subject, k -> new LinkedHashMap<String, List<String[]>>())
+			.computeIfAbsent(predicate, k -> new ArrayList<String[]>(1))
+			.add(new String[] { object, datatype, langCode });
+	}
+
+	/**
+	 * Write a node object for each subject of the triples received since the last call.
+	 * @throws IOException
+	 */
+	public void endNode() throws IOException {
+		for(Map.Entry<String, Map<String, List<String[]>>> nodeE : nodes.entrySet()) {
+			gen.writeStartObject();
+			gen.writeStringField("@id", iri(nodeE.getKey(), false));
+			for(Map.Entry<String, List<String[]>> predE : nodeE.getValue().entrySet()) {
+				List<String[]> objects = predE.getValue();
+				boolean type = predE.getKey().equals(RDF_TYPE) && isIris(objects);
+				gen.writeFieldName(type? "@type" : iri(predE.getKey(), true));
+				if(objects.size() > 1) gen.writeStartArray();
+				for(String[] o : objects) {
+					if(type) gen.writeString(iri(o[0], true));
+					else writeObject(o[0], o[1], o[2]);
+				}
+				if(objects.size() > 1) gen.writeEndArray();
+			}
+			gen.writeEndObject();
+			if(lines) gen.writeRaw('\n');
+		}
+		nodes.clear();
+		gen.flush();
+	}
+
+	private static boolean isIris(List<String[]> objects) {
+		for(String[] o : objects) {
+			if(!NTriplesWriter.isIri(o[0], o[1])) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Write an object as node reference or value object.
+	 * @param object
+	 * @param datatype
+	 * @param langCode
+	 * @throws IOException
+	 */
+	private void writeObject(String object, String datatype, String langCode) throws IOException {
+		if(NTriplesWriter.isIri(object, datatype)) {
+			gen.writeStartObject();
+			gen.writeStringField("@id", iri(object, false));
+			gen.writeEndObject();
+		} else if(NTriplesWriter.isString(datatype)) {
+			if(langCode == null) {
+				gen.writeString(object);
+			} else {
+				gen.writeStartObject();
+				gen.writeStringField("@value", object);
+				gen.writeStringField("@language", langCode);
+				gen.writeEndObject();
+			}
+		} else {
+			gen.writeStartObject();
+			gen.writeStringField("@value", object);
+			gen.writeStringField("@type", iri(NTriplesWriter.xsdDatatype(datatype), true));
+			gen.writeEndObject();
+		}
+	}
+
+	/**
+	 * Format an IRI term. Newline-delimited JSON has absolute IRIs. A JSON-LD document keeps prefixed names,
+	 * which are compacted by the context, and relative IRIs of "@id", which are resolved against "@base",
+	 * but relative IRIs of keys and types are resolved here as JSON-LD would take them as terms.
+	 * @param iri IRI, bracketed <IRI>, prefixed name or relative IRI.
+	 * @param vocab whether the IRI is a key or a type.
+	 * @return String
+	 */
+	private String iri(String iri, boolean vocab) {
+		if(lines) {
+			String term = NTriplesWriter.formatIri(iri, base, prefixes);
+			return term.substring(1, term.length() - 1);
+		}
+		if(iri.startsWith("<") && iri.endsWith(">")) iri = iri.substring(1, iri.length() - 1);
+		else if(LodHelper.isPrefixedName(iri)) return iri;
+		return vocab? NTriplesWriter.resolve(iri, base) : iri;
+	}
+
+}
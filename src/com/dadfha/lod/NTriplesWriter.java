@@ -0,0 +1,263 @@
+package com.dadfha.lod;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dadfha.lod.csv.Schema;
+
+/**
+ * Triple sink writing RDF N-Triples, or N-Quads when a graph is given, to an output.
+ *
+ * Every statement is written on its own line with absolute IRIs: prefixed names are expanded with the namespace
+ * prefixes (rdf, rdfs, xsd and csvx are known by default), relative IRIs are resolved against the base IRI, which
+ * must thus be absolute, characters not allowed in an IRI reference are percent-encoded, and literals are escaped
+ * and typed. Statements thus don't depend on each other, so outputs written separately
+ * can simply be concatenated, and the result can be split at any line.
+ *
+ * @author Wirawit
+ */
+public class NTriplesWriter implements TripleSink {
+
+	public static final String NS_RDF_IRI = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+	/**
+	 * XML Schema datatype namespace, NS_XSD_IRI with the trailing '#'.
+	 */
+	public static final String NS_XSD = LodHelper.NS_XSD_IRI + "#";
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final Appendable out;
+
+	private final String base;
+
+	private final Map<String, String> prefixes;
+
+	/**
+	 * Graph term of N-Quads or null for N-Triples.
+	 */
+	private final String graph;
+
+	/**
+	 * Constructor.
+	 * @param out
+	 * @param base absolute base IRI to resolve relative IRIs against.
+	 * @param prefixes namespace prefixes, overriding the default ones.
+	 * @param graph IRI of the graph of every statement, i.e. writing N-Quads, or null to write N-Triples.
+	 * @throws IllegalArgumentException if the base IRI isn't absolute.
+	 */
+	public NTriplesWriter(Appendable out, String base, Map<String, String> prefixes, String graph) {
+		if(base == null || !isAbsolute(base)) throw new IllegalArgumentException("N-Triples need an absolute base IRI to resolve relative IRIs against: " + base);
+		this.out = out;
+		this.base = base;
+		this.prefixes = defaultPrefixes(prefixes);
+		this.graph = (graph == null)? null : formatIri(graph, this.base, this.prefixes);
+	}
+
+	private NTriplesWriter(NTriplesWriter w, Appendable out) {
+		this.out = out;
+		this.base = w.base;
+		this.prefixes = w.prefixes;
+		this.graph = w.graph;
+	}
+
+	/**
+	 * Get a writer with the same base, prefixes and graph to another output.
+	 * @param out
+	 * @return NTriplesWriter
+	 */
+	public NTriplesWriter to(Appendable out) {
+		return new NTriplesWriter(this, out);
+	}
+
+	/**
+	 * Get namespace prefixes with the default ones.
+	 * @param prefixes prefixes overriding the default ones, can be null.
+	 * @return Map of prefix name to namespace IRI.
+	 */
+	static Map<String, String> defaultPrefixes(Map<String, String> prefixes) {
+		Map<String, String> all = new HashMap<String, String>();
+		all.put("rdf", NS_RDF_IRI);
+		all.put(LodHelper.NS_RDFS_PREFIX, LodHelper.NS_RDFS_IRI);
+		all.put(LodHelper.NS_XSD_PREFIX, NS_XSD);
+		all.put(Schema.NS_PREFIX, Schema.NS_PREFIX_IRI);
+		if(prefixes != null) all.putAll(prefixes);
+		return all;
+	}
+
+	@Override
+	public void triple(String subject, String predicate, String object, String datatype, String langCode) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		sb.append(formatIri(subject, base, prefixes)).append(' ');
+		sb.append(formatIri(predicate, base, prefixes)).append(' ');
+		sb.append(formatObject(object, datatype, langCode));
+		if(graph != null) sb.append(' ').append(graph);
+		sb.append(" .\n");
+		out.append(sb);
+	}
+
+	/**
+	 * Format an object term, deciding between IRI and literal the same way as LodHelper.formatTtlObject().
+	 * @param object
+	 * @param datatype
+	 * @param langCode
+	 * @return String
+	 */
+	private String formatObject(String object, String datatype, String langCode) {
+		if(isIri(object, datatype)) return formatIri(object, base, prefixes);
+		return formatLiteral(object, datatype, langCode);
+	}
+	
+	/**
+	 * Check if an object is an IRI rather than a literal, the same way as LodHelper.formatTtlObject().
+	 * @param object
+	 * @param datatype
+	 * @return boolean
+	 */
+	static boolean isIri(String object, String datatype) {
+		if(datatype != null) return datatype.equals("anyURI") || datatype.equals("xsd:anyURI");
+		return object.indexOf(':') != -1 && (LodHelper.isPrefixedName(object) || LodHelper.isURL(object));
+	}
+	
+	/**
+	 * Check if a literal of a datatype is a plain string, which may have a language tag.
+	 * @param datatype
+	 * @return boolean
+	 */
+	static boolean isString(String datatype) {
+		return datatype == null || datatype.equals("string") || datatype.equals("xsd:string");
+	}
+	
+	/**
+	 * Get XML Schema datatype of a literal as prefixed name, e.g. xsd:integer for int.
+	 * @param datatype name of XML Schema datatype, or a prefixed name or IRI returned as is.
+	 * @return String
+	 * @throws IllegalArgumentException if the datatype isn't recognized, as LodHelper.formatTtlLiteral().
+	 */
+	static String xsdDatatype(String datatype) {
+		if(datatype.indexOf(':') != -1) return datatype;
+		switch(datatype) {
+		case "int":
+			return LodHelper.NS_XSD_PREFIX + ":integer";
+		case "integer": case "long": case "short": case "decimal": case "float": case "double": case "boolean":
+		case "byte": case "QName": case "NOTATION": case "dateTime": case "base64Binary": case "hexBinary":
+		case "unsignedInt": case "unsignedShort": case "unsignedByte": case "time": case "date": case "gYearMonth":
+		case "gYear": case "gMonthDay": case "gDay": case "gMonth": case "duration": case "NCName":
+			return LodHelper.NS_XSD_PREFIX + ":" + datatype;
+		default:
+			throw new IllegalArgumentException("Unrecognized datatype: " + datatype);
+		}
+	}
+
+	/**
+	 * Format a literal, typed with the XML Schema datatype as LodHelper.formatTtlLiteral() does.
+	 * Unlike Turtle, numbers and booleans are written with their datatype as well.
+	 * @param literal
+	 * @param datatype
+	 * @param langCode
+	 * @return String
+	 */
+	private String formatLiteral(String literal, String datatype, String langCode) {
+		StringBuilder sb = new StringBuilder(literal.length() + 2);
+		sb.append('"');
+		escape(literal, sb);
+		sb.append('"');
+		if(isString(datatype)) {
+			if(langCode != null) sb.append('@').append(langCode);
+			return sb.toString();
+		}
+		return sb.append("^^").append(formatIri(xsdDatatype(datatype), base, prefixes)).toString();
+	}
+
+	/**
+	 * Escape a string for a literal of N-Triples.
+	 * @param s
+	 * @param sb
+	 */
+	private static void escape(String s, StringBuilder sb) {
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch(c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default: sb.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Format an IRI term as an absolute <IRI>. A prefixed name of an unknown prefix, e.g. http://..., 
+	 * is written as is, being an IRI with the prefix as scheme. Characters not allowed in an IRI reference, 
+	 * e.g. spaces of a table name, are percent-encoded.
+	 * @param iri IRI, bracketed <IRI>, prefixed name or relative IRI.
+	 * @param base
+	 * @param prefixes
+	 * @return String
+	 */
+	static String formatIri(String iri, String base, Map<String, String> prefixes) {
+		if(iri.startsWith("<") && iri.endsWith(">")) {
+			iri = iri.substring(1, iri.length() - 1);
+		} else if(LodHelper.isPrefixedName(iri)) {
+			int colon = iri.indexOf(':');
+			String ns = prefixes.get(iri.substring(0, colon));
+			if(ns != null) iri = ns + iri.substring(colon + 1);
+			return "<" + encode(iri) + ">";
+		}
+		return "<" + encode(resolve(iri, base)) + ">";
+	}
+
+	/**
+	 * Percent-encode the characters of an IRI not allowed in an IRIREF of N-Triples, i.e. control characters, 
+	 * space and <>"{}|^`\.
+	 * @param iri
+	 * @return String
+	 */
+	private static String encode(String iri) {
+		StringBuilder sb = null;
+		for(int i = 0; i < iri.length(); i++) {
+			char c = iri.charAt(i);
+			if(c > ' ' && "<>\"{}|^`\\".indexOf(c) == -1) {
+				if(sb != null) sb.append(c);
+			} else {
+				if(sb == null) sb = new StringBuilder(iri.length() + 16).append(iri, 0, i);
+				sb.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+			}
+		}
+		return (sb == null)? iri : sb.toString();
+	}
+
+	/**
+	 * Check if an IRI is absolute, i.e. starts with a scheme.
+	 * @param iri
+	 * @return boolean
+	 */
+	static boolean isAbsolute(String iri) {
+		return iri.matches("[a-zA-Z][a-zA-Z0-9+.-]*:.*");
+	}
+
+	/**
+	 * Resolve a relative IRI against a base IRI, without normalizing '.' and '..' segments.
+	 * @param iri
+	 * @param base
+	 * @return String absolute IRI, or the IRI as is if it's already absolute or there's no base.
+	 */
+	static String resolve(String iri, String base) {
+		if(base.isEmpty() || isAbsolute(iri)) return iri;
+		if(iri.isEmpty()) return base;
+		int hash = base.indexOf('#');
+		String doc = (hash == -1)? base : base.substring(0, hash);
+		if(iri.charAt(0) == '#') return doc + iri;
+		int query = doc.indexOf('?');
+		String path = (query == -1)? doc : doc.substring(0, query);
+		if(iri.charAt(0) == '?') return path + iri;
+		if(iri.startsWith("//")) return path.substring(0, path.indexOf(':') + 1) + iri;
+		int authority = path.indexOf("//");
+		int root = path.indexOf('/', (authority == -1)? 0 : authority + 2);
+		if(iri.charAt(0) == '/') return ((root == -1)? path : path.substring(0, root)) + iri;
+		return ((root == -1)? path + "/" : path.substring(0, path.lastIndexOf('/') + 1)) + iri;
+	}
+
+}
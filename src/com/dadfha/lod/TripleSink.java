@@ -0,0 +1,25 @@
+package com.dadfha.lod;
+
+/**
+ * Receiver of RDF statements, one triple at a time.
+ *
+ * Terms are given in the form taken by LodHelper.buildTtlTriple(), i.e. subject and predicate are an IRI,
+ * a bracketed <IRI> or a prefixed name, and the object is a value formatted according to its datatype and
+ * language code (see LodHelper.formatTtlObject()). Each sink decides the syntax it writes them in.
+ *
+ * @author Wirawit
+ */
+public interface TripleSink {
+
+	/**
+	 * Receive a triple.
+	 * @param subject
+	 * @param predicate
+	 * @param object
+	 * @param datatype of object, can be null.
+	 * @param langCode of object, can be null.
+	 * @throws Exception
+	 */
+	void triple(String subject, String predicate, String object, String datatype, String langCode) throws Exception;
+
+}
@@ -0,0 +1,66 @@
+package com.dadfha.lod.csv;
+
+/**
+ * A job of batch processing, i.e. a CSV file to be processed with an optional CSV-X schema file.
+ * When the schema is not given, the CSV is processed with the schemas loaded in the processor as in
+ * SchemaProcessor.getDatasets().
+ *
+ * @author Wirawit
+ */
+public class BatchJob {
+
+	/**
+	 * Path to CSV file.
+	 */
+	private final String csvPath;
+
+	/**
+	 * Path to CSV-X schema file or null if not specified.
+	 */
+	private final String schemaPath;
+
+	/**
+	 * ID of the CSV or null if not known.
+	 */
+	private final String csvId;
+
+	/**
+	 * Constructor.
+	 * @param csvPath
+	 * @param schemaPath path to CSV-X schema file, can be null.
+	 */
+	public BatchJob(String csvPath, String schemaPath) {
+		this(csvPath, schemaPath, null);
+	}
+
+	/**
+	 * Constructor.
+	 * @param csvPath
+	 * @param schemaPath path to CSV-X schema file, can be null.
+	 * @param csvId the ID of input CSV, can be null if not known.
+	 */
+	public BatchJob(String csvPath, String schemaPath, String csvId) {
+		if(csvPath == null) throw new IllegalArgumentException("csvPath must not be null.");
+		this.csvPath = csvPath;
+		this.schemaPath = schemaPath;
+		this.csvId = csvId;
+	}
+
+	public String getCsvPath() {
+		return csvPath;
+	}
+
+	public String getSchemaPath() {
+		return schemaPath;
+	}
+
+	public String getCsvId() {
+		return csvId;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchJob[" + csvPath + ((schemaPath != null)? ", " + schemaPath : "") + "]";
+	}
+
+}
@@ -0,0 +1,327 @@
+package com.dadfha.lod.csv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Batch processing of many CSV files in one JVM.
+ *
+ * Jobs are run concurrently on an executor sharing one SchemaProcessor, so each schema file is loaded only once
+ * no matter how many CSV files refer to it. Every job is isolated: its failure, including any unexpected exception,
+ * is reported in its own BatchResult and never affects other jobs. Since a loaded schema replaces the one with
+ * the same ID ('@id'), jobs of schema files sharing an ID fail rather than run with the wrong schema.
+ *
+ * Output of serialize/transform is written to a file per CSV in an output directory, or kept in the job result
+ * when no output directory is given.
+ *
+ * @author Wirawit
+ */
+public class BatchProcessor implements AutoCloseable {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	/**
+	 * Extension of output files.
+	 */
+	public static final String OUTPUT_EXT = ".ttl";
+
+	/**
+	 * Processing operation applied to each CSV.
+	 */
+	public enum Operation {
+		/** Validate CSV against schema. */
+		VALIDATE,
+		/** Serialize CSV into RDF according to model described in schema. */
+		SERIALIZE,
+		/** Transform CSV into RDF according to mapped template(s) in schema. */
+		TRANSFORM
+	}
+
+	/**
+	 * The processor shared by all jobs.
+	 */
+	private final SchemaProcessor sp;
+
+	/**
+	 * Executor running the jobs.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Whether the executor is created and thus shut down by this batch processor.
+	 */
+	private final boolean ownExecutor;
+
+	/**
+	 * Constructor.
+	 * @param sp the processor shared by all jobs.
+	 * @param threads number of worker threads, or 0 to use virtual threads where the JDK supports them.
+	 */
+	public BatchProcessor(SchemaProcessor sp, int threads) {
+		this(sp, newExecutor(threads), true);
+	}
+
+	/**
+	 * Constructor.
+	 * @param sp the processor shared by all jobs.
+	 * @param executor executor running the jobs. It's not shut down by this batch processor.
+	 */
+	public BatchProcessor(SchemaProcessor sp, ExecutorService executor) {
+		this(sp, executor, false);
+	}
+
+	private BatchProcessor(SchemaProcessor sp, ExecutorService executor, boolean ownExecutor) {
+		if(sp == null) throw new IllegalArgumentException("sp must not be null.");
+		if(executor == null) throw new IllegalArgumentException("executor must not be null.");
+		this.sp = sp;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+	}
+
+	/**
+	 * Create an executor for batch jobs.
+	 * @param threads number of worker threads, or 0 to use one virtual thread per job where the JDK supports them
+	 * (falling back to one thread per available processor).
+	 * @return ExecutorService
+	 */
+	public static ExecutorService newExecutor(int threads) {
+		if(threads <= 0) {
+			try {
+				// virtual threads are looked up reflectively to stay compatible with Java 8
+				Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) m.invoke(null);
+			} catch(ReflectiveOperationException e) {
+				threads = Runtime.getRuntime().availableProcessors();
+			}
+		}
+		return Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Process jobs concurrently and wait for all of them to finish.
+	 * @param jobs
+	 * @param op operation applied to each CSV.
+	 * @param outDir directory to write output files to, or null to keep the output in job results.
+	 * @return List of BatchResult in the same order as jobs.
+	 * @throws IOException if the output directory can't be created.
+	 * @throws InterruptedException if the thread is interrupted while waiting for the jobs.
+	 */
+	public List<BatchResult> process(List<BatchJob> jobs, Operation op, Path outDir) throws IOException, InterruptedException {
+
+		// load each schema file once, schemas are shared by all jobs referring to them
+		Map<String, String> schemaIds = new HashMap<String, String>();
+		Map<String, String> pathsById = new HashMap<String, String>();
+		Map<String, String> schemaErrors = new HashMap<String, String>();
+		for(BatchJob job : jobs) {
+			String schemaPath = job.getSchemaPath();
+			if(schemaPath != null && !schemaIds.containsKey(schemaPath)) {
+				Schema schema = sp.loadSchema(schemaPath);
+				String schemaId = (schema != null)? (String) schema.getProperty(SchemaProcessor.METAPROP_ID) : null;
+				schemaIds.put(schemaPath, schemaId);
+				if(schemaId == null) {
+					schemaErrors.put(schemaPath, "Unable to load schema " + schemaPath);
+					continue;
+				}
+				// a schema replaces the loaded one with the same ID, so jobs of either file can't tell which is used
+				String otherPath = pathsById.putIfAbsent(schemaId, schemaPath);
+				if(otherPath != null) {
+					String errMsg = "Schema files " + otherPath + " and " + schemaPath + " have the same ID " + schemaId;
+					logger.warn(errMsg);
+					schemaErrors.put(otherPath, errMsg);
+					schemaErrors.put(schemaPath, errMsg);
+				}
+			}
+		}
+
+		Map<BatchJob, Path> outPaths = new HashMap<BatchJob, Path>();
+		if(outDir != null && op != Operation.VALIDATE) {
+			Files.createDirectories(outDir);
+			Set<String> names = new HashSet<String>();
+			for(BatchJob job : jobs) {
+				String name = Paths.get(job.getCsvPath()).getFileName().toString();
+				if(name.lastIndexOf('.') > 0) name = name.substring(0, name.lastIndexOf('.'));
+				// CSV files in different directories may share the same name
+				String outName = name;
+				for(int i = 1; !names.add(outName); i++) outName = name + "-" + i;
+				outPaths.put(job, outDir.resolve(outName + OUTPUT_EXT));
+			}
+		}
+
+		List<Future<BatchResult>> futures = new ArrayList<Future<BatchResult>>(jobs.size());
+		for(BatchJob job : jobs) {
+			futures.add(executor.submit(() -> runJob(job, op, schemaIds, schemaErrors, outPaths.get(job))));
+		}
+
+		List<BatchResult> results = new ArrayList<BatchResult>(jobs.size());
+		for(int i = 0; i < futures.size(); i++) {
+			try {
+				results.add(futures.get(i).get());
+			} catch(ExecutionException e) {
+				// runJob() never throws, but keep the isolation if it ever does
+				results.add(BatchResult.failure(jobs.get(i), String.valueOf(e.getCause()), e.getCause(), 0));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Run a job, catching every failure into its result.
+	 * @param job
+	 * @param op
+	 * @param schemaIds map between schema path and ID of loaded schema (null if it failed to load).
+	 * @param schemaErrors map between schema path and the reason its jobs fail, i.e. the schema failed to load
+	 * or has the same ID as another schema file.
+	 * @param outPath output file or null to keep the output in the result.
+	 * @return BatchResult
+	 */
+	private BatchResult runJob(BatchJob job, Operation op, Map<String, String> schemaIds, Map<String, String> schemaErrors, Path outPath) {
+		long start = System.nanoTime();
+		try {
+			Schema dSchema;
+			if(job.getSchemaPath() != null) {
+				String schemaError = schemaErrors.get(job.getSchemaPath());
+				if(schemaError != null) return BatchResult.failure(job, schemaError, null, elapsedMillis(start));
+				String schemaId = schemaIds.get(job.getSchemaPath());
+				dSchema = sp.getDataSchemaWithSchema(job.getCsvPath(), schemaId);
+			} else {
+				dSchema = sp.getDataSchema(job.getCsvPath(), job.getCsvId(), null);
+			}
+			if(dSchema == null) return BatchResult.failure(job, "The csv doesn't match the schema.", null, elapsedMillis(start));
+
+			String output = null;
+			if(op != Operation.VALIDATE) {
+				if(outPath != null) {
+					try(Writer w = Files.newBufferedWriter(outPath, StandardCharsets.UTF_8)) {
+						write(dSchema, op, w);
+					}
+				} else {
+					StringBuilder sb = new StringBuilder();
+					write(dSchema, op, sb);
+					output = sb.toString();
+				}
+			}
+			return BatchResult.success(job, (String) dSchema.getProperty(SchemaProcessor.METAPROP_ID), output, elapsedMillis(start));
+		} catch(Throwable t) {
+			logger.warn("Batch job {} failed: {}", job, t);
+			logger.debug("", t);
+			return BatchResult.failure(job, String.valueOf(t), t, elapsedMillis(start));
+		}
+	}
+
+	/**
+	 * Write the output of an operation on a data schema, entity by entity as it's serialized.
+	 * @param dSchema data schema.
+	 * @param op
+	 * @param out
+	 * @throws Exception
+	 */
+	public static void write(Schema dSchema, Operation op, Appendable out) throws Exception {
+		switch(op) {
+		case SERIALIZE:
+			dSchema.writeTtl(out, null);
+			break;
+		case TRANSFORM:
+			SchemaProcessor.writeRdfFromTemplate(dSchema, out);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static long elapsedMillis(long startNanos) {
+		return (System.nanoTime() - startNanos) / 1000000;
+	}
+
+	/**
+	 * Read jobs from a manifest file. Each line has CSV path, optionally followed by schema path and CSV ID,
+	 * separated by comma. Blank lines and lines starting with '#' are ignored.
+	 * Relative paths are resolved against the directory of the manifest.
+	 * @param manifestPath
+	 * @param defaultSchemaPath schema path for lines without one, can be null.
+	 * @return List of BatchJob
+	 * @throws IOException
+	 */
+	public static List<BatchJob> readManifest(String manifestPath, String defaultSchemaPath) throws IOException {
+		Path manifest = Paths.get(manifestPath);
+		Path dir = manifest.toAbsolutePath().getParent();
+		List<BatchJob> jobs = new ArrayList<BatchJob>();
+		try(BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#")) continue;
+				String[] fields = line.split(",");
+				String csvPath = dir.resolve(fields[0].trim()).toString();
+				String schemaPath = (fields.length > 1 && !fields[1].trim().isEmpty())? dir.resolve(fields[1].trim()).toString() : defaultSchemaPath;
+				String csvId = (fields.length > 2 && !fields[2].trim().isEmpty())? fields[2].trim() : null;
+				jobs.add(new BatchJob(csvPath, schemaPath, csvId));
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * List jobs for CSV files matching a glob pattern, e.g. "data/*.csv" or "data/**.csv".
+	 * A path without glob character yields a single job.
+	 * @param pattern
+	 * @param schemaPath schema path for the jobs, can be null.
+	 * @return List of BatchJob sorted by CSV path.
+	 * @throws IOException
+	 */
+	public static List<BatchJob> listJobs(String pattern, String schemaPath) throws IOException {
+		List<BatchJob> jobs = new ArrayList<BatchJob>();
+		int firstGlobChar = -1;
+		for(int i = 0; i < pattern.length(); i++) {
+			if("*?[{".indexOf(pattern.charAt(i)) >= 0) {
+				firstGlobChar = i;
+				break;
+			}
+		}
+		if(firstGlobChar < 0) {
+			jobs.add(new BatchJob(pattern, schemaPath));
+			return jobs;
+		}
+		// walk from the deepest directory before any glob character
+		int sep = Math.max(pattern.lastIndexOf('/', firstGlobChar), pattern.lastIndexOf(java.io.File.separatorChar, firstGlobChar));
+		Path base = Paths.get((sep < 0)? "." : (sep == 0)? "/" : pattern.substring(0, sep));
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + ((sep < 0)? "./" + pattern : pattern));
+		try(Stream<Path> paths = Files.walk(base)) {
+			for(Path p : paths.filter(p -> Files.isRegularFile(p) && matcher.matches(p)).sorted().collect(Collectors.toList())) {
+				jobs.add(new BatchJob(p.toString(), schemaPath));
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Shut down the executor if it's created by this batch processor.
+	 */
+	@Override
+	public void close() {
+		if(ownExecutor) executor.shutdown();
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.dadfha.lod.csv;
+
+/**
+ * Result of a batch job. A failure of a job never affects other jobs of the batch.
+ *
+ * @author Wirawit
+ */
+public class BatchResult {
+
+	/**
+	 * The job.
+	 */
+	private final BatchJob job;
+
+	/**
+	 * ID of the schema the CSV is matched with or null if the job failed.
+	 */
+	private final String schemaId;
+
+	/**
+	 * Output of the job, if it's kept in memory, or null.
+	 */
+	private final String output;
+
+	/**
+	 * Error message or null if the job succeeded.
+	 */
+	private final String errorMessage;
+
+	/**
+	 * Exception causing the failure, if any.
+	 */
+	private final Throwable error;
+
+	/**
+	 * Processing time in milliseconds.
+	 */
+	private final long elapsedMillis;
+
+	private BatchResult(BatchJob job, String schemaId, String output, String errorMessage, Throwable error, long elapsedMillis) {
+		this.job = job;
+		this.schemaId = schemaId;
+		this.output = output;
+		this.errorMessage = errorMessage;
+		this.error = error;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * Create result of a successful job.
+	 * @param job
+	 * @param schemaId
+	 * @param output output kept in memory, can be null.
+	 * @param elapsedMillis
+	 * @return BatchResult
+	 */
+	public static BatchResult success(BatchJob job, String schemaId, String output, long elapsedMillis) {
+		return new BatchResult(job, schemaId, output, null, null, elapsedMillis);
+	}
+
+	/**
+	 * Create result of a failed job.
+	 * @param job
+	 * @param errorMessage
+	 * @param error exception causing the failure, can be null.
+	 * @param elapsedMillis
+	 * @return BatchResult
+	 */
+	public static BatchResult failure(BatchJob job, String errorMessage, Throwable error, long elapsedMillis) {
+		return new BatchResult(job, null, null, errorMessage, error, elapsedMillis);
+	}
+
+	public BatchJob getJob() {
+		return job;
+	}
+
+	public boolean isSuccess() {
+		return errorMessage == null;
+	}
+
+	public String getSchemaId() {
+		return schemaId;
+	}
+
+	public String getOutput() {
+		return output;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public Throwable getError() {
+		return error;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		if(isSuccess()) return "[OK] " + job.getCsvPath() + " (" + schemaId + ", " + elapsedMillis + " ms)";
+		else return "[FAILED] " + job.getCsvPath() + ": " + errorMessage + " (" + elapsedMillis + " ms)";
+	}
+
+}
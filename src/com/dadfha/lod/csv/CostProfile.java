@@ -0,0 +1,237 @@
+package com.dadfha.lod.csv;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Cost of processing per schema entity, i.e. time and invocations of each '@cell' datatype and regex validation,
+ * schema function, mapped template, and schema table trial, so that a schema author can see which definition
+ * makes processing slow.
+ *
+ * A profile is attached to ProcessingMetrics only while profiling, as keeping costs per entity costs a map lookup
+ * per measured operation. Entities are kept by identity, their reference expression is only resolved once per entry.
+ * Note that time of a table trial includes validations done within the trial.
+ *
+ * @author Wirawit
+ */
+public class CostProfile {
+
+	/**
+	 * Kind of measured operation.
+	 */
+	public enum Kind {
+		/** Trial of a schema table on CSV from a milestone row. */
+		TABLE_TRIAL,
+		/** Datatype validation of a schema cell. */
+		DATATYPE,
+		/** Regex validation of a schema cell. */
+		REGEX,
+		/** Execution of a schema function. */
+		FUNCTION,
+		/** Application of a mapped template. */
+		TEMPLATE
+	}
+
+	/**
+	 * Cost of an operation kind on a schema entity.
+	 */
+	public static final class Entry {
+
+		private final Kind kind;
+		private final String entity;
+		private final String detail;
+		private final LongAdder invocations = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder usefulRows = new LongAdder();
+		private final LongAdder wastedRows = new LongAdder();
+
+		private Entry(Kind kind, SchemaEntity se) {
+			this.kind = kind;
+			entity = se.getRefEx();
+			switch(kind) {
+			case DATATYPE:
+				detail = se.getDatatype();
+				break;
+			case REGEX:
+				detail = se.getRegEx();
+				break;
+			case FUNCTION:
+				detail = ((SchemaFunction) se).getFunctionName();
+				break;
+			default:
+				detail = null;
+			}
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return reference expression of the schema entity.
+		 */
+		public String getEntity() {
+			return entity;
+		}
+
+		/**
+		 * @return datatype, regex, or function name measured, null for other kinds.
+		 */
+		public String getDetail() {
+			return detail;
+		}
+
+		public long getInvocations() {
+			return invocations.sum();
+		}
+
+		public long getNanos() {
+			return nanos.sum();
+		}
+
+		/**
+		 * @return rows consumed by successful trials, only for TABLE_TRIAL.
+		 */
+		public long getUsefulRows() {
+			return usefulRows.sum();
+		}
+
+		/**
+		 * @return rows consumed by failed trials and thrown away, only for TABLE_TRIAL.
+		 */
+		public long getWastedRows() {
+			return wastedRows.sum();
+		}
+
+		@Override
+		public String toString() {
+			return kind + " " + entity + ((detail != null)? " " + detail : "") + " [invocations=" + getInvocations() + ", nanos=" + getNanos() + "]";
+		}
+	}
+
+	/**
+	 * Key of an entry, comparing schema entity by identity.
+	 */
+	private static final class Key {
+		private final Kind kind;
+		private final SchemaEntity se;
+
+		Key(Kind kind, SchemaEntity se) {
+			this.kind = kind;
+			this.se = se;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(se) * 31 + kind.ordinal();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key)) return false;
+			Key k = (Key) obj;
+			return k.se == se && k.kind == kind;
+		}
+	}
+
+	private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+	private Entry getEntry(Kind kind, SchemaEntity se) {
+		return entries.computeIfAbsent(new Key(kind, se), k -> new Entry(kind, se));
+	}
+
+	void add(Kind kind, SchemaEntity se, long nanos) {
+		Entry e = getEntry(kind, se);
+		e.invocations.increment();
+		e.nanos.add(nanos);
+	}
+
+	void addTableTrial(SchemaTable sTable, long nanos, int rows, boolean matched) {
+		Entry e = getEntry(Kind.TABLE_TRIAL, sTable);
+		e.invocations.increment();
+		e.nanos.add(nanos);
+		if(matched) e.usefulRows.add(rows);
+		else e.wastedRows.add(rows);
+	}
+
+	/**
+	 * Get all entries ranked by total time, most costly first.
+	 * @return List<Entry>
+	 */
+	public List<Entry> getEntries() {
+		List<Entry> list = new ArrayList<Entry>(entries.values());
+		Collections.sort(list, (a, b) -> Long.compare(b.getNanos(), a.getNanos()));
+		return list;
+	}
+
+	public void reset() {
+		entries.clear();
+	}
+
+	/**
+	 * Format the most costly entries as a text table.
+	 * @param top maximum number of entries, 0 for all.
+	 * @return String
+	 */
+	public String toTable(int top) {
+		List<Entry> list = getEntries();
+		long total = 0;
+		for(Entry e : list) total += e.getNanos();
+		String nl = System.lineSeparator();
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, "%4s %-11s %10s %6s %10s %9s %9s %9s  %s%n", "#", "KIND", "TOTAL(ms)", "%", "CALLS", "MEAN(us)", "USEFUL", "WASTED", "ENTITY"));
+		int n = 0;
+		for(Entry e : list) {
+			if(top > 0 && n >= top) break;
+			n++;
+			long calls = e.getInvocations();
+			boolean trial = e.getKind() == Kind.TABLE_TRIAL;
+			sb.append(String.format(Locale.ROOT, "%4d %-11s %10.3f %6.1f %10d %9.2f %9s %9s  %s%s%n", n, e.getKind(), e.getNanos() / 1e6,
+					(total > 0)? e.getNanos() * 100.0 / total : 0, calls, (calls > 0)? e.getNanos() / 1e3 / calls : 0,
+					trial? String.valueOf(e.getUsefulRows()) : "-", trial? String.valueOf(e.getWastedRows()) : "-",
+					e.getEntity(), (e.getDetail() != null)? " " + e.getDetail() : ""));
+		}
+		if(n < list.size()) sb.append("  ... ").append(list.size() - n).append(" more").append(nl);
+		return sb.toString();
+	}
+
+	/**
+	 * Write the most costly entries as a JSON array.
+	 * @param out
+	 * @param top maximum number of entries, 0 for all.
+	 * @throws IOException
+	 */
+	public void writeJson(Writer out, int top) throws IOException {
+		JsonGenerator g = new JsonFactory().createGenerator(out);
+		g.useDefaultPrettyPrinter();
+		g.writeStartArray();
+		int n = 0;
+		for(Entry e : getEntries()) {
+			if(top > 0 && n >= top) break;
+			n++;
+			g.writeStartObject();
+			g.writeStringField("kind", e.getKind().name());
+			g.writeStringField("entity", e.getEntity());
+			if(e.getDetail() != null) g.writeStringField("detail", e.getDetail());
+			g.writeNumberField("invocations", e.getInvocations());
+			g.writeNumberField("nanos", e.getNanos());
+			if(e.getKind() == Kind.TABLE_TRIAL) {
+				g.writeNumberField("usefulRows", e.getUsefulRows());
+				g.writeNumberField("wastedRows", e.getWastedRows());
+			}
+			g.writeEndObject();
+		}
+		g.writeEndArray();
+		g.flush();
+	}
+
+}
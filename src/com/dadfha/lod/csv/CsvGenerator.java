@@ -0,0 +1,421 @@
+package com.dadfha.lod.csv;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Generator of synthetic CSV conforming to a schema, for scale testing.
+ *
+ * Schema tables are generated one after another in the order they're declared, cycling through them until
+ * the requested size is reached, each table instance complete. Within a table, every schema row is generated
+ * in row order, a finite repeating row exactly its repeating times, an infinite one as many times as set.
+ * Repeating columns work the same way. A cell value is sampled from its '@regex' if any, otherwise generated
+ * for its '@datatype', while an Empty Cell is left empty. Values are quoted as needed with the schema's quote
+ * character, and rows end with the schema's line separator.
+ *
+ * Generation is deterministic for a seed. Regexes are parsed once per schema cell, and a row is built in a reused
+ * buffer, so output is mostly bound by the writer.
+ *
+ * @author Wirawit
+ * @see RegexSampler
+ */
+public class CsvGenerator {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	/**
+	 * Default number of times an infinite repeating row is generated per table instance.
+	 */
+	public static final int DEFAULT_REPEAT_TIMES = 100;
+
+	/**
+	 * Default number of times an infinite repeating column is generated per row.
+	 */
+	public static final int DEFAULT_COL_REPEAT_TIMES = 3;
+
+	/**
+	 * Number of samples of each regex checked against the regex when its sampler is created.
+	 */
+	private static final int VERIFY_SAMPLES = 16;
+
+	/**
+	 * Maximum number of re-sampling for a non-empty value.
+	 */
+	private static final int MAX_RESAMPLE = 8;
+
+	/**
+	 * Source of cell values.
+	 */
+	private interface ValueSource {
+		void append(SplittableRandom rnd, StringBuilder sb);
+	}
+
+	private final Schema schema;
+
+	private final SplittableRandom rnd;
+
+	private int repeatTimes = DEFAULT_REPEAT_TIMES;
+
+	private int colRepeatTimes = DEFAULT_COL_REPEAT_TIMES;
+
+	private final char delimiter;
+
+	private final char quote;
+
+	/**
+	 * Comment prefix or '\0' if there's none.
+	 */
+	private final char comment;
+
+	private final String lineSeparator;
+
+	private final boolean trim;
+
+	/**
+	 * Value source of each schema cell.
+	 */
+	private final Map<SchemaCell, ValueSource> sources = new IdentityHashMap<SchemaCell, ValueSource>();
+
+	/**
+	 * Sorted row numbers of each schema table.
+	 */
+	private final Map<SchemaTable, int[]> rowNums = new IdentityHashMap<SchemaTable, int[]>();
+
+	/**
+	 * Value sources of each schema row, null for an Empty Cell.
+	 */
+	private final Map<SchemaRow, ValueSource[]> rowSources = new IdentityHashMap<SchemaRow, ValueSource[]>();
+
+	/**
+	 * Number of times each column of each schema row is generated.
+	 */
+	private final Map<SchemaRow, int[]> rowColTimes = new IdentityHashMap<SchemaRow, int[]>();
+
+	private final StringBuilder line = new StringBuilder(256);
+
+	private final StringBuilder value = new StringBuilder(64);
+
+	private long rows = 0;
+
+	/**
+	 * Constructor.
+	 * @param schema the schema to generate CSV for.
+	 * @param seed seed of the random generator, the same seed generates the same CSV.
+	 */
+	public CsvGenerator(Schema schema, long seed) {
+		if(schema == null) throw new IllegalArgumentException("schema must not be null.");
+		this.schema = schema;
+		rnd = new SplittableRandom(seed);
+		String d = (String) schema.getProperty(SchemaProcessor.METAPROP_DELIMITER);
+		delimiter = (d != null && !d.isEmpty())? d.charAt(0) : ',';
+		String q = (String) schema.getProperty(SchemaProcessor.METAPROP_QUOTE_CHAR);
+		quote = (q != null && !q.isEmpty())? q.charAt(0) : '"';
+		String c = (String) schema.getProperty(SchemaProcessor.METAPROP_COMMENT_PREFIX);
+		comment = (c != null && !c.isEmpty())? c.charAt(0) : '\0';
+		String ls = (String) schema.getProperty(SchemaProcessor.METAPROP_LINE_SEPARATOR);
+		if(ls == null || ls.isEmpty()) lineSeparator = "\n";
+		else if(ls.indexOf('\r') >= 0 && ls.indexOf('\n') >= 0) lineSeparator = "\r\n"; // either order means CRLF
+		else lineSeparator = ls;
+		trim = Boolean.TRUE.equals(schema.getProperty(SchemaProcessor.METAPROP_TRIM));
+	}
+
+	/**
+	 * @param repeatTimes number of times an infinite repeating row is generated per table instance.
+	 */
+	public void setRepeatTimes(int repeatTimes) {
+		if(repeatTimes < 1) throw new IllegalArgumentException("repeatTimes must be positive.");
+		this.repeatTimes = repeatTimes;
+	}
+
+	/**
+	 * @param colRepeatTimes number of times an infinite repeating column is generated per row.
+	 */
+	public void setColRepeatTimes(int colRepeatTimes) {
+		if(colRepeatTimes < 1) throw new IllegalArgumentException("colRepeatTimes must be positive.");
+		this.colRepeatTimes = colRepeatTimes;
+		rowSources.clear(); // columns' repeating times are computed with row sources
+	}
+
+	/**
+	 * @return number of rows generated so far.
+	 */
+	public long getRowsGenerated() {
+		return rows;
+	}
+
+	/**
+	 * Parse size with optional binary unit suffix, e.g. "512k", "100m", "1g".
+	 * @param size
+	 * @return long
+	 * @throws NumberFormatException
+	 */
+	public static long parseSize(String size) {
+		String s = size.trim().toLowerCase(Locale.ROOT);
+		if(s.endsWith("b")) s = s.substring(0, s.length() - 1);
+		int shift = 0;
+		if(!s.isEmpty()) {
+			switch(s.charAt(s.length() - 1)) {
+			case 'k': shift = 10; break;
+			case 'm': shift = 20; break;
+			case 'g': shift = 30; break;
+			case 't': shift = 40; break;
+			}
+		}
+		if(shift > 0) s = s.substring(0, s.length() - 1);
+		long n = Long.parseLong(s);
+		if(n < 0) throw new NumberFormatException("Negative size: " + size);
+		return n << shift;
+	}
+
+	/**
+	 * Generate CSV of at least a size, cycling through schema tables. At least every table is generated once.
+	 * @param out
+	 * @param targetChars minimum number of characters to generate, 0 to generate every table once.
+	 * @return long number of characters generated.
+	 * @throws IOException
+	 */
+	public long generate(Writer out, long targetChars) throws IOException {
+		if(schema.getSchemaTables().isEmpty()) throw new IllegalArgumentException("Schema has no table to generate: " + schema);
+		long chars = 0;
+		do {
+			for(SchemaTable sTable : schema.getSchemaTables().values()) chars += generateTable(out, sTable);
+		} while(chars < targetChars);
+		return chars;
+	}
+
+	/**
+	 * Generate an instance of a schema table.
+	 * @param out
+	 * @param sTable
+	 * @return long number of characters generated.
+	 * @throws IOException
+	 */
+	public long generateTable(Writer out, SchemaTable sTable) throws IOException {
+		long chars = 0;
+		for(int rowNum : getRowNums(sTable)) {
+			SchemaRow sRow = sTable.getRow(rowNum);
+			ValueSource[] srcs = getRowSources(sTable, sRow);
+			if(srcs.length == 0) continue; // a blank line would be skipped anyway
+			int[] colTimes = rowColTimes.get(sRow);
+			int times = !sRow.isRepeat()? 1 : (sRow.getRepeatTimes() > 0)? sRow.getRepeatTimes() : repeatTimes;
+			for(int i = 0; i < times; i++) {
+				line.setLength(0);
+				appendRow(srcs, colTimes);
+				line.append(lineSeparator);
+				out.append(line);
+				chars += line.length();
+				rows++;
+			}
+		}
+		return chars;
+	}
+
+	private void appendRow(ValueSource[] srcs, int[] colTimes) {
+		boolean first = true;
+		for(int col = 0; col < srcs.length; col++) {
+			for(int i = colTimes[col]; i > 0; i--) {
+				if(!first) line.append(delimiter);
+				if(srcs[col] != null) appendCell(srcs[col], first);
+				first = false;
+			}
+		}
+	}
+
+	private void appendCell(ValueSource src, boolean firstInRow) {
+		for(int i = 0; i < MAX_RESAMPLE; i++) {
+			value.setLength(0);
+			src.append(rnd, value);
+			if(trim) trim(value);
+			if(value.length() > 0) break;
+		}
+		if(value.length() == 0) { // quoted empty string is an empty value rather than no value
+			line.append(quote).append(quote);
+			return;
+		}
+		if(needsQuote(value, firstInRow)) {
+			line.append(quote);
+			for(int i = 0; i < value.length(); i++) {
+				char ch = value.charAt(i);
+				if(ch == quote) line.append(quote);
+				line.append(ch);
+			}
+			line.append(quote);
+		} else line.append(value);
+	}
+
+	private boolean needsQuote(CharSequence v, boolean firstInRow) {
+		if(firstInRow && comment != '\0' && v.charAt(0) == comment) return true;
+		for(int i = 0; i < v.length(); i++) {
+			char ch = v.charAt(i);
+			if(ch == delimiter || ch == quote || ch == '\n' || ch == '\r') return true;
+		}
+		return false;
+	}
+
+	private static void trim(StringBuilder sb) {
+		int end = sb.length();
+		while(end > 0 && sb.charAt(end - 1) <= ' ') end--;
+		sb.setLength(end);
+		int start = 0;
+		while(start < end && sb.charAt(start) <= ' ') start++;
+		sb.delete(0, start);
+	}
+
+	private int[] getRowNums(SchemaTable sTable) {
+		int[] nums = rowNums.get(sTable);
+		if(nums == null) {
+			nums = new int[sTable.getSchemaRows().size()];
+			int i = 0;
+			for(Integer r : sTable.getSchemaRows().keySet()) nums[i++] = r;
+			Arrays.sort(nums);
+			rowNums.put(sTable, nums);
+		}
+		return nums;
+	}
+
+	/**
+	 * Get value sources of a schema row's columns, computing them and the columns' repeating times on first use.
+	 * @param sTable
+	 * @param sRow
+	 * @return ValueSource[] with null for an Empty Cell, empty if the row has no cell.
+	 */
+	private ValueSource[] getRowSources(SchemaTable sTable, SchemaRow sRow) {
+		ValueSource[] srcs = rowSources.get(sRow);
+		if(srcs == null) {
+			int max = -1;
+			for(Integer col : sRow.getSchemaCells().keySet()) max = Math.max(max, col);
+			for(SchemaCell range : sRow.getCellRanges()) max = Math.max(max, range.getColEnd());
+			srcs = new ValueSource[max + 1];
+			int[] colTimes = new int[max + 1];
+			for(int col = 0; col <= max; col++) {
+				SchemaCell c = sRow.getCell(col);
+				if(c != null && !c.isEmpty()) srcs[col] = getSource(c);
+				SchemaColumn sCol = sTable.getCol(col);
+				colTimes[col] = (sCol == null || !sCol.isRepeat())? 1 : (sCol.getRepeatTimes() > 0)? sCol.getRepeatTimes() : colRepeatTimes;
+			}
+			rowSources.put(sRow, srcs);
+			rowColTimes.put(sRow, colTimes);
+		}
+		return srcs;
+	}
+
+	/**
+	 * Get value source of a schema cell, shared by the columns of a cell range.
+	 * @param c
+	 * @return ValueSource
+	 */
+	private ValueSource getSource(SchemaCell c) {
+		ValueSource src = sources.get(c);
+		if(src == null) {
+			src = createSource(c);
+			sources.put(c, src);
+		}
+		return src;
+	}
+
+	private ValueSource createSource(SchemaCell c) {
+		String regex = c.getRegEx();
+		if(regex != null) {
+			RegexSampler sampler = new RegexSampler(regex);
+			SplittableRandom check = new SplittableRandom(regex.hashCode());
+			for(int i = 0; i < VERIFY_SAMPLES; i++) {
+				String s = sampler.sample(check);
+				if(!c.getRegExPattern().matcher(s).find()) {
+					logger.warn("Samples of regex '{}' of {} may not match it, e.g. '{}'", regex, c, s);
+					break;
+				}
+			}
+			return sampler::sample;
+		}
+		return datatypeSource(c.getDatatype());
+	}
+
+	/**
+	 * Get value source of a datatype. Unknown or no datatype generates words.
+	 * @param datatype
+	 * @return ValueSource
+	 */
+	private static ValueSource datatypeSource(String datatype) {
+		if(datatype == null) return CsvGenerator::word;
+		switch(datatype) {
+		case "int":
+		case "integer":
+		case "long":
+			return (rnd, sb) -> sb.append(rnd.nextInt(-99999, 1000000));
+		case "short":
+			return (rnd, sb) -> sb.append(rnd.nextInt(-32768, 32768));
+		case "byte":
+			return (rnd, sb) -> sb.append(rnd.nextInt(-128, 128));
+		case "unsignedInt":
+		case "unsignedShort":
+			return (rnd, sb) -> sb.append(rnd.nextInt(0, 65536));
+		case "unsignedByte":
+			return (rnd, sb) -> sb.append(rnd.nextInt(0, 256));
+		case "decimal":
+		case "float":
+		case "double":
+			return (rnd, sb) -> sb.append(rnd.nextInt(-9999, 100000)).append('.').append(rnd.nextInt(0, 100));
+		case "boolean":
+			return (rnd, sb) -> sb.append(rnd.nextBoolean());
+		case "dateTime":
+			return (rnd, sb) -> {
+				appendDate(rnd, sb);
+				sb.append('T');
+				appendTime(rnd, sb);
+			};
+		case "date":
+			return CsvGenerator::appendDate;
+		case "time":
+			return CsvGenerator::appendTime;
+		case "gYear":
+			return (rnd, sb) -> sb.append(rnd.nextInt(1900, 2100));
+		case "gYearMonth":
+			return (rnd, sb) -> pad2(sb.append(rnd.nextInt(1900, 2100)).append('-'), rnd.nextInt(1, 13));
+		case "gMonthDay":
+			return (rnd, sb) -> pad2(pad2(sb.append("--"), rnd.nextInt(1, 13)).append('-'), rnd.nextInt(1, 29));
+		case "gMonth":
+			return (rnd, sb) -> pad2(sb.append("--"), rnd.nextInt(1, 13));
+		case "gDay":
+			return (rnd, sb) -> pad2(sb.append("---"), rnd.nextInt(1, 29));
+		case "duration":
+			return (rnd, sb) -> sb.append('P').append(rnd.nextInt(0, 100)).append("DT").append(rnd.nextInt(0, 24)).append('H');
+		case "anyURI":
+			return (rnd, sb) -> word(rnd, sb.append("http://example.org/"));
+		case "hexBinary":
+			return (rnd, sb) -> {
+				for(int i = rnd.nextInt(1, 9); i > 0; i--) sb.append(Character.forDigit(rnd.nextInt(16), 16)).append(Character.forDigit(rnd.nextInt(16), 16));
+			};
+		case "base64Binary":
+			return (rnd, sb) -> sb.append("QUJD");
+		default: // string, NCName, QName, etc.
+			return CsvGenerator::word;
+		}
+	}
+
+	private static void word(SplittableRandom rnd, StringBuilder sb) {
+		sb.append((char) ('A' + rnd.nextInt(26)));
+		for(int i = rnd.nextInt(2, 10); i > 0; i--) sb.append((char) ('a' + rnd.nextInt(26)));
+	}
+
+	private static void appendDate(SplittableRandom rnd, StringBuilder sb) {
+		pad2(pad2(sb.append(rnd.nextInt(1900, 2100)).append('-'), rnd.nextInt(1, 13)).append('-'), rnd.nextInt(1, 29));
+	}
+
+	private static void appendTime(SplittableRandom rnd, StringBuilder sb) {
+		pad2(pad2(pad2(sb, rnd.nextInt(0, 24)).append(':'), rnd.nextInt(0, 60)).append(':'), rnd.nextInt(0, 60));
+	}
+
+	private static StringBuilder pad2(StringBuilder sb, int v) {
+		if(v < 10) sb.append('0');
+		return sb.append(v);
+	}
+
+}
@@ -1,7 +1,18 @@
 package com.dadfha.lod.csv;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
@@ -12,6 +23,8 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
 
+import jdk.jfr.Recording;
+
 @Parameters(separators = "=")
 public class CsvxCmd {	
 	
@@ -30,14 +43,71 @@ public class CsvxCmd {
 	@Parameter(names = { "-log" }, description = "Log level (off, all,fatal,error,warn,info,debug,trace).")
 	private String logLevel;	
 	
+	@Parameter(names = { "-cache" }, description = "Directory to cache loaded schemas in binary form.")
+	private String cacheDir;
+	
+	@Parameter(names = { "-diag" }, description = "Diagnostics level (off,counters,sample,log). A summary is printed to stderr at the end, 'log' also emits per-cell log lines.")
+	private String diagLevel;
+	
+	@Parameter(names = { "-jfr" }, description = "File to write a Java Flight Recorder recording of CSV-X events (table trials, slow validations, function calls, template applications) to.")
+	private String jfrFile;
+	
+	@Parameter(names = { "-jfrThreshold" }, description = "Minimum duration in microseconds of a validation call recorded by -jfr.")
+	private Long jfrThreshold;
+	
+	@Parameter(names = { "-rowThreads" }, description = "Number of threads materializing large regions of an infinite repeating row in parallel chunks.")
+	private int rowThreads = 1;
+	
+	@Parameter(names = { "-parseThreads" }, description = "Number of threads tokenizing a large csv file in parallel byte ranges.")
+	private int parseThreads = 1;
+	
+	@Parameter(names = { "-serializeThreads" }, description = "Number of threads serializing data tables in parallel segments of rows.")
+	private int serializeThreads = 1;
+	
+	/**
+	 * Buffer size of console or file output of generate command and pipelined processing.
+	 */
+	private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+	
+	/**
+	 * Output discarding everything appended.
+	 */
+	private static final Appendable NULL_OUT = new Appendable() {
+		@Override
+		public Appendable append(CharSequence csq) {
+			return this;
+		}
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) {
+			return this;
+		}
+		@Override
+		public Appendable append(char c) {
+			return this;
+		}
+	};
+	
 	private static String getHelp(JCommander jc) {
 		StringBuilder sb = new StringBuilder();
 		jc.usage(sb);
 		String nl = System.lineSeparator();
 		sb.append("  Example:" + nl
 				+ "    csvx -log=info validate input.csv schema.csvx" + nl
+				+ "    csvx -diag=sample validate input.csv schema.csvx" + nl
+				+ "    csvx -jfr=csvx.jfr -jfrThreshold=200 transform input.csv schema.csvx > output.ttl" + nl
 				+ "    csvx serialize input.csv schema.csvx" + nl
-				+ "    csvx -log=off transform input.csv schema.csvx > output.ttl");
+				+ "    csvx -log=off -rowThreads=8 serialize input.csv schema.csvx > output.ttl" + nl
+				+ "    csvx -log=off -parseThreads=4 validate input.csv schema.csvx" + nl
+				+ "    csvx -log=off -serializeThreads=4 serialize input.csv schema.csvx > output.ttl" + nl
+				+ "    csvx -log=off -serializeThreads=4 serialize -format=nt input.csv schema.csvx > output.nt" + nl
+				+ "    csvx -log=off serialize -format=jsonld input.csv schema.csvx > output.jsonld" + nl
+				+ "    csvx -log=off transform -pipeline input.csv schema.csvx > output.ttl" + nl
+				+ "    csvx -log=off transform input.csv schema.csvx > output.ttl" + nl
+				+ "    csvx -log=off batch -schema=schema.csvx -op=serialize -out=out \"data/*.csv\"" + nl
+				+ "    csvx -log=warn serve -schema=a.csvx -schema=b.csvx -port=8090" + nl
+				+ "    csvx -log=off profile -top=20 input.csv schema.csvx" + nl
+				+ "    csvx -log=off profile -layers -runs=5 input.csv schema.csvx" + nl
+				+ "    csvx -log=off generate -size=1g -seed=42 -out=big.csv schema.csvx");
 		return sb.toString();
 	}
 
@@ -47,6 +117,10 @@ public class CsvxCmd {
 		ValidateCmd vCmd = new ValidateCmd();
 		SerializeCmd sCmd = new SerializeCmd();
 		TransformCmd tCmd = new TransformCmd();
+		BatchCmd bCmd = new BatchCmd();
+		ServeCmd svCmd = new ServeCmd();
+		ProfileCmd pCmd = new ProfileCmd();
+		GenerateCmd gCmd = new GenerateCmd();
 		JCommander jc = new JCommander(cmd);
 		jc.setProgramName(programName);
 		jc.setCaseSensitiveOptions(false);
@@ -54,6 +128,10 @@ public class CsvxCmd {
 		jc.addCommand("validate", vCmd);
 		jc.addCommand("serialize", sCmd);
 		jc.addCommand("transform", tCmd);
+		jc.addCommand("batch", bCmd);
+		jc.addCommand("serve", svCmd);
+		jc.addCommand("profile", pCmd);
+		jc.addCommand("generate", gCmd);
 		
 		try {
 			jc.parse(args);
@@ -107,6 +185,38 @@ public class CsvxCmd {
 				sp = new SchemaProcessor();
 			}
 			
+			if(cmd.diagLevel != null) {
+				try {
+					Diagnostics.setLevel(Diagnostics.Level.valueOf(cmd.diagLevel.toUpperCase()));
+				} catch(IllegalArgumentException e) {
+					JCommander.getConsole().println("[Error] Unknown diagnostics level: " + cmd.diagLevel);
+					System.exit(1);
+				}
+			}
+			
+			Recording recording = null;
+			if(cmd.jfrFile != null) {
+				try {
+					recording = JfrEvents.startRecording(Paths.get(cmd.jfrFile), (cmd.jfrThreshold != null)? Duration.ofNanos(cmd.jfrThreshold * 1000) : null);
+				} catch(Exception | LinkageError e) {
+					JCommander.getConsole().println("[Error] Unable to start flight recording (requires Java 8u262 or later): " + e);
+					System.exit(1);
+				}
+			}
+			
+			sp.setRepeatingRowThreads(cmd.rowThreads);
+			sp.setParsingThreads(cmd.parseThreads);
+			sp.setSerializingThreads(cmd.serializeThreads);
+			
+			if(cmd.cacheDir != null) {
+				try {
+					sp.setSchemaCache(new SchemaCache(Paths.get(cmd.cacheDir)));
+				} catch(IOException e) {
+					JCommander.getConsole().println("[Error] Unable to use schema cache directory: " + e.getMessage());
+					System.exit(1);
+				}
+			}
+			
 			switch(jc.getParsedCommand()) {
 			case "validate":				
 				csvPath = vCmd.files.get(0);
@@ -115,10 +225,26 @@ public class CsvxCmd {
 				break;
 			case "serialize":			
 				csvPath = sCmd.files.get(0);
-				csvxPath = sCmd.files.get(1);									
+				csvxPath = sCmd.files.get(1);
+				if(!Arrays.asList("ttl", "nt", "nq", "jsonld", "ndjson").contains(sCmd.format)) {
+					JCommander.getConsole().println("[Error] Unsupported output format: " + sCmd.format);
+					break;
+				}
+				if(sCmd.pipeline) {
+					if(!sCmd.format.equals("ttl")) {
+						JCommander.getConsole().println("[Error] -pipeline only writes Turtle (ttl) output.");
+						break;
+					}
+					runPipelined(sp, csvPath, csvxPath, BatchProcessor.Operation.SERIALIZE);
+					break;
+				}
 				dSchema = sp.getDataSchema(csvPath, null, new String[] {csvxPath});
 				try {
-					JCommander.getConsole().println(dSchema.serializeTtl());
+					if(!sCmd.format.equals("ttl")) {
+						writeSerialization(sp, dSchema, sCmd);
+						break;
+					}
+					JCommander.getConsole().println(dSchema.serializeTtl(sp.getSerializingPool()));
 				} catch (Exception e) {
 					JCommander.getConsole().println("[Error] There's a problem serializing: ");
 					e.printStackTrace();
@@ -126,15 +252,41 @@ public class CsvxCmd {
 				break;
 			case "transform":
 				csvPath = tCmd.files.get(0);
-				csvxPath = tCmd.files.get(1);									
+				csvxPath = tCmd.files.get(1);
+				if(tCmd.pipeline) {
+					runPipelined(sp, csvPath, csvxPath, BatchProcessor.Operation.TRANSFORM);
+					break;
+				}
 				dSchema = sp.getDataSchema(csvPath, null, new String[] {csvxPath});			
-				SchemaProcessor.generateRdfFromTemplate(dSchema);
+				SchemaProcessor.generateRdfFromTemplate(dSchema, sp.getSerializingPool());
+				break;
+			case "batch":
+				runBatch(sp, bCmd);
+				break;
+			case "serve":
+				runServer(sp, svCmd);
+				break;
+			case "profile":
+				runProfile(sp, pCmd);
+				break;
+			case "generate":
+				runGenerate(sp, gCmd);
 				break;
 			default:			
 				assert(false) : "Must never enter here.";
 				break;
 			} // switch			
 			
+			if(cmd.diagLevel != null && Diagnostics.getLevel() != Diagnostics.Level.OFF && !"serve".equals(jc.getParsedCommand())) {
+				System.err.print(Diagnostics.getSummary());
+			}
+			
+			// serve keeps running, its recording is dumped on exit
+			if(recording != null && !"serve".equals(jc.getParsedCommand())) {
+				recording.stop();
+				recording.close();
+			}
+			
 		} else { // no command specified, check main options			
 			if(cmd.isHelpOpt == true) {
 				JCommander.getConsole().println(CsvxCmd.getHelp(jc));
@@ -146,6 +298,238 @@ public class CsvxCmd {
 			}
 		}
 	} // main
+	
+	/**
+	 * Run serve command. Schemas are loaded once and the server keeps running until the JVM is terminated.
+	 * @param sp
+	 * @param svCmd
+	 */
+	private static void runServer(SchemaProcessor sp, ServeCmd svCmd) {
+		for(String schemaPath : svCmd.schemaPaths) {
+			if(sp.loadSchema(schemaPath) == null) {
+				JCommander.getConsole().println("[Error] Unable to load schema: " + schemaPath);
+				return;
+			}
+		}
+		try {
+			CsvxServer server = new CsvxServer(sp, svCmd.port, svCmd.threads, (svCmd.csvRoot != null)? Paths.get(svCmd.csvRoot) : null);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+			server.start();
+			JCommander.getConsole().println("Serving " + sp.getSchemaIds().size() + " schema(s) at http://" 
+					+ server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+		} catch(IOException e) {
+			JCommander.getConsole().println("[Error] Unable to start server: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Run profile command, transforming a csv with output discarded and printing cost per schema entity.
+	 * @param sp
+	 * @param pCmd
+	 */
+	private static void runProfile(SchemaProcessor sp, ProfileCmd pCmd) {
+		boolean json = "json".equalsIgnoreCase(pCmd.format);
+		if(!json && !"table".equalsIgnoreCase(pCmd.format)) {
+			JCommander.getConsole().println("[Error] Unknown profile format: " + pCmd.format);
+			return;
+		}
+		if(pCmd.layers) {
+			runLayerOverhead(sp, pCmd, json);
+			return;
+		}
+		CostProfile profile = sp.getMetrics().startProfile();
+		long start = System.nanoTime();
+		try {
+			Schema dSchema = sp.getDataSchema(pCmd.files.get(0), null, new String[] {pCmd.files.get(1)});
+			if(dSchema == null) {
+				JCommander.getConsole().println("[Error] The csv doesn't match the schema, profile is of the failed trials.");
+			} else {
+				SchemaProcessor.writeRdfFromTemplate(dSchema, NULL_OUT);
+			}
+		} catch(Exception e) {
+			JCommander.getConsole().println("[Error] There's a problem transforming: " + e);
+		} finally {
+			sp.getMetrics().stopProfile();
+		}
+		long elapsed = System.nanoTime() - start;
+		try {
+			if(json) {
+				Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+				profile.writeJson(out, pCmd.top);
+				out.write(System.lineSeparator());
+				out.flush();
+			} else {
+				JCommander.getConsole().println(String.format(Locale.ROOT, "Processed %d rows in %.3f ms, %d table trial(s), %d rewind(s).", 
+						sp.getMetrics().getRowsProcessed(), elapsed / 1e6, sp.getMetrics().getTableTrialsAttempted(), sp.getMetrics().getRewinds()));
+				JCommander.getConsole().println(profile.toTable(pCmd.top));
+			}
+		} catch(IOException e) {
+			JCommander.getConsole().println("[Error] Unable to write profile: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Run profile command with -layers, printing overhead of each processing layer.
+	 * @param sp
+	 * @param pCmd
+	 * @param json
+	 */
+	private static void runLayerOverhead(SchemaProcessor sp, ProfileCmd pCmd, boolean json) {
+		Schema schema = sp.loadSchema(pCmd.files.get(1));
+		if(schema == null) {
+			JCommander.getConsole().println("[Error] Unable to load schema: " + pCmd.files.get(1));
+			return;
+		}
+		LayerOverhead overhead;
+		try {
+			overhead = LayerOverhead.measure(sp, pCmd.files.get(0), (String) schema.getProperty(SchemaProcessor.METAPROP_ID), pCmd.runs);
+		} catch(Exception e) {
+			JCommander.getConsole().println("[Error] There's a problem measuring: " + e);
+			return;
+		}
+		try {
+			if(json) {
+				Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+				overhead.writeJson(out);
+				out.write(System.lineSeparator());
+				out.flush();
+			} else {
+				JCommander.getConsole().println(overhead.toTable());
+			}
+		} catch(IOException e) {
+			JCommander.getConsole().println("[Error] Unable to write report: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Run generate command, writing synthetic csv conforming to a schema to a file or console.
+	 * @param sp
+	 * @param gCmd
+	 */
+	private static void runGenerate(SchemaProcessor sp, GenerateCmd gCmd) {
+		long size;
+		try {
+			size = CsvGenerator.parseSize(gCmd.size);
+		} catch(NumberFormatException e) {
+			JCommander.getConsole().println("[Error] Invalid size: " + gCmd.size);
+			return;
+		}
+		Schema schema = sp.loadSchema(gCmd.files.get(0));
+		if(schema == null) {
+			JCommander.getConsole().println("[Error] Unable to load schema: " + gCmd.files.get(0));
+			return;
+		}
+		String encoding = (String) schema.getProperty(SchemaProcessor.METAPROP_ENCODING);
+		Charset charset = (encoding != null)? Charset.forName(encoding) : StandardCharsets.UTF_8;
+		CsvGenerator gen = new CsvGenerator(schema, gCmd.seed);
+		try {
+			gen.setRepeatTimes(gCmd.repeat);
+			gen.setColRepeatTimes(gCmd.colRepeat);
+		} catch(IllegalArgumentException e) {
+			JCommander.getConsole().println("[Error] " + e.getMessage());
+			return;
+		}
+		long start = System.nanoTime();
+		long chars;
+		try(Writer out = new BufferedWriter((gCmd.outPath != null)? 
+				new OutputStreamWriter(Files.newOutputStream(Paths.get(gCmd.outPath)), charset) : new OutputStreamWriter(System.out, charset), OUTPUT_BUFFER_SIZE)) {
+			chars = gen.generate(out, size);
+		} catch(IOException e) {
+			JCommander.getConsole().println("[Error] Unable to write generated csv: " + e.getMessage());
+			return;
+		}
+		double sec = (System.nanoTime() - start) / 1e9;
+		System.err.println(String.format(Locale.ROOT, "Generated %d rows, %d chars in %.3f s (%.1f MB/s).", 
+				gen.getRowsGenerated(), chars, sec, chars / 1e6 / sec));
+	}
+	
+	/**
+	 * Write N-Triples, N-Quads, JSON-LD or newline-delimited JSON of a data schema to the console.
+	 * @param sp
+	 * @param dSchema
+	 * @param sCmd
+	 * @throws Exception
+	 */
+	private static void writeSerialization(SchemaProcessor sp, Schema dSchema, SerializeCmd sCmd) throws Exception {
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+		switch(sCmd.format) {
+		case "nt":
+			dSchema.writeNTriples(out, null, sp.getSerializingPool());
+			break;
+		case "nq":
+			dSchema.writeNTriples(out, (sCmd.graph != null)? sCmd.graph : dSchema.getGraphIri(), sp.getSerializingPool());
+			break;
+		case "jsonld":
+		case "ndjson":
+			dSchema.writeJsonLd(out, sCmd.format.equals("ndjson"), sp.getSerializingPool());
+			break;
+		default:
+			break;
+		}
+		out.flush();
+	}
+	
+	/**
+	 * Run serialize or transform command with -pipeline, writing the output to console as the data tables are matched.
+	 * @param sp
+	 * @param csvPath
+	 * @param csvxPath
+	 * @param op
+	 */
+	private static void runPipelined(SchemaProcessor sp, String csvPath, String csvxPath, BatchProcessor.Operation op) {
+		Schema schema = sp.loadSchema(csvxPath);
+		if(schema == null) {
+			JCommander.getConsole().println("[Error] Unable to load schema: " + csvxPath);
+			return;
+		}
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+		try {
+			Schema dSchema = new PipelinedProcessor(sp).process(csvPath, (String) schema.getProperty(SchemaProcessor.METAPROP_ID), op, out);
+			out.flush();
+			if(dSchema == null) JCommander.getConsole().println("[Error] The csv doesn't match the schema: " + csvPath);
+		} catch(Exception e) {
+			JCommander.getConsole().println("[Error] There's a problem processing: " + e);
+		}
+	}
+	
+	/**
+	 * Run batch command, printing output (when no output directory is given) to console and 
+	 * the result of each job to standard error.
+	 * @param sp
+	 * @param bCmd
+	 */
+	private static void runBatch(SchemaProcessor sp, BatchCmd bCmd) {
+		BatchProcessor.Operation op;
+		try {
+			op = BatchProcessor.Operation.valueOf(bCmd.op.toUpperCase());
+		} catch(IllegalArgumentException e) {
+			JCommander.getConsole().println("[Error] Unknown batch operation: " + bCmd.op);
+			return;
+		}
+		
+		List<BatchJob> jobs = new ArrayList<>();
+		List<BatchResult> results;
+		try(BatchProcessor bp = new BatchProcessor(sp, bCmd.threads)) {
+			if(bCmd.manifestPath != null) jobs.addAll(BatchProcessor.readManifest(bCmd.manifestPath, bCmd.schemaPath));
+			for(String file : bCmd.files) jobs.addAll(BatchProcessor.listJobs(file, bCmd.schemaPath));
+			if(jobs.isEmpty()) {
+				JCommander.getConsole().println("[Error] No csv to process.");
+				return;
+			}
+			results = bp.process(jobs, op, (bCmd.outDir != null)? Paths.get(bCmd.outDir) : null);
+		} catch(Exception e) {
+			JCommander.getConsole().println("[Error] There's a problem running batch: " + e);
+			return;
+		}
+		
+		int failed = 0;
+		for(BatchResult r : results) {
+			if(r.getOutput() != null) JCommander.getConsole().println(r.getOutput());
+			if(!r.isSuccess()) failed++;
+			System.err.println(r);
+		}
+		System.err.println("Processed " + results.size() + " csv(s), " + failed + " failed.");
+	}
 
 } // CsvxCmd class
 
@@ -163,6 +547,15 @@ class SerializeCmd {
 	@Parameter(description = "input csv and csvx path respectively.", arity = 2)
 	List<String> files = new ArrayList<>();		
 
+	@Parameter(names = { "-pipeline" }, description = "Read, tokenize, validate and write output in stages on their own threads, writing each table as soon as it's matched.")
+	boolean pipeline = false;
+
+	@Parameter(names = { "-format" }, description = "Output format: ttl (Turtle), nt (N-Triples), nq (N-Quads), jsonld (JSON-LD) or ndjson (newline-delimited JSON-LD nodes).")
+	String format = "ttl";
+
+	@Parameter(names = { "-graph" }, description = "Graph IRI of N-Quads statements, resolved against the base IRI of the schema. Default: the schema ID if it's an absolute IRI, otherwise the base IRI of the schema, or one minted from its ID without @base.")
+	String graph = null;
+
 }
 
 @Parameters(separators = "=", commandDescription = "Transform csv into rdf according to mapped template(s) in csvx.")
@@ -171,4 +564,90 @@ class TransformCmd {
 	@Parameter(description = "input csv and csvx path respectively.", arity = 2)
 	List<String> files = new ArrayList<>();
 
+	@Parameter(names = { "-pipeline" }, description = "Read, tokenize, validate and write output in stages on their own threads, writing each table as soon as it's matched.")
+	boolean pipeline = false;
+
 }	
+
+@Parameters(separators = "=", commandDescription = "Process many csv files concurrently, sharing loaded schemas.")
+class BatchCmd {
+
+	@Parameter(description = "input csv path(s) or glob pattern(s), e.g. \"data/*.csv\".")
+	List<String> files = new ArrayList<>();
+	
+	@Parameter(names = { "-schema" }, description = "csvx path for csv(s) without one specified in manifest.")
+	String schemaPath;
+	
+	@Parameter(names = { "-manifest" }, description = "Manifest file listing 'csv[,csvx[,csvId]]' per line.")
+	String manifestPath;
+	
+	@Parameter(names = { "-op" }, description = "Operation (validate, serialize, transform).")
+	String op = "validate";
+	
+	@Parameter(names = { "-threads" }, description = "Number of worker threads, 0 for virtual threads where the JDK supports them.")
+	int threads = 0;
+	
+	@Parameter(names = { "-out" }, description = "Output directory for serialize/transform, one .ttl file per csv.")
+	String outDir;
+
+}
+
+@Parameters(separators = "=", commandDescription = "Transform csv with output discarded and report cost per schema entity, ranked by total time, or with -layers, overhead of each processing layer.")
+class ProfileCmd {
+
+	@Parameter(description = "input csv and csvx path respectively.", arity = 2)
+	List<String> files = new ArrayList<>();
+	
+	@Parameter(names = { "-format" }, description = "Report format (table, json).")
+	String format = "table";
+	
+	@Parameter(names = { "-top" }, description = "Number of most costly entries reported, 0 for all.")
+	int top = 0;
+	
+	@Parameter(names = { "-layers" }, description = "Report overhead of each processing layer over raw tokenization instead.")
+	boolean layers = false;
+	
+	@Parameter(names = { "-runs" }, description = "Number of runs of each stage with -layers, the fastest is reported.")
+	int runs = 5;
+
+}
+
+@Parameters(separators = "=", commandDescription = "Generate synthetic csv conforming to a csvx schema, for scale testing.")
+class GenerateCmd {
+
+	@Parameter(description = "csvx path.", arity = 1)
+	List<String> files = new ArrayList<>();
+	
+	@Parameter(names = { "-size" }, description = "Minimum size in characters with optional unit (k, m, g, t), 0 to generate each table once.")
+	String size = "0";
+	
+	@Parameter(names = { "-seed" }, description = "Seed of random values, the same seed generates the same csv.")
+	long seed = 0;
+	
+	@Parameter(names = { "-repeat" }, description = "Number of times an infinite repeating row is generated per table.")
+	int repeat = CsvGenerator.DEFAULT_REPEAT_TIMES;
+	
+	@Parameter(names = { "-colRepeat" }, description = "Number of times an infinite repeating column is generated per row.")
+	int colRepeat = CsvGenerator.DEFAULT_COL_REPEAT_TIMES;
+	
+	@Parameter(names = { "-out" }, description = "Output file, console if not specified.")
+	String outPath;
+
+}
+
+@Parameters(separators = "=", commandDescription = "Serve validate/serialize/transform requests on localhost HTTP, keeping schemas loaded.")
+class ServeCmd {
+
+	@Parameter(names = { "-schema" }, description = "csvx path to load, can be repeated.")
+	List<String> schemaPaths = new ArrayList<>();
+	
+	@Parameter(names = { "-port" }, description = "Port on localhost.")
+	int port = CsvxServer.DEFAULT_PORT;
+	
+	@Parameter(names = { "-threads" }, description = "Number of threads handling requests.")
+	int threads = Runtime.getRuntime().availableProcessors();
+	
+	@Parameter(names = { "-csvRoot" }, description = "Directory of csv files requests may give by 'csv' parameter, relative to it. Without it, csv is taken from request body only.")
+	String csvRoot;
+
+}
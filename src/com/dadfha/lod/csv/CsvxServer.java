@@ -0,0 +1,356 @@
+package com.dadfha.lod.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A long-running CSV-X processing service on a localhost HTTP endpoint.
+ *
+ * Schemas are loaded once at start-up and stay parsed in the processor, so a request pays neither JVM start-up
+ * nor schema loading. Endpoints are:
+ *
+ * - POST /validate, /serialize, /transform - process a CSV. The CSV is either the request body or, when the server
+ *   has a CSV root directory, a file under it given by 'csv' query parameter relative to the root. Optional 'schema'
+ *   query parameter selects a loaded schema by its ID and 'csvId' parameter gives the CSV ID for matching target
+ *   CSV of loaded schemas. Output of serialize/transform is streamed back (chunked) as it's serialized, once
+ *   the whole CSV has been matched against the schema.
+ * - GET /schemas - list IDs of loaded schemas.
+ *
+ * Status 200 means the CSV is valid against the schema, 422 means it's not, 400 means a bad request, 405 means
+ * a wrong method and 403 means a request not from the local host. The server only binds to the loopback address
+ * and rejects requests whose Host or Origin header isn't a loopback one, so that a web page in a browser can't
+ * reach it, e.g. by DNS rebinding. Processing metrics of the processor are registered through JMX while
+ * the server is running, see ProcessingMetricsMXBean.
+ *
+ * @author Wirawit
+ */
+@SuppressWarnings("restriction")
+public class CsvxServer {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	/**
+	 * Default port.
+	 */
+	public static final int DEFAULT_PORT = 8090;
+
+	/**
+	 * Content type of RDF Turtle output.
+	 */
+	public static final String TURTLE_CONTENT_TYPE = "text/turtle; charset=utf-8";
+
+	/**
+	 * The processor shared by all requests.
+	 */
+	private final SchemaProcessor sp;
+
+	/**
+	 * The HTTP server.
+	 */
+	private final HttpServer server;
+
+	/**
+	 * Executor handling requests.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Real path of the directory CSV files given by 'csv' parameter must be under, or null if the parameter isn't allowed.
+	 */
+	private final Path csvRoot;
+
+	/**
+	 * JMX name of the processing metrics, or null if it's not registered.
+	 */
+	private ObjectName metricsName;
+
+	/**
+	 * Constructor of a server taking CSV from request body only. The server is not started until start() is called.
+	 * @param sp the processor with schemas loaded.
+	 * @param port port on the loopback address, 0 for any free port.
+	 * @param threads number of threads handling requests.
+	 * @throws IOException if the port can't be bound.
+	 */
+	public CsvxServer(SchemaProcessor sp, int port, int threads) throws IOException {
+		this(sp, port, threads, null);
+	}
+
+	/**
+	 * Constructor. The server is not started until start() is called.
+	 * @param sp the processor with schemas loaded.
+	 * @param port port on the loopback address, 0 for any free port.
+	 * @param threads number of threads handling requests.
+	 * @param csvRoot directory of CSV files that can be given by 'csv' parameter, or null to take CSV from request body only.
+	 * @throws IOException if the port can't be bound or the CSV root directory doesn't exist.
+	 */
+	public CsvxServer(SchemaProcessor sp, int port, int threads, Path csvRoot) throws IOException {
+		if(sp == null) throw new IllegalArgumentException("sp must not be null.");
+		if(csvRoot != null && !Files.isDirectory(csvRoot)) throw new IOException("No such csv root directory: " + csvRoot);
+		this.sp = sp;
+		this.csvRoot = (csvRoot != null)? csvRoot.toRealPath() : null;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		server.setExecutor(executor);
+		for(BatchProcessor.Operation op : BatchProcessor.Operation.values()) {
+			server.createContext("/" + op.name().toLowerCase(), exchange -> handle(exchange, () -> process(exchange, op)));
+		}
+		server.createContext("/schemas", exchange -> handle(exchange, () -> listSchemas(exchange)));
+	}
+
+	/**
+	 * Start serving requests.
+	 */
+	public void start() {
+		server.start();
+		// the metrics are for monitoring, so their times are measured as well
+		sp.getMetrics().setTimingEnabled(true);
+		try {
+			metricsName = sp.getMetrics().register("csvx-serve-" + server.getAddress().getPort());
+			logger.info("Processing metrics are registered as {}", metricsName);
+		} catch(JMException e) {
+			logger.warn("Unable to register processing metrics through JMX: {}", e.toString());
+		}
+		logger.info("CSV-X server is listening on {}", server.getAddress());
+	}
+
+	/**
+	 * Stop the server, waiting for requests in progress up to a delay.
+	 * @param delaySeconds
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		if(metricsName != null) {
+			try {
+				ProcessingMetrics.unregister(metricsName);
+			} catch(JMException e) {
+				logger.warn("Unable to unregister processing metrics {}: {}", metricsName, e.toString());
+			}
+			metricsName = null;
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Get the address the server is bound to.
+	 * @return InetSocketAddress
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * A request handler which may throw.
+	 */
+	private interface Handler {
+		void handle() throws Exception;
+	}
+
+	/**
+	 * Run a handler, answering 500 for unexpected failure, and close the exchange.
+	 * @param exchange
+	 * @param handler
+	 */
+	private void handle(HttpExchange exchange, Handler handler) {
+		try {
+			if(!isLocalRequest(exchange)) {
+				sendText(exchange, 403, "Only requests to and from the local host are served.");
+				return;
+			}
+			handler.handle();
+		} catch(Exception e) {
+			logger.error("There's an exception in handling request {}:", exchange.getRequestURI(), e);
+			try {
+				// the headers may have been sent already while streaming
+				if(exchange.getResponseCode() == -1) sendText(exchange, 500, "Internal error: " + e);
+			} catch(IOException ignored) {
+				// the client has gone
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Process a CSV.
+	 * @param exchange
+	 * @param op
+	 * @throws Exception
+	 */
+	private void process(HttpExchange exchange, BatchProcessor.Operation op) throws Exception {
+		if(!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+			sendText(exchange, 405, "Use POST.");
+			return;
+		}
+		Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+		String schemaId = params.get("schema");
+		if(schemaId != null && sp.getSchema(schemaId) == null) {
+			sendText(exchange, 400, "Unknown schema ID: " + schemaId);
+			return;
+		}
+
+		// the CSV is either a file under the CSV root or spooled from request body
+		String csvPath = params.get("csv");
+		Path tmp = null;
+		try {
+			if(csvPath == null) {
+				tmp = Files.createTempFile("csvx-", ".csv");
+				try(InputStream in = exchange.getRequestBody()) {
+					Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+				}
+				csvPath = tmp.toString();
+			} else {
+				Path csv = resolveCsv(csvPath);
+				if(csv == null) {
+					sendText(exchange, 400, (csvRoot == null)? "The csv parameter isn't allowed, send the csv as request body." : "No such csv file under the csv root.");
+					return;
+				}
+				csvPath = csv.toString();
+			}
+
+			Schema dSchema = (schemaId != null)? sp.getDataSchemaWithSchema(csvPath, schemaId) : sp.getDataSchema(csvPath, params.get("csvId"), null);
+			if(dSchema == null) {
+				sendText(exchange, 422, "The csv doesn't match the schema.");
+				return;
+			}
+			if(op == BatchProcessor.Operation.VALIDATE) {
+				sendText(exchange, 200, "Valid against " + dSchema.getProperty(SchemaProcessor.METAPROP_ID));
+				return;
+			}
+
+			// the data schema is complete, stream its output back using chunked encoding as it is serialized
+			exchange.getResponseHeaders().set("Content-Type", TURTLE_CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, 0);
+			try(Writer w = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+				BatchProcessor.write(dSchema, op, w);
+			}
+		} finally {
+			if(tmp != null) Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Resolve a CSV path given by 'csv' parameter against the CSV root.
+	 * @param csvPath
+	 * @return Path real path of the CSV file, or null if there's no CSV root or no such regular file under it, 
+	 * following symbolic links.
+	 */
+	private Path resolveCsv(String csvPath) {
+		if(csvRoot == null) return null;
+		try {
+			Path csv = csvRoot.resolve(csvPath).normalize();
+			if(!csv.startsWith(csvRoot) || !Files.isRegularFile(csv)) return null;
+			csv = csv.toRealPath();
+			return csv.startsWith(csvRoot)? csv : null;
+		} catch(InvalidPathException | IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Check if a request is sent to the server by its local host name, and from a local origin if it has one, 
+	 * rather than from a web page of another site.
+	 * @param exchange
+	 * @return boolean
+	 */
+	private static boolean isLocalRequest(HttpExchange exchange) {
+		String host = exchange.getRequestHeaders().getFirst("Host");
+		if(host == null || !isLoopbackHost(host)) return false;
+		String origin = exchange.getRequestHeaders().getFirst("Origin");
+		if(origin == null) return true;
+		int scheme = origin.indexOf("://");
+		return scheme != -1 && isLoopbackHost(origin.substring(scheme + 3));
+	}
+
+	/**
+	 * Check if host of a Host header or origin, with optional port, is a loopback one.
+	 * @param host
+	 * @return boolean
+	 */
+	private static boolean isLoopbackHost(String host) {
+		String name = host.toLowerCase(Locale.ROOT);
+		if(name.startsWith("[")) {
+			int end = name.indexOf(']');
+			name = (end == -1)? name : name.substring(0, end + 1);
+		} else {
+			int colon = name.indexOf(':');
+			if(colon != -1) name = name.substring(0, colon);
+		}
+		return name.equals("localhost") || name.equals("[::1]") || name.matches("127(\\.\\d{1,3}){3}");
+	}
+
+	/**
+	 * List IDs of loaded schemas, one per line.
+	 * @param exchange
+	 * @throws IOException
+	 */
+	private void listSchemas(HttpExchange exchange) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for(String id : sp.getSchemaIds()) sb.append(id).append('\n');
+		sendText(exchange, 200, sb.toString());
+	}
+
+	/**
+	 * Send a plain text response.
+	 * @param exchange
+	 * @param status
+	 * @param text
+	 * @throws IOException
+	 */
+	private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] body = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		exchange.getResponseBody().write(body);
+	}
+
+	/**
+	 * Parse URL query string.
+	 * @param rawQuery
+	 * @return Map between parameter name and its (last) value.
+	 * @throws UnsupportedEncodingException
+	 */
+	private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+		Map<String, String> params = new HashMap<String, String>();
+		if(rawQuery == null) return params;
+		for(String pair : rawQuery.split("&")) {
+			if(pair.isEmpty()) continue;
+			int eq = pair.indexOf('=');
+			String name = URLDecoder.decode((eq < 0)? pair : pair.substring(0, eq), "UTF-8");
+			String value = (eq < 0)? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+			params.put(name, value);
+		}
+		return params;
+	}
+
+}
@@ -0,0 +1,279 @@
+package com.dadfha.lod.csv;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide diagnostics of CSV processing, updated from the hot path without any string formatting.
+ *
+ * Rationale:
+ * Matching a CSV against schema tables is trial and error by nature, a mismatch is the normal outcome of most
+ * trials rather than an error. Logging each of them, even at a disabled level, still costs varargs, boxing,
+ * and toString() of schema entities on every processed cell. Instead, the hot path records an event:
+ *
+ * - COUNTERS level (default) only counts events per type.
+ * - SAMPLE level also captures every n-th event into a ring buffer, keeping references to the schema entity
+ *   and value involved so that they're formatted only when the samples are read.
+ * - LOG level also emits the full log lines as before, subject to the logger's own level.
+ *
+ * Like loggers, diagnostics are shared by all processors in the JVM.
+ *
+ * @author Wirawit
+ */
+public final class Diagnostics {
+
+	/**
+	 * Diagnostics level, each level includes the ones before it.
+	 */
+	public enum Level {
+		/** Record nothing. */
+		OFF,
+		/** Count events. */
+		COUNTERS,
+		/** Count events and capture samples of them. */
+		SAMPLE,
+		/** Count events, capture samples, and emit full log lines. */
+		LOG
+	}
+
+	/**
+	 * Type of diagnostic event.
+	 */
+	public enum Event {
+		/** A CSV cell has no schema cell definition, or a schema cell has no CSV cell. */
+		DIMENSION_MISMATCH,
+		/** A value is in the ignore list of its schema table so its validation is skipped. */
+		VALUE_IGNORED,
+		/** A value is found where an Empty Cell is expected. */
+		EMPTY_CELL_MISMATCH,
+		/** No value is found where a non-empty cell is expected. */
+		VALUE_MISSING,
+		/** A value is invalid for its declared datatype. */
+		DATATYPE_MISMATCH,
+		/** A value doesn't match its '@regex'. */
+		REGEX_MISMATCH,
+		/** A trial of schema table on the CSV from a milestone row failed. */
+		TABLE_TRIAL_FAILED,
+		/** A trial of schema table on the CSV from a milestone row succeeded. */
+		TABLE_TRIAL_MATCHED,
+		/** No schema table of a schema matches the CSV from a milestone row. */
+		CSV_UNMATCHED
+	}
+
+	/**
+	 * A captured event. Schema entity and value are kept by reference and only formatted by toString().
+	 */
+	public static final class Sample {
+
+		private final Event event;
+		private final SchemaEntity entity;
+		private final int row;
+		private final int col;
+		private final String value;
+		private final long timeMillis;
+
+		private Sample(Event event, SchemaEntity entity, int row, int col, String value) {
+			this.event = event;
+			this.entity = entity;
+			this.row = row;
+			this.col = col;
+			this.value = value;
+			timeMillis = System.currentTimeMillis();
+		}
+
+		public Event getEvent() {
+			return event;
+		}
+
+		/**
+		 * @return the schema entity involved, or null.
+		 */
+		public SchemaEntity getEntity() {
+			return entity;
+		}
+
+		/**
+		 * @return row of the event, schema row for validation events or CSV row otherwise. -1 if not applicable.
+		 */
+		public int getRow() {
+			return row;
+		}
+
+		/**
+		 * @return column of the event, schema column for validation events or CSV column otherwise. -1 if not applicable.
+		 */
+		public int getCol() {
+			return col;
+		}
+
+		/**
+		 * @return the value involved, or null.
+		 */
+		public String getValue() {
+			return value;
+		}
+
+		public long getTimeMillis() {
+			return timeMillis;
+		}
+
+		@Override
+		public String toString() {
+			return event + " at [" + row + "," + col + "] " + ((entity != null)? entity.getRefEx() : "") + ((value != null)? " value '" + value + "'" : "");
+		}
+	}
+
+	/**
+	 * Default number of samples kept.
+	 */
+	public static final int DEFAULT_SAMPLE_CAPACITY = 256;
+
+	/**
+	 * Default interval of sampling, i.e. one in every n events is captured.
+	 */
+	public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+	private static volatile Level level = Level.COUNTERS;
+
+	private static volatile int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+	private static final LongAdder[] counters = new LongAdder[Event.values().length];
+
+	/**
+	 * Ring buffer of samples.
+	 */
+	private static volatile AtomicReferenceArray<Sample> samples = new AtomicReferenceArray<Sample>(DEFAULT_SAMPLE_CAPACITY);
+
+	/**
+	 * Number of events seen at SAMPLE level, used both for sampling and as ring buffer cursor.
+	 */
+	private static final AtomicLong sampleTicks = new AtomicLong();
+
+	/**
+	 * Number of samples captured.
+	 */
+	private static final AtomicLong captured = new AtomicLong();
+
+	static {
+		for(int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+	}
+
+	private Diagnostics() {}
+
+	public static Level getLevel() {
+		return level;
+	}
+
+	public static void setLevel(Level level) {
+		if(level == null) throw new IllegalArgumentException("level must not be null.");
+		Diagnostics.level = level;
+	}
+
+	/**
+	 * Set sampling interval and number of samples kept. Captured samples are discarded.
+	 * @param interval one in every interval events is captured, 1 to capture every event.
+	 * @param capacity number of most recent samples kept.
+	 */
+	public static synchronized void setSampling(int interval, int capacity) {
+		if(interval < 1 || capacity < 1) throw new IllegalArgumentException("interval and capacity must be positive.");
+		sampleInterval = interval;
+		samples = new AtomicReferenceArray<Sample>(capacity);
+		captured.set(0);
+	}
+
+	/**
+	 * Check whether full log lines should be emitted. The hot path must guard its log statements with this.
+	 * @return boolean
+	 */
+	public static boolean isLogEnabled() {
+		return level == Level.LOG;
+	}
+
+	/**
+	 * Record an event.
+	 * @param event
+	 * @param entity schema entity involved, can be null.
+	 * @param row row of the event or -1.
+	 * @param col column of the event or -1.
+	 * @param value value involved, can be null.
+	 */
+	public static void record(Event event, SchemaEntity entity, int row, int col, String value) {
+		Level l = level;
+		if(l == Level.OFF) return;
+		counters[event.ordinal()].increment();
+		if(l.compareTo(Level.SAMPLE) >= 0 && sampleTicks.getAndIncrement() % sampleInterval == 0) {
+			AtomicReferenceArray<Sample> ring = samples;
+			ring.set((int) (captured.getAndIncrement() % ring.length()), new Sample(event, entity, row, col, value));
+		}
+	}
+
+	/**
+	 * Get number of events of a type recorded since the last reset.
+	 * @param event
+	 * @return long
+	 */
+	public static long getCount(Event event) {
+		return counters[event.ordinal()].sum();
+	}
+
+	/**
+	 * Get number of events recorded since the last reset for every event type.
+	 * @return Map<Event, Long>
+	 */
+	public static Map<Event, Long> getCounts() {
+		Map<Event, Long> counts = new EnumMap<Event, Long>(Event.class);
+		for(Event e : Event.values()) counts.put(e, getCount(e));
+		return counts;
+	}
+
+	/**
+	 * Get captured samples, oldest first.
+	 * @return List<Sample>
+	 */
+	public static List<Sample> getSamples() {
+		AtomicReferenceArray<Sample> ring = samples;
+		long n = captured.get();
+		int size = (int) Math.min(n, ring.length());
+		List<Sample> list = new ArrayList<Sample>(size);
+		for(long i = n - size; i < n; i++) {
+			Sample s = ring.get((int) (i % ring.length()));
+			if(s != null) list.add(s);
+		}
+		return list;
+	}
+
+	/**
+	 * Reset all counters and discard captured samples.
+	 */
+	public static synchronized void reset() {
+		for(LongAdder c : counters) c.reset();
+		samples = new AtomicReferenceArray<Sample>(samples.length());
+		sampleTicks.set(0);
+		captured.set(0);
+	}
+
+	/**
+	 * Get a human-readable summary of non-zero counters followed by captured samples.
+	 * @return String
+	 */
+	public static String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		String nl = System.lineSeparator();
+		sb.append("Diagnostics (level ").append(level).append("):").append(nl);
+		for(Map.Entry<Event, Long> e : getCounts().entrySet()) {
+			if(e.getValue() > 0) sb.append("  ").append(e.getKey()).append(": ").append(e.getValue()).append(nl);
+		}
+		List<Sample> list = getSamples();
+		if(!list.isEmpty()) {
+			sb.append("Samples (1 in ").append(sampleInterval).append("):").append(nl);
+			for(Sample s : list) sb.append("  ").append(s).append(nl);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.dadfha.lod.csv;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Read-only lookup from non-negative int key to value, without boxing the key.
+ *
+ * Keys are indexed directly into an array when they are dense enough (or few enough) to fit it,
+ * otherwise they fall back to binary search over sorted keys. It's built once from a frozen schema collection.
+ *
+ * @author Wirawit
+ *
+ * @param <V> value type.
+ */
+final class IntIndex<V> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Maximum array length always indexed densely regardless of how many keys are used.
+	 */
+	static final int DENSE_MAX_LENGTH = 1024;
+
+	/**
+	 * Minimum ratio of used keys over array length to index densely beyond DENSE_MAX_LENGTH, i.e. 1/4.
+	 */
+	static final int DENSE_MIN_FILL_SHIFT = 2;
+
+	/**
+	 * Values indexed by key for dense index, or by position of key in keys for sparse one.
+	 */
+	private final Object[] values;
+
+	/**
+	 * Sorted keys for sparse index, or null for dense one.
+	 */
+	private final int[] keys;
+
+	private IntIndex(Object[] values, int[] keys) {
+		this.values = values;
+		this.keys = keys;
+	}
+
+	/**
+	 * Check whether keys from 0 to length - 1 with a number of keys in use should be indexed densely.
+	 * @param length
+	 * @param used
+	 * @return boolean
+	 */
+	static boolean isDense(long length, long used) {
+		return length <= DENSE_MAX_LENGTH || (used << DENSE_MIN_FILL_SHIFT) >= length;
+	}
+
+	/**
+	 * Create dense index over an array indexed by key. The array is used as is, not copied.
+	 * @param values
+	 * @return IntIndex
+	 */
+	static <V> IntIndex<V> dense(V[] values) {
+		return new IntIndex<V>(values, null);
+	}
+
+	/**
+	 * Create index of a map. Negative keys are ignored.
+	 * @param map
+	 * @return IntIndex
+	 */
+	static <V> IntIndex<V> of(Map<Integer, V> map) {
+		int max = -1, n = 0;
+		for(Integer k : map.keySet()) {
+			if(k < 0) continue;
+			if(k > max) max = k;
+			n++;
+		}
+		if(isDense(max + 1L, n)) {
+			Object[] values = new Object[max + 1];
+			for(Map.Entry<Integer, V> e : map.entrySet()) {
+				if(e.getKey() >= 0) values[e.getKey()] = e.getValue();
+			}
+			return new IntIndex<V>(values, null);
+		}
+		int[] keys = new int[n];
+		int i = 0;
+		for(Integer k : map.keySet()) {
+			if(k >= 0) keys[i++] = k;
+		}
+		Arrays.sort(keys);
+		Object[] values = new Object[n];
+		for(i = 0; i < n; i++) values[i] = map.get(keys[i]);
+		return new IntIndex<V>(values, keys);
+	}
+
+	/**
+	 * Get value of a key.
+	 * @param key
+	 * @return value or null if there's none for the key.
+	 */
+	@SuppressWarnings("unchecked")
+	V get(int key) {
+		if(keys == null) return (key >= 0 && key < values.length)? (V) values[key] : null;
+		int i = Arrays.binarySearch(keys, key);
+		return (i >= 0)? (V) values[i] : null;
+	}
+
+	/**
+	 * Check whether the index is dense, i.e. every key from 0 to its length - 1 is directly resolved.
+	 * @return boolean
+	 */
+	boolean isDense() {
+		return keys == null;
+	}
+
+}
@@ -0,0 +1,193 @@
+package com.dadfha.lod.csv;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of CSV processing, showing which schema constructs are slow on which CSV files.
+ *
+ * Events are only created when enabled, either by setEnabled(), '-Dcsvx.jfr=true', or csvx '-jfr' option,
+ * otherwise an instrumented call costs a single volatile read. Once enabled, they're recorded by any running
+ * recording, e.g. one started with '-XX:StartFlightRecording', subject to its settings. Validation events
+ * are only committed when a call takes longer than the threshold, 1 ms by default.
+ *
+ * Flight Recorder requires Java 8u262 or later.
+ *
+ * @author Wirawit
+ */
+public final class JfrEvents {
+
+	/**
+	 * Category of all events.
+	 */
+	public static final String CATEGORY = "CSV-X";
+
+	private static volatile boolean enabled = Boolean.getBoolean("csvx.jfr");
+
+	private JfrEvents() {}
+
+	@Name("com.dadfha.lod.csv.TableTrial")
+	@Label("Schema Table Trial")
+	@Description("Trial of matching a schema table with CSV from a milestone row")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class TableTrial extends Event {
+		@Label("Schema Table")
+		String schemaTable;
+		@Label("CSV")
+		String csv;
+		@Label("Start Row")
+		int startRow;
+		@Label("Matched")
+		boolean matched;
+		@Label("Rows Consumed")
+		int rowsConsumed;
+	}
+
+	@Name("com.dadfha.lod.csv.Validation")
+	@Label("Slow Cell Validation")
+	@Description("Validation of a CSV cell against its schema cell taking longer than the threshold")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	@Threshold("1 ms")
+	public static class Validation extends Event {
+		@Label("Schema Table")
+		String schemaTable;
+		@Label("Schema Row")
+		int row;
+		@Label("Schema Column")
+		int col;
+		@Label("Valid")
+		boolean valid;
+	}
+
+	@Name("com.dadfha.lod.csv.FunctionCall")
+	@Label("Schema Function Call")
+	@Description("Execution of a schema function script")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class FunctionCall extends Event {
+		@Label("Schema")
+		String schema;
+		@Label("Function")
+		String function;
+	}
+
+	@Name("com.dadfha.lod.csv.TemplateApplication")
+	@Label("RDF Template Application")
+	@Description("Application of RDF template mapped to a schema entity")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public static class TemplateApplication extends Event {
+		@Label("Schema Entity")
+		String entity;
+		@Label("Output Length")
+		int outputLength;
+	}
+
+	/**
+	 * Check whether events are created.
+	 * @return boolean
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		JfrEvents.enabled = enabled;
+	}
+
+	/**
+	 * Start a recording of all CSV-X events, dumped to a file when it's stopped or the JVM exits.
+	 * Events are enabled as well.
+	 * @param destination file to dump the recording to.
+	 * @param validationThreshold minimum duration of validation calls recorded, or null for default.
+	 * @return Recording the started recording.
+	 * @throws Exception if the recording can't be started.
+	 */
+	public static Recording startRecording(Path destination, Duration validationThreshold) throws Exception {
+		Recording r = new Recording();
+		r.setName("csvx");
+		r.enable(TableTrial.class);
+		if(validationThreshold != null) r.enable(Validation.class).withThreshold(validationThreshold);
+		else r.enable(Validation.class);
+		r.enable(FunctionCall.class);
+		r.enable(TemplateApplication.class);
+		r.setDestination(destination);
+		r.setDumpOnExit(true);
+		r.start();
+		setEnabled(true);
+		return r;
+	}
+
+	static TableTrial beginTableTrial() {
+		TableTrial e = new TableTrial();
+		e.begin();
+		return e;
+	}
+
+	static void commitTableTrial(TableTrial e, SchemaTable sTable, String csv, int startRow, boolean matched, int rowsConsumed) {
+		e.end();
+		if(!e.shouldCommit()) return;
+		e.schemaTable = sTable.getRefEx();
+		e.csv = csv;
+		e.startRow = startRow;
+		e.matched = matched;
+		e.rowsConsumed = rowsConsumed;
+		e.commit();
+	}
+
+	static Validation beginValidation() {
+		Validation e = new Validation();
+		e.begin();
+		return e;
+	}
+
+	static void commitValidation(Validation e, SchemaTable sTable, int row, int col, boolean valid) {
+		e.end();
+		if(!e.shouldCommit()) return;
+		e.schemaTable = sTable.getRefEx();
+		e.row = row;
+		e.col = col;
+		e.valid = valid;
+		e.commit();
+	}
+
+	static FunctionCall beginFunctionCall() {
+		FunctionCall e = new FunctionCall();
+		e.begin();
+		return e;
+	}
+
+	static void commitFunctionCall(FunctionCall e, Schema s, String function) {
+		e.end();
+		if(!e.shouldCommit()) return;
+		e.schema = String.valueOf(s.getProperty("@id"));
+		e.function = function;
+		e.commit();
+	}
+
+	static TemplateApplication beginTemplateApplication() {
+		TemplateApplication e = new TemplateApplication();
+		e.begin();
+		return e;
+	}
+
+	static void commitTemplateApplication(TemplateApplication e, SchemaEntity se, String output) {
+		e.end();
+		if(!e.shouldCommit()) return;
+		e.entity = se.getRefEx();
+		e.outputLength = (output != null)? output.length() : 0;
+		e.commit();
+	}
+
+}
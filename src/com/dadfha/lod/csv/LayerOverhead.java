@@ -0,0 +1,240 @@
+package com.dadfha.lod.csv;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.univocity.parsers.common.AbstractParser;
+
+/**
+ * Overhead of each layer of CSV processing over raw tokenization, to see how far the schema engine is from
+ * the tokenizer speed and which layer takes the gap.
+ *
+ * The same CSV is processed in cumulative stages, each run several times keeping the fastest:
+ * 1. tokenize only, with the univocity parser (or SsvParser) and settings the processor uses for the schema.
+ * 2. read every row through a row stream cursor, as the processor does.
+ * 3. match the CSV with the schema probing tables only, i.e. table matching and validation without data object.
+ * 4. getDataSchemaWithSchema(), i.e. all of the above plus materializing matched tables.
+ * Layers are the differences between stages, split further by processing metrics timing: validation time of
+ * stage 3 is the validation layer, its increase in stage 4 is re-validation while materializing, and property
+ * processing time is the variable registration layer. Timing itself costs two System.nanoTime() calls per
+ * validation and per data row or cell, which is counted in those layers.
+ *
+ * @author Wirawit
+ */
+public class LayerOverhead {
+
+	/**
+	 * Layer of CSV processing.
+	 */
+	public enum Layer {
+		/** Tokenization by the CSV parser. */
+		TOKENIZE("tokenize"),
+		/** Buffering of rows for rewinding to a milestone row. */
+		ROW_STREAM("row stream"),
+		/** Table trials and dimension checks, excluding validation. */
+		TABLE_MATCHING("table matching"),
+		/** Datatype and regex validation of cells in table trials. */
+		VALIDATION("validation"),
+		/** Validation of cells again while materializing a matched table. */
+		REVALIDATION("re-validation"),
+		/** Creation of data table, row and cell objects. */
+		DATA_OBJECTS("data objects"),
+		/** Processing of context {var} in properties of data rows and cells and registration of variables. */
+		VARIABLE_REGISTRATION("variable registration");
+
+		private final String label;
+
+		Layer(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	private final Map<Layer, Long> nanos = new EnumMap<Layer, Long>(Layer.class);
+
+	private long rows;
+
+	private long totalNanos;
+
+	private int runs;
+
+	private LayerOverhead() {}
+
+	/**
+	 * Measure overhead of each layer processing a CSV with a loaded schema. Timing of the processor's metrics
+	 * is enabled during the measurement and the metrics are reset by each run.
+	 * @param sp
+	 * @param csvPath
+	 * @param schemaId ID of a loaded schema.
+	 * @param runs number of runs of each stage, the fastest is kept. One more run of each stage warms up.
+	 * @return LayerOverhead
+	 * @throws Exception if the CSV doesn't match the schema or there's a problem processing it.
+	 */
+	public static LayerOverhead measure(SchemaProcessor sp, String csvPath, String schemaId, int runs) throws Exception {
+		if(runs < 1) throw new IllegalArgumentException("runs must be positive.");
+		Schema schema = sp.getSchema(schemaId);
+		if(schema == null) throw new IllegalArgumentException("Unknown schema ID: " + schemaId);
+		ProcessingMetrics metrics = sp.getMetrics();
+		boolean timing = metrics.isTimingEnabled();
+		metrics.setTimingEnabled(true);
+
+		LayerOverhead o = new LayerOverhead();
+		o.runs = runs;
+		long tokenize = Long.MAX_VALUE, stream = Long.MAX_VALUE, probe = Long.MAX_VALUE, full = Long.MAX_VALUE;
+		long probeValidation = 0, fullValidation = 0, varRegistration = 0;
+		try {
+			for(int i = 0; i <= runs; i++) {
+				long start = System.nanoTime();
+				o.rows = tokenize(sp, schema, csvPath);
+				if(i > 0) tokenize = Math.min(tokenize, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				readRows(sp, schema, csvPath);
+				if(i > 0) stream = Math.min(stream, System.nanoTime() - start);
+
+				metrics.reset();
+				start = System.nanoTime();
+				if(!sp.probeWithSchema(csvPath, schemaId)) throw new IllegalStateException("The csv doesn't match the schema: " + csvPath);
+				long elapsed = System.nanoTime() - start;
+				if(i > 0 && elapsed < probe) {
+					probe = elapsed;
+					probeValidation = validationNanos(metrics);
+				}
+
+				metrics.reset();
+				start = System.nanoTime();
+				if(sp.getDataSchemaWithSchema(csvPath, schemaId) == null) throw new IllegalStateException("The csv doesn't match the schema: " + csvPath);
+				elapsed = System.nanoTime() - start;
+				if(i > 0 && elapsed < full) {
+					full = elapsed;
+					fullValidation = validationNanos(metrics);
+					varRegistration = metrics.getVarRegistrationNanos();
+				}
+			}
+		} finally {
+			metrics.setTimingEnabled(timing);
+		}
+
+		long revalidation = Math.max(0, fullValidation - probeValidation);
+		o.totalNanos = full;
+		o.nanos.put(Layer.TOKENIZE, tokenize);
+		o.nanos.put(Layer.ROW_STREAM, Math.max(0, stream - tokenize));
+		o.nanos.put(Layer.TABLE_MATCHING, Math.max(0, probe - stream - probeValidation));
+		o.nanos.put(Layer.VALIDATION, probeValidation);
+		o.nanos.put(Layer.REVALIDATION, revalidation);
+		o.nanos.put(Layer.DATA_OBJECTS, Math.max(0, full - probe - revalidation - varRegistration));
+		o.nanos.put(Layer.VARIABLE_REGISTRATION, varRegistration);
+		return o;
+	}
+
+	private static long tokenize(SchemaProcessor sp, Schema schema, String csvPath) throws IOException {
+		AbstractParser<?> parser = sp.prepareCsvParser(schema, csvPath, 0);
+		if(parser == null) throw new IOException("Unable to read csv: " + csvPath);
+		long rows = 0;
+		while(parser.parseNext() != null) rows++;
+		parser.stopParsing();
+		return rows;
+	}
+
+	private static void readRows(SchemaProcessor sp, Schema schema, String csvPath) throws Exception {
+		SharedRowStream stream = sp.openRowStream(schema, csvPath);
+		try {
+			RowCursor cursor = stream.openCursor();
+			int n = 0;
+			while(cursor.next() != null) {
+				// release rows the way table milestones do, rather than buffering the whole CSV
+				if(++n % SharedRowStream.DEFAULT_LEAD_WINDOW == 0) cursor.mark();
+			}
+			cursor.close();
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static long validationNanos(ProcessingMetrics metrics) {
+		return metrics.getDatatypeValidationNanos() + metrics.getRegexValidationNanos();
+	}
+
+	/**
+	 * @param layer
+	 * @return time of the layer in nanoseconds.
+	 */
+	public long getNanos(Layer layer) {
+		return nanos.get(layer);
+	}
+
+	/**
+	 * @return number of CSV rows.
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return time of getDataSchemaWithSchema() in nanoseconds.
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return ratio of total processing time to tokenization time.
+	 */
+	public double getSlowdown() {
+		long t = getNanos(Layer.TOKENIZE);
+		return (t > 0)? (double) totalNanos / t : 0;
+	}
+
+	/**
+	 * Format the layers as a text table with time per CSV row.
+	 * @return String
+	 */
+	public String toTable() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, "%-22s %10s %10s %6s%n", "LAYER", "TOTAL(ms)", "NS/ROW", "%"));
+		for(Layer layer : Layer.values()) appendLine(sb, layer.getLabel(), getNanos(layer));
+		appendLine(sb, "total", totalNanos);
+		sb.append(String.format(Locale.ROOT, "%d rows, best of %d run(s), %.1fx tokenize time.%n", rows, runs, getSlowdown()));
+		return sb.toString();
+	}
+
+	private void appendLine(StringBuilder sb, String label, long n) {
+		sb.append(String.format(Locale.ROOT, "%-22s %10.3f %10.1f %6.1f%n", label, n / 1e6, (rows > 0)? (double) n / rows : 0,
+				(totalNanos > 0)? n * 100.0 / totalNanos : 0));
+	}
+
+	/**
+	 * Write the layers as a JSON object.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeJson(Writer out) throws IOException {
+		JsonGenerator g = new JsonFactory().createGenerator(out);
+		g.useDefaultPrettyPrinter();
+		g.writeStartObject();
+		g.writeNumberField("rows", rows);
+		g.writeNumberField("runs", runs);
+		g.writeNumberField("totalNanos", totalNanos);
+		g.writeNumberField("slowdown", Math.round(getSlowdown() * 100) / 100.0);
+		g.writeArrayFieldStart("layers");
+		for(Layer layer : Layer.values()) {
+			g.writeStartObject();
+			g.writeStringField("layer", layer.name());
+			g.writeNumberField("nanos", getNanos(layer));
+			g.writeNumberField("nanosPerRow", (rows > 0)? Math.round(getNanos(layer) * 10.0 / rows) / 10.0 : 0);
+			g.writeEndObject();
+		}
+		g.writeEndArray();
+		g.writeEndObject();
+		g.flush();
+	}
+
+}
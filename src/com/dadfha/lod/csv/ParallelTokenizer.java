@@ -0,0 +1,418 @@
+package com.dadfha.lod.csv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.univocity.parsers.common.AbstractParser;
+
+/**
+ * Tokenization of a single CSV file by several parsers in parallel, each on a byte range of the file.
+ *
+ * The file is split into chunks of about chunkSize bytes, each starting right after a line end byte. A line end
+ * within a quoted value isn't a row boundary though, so every chunk is scanned in parallel for quotes and comment
+ * lines twice, once as if it starts outside any quoted value and once as if it starts within one. Going through
+ * the chunks in order, the state at the start of each chunk is then known from the end state of the previous one,
+ * and a chunk starting within a quoted value is merged into the previous range. Without quote char (TsvParser),
+ * every line end is a row boundary and no scan is needed.
+ *
+ * Each range is then tokenized by its own parser on a thread pool, in file order, handing batches of rows over
+ * a bounded queue per range. Rows are read range by range, so they come in the same order as a single parser
+ * would give, and a range tokenized ahead waits once its queue is full.
+ *
+ * The scan works on bytes, so the encoding must keep line end and quote bytes from being part of other
+ * characters, e.g. UTF-8, US-ASCII or ISO-8859-1 (see isSupported()).
+ *
+ * @author Wirawit
+ */
+class ParallelTokenizer implements RowSource {
+
+	/**
+	 * Default number of bytes per chunk.
+	 */
+	static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * Size of buffer reading the file.
+	 */
+	private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * Batch marking the end of a range.
+	 */
+	private static final String[][] EOF = new String[0][];
+
+	private final FileChannel channel;
+
+	private final ExecutorService executor;
+
+	/**
+	 * Byte offsets of the ranges, range i is [bounds[i], bounds[i + 1]).
+	 */
+	private final long[] bounds;
+
+	private final List<BlockingQueue<String[][]>> queues;
+
+	/**
+	 * Exception of tokenizing each range, thrown to the reader once the rows before it are read.
+	 */
+	private final RuntimeException[] errors;
+
+	/**
+	 * Range, batch being read and the read position in it.
+	 */
+	private int range = 0;
+	private String[][] batch = null;
+	private int pos = 0;
+
+	private volatile boolean stopped = false;
+
+	/**
+	 * Constructor. Row boundaries are found and tokenization is started right away.
+	 * @param file
+	 * @param charset encoding of the file, which must be supported by isSupported().
+	 * @param parsers supplier of parsers with settings of the CSV, each yet to begin parsing.
+	 * @param delimiter
+	 * @param quote quote char, or '\0' if values aren't quoted.
+	 * @param comment comment prefix char, or '\0' if there's no comment line.
+	 * @param lineEnd last char of line separator, i.e. '\n' for both "\n" and "\r\n".
+	 * @param threads number of threads scanning and tokenizing the file.
+	 * @param chunkSize number of bytes per chunk.
+	 * @param batchSize number of rows per batch.
+	 * @param capacity number of batches of a range tokenized ahead.
+	 * @param metrics metrics counting bytes read, can be null.
+	 * @throws IOException if the file can't be read.
+	 * @throws InterruptedException if the thread is interrupted while finding row boundaries.
+	 */
+	ParallelTokenizer(Path file, Charset charset, Supplier<AbstractParser<?>> parsers, char delimiter, char quote, char comment, char lineEnd,
+			int threads, int chunkSize, int batchSize, int capacity, ProcessingMetrics metrics) throws IOException, InterruptedException {
+		if(threads < 1 || chunkSize < 1 || batchSize < 1 || capacity < 1) throw new IllegalArgumentException("threads, chunkSize, batchSize and capacity must be positive.");
+		if(!isSupported(charset)) throw new IllegalArgumentException("Unsupported encoding for parallel tokenization: " + charset);
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		AtomicInteger n = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "csvx-parse-" + n.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			this.bounds = findRowBoundaries((byte) delimiter, (byte) quote, (byte) comment, (byte) lineEnd, chunkSize);
+		} catch(IOException | InterruptedException | RuntimeException e) {
+			stop();
+			throw e;
+		}
+		int ranges = bounds.length - 1;
+		this.queues = new ArrayList<BlockingQueue<String[][]>>(ranges);
+		this.errors = new RuntimeException[ranges];
+		for(int i = 0; i < ranges; i++) {
+			BlockingQueue<String[][]> queue = new ArrayBlockingQueue<String[][]>(capacity);
+			queues.add(queue);
+			int r = i;
+			executor.execute(() -> tokenize(r, queue, parsers, charset, batchSize, metrics));
+		}
+	}
+
+	/**
+	 * Check if row boundaries of a file in an encoding can be found by scanning its bytes, i.e. no byte of
+	 * a multi-byte character can be taken for an ASCII character.
+	 * @param charset
+	 * @return boolean
+	 */
+	static boolean isSupported(Charset charset) {
+		if(charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)) return true;
+		// single byte encodings, excluding EBCDIC and the like with ASCII chars elsewhere
+		return charset.newEncoder().maxBytesPerChar() == 1 && Arrays.equals("\"\n\r#,; \t".getBytes(charset), "\"\n\r#,; \t".getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Number of ranges the file is tokenized in.
+	 * @return int
+	 */
+	int getRangeCount() {
+		return bounds.length - 1;
+	}
+
+	/**
+	 * Split the file into ranges starting at row boundaries.
+	 * @param delimiter
+	 * @param quote
+	 * @param comment
+	 * @param lineEnd
+	 * @param chunkSize
+	 * @return long[] of range bounds, from 0 to the file size.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private long[] findRowBoundaries(byte delimiter, byte quote, byte comment, byte lineEnd, int chunkSize) throws IOException, InterruptedException {
+		long size = channel.size();
+		int chunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+
+		// a chunk starts right after the first line end at or after its nominal offset
+		List<Future<long[]>> starts = new ArrayList<Future<long[]>>(chunks);
+		for(int i = 0; i < chunks; i++) {
+			long from = (long) i * chunkSize;
+			starts.add(executor.submit(() -> new long[] { (from == 0)? 0 : nextLineStart(from, lineEnd, size) }));
+		}
+		long[] chunkStarts = new long[chunks + 1];
+		for(int i = 0; i < chunks; i++) chunkStarts[i] = get(starts.get(i))[0];
+		chunkStarts[chunks] = size;
+
+		if(quote == 0) return distinct(chunkStarts);
+
+		// end state of each chunk from each start state, outside or within a quoted value
+		List<Future<boolean[]>> scans = new ArrayList<Future<boolean[]>>(chunks);
+		for(int i = 0; i < chunks; i++) {
+			long from = chunkStarts[i], to = chunkStarts[i + 1];
+			scans.add(executor.submit(() -> scan(from, to, delimiter, quote, comment, lineEnd)));
+		}
+		List<Long> ranges = new ArrayList<Long>();
+		boolean inQuote = false;
+		for(int i = 0; i < chunks; i++) {
+			boolean[] ends = get(scans.get(i));
+			// a chunk starting within a quoted value belongs to the range before it
+			if(!inQuote && (ranges.isEmpty() || chunkStarts[i] > ranges.get(ranges.size() - 1))) ranges.add(chunkStarts[i]);
+			inQuote = ends[inQuote? 1 : 0];
+		}
+		long[] b = new long[ranges.size() + 1];
+		for(int i = 0; i < ranges.size(); i++) b[i] = ranges.get(i);
+		b[ranges.size()] = size;
+		return distinct(b);
+	}
+
+	private static <T> T get(Future<T> f) throws IOException, InterruptedException {
+		try {
+			return f.get();
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IllegalStateException("Scanning for row boundaries failed.", e.getCause());
+		}
+	}
+
+	/**
+	 * Remove empty ranges from range bounds.
+	 * @param b
+	 * @return long[]
+	 */
+	private static long[] distinct(long[] b) {
+		int n = 1;
+		for(int i = 1; i < b.length; i++) {
+			if(b[i] > b[n - 1]) b[n++] = b[i];
+		}
+		if(n == 1) return new long[] { 0, b[0] };
+		return Arrays.copyOf(b, n);
+	}
+
+	/**
+	 * Find the offset right after the first line end byte at or after an offset.
+	 * @param from
+	 * @param lineEnd
+	 * @param size
+	 * @return long offset, or the file size if there's no more line end.
+	 * @throws IOException
+	 */
+	private long nextLineStart(long from, byte lineEnd, long size) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		long pos = from;
+		while(pos < size) {
+			buf.clear();
+			int n = channel.read(buf, pos);
+			if(n <= 0) break;
+			byte[] a = buf.array();
+			for(int i = 0; i < n; i++) {
+				if(a[i] == lineEnd) return pos + i + 1;
+			}
+			pos += n;
+		}
+		return size;
+	}
+
+	/**
+	 * Scan a chunk starting at a line start, for its end state as if it starts outside and within a quoted value.
+	 * A quote opens a quoted value only at the start of a value (after leading spaces), a doubled quote within
+	 * a quoted value is an escaped quote, and quotes in a comment line are ignored.
+	 * @param from
+	 * @param to
+	 * @param delimiter
+	 * @param quote
+	 * @param comment
+	 * @param lineEnd
+	 * @return boolean[2] whether the chunk ends within a quoted value, starting outside [0] and within [1] one.
+	 * @throws IOException
+	 */
+	private boolean[] scan(long from, long to, byte delimiter, byte quote, byte comment, byte lineEnd) throws IOException {
+		QuoteState[] states = { new QuoteState(false), new QuoteState(true) };
+		ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		long pos = from;
+		while(pos < to) {
+			buf.clear();
+			if(to - pos < buf.capacity()) buf.limit((int) (to - pos));
+			int n = channel.read(buf, pos);
+			if(n <= 0) break;
+			for(QuoteState s : states) s.feed(buf.array(), n, delimiter, quote, comment, lineEnd);
+			pos += n;
+		}
+		return new boolean[] { states[0].inQuote, states[1].inQuote };
+	}
+
+	/**
+	 * State of scanning for quoted values.
+	 */
+	private static final class QuoteState {
+		boolean inQuote;
+		boolean valueStart;
+		boolean lineStart;
+		boolean inComment = false;
+		boolean justClosed = false;
+
+		QuoteState(boolean inQuote) {
+			this.inQuote = inQuote;
+			this.valueStart = this.lineStart = !inQuote;
+		}
+
+		void feed(byte[] a, int n, byte delimiter, byte quote, byte comment, byte lineEnd) {
+			for(int i = 0; i < n; i++) {
+				byte b = a[i];
+				if(inComment) {
+					if(b == lineEnd) {
+						inComment = false;
+						lineStart = valueStart = true;
+					}
+				} else if(inQuote) {
+					if(b == quote) {
+						inQuote = false;
+						justClosed = true;
+					}
+				} else if(b == quote && (valueStart || justClosed)) {
+					// a quote right after the closing one is an escaped quote
+					inQuote = true;
+					justClosed = valueStart = lineStart = false;
+				} else if(b == lineEnd) {
+					lineStart = valueStart = true;
+					justClosed = false;
+				} else if(lineStart && b == comment && comment != 0) {
+					inComment = true;
+					lineStart = valueStart = false;
+				} else if(b == delimiter) {
+					valueStart = true;
+					justClosed = lineStart = false;
+				} else if(b == ' ' || b == '\t' || b == '\r') {
+					// leading spaces are ignored before a quoted value
+					justClosed = false;
+				} else {
+					valueStart = justClosed = lineStart = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tokenize a range of the file.
+	 * @param r range index.
+	 * @param queue
+	 * @param parsers
+	 * @param charset
+	 * @param batchSize
+	 * @param metrics
+	 */
+	private void tokenize(int r, BlockingQueue<String[][]> queue, Supplier<AbstractParser<?>> parsers, Charset charset, int batchSize, ProcessingMetrics metrics) {
+		if(stopped) return;
+		AbstractParser<?> parser = null;
+		try {
+			parser = parsers.get();
+			parser.beginParsing(new BufferedReader(new InputStreamReader(new RangeInputStream(bounds[r], bounds[r + 1]), charset), SchemaProcessor.CSV_PARSER_BUFFER_SIZE));
+			while(!stopped) {
+				String[][] rows = new String[batchSize][];
+				int n = 0;
+				String[] row = null;
+				while(n < batchSize && (row = parser.parseNext()) != null) rows[n++] = row;
+				if(n > 0) queue.put((n < batchSize)? Arrays.copyOf(rows, n) : rows);
+				if(row == null) break;
+			}
+			if(metrics != null) metrics.bytesRead(bounds[r + 1] - bounds[r]);
+		} catch(InterruptedException e) {
+			return;
+		} catch(RuntimeException e) {
+			if(!stopped) errors[r] = e;
+		} finally {
+			if(parser != null) parser.stopParsing();
+		}
+		try {
+			queue.put(EOF);
+		} catch(InterruptedException e) {
+			// stopped while the queue is full, nobody reads the end
+		}
+	}
+
+	@Override
+	public String[] next() throws InterruptedException {
+		while(batch == null || pos == batch.length) {
+			if(range == queues.size()) return null;
+			batch = queues.get(range).take();
+			pos = 0;
+			if(batch == EOF) {
+				if(errors[range] != null) throw errors[range];
+				// release the queue of a finished range
+				queues.set(range, null);
+				range++;
+			}
+		}
+		return batch[pos++];
+	}
+
+	@Override
+	public void stop() {
+		stopped = true;
+		executor.shutdownNow();
+		try {
+			channel.close();
+		} catch(IOException e) {
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Input stream of a byte range of the file, read with positional reads so that ranges can be read concurrently.
+	 */
+	private class RangeInputStream extends InputStream {
+		private long pos;
+		private final long end;
+
+		RangeInputStream(long from, long to) {
+			this.pos = from;
+			this.end = to;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0)? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(pos >= end) return -1;
+			int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos)), pos);
+			if(n > 0) pos += n;
+			return n;
+		}
+	}
+
+}
@@ -0,0 +1,207 @@
+package com.dadfha.lod.csv;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dadfha.lod.csv.BatchProcessor.Operation;
+
+/**
+ * Processing of a CSV in a pipeline of stages, each on its own thread and connected by a bounded queue:
+ * 1. reading and decoding the CSV into chunks of characters.
+ * 2. tokenizing the characters into batches of rows with the parser of the schema (CsvParser, SsvParser, etc.).
+ * 3. matching and validating the rows against schema tables, materializing data tables, on the calling thread.
+ * 4. serializing each data table to the output with getTtl() (serialize) or mapped templates (transform).
+ *
+ * Serialization works a data table at a time, since a table is known to match only after all its rows are
+ * probed and its {var} may refer to any entity of the table. A CSV of a single table thus gains from the first
+ * three stages only. Tables are written in the order they're matched, so the output is the same as sequential
+ * processing. If the CSV turns out not to match the schema, the tables matched before are already written.
+ *
+ * A pipelined processor can be used by several threads at once, each call running its own stages.
+ *
+ * @author Wirawit
+ */
+public class PipelinedProcessor {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	/**
+	 * Item marking the end of data tables to the serializer stage.
+	 */
+	private static final Object END = new Object();
+
+	private final SchemaProcessor sp;
+
+	/**
+	 * Number of rows per batch handed from the tokenizer stage.
+	 */
+	private volatile int batchSize = TokenizerStage.DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Number of items each stage may be ahead of the next.
+	 */
+	private volatile int capacity = TokenizerStage.DEFAULT_CAPACITY;
+
+	/**
+	 * Constructor.
+	 * @param sp the processor with the schemas loaded.
+	 */
+	public PipelinedProcessor(SchemaProcessor sp) {
+		if(sp == null) throw new IllegalArgumentException("sp must not be null.");
+		this.sp = sp;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set number of rows per batch handed from the tokenizer stage to the matching stage.
+	 * @param batchSize
+	 */
+	public void setBatchSize(int batchSize) {
+		if(batchSize < 1) throw new IllegalArgumentException("batchSize must be positive.");
+		this.batchSize = batchSize;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Set number of chunks, row batches or data tables each stage may be ahead of the next.
+	 * @param capacity
+	 */
+	public void setCapacity(int capacity) {
+		if(capacity < 1) throw new IllegalArgumentException("capacity must be positive.");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Process a CSV against a loaded schema, writing the output of an operation as the data tables are matched.
+	 * The output is only written by the serializer stage, and the stage is finished when this method returns.
+	 * @param csvPath
+	 * @param schemaId ID of a loaded schema.
+	 * @param op
+	 * @param out output of serialize/transform, not used by validate.
+	 * @return Schema data schema or null if the CSV doesn't match the schema.
+	 * @throws IllegalArgumentException if no schema with the ID has been loaded.
+	 * @throws Exception if there's a problem processing the CSV or writing the output.
+	 */
+	public Schema process(String csvPath, String schemaId, Operation op, Appendable out) throws Exception {
+		Schema schema = sp.getSchema(schemaId);
+		if(schema == null) throw new IllegalArgumentException("Unknown schema ID: " + schemaId);
+		if(op != Operation.VALIDATE && out == null) throw new IllegalArgumentException("out must not be null for " + op + ".");
+
+		SharedRowStream stream = sp.openPipelinedRowStream(schema, csvPath, batchSize, capacity);
+		if(op == Operation.VALIDATE) return sp.getDataSchemaWithSchema(stream, csvPath, schema, null);
+
+		SerializerStage serializer = new SerializerStage(op, out, capacity, sp.getMetrics());
+		Schema dSchema;
+		try {
+			dSchema = sp.getDataSchemaWithSchema(stream, csvPath, schema, serializer::accept);
+		} catch(Exception | Error e) {
+			serializer.stop();
+			throw e;
+		}
+		serializer.finish();
+		return dSchema;
+	}
+
+	/**
+	 * Serializer stage writing data tables handed over a bounded queue to the output.
+	 */
+	private static class SerializerStage {
+
+		private final Operation op;
+
+		private final Appendable out;
+
+		private final ProcessingMetrics metrics;
+
+		private final BlockingQueue<Object> tables;
+
+		private final Thread thread;
+
+		/**
+		 * Exception of the serializer thread.
+		 */
+		private volatile Exception error;
+
+		SerializerStage(Operation op, Appendable out, int capacity, ProcessingMetrics metrics) {
+			this.op = op;
+			this.out = out;
+			this.metrics = metrics;
+			this.tables = new ArrayBlockingQueue<Object>(capacity);
+			this.thread = new Thread(this::serialize, "csvx-serialize");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private void serialize() {
+			boolean first = true;
+			StringBuilder sb = new StringBuilder();
+			try {
+				Object item;
+				while((item = tables.take()) != END) {
+					SchemaTable dTable = (SchemaTable) item;
+					sb.setLength(0);
+					if(op == Operation.SERIALIZE) {
+						if(first) dTable.getParentSchema().appendTtlHeader(sb);
+						Schema.appendTtl(dTable, sb);
+					} else {
+						SchemaProcessor.writeMappedTemplates(dTable, sb);
+					}
+					first = false;
+					out.append(sb);
+					if(metrics != null) metrics.output(sb.length());
+				}
+			} catch(InterruptedException e) {
+				return;
+			} catch(Exception e) {
+				logger.debug("Serializer stage failed: ", e);
+				error = e;
+				// keep taking tables handed before the matching thread sees the error, until the end
+				try {
+					while(tables.take() != END);
+				} catch(InterruptedException ie) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Hand a data table to the serializer thread, waiting while the queue is full.
+		 * @param dTable
+		 * @throws IllegalStateException if the serializer has failed, to stop matching the rest of the CSV.
+		 */
+		void accept(SchemaTable dTable) {
+			if(error != null) throw new IllegalStateException("Serializer stage failed: " + error, error);
+			try {
+				tables.put(dTable);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the serializer stage.", e);
+			}
+		}
+
+		/**
+		 * Wait for the serializer thread to write every data table handed.
+		 * @throws Exception of the serializer thread, if any.
+		 */
+		void finish() throws Exception {
+			tables.put(END);
+			thread.join();
+			if(error != null) throw error;
+		}
+
+		void stop() {
+			thread.interrupt();
+		}
+
+	}
+
+}
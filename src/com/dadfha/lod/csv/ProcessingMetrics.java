@@ -0,0 +1,344 @@
+package com.dadfha.lod.csv;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Processing metrics of a SchemaProcessor. Every processing call on the processor, including output generation
+ * from its data schemas, accumulates into the same metrics. Updates are LongAdder increments, cheap enough for
+ * the hot path and safe under concurrent calls. Timing takes two System.nanoTime() calls per measured operation,
+ * so it's off by default and switched on by startProfile(), LayerOverhead and CsvxServer, or setTimingEnabled().
+ *
+ * @author Wirawit
+ */
+public class ProcessingMetrics implements ProcessingMetricsMXBean {
+
+	/**
+	 * JMX domain of registered metrics.
+	 */
+	public static final String JMX_DOMAIN = "com.dadfha.lod.csv";
+
+	/**
+	 * Trial counts of a schema table.
+	 */
+	public static final class TableTrials {
+
+		private final LongAdder succeeded = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+
+		public long getAttempted() {
+			return succeeded.sum() + failed.sum();
+		}
+
+		public long getSucceeded() {
+			return succeeded.sum();
+		}
+
+		public long getFailed() {
+			return failed.sum();
+		}
+
+		@Override
+		public String toString() {
+			return "TableTrials [attempted=" + getAttempted() + ", succeeded=" + getSucceeded() + ", failed=" + getFailed() + "]";
+		}
+	}
+
+	private final LongAdder rows = new LongAdder();
+	private final LongAdder cells = new LongAdder();
+	private final LongAdder rewinds = new LongAdder();
+	private final LongAdder datatypeValidations = new LongAdder();
+	private final LongAdder datatypeNanos = new LongAdder();
+	private final LongAdder regexValidations = new LongAdder();
+	private final LongAdder regexNanos = new LongAdder();
+	private final LongAdder varRegistrations = new LongAdder();
+	private final LongAdder varRegistrationNanos = new LongAdder();
+	private final LongAdder functionCalls = new LongAdder();
+	private final LongAdder functionNanos = new LongAdder();
+	private final LongAdder templates = new LongAdder();
+	private final LongAdder templateNanos = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder outputChars = new LongAdder();
+
+	/**
+	 * Trial counts keyed by schema table reference expression.
+	 */
+	private final Map<String, TableTrials> tableTrials = new ConcurrentHashMap<String, TableTrials>();
+
+	private volatile boolean timingEnabled = false;
+
+	private volatile long resetNanos = System.nanoTime();
+
+	/**
+	 * Cost profile per schema entity, or null if not profiling.
+	 */
+	private volatile CostProfile profile;
+
+	/**
+	 * Get current time for measuring an operation.
+	 * @return System.nanoTime() or 0 if timing is disabled.
+	 */
+	long startTiming() {
+		return timingEnabled? System.nanoTime() : 0;
+	}
+
+	private static long elapsed(long start) {
+		return (start != 0)? System.nanoTime() - start : 0;
+	}
+
+	/**
+	 * Count rows and cells of a CSV matching a schema.
+	 * @param rows
+	 * @param cells
+	 */
+	void processed(long rows, long cells) {
+		this.rows.add(rows);
+		this.cells.add(cells);
+	}
+
+	void rewound() {
+		rewinds.increment();
+	}
+
+	void tableTrial(SchemaTable sTable, boolean matched, long start, int rows) {
+		TableTrials t = tableTrials.computeIfAbsent(sTable.getRefEx(), k -> new TableTrials());
+		if(matched) t.succeeded.increment();
+		else t.failed.increment();
+		CostProfile p = profile;
+		if(p != null) p.addTableTrial(sTable, elapsed(start), rows, matched);
+	}
+
+	void datatypeValidated(long start, SchemaCell c) {
+		long nanos = elapsed(start);
+		datatypeValidations.increment();
+		datatypeNanos.add(nanos);
+		CostProfile p = profile;
+		if(p != null) p.add(CostProfile.Kind.DATATYPE, c, nanos);
+	}
+
+	void regexValidated(long start, SchemaCell c) {
+		long nanos = elapsed(start);
+		regexValidations.increment();
+		regexNanos.add(nanos);
+		CostProfile p = profile;
+		if(p != null) p.add(CostProfile.Kind.REGEX, c, nanos);
+	}
+
+	void varRegistered(long start) {
+		varRegistrations.increment();
+		varRegistrationNanos.add(elapsed(start));
+	}
+
+	void functionCalled(long start, SchemaFunction sf) {
+		long nanos = elapsed(start);
+		functionCalls.increment();
+		functionNanos.add(nanos);
+		CostProfile p = profile;
+		if(p != null) p.add(CostProfile.Kind.FUNCTION, sf, nanos);
+	}
+
+	void templateApplied(long start, SchemaEntity se) {
+		long nanos = elapsed(start);
+		templates.increment();
+		templateNanos.add(nanos);
+		CostProfile p = profile;
+		if(p != null) p.add(CostProfile.Kind.TEMPLATE, se, nanos);
+	}
+
+	void bytesRead(long n) {
+		bytesRead.add(n);
+	}
+
+	void output(long chars) {
+		outputChars.add(chars);
+	}
+
+	@Override
+	public long getRowsProcessed() {
+		return rows.sum();
+	}
+
+	@Override
+	public long getCellsProcessed() {
+		return cells.sum();
+	}
+
+	@Override
+	public double getRowsPerSecond() {
+		double seconds = (System.nanoTime() - resetNanos) / 1e9;
+		return (seconds > 0)? rows.sum() / seconds : 0;
+	}
+
+	@Override
+	public long getTableTrialsAttempted() {
+		return getTableTrialsSucceeded() + getTableTrialsFailed();
+	}
+
+	@Override
+	public long getTableTrialsSucceeded() {
+		long n = 0;
+		for(TableTrials t : tableTrials.values()) n += t.getSucceeded();
+		return n;
+	}
+
+	@Override
+	public long getTableTrialsFailed() {
+		long n = 0;
+		for(TableTrials t : tableTrials.values()) n += t.getFailed();
+		return n;
+	}
+
+	@Override
+	public Map<String, TableTrials> getTableTrials() {
+		return new TreeMap<String, TableTrials>(tableTrials);
+	}
+
+	@Override
+	public long getRewinds() {
+		return rewinds.sum();
+	}
+
+	@Override
+	public long getDatatypeValidations() {
+		return datatypeValidations.sum();
+	}
+
+	@Override
+	public long getDatatypeValidationNanos() {
+		return datatypeNanos.sum();
+	}
+
+	@Override
+	public long getRegexValidations() {
+		return regexValidations.sum();
+	}
+
+	@Override
+	public long getRegexValidationNanos() {
+		return regexNanos.sum();
+	}
+
+	@Override
+	public long getVarRegistrations() {
+		return varRegistrations.sum();
+	}
+
+	@Override
+	public long getVarRegistrationNanos() {
+		return varRegistrationNanos.sum();
+	}
+
+	@Override
+	public long getFunctionCalls() {
+		return functionCalls.sum();
+	}
+
+	@Override
+	public long getFunctionCallNanos() {
+		return functionNanos.sum();
+	}
+
+	@Override
+	public double getFunctionCallMeanMicros() {
+		long n = functionCalls.sum();
+		return (n > 0)? functionNanos.sum() / 1e3 / n : 0;
+	}
+
+	@Override
+	public long getTemplateApplications() {
+		return templates.sum();
+	}
+
+	@Override
+	public long getTemplateNanos() {
+		return templateNanos.sum();
+	}
+
+	@Override
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	@Override
+	public long getOutputChars() {
+		return outputChars.sum();
+	}
+
+	@Override
+	public boolean isTimingEnabled() {
+		return timingEnabled;
+	}
+
+	@Override
+	public void setTimingEnabled(boolean enabled) {
+		timingEnabled = enabled;
+	}
+
+	@Override
+	public void reset() {
+		for(LongAdder a : new LongAdder[] { rows, cells, rewinds, datatypeValidations, datatypeNanos, regexValidations, regexNanos,
+				varRegistrations, varRegistrationNanos, functionCalls, functionNanos, templates, templateNanos, bytesRead, outputChars }) {
+			a.reset();
+		}
+		tableTrials.clear();
+		resetNanos = System.nanoTime();
+	}
+
+	/**
+	 * Start profiling cost per schema entity, enabling timing as well.
+	 * @return CostProfile the new profile accumulating costs from now on.
+	 */
+	public CostProfile startProfile() {
+		CostProfile p = new CostProfile();
+		timingEnabled = true;
+		profile = p;
+		return p;
+	}
+
+	/**
+	 * Stop profiling cost per schema entity.
+	 * @return CostProfile the profile stopped, or null if not profiling.
+	 */
+	public CostProfile stopProfile() {
+		CostProfile p = profile;
+		profile = null;
+		return p;
+	}
+
+	/**
+	 * Register the metrics to the platform MBean server.
+	 * @param name value of 'name' key of the object name, e.g. "csvx-serve".
+	 * @return ObjectName the metrics is registered with.
+	 * @throws JMException if the name is malformed or already registered.
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName on = new ObjectName(JMX_DOMAIN + ":type=ProcessingMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+		return on;
+	}
+
+	/**
+	 * Unregister the metrics from the platform MBean server.
+	 * @param on the object name returned by register().
+	 * @throws JMException
+	 */
+	public static void unregister(ObjectName on) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if(server.isRegistered(on)) server.unregisterMBean(on);
+	}
+
+	@Override
+	public String toString() {
+		return "ProcessingMetrics [rows=" + getRowsProcessed() + ", cells=" + getCellsProcessed() + ", trials=" + getTableTrialsAttempted()
+				+ ", rewinds=" + getRewinds() + ", functionCalls=" + getFunctionCalls() + ", templates=" + getTemplateApplications()
+				+ ", bytesRead=" + getBytesRead() + ", outputChars=" + getOutputChars() + "]";
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.dadfha.lod.csv;
+
+import java.util.Map;
+
+/**
+ * Management interface of processing metrics of a SchemaProcessor, exposed through JMX.
+ * Counts and times accumulate from the creation of the processor or the last reset().
+ *
+ * @author Wirawit
+ */
+public interface ProcessingMetricsMXBean {
+
+	/**
+	 * @return number of CSV rows processed, counted once per row of every CSV matching a schema, i.e. neither 
+	 * probing nor failed trials are counted.
+	 */
+	long getRowsProcessed();
+
+	/**
+	 * @return number of CSV cells processed, counted once per cell of every CSV matching a schema, i.e. neither 
+	 * probing nor failed trials are counted.
+	 */
+	long getCellsProcessed();
+
+	/**
+	 * @return average rows processed per second since the last reset.
+	 */
+	double getRowsPerSecond();
+
+	long getTableTrialsAttempted();
+
+	long getTableTrialsSucceeded();
+
+	long getTableTrialsFailed();
+
+	/**
+	 * @return trial counts per schema table, keyed by schema table reference expression.
+	 */
+	Map<String, ProcessingMetrics.TableTrials> getTableTrials();
+
+	/**
+	 * @return number of times the row cursor is rewound to a milestone row.
+	 */
+	long getRewinds();
+
+	long getDatatypeValidations();
+
+	long getDatatypeValidationNanos();
+
+	long getRegexValidations();
+
+	long getRegexValidationNanos();
+
+	/**
+	 * @return number of data rows and cells whose properties are processed for context {var} and variable registration.
+	 */
+	long getVarRegistrations();
+
+	long getVarRegistrationNanos();
+
+	long getFunctionCalls();
+
+	long getFunctionCallNanos();
+
+	/**
+	 * @return mean latency of schema function calls in microseconds.
+	 */
+	double getFunctionCallMeanMicros();
+
+	long getTemplateApplications();
+
+	long getTemplateNanos();
+
+	/**
+	 * @return bytes read from CSV files.
+	 */
+	long getBytesRead();
+
+	/**
+	 * @return characters of RDF output generated from data schemas of the processor.
+	 */
+	long getOutputChars();
+
+	/**
+	 * @return whether validation, function and template times are measured.
+	 */
+	boolean isTimingEnabled();
+
+	void setTimingEnabled(boolean enabled);
+
+	/**
+	 * Reset all counts and times.
+	 */
+	void reset();
+
+}
@@ -0,0 +1,127 @@
+package com.dadfha.lod.csv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A reader whose source is read and decoded ahead on its own thread.
+ *
+ * The reading thread fills chunks of characters from the source reader, e.g. an InputStreamReader decoding
+ * the bytes of a CSV file, into a bounded queue. The parser reading from this reader thus only waits for I/O
+ * and decoding when it's faster than them, and the reading thread stops once the queue is full.
+ *
+ * @author Wirawit
+ */
+class ReadAheadReader extends Reader {
+
+	/**
+	 * Default number of characters per chunk.
+	 */
+	static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * Default number of chunks read ahead.
+	 */
+	static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * Chunk marking the end of the source.
+	 */
+	private static final char[] EOF = new char[0];
+
+	private final Reader source;
+
+	private final BlockingQueue<char[]> chunks;
+
+	private final Thread thread;
+
+	/**
+	 * Exception of the reading thread, thrown to the reader once the chunks before it are read.
+	 */
+	private volatile IOException error;
+
+	/**
+	 * Chunk being read and the read position in it.
+	 */
+	private char[] chunk = null;
+	private int pos = 0;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructor. The reading thread is started right away.
+	 * @param source
+	 * @param chunkSize number of characters per chunk.
+	 * @param capacity number of chunks read ahead.
+	 */
+	ReadAheadReader(Reader source, int chunkSize, int capacity) {
+		if(chunkSize < 1 || capacity < 1) throw new IllegalArgumentException("chunkSize and capacity must be positive.");
+		this.source = source;
+		this.chunks = new ArrayBlockingQueue<char[]>(capacity);
+		this.thread = new Thread(() -> readAhead(chunkSize), "csvx-read");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void readAhead(int chunkSize) {
+		try {
+			while(!closed) {
+				char[] buf = new char[chunkSize];
+				int n = 0, r = 0;
+				while(n < chunkSize && (r = source.read(buf, n, chunkSize - n)) >= 0) n += r;
+				if(n > 0) chunks.put((n < chunkSize)? Arrays.copyOf(buf, n) : buf);
+				if(r < 0) break;
+			}
+		} catch(InterruptedException e) {
+			return;
+		} catch(IOException e) {
+			error = e;
+		}
+		try {
+			chunks.put(EOF);
+		} catch(InterruptedException e) {
+			// closed while the queue is full, nobody reads the end
+		}
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if(closed) throw new IOException("The reader has been closed.");
+		if(len == 0) return 0;
+		if(chunk == null || pos == chunk.length) {
+			if(chunk == EOF) return -1;
+			try {
+				chunk = chunks.take();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the reading thread.");
+			}
+			pos = 0;
+			if(chunk == EOF) {
+				if(error != null) throw error;
+				return -1;
+			}
+		}
+		int n = Math.min(len, chunk.length - pos);
+		System.arraycopy(chunk, pos, cbuf, off, n);
+		pos += n;
+		return n;
+	}
+
+	/**
+	 * Stop the reading thread and close the source.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed) return;
+		closed = true;
+		thread.interrupt();
+		chunks.clear();
+		source.close();
+	}
+
+}
@@ -0,0 +1,477 @@
+package com.dadfha.lod.csv;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generator of sample strings matching a Java regular expression.
+ *
+ * The expression is parsed once into a tree of nodes, each appending a random sample of itself, so that sampling
+ * costs no more than building the string. Supported are literals, escapes, character classes (with ranges, negation,
+ * and predefined classes), '.', groups, alternation, and all greedy/lazy/possessive quantifiers. Unbounded quantifiers
+ * repeat at most MAX_EXTRA_REPEAT times more than their minimum. Anchors, word boundaries, and lookarounds generate
+ * nothing, and so do back references, thus a sample of expression relying on them may not match.
+ *
+ * '.' is sampled from word characters, negated classes from the rest of printable ASCII.
+ *
+ * @author Wirawit
+ */
+final class RegexSampler {
+
+	/**
+	 * Maximum number of repetitions beyond the minimum of an unbounded quantifier, e.g. '*', '+', '{n,}'.
+	 */
+	static final int MAX_EXTRA_REPEAT = 3;
+
+	/**
+	 * Printable ASCII characters, the universe of negated character classes.
+	 */
+	private static final BitSet PRINTABLE = range(0x20, 0x7E);
+
+	private static final BitSet DIGIT = range('0', '9');
+
+	private static final BitSet WORD = word();
+
+	private static final BitSet SPACE = chars(" \t");
+
+	/**
+	 * A node of the expression tree.
+	 */
+	private interface Node {
+		void sample(SplittableRandom rnd, StringBuilder sb);
+	}
+
+	/**
+	 * A literal string, adjacent ones in a sequence are merged so that a run of literals costs a single append.
+	 */
+	private static final class Literal implements Node {
+		private final String s;
+		Literal(String s) {
+			this.s = s;
+		}
+		@Override
+		public void sample(SplittableRandom rnd, StringBuilder sb) {
+			sb.append(s);
+		}
+	}
+
+	private static final Node EMPTY = (rnd, sb) -> {};
+
+	private final String regex;
+
+	private final Node root;
+
+	/**
+	 * Parsing position.
+	 */
+	private int pos;
+
+	/**
+	 * Parse a regular expression.
+	 * @param regex
+	 * @throws IllegalArgumentException if the expression is malformed.
+	 */
+	RegexSampler(String regex) {
+		this.regex = regex;
+		pos = 0;
+		root = parseAlternation();
+		if(pos < regex.length()) throw error("unbalanced ')'");
+	}
+
+	/**
+	 * Append a sample to a string builder.
+	 * @param rnd
+	 * @param sb
+	 */
+	void sample(SplittableRandom rnd, StringBuilder sb) {
+		root.sample(rnd, sb);
+	}
+
+	String sample(SplittableRandom rnd) {
+		StringBuilder sb = new StringBuilder();
+		root.sample(rnd, sb);
+		return sb.toString();
+	}
+
+	private IllegalArgumentException error(String msg) {
+		return new IllegalArgumentException("Unable to sample regex '" + regex + "' at " + pos + ": " + msg);
+	}
+
+	private boolean more() {
+		return pos < regex.length();
+	}
+
+	private char peek() {
+		return regex.charAt(pos);
+	}
+
+	private Node parseAlternation() {
+		List<Node> alts = new ArrayList<Node>();
+		alts.add(parseSequence());
+		while(more() && peek() == '|') {
+			pos++;
+			alts.add(parseSequence());
+		}
+		if(alts.size() == 1) return alts.get(0);
+		Node[] nodes = alts.toArray(new Node[alts.size()]);
+		return (rnd, sb) -> nodes[rnd.nextInt(nodes.length)].sample(rnd, sb);
+	}
+
+	private Node parseSequence() {
+		List<Node> seq = new ArrayList<Node>();
+		while(more() && peek() != '|' && peek() != ')') {
+			Node node = parseQuantifier(parseAtom());
+			if(node == EMPTY) continue;
+			int last = seq.size() - 1;
+			if(node instanceof Literal && last >= 0 && seq.get(last) instanceof Literal) {
+				seq.set(last, new Literal(((Literal) seq.get(last)).s + ((Literal) node).s));
+			} else seq.add(node);
+		}
+		if(seq.isEmpty()) return EMPTY;
+		if(seq.size() == 1) return seq.get(0);
+		Node[] nodes = seq.toArray(new Node[seq.size()]);
+		return (rnd, sb) -> {
+			for(Node n : nodes) n.sample(rnd, sb);
+		};
+	}
+
+	private Node parseQuantifier(Node atom) {
+		if(!more()) return atom;
+		int min, max;
+		char c = peek();
+		switch(c) {
+		case '*':
+			min = 0;
+			max = MAX_EXTRA_REPEAT;
+			pos++;
+			break;
+		case '+':
+			min = 1;
+			max = 1 + MAX_EXTRA_REPEAT;
+			pos++;
+			break;
+		case '?':
+			min = 0;
+			max = 1;
+			pos++;
+			break;
+		case '{':
+			int close = regex.indexOf('}', pos);
+			if(close < 0) throw error("unclosed '{'");
+			String[] bounds = regex.substring(pos + 1, close).split(",", -1);
+			try {
+				min = Integer.parseInt(bounds[0].trim());
+				if(bounds.length == 1) max = min;
+				else if(bounds[1].trim().isEmpty()) max = min + MAX_EXTRA_REPEAT;
+				else max = Integer.parseInt(bounds[1].trim());
+			} catch(NumberFormatException e) {
+				throw error("bad repetition");
+			}
+			if(max < min) throw error("bad repetition");
+			pos = close + 1;
+			break;
+		default:
+			return atom;
+		}
+		// lazy and possessive modifiers don't change what matches
+		if(more() && (peek() == '?' || peek() == '+')) pos++;
+		final int lo = min, span = max - min + 1;
+		return parseQuantifier((rnd, sb) -> {
+			int n = lo + rnd.nextInt(span);
+			for(int i = 0; i < n; i++) atom.sample(rnd, sb);
+		});
+	}
+
+	private Node parseAtom() {
+		char c = regex.charAt(pos++);
+		switch(c) {
+		case '(':
+			return parseGroup();
+		case '[':
+			return charClass(parseClass());
+		case '.':
+			return charClass(WORD);
+		case '^':
+		case '$':
+			return EMPTY;
+		case '\\':
+			return parseEscape();
+		default:
+			return literal(c);
+		}
+	}
+
+	private Node parseGroup() {
+		boolean skip = false;
+		if(more() && peek() == '?') {
+			pos++;
+			if(!more()) throw error("unclosed group");
+			char c = regex.charAt(pos++);
+			if(c == '=' || c == '!') {
+				skip = true; // lookahead
+			} else if(c == '<' && more() && (peek() == '=' || peek() == '!')) {
+				pos++;
+				skip = true; // lookbehind
+			} else if(c == '<') {
+				int close = regex.indexOf('>', pos);
+				if(close < 0) throw error("unclosed group name");
+				pos = close + 1; // named group
+			} else if(c != ':' && c != '>') {
+				// inline flags, e.g. (?i) or (?i:X)
+				while(more() && peek() != ':' && peek() != ')') pos++;
+				if(!more()) throw error("unclosed group");
+				if(regex.charAt(pos++) == ')') return EMPTY;
+			}
+		}
+		Node inner = parseAlternation();
+		if(!more() || peek() != ')') throw error("unclosed group");
+		pos++;
+		return skip? EMPTY : inner;
+	}
+
+	private Node parseEscape() {
+		if(!more()) throw error("trailing '\\'");
+		char c = regex.charAt(pos++);
+		BitSet predefined = predefinedClass(c);
+		if(predefined != null) return charClass(predefined);
+		switch(c) {
+		case 'b':
+		case 'B':
+		case 'A':
+		case 'z':
+		case 'Z':
+		case 'G':
+			return EMPTY;
+		case 'Q':
+			int end = regex.indexOf("\\E", pos);
+			String quoted = regex.substring(pos, (end < 0)? regex.length() : end);
+			pos = (end < 0)? regex.length() : end + 2;
+			return new Literal(quoted);
+		case 'k':
+			int close = regex.indexOf('>', pos);
+			pos = (close < 0)? regex.length() : close + 1;
+			return EMPTY;
+		default:
+			if(c >= '1' && c <= '9') {
+				while(more() && Character.isDigit(peek())) pos++;
+				return EMPTY; // back reference
+			}
+			return literal(escapedChar(c));
+		}
+	}
+
+	/**
+	 * Get character of a single-character escape, the character after '\' already consumed.
+	 * @param c
+	 * @return char
+	 */
+	private char escapedChar(char c) {
+		switch(c) {
+		case 't':
+			return '\t';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 'f':
+			return '\f';
+		case 'a':
+			return '\u0007';
+		case 'e':
+			return '\u001B';
+		case '0':
+			int v = 0;
+			while(more() && peek() >= '0' && peek() <= '7' && v < 0x20) v = v * 8 + (regex.charAt(pos++) - '0');
+			return (char) v;
+		case 'x':
+			return (char) hex((more() && peek() == '{')? -1 : 2);
+		case 'u':
+			return (char) hex(4);
+		case 'c':
+			if(!more()) throw error("trailing '\\c'");
+			return (char) (regex.charAt(pos++) ^ 64);
+		default:
+			return c;
+		}
+	}
+
+	private int hex(int digits) {
+		int end;
+		if(digits < 0) { // \x{h...h}
+			pos++;
+			end = regex.indexOf('}', pos);
+			if(end < 0) throw error("unclosed '\\x{'");
+		} else {
+			end = pos + digits;
+			if(end > regex.length()) throw error("bad hex escape");
+		}
+		try {
+			int v = Integer.parseInt(regex.substring(pos, end), 16);
+			pos = (digits < 0)? end + 1 : end;
+			return v;
+		} catch(NumberFormatException e) {
+			throw error("bad hex escape");
+		}
+	}
+
+	/**
+	 * Get predefined character class of an escape, e.g. 'd' for '\d'.
+	 * @param c
+	 * @return BitSet or null if it's not a predefined class.
+	 */
+	private BitSet predefinedClass(char c) {
+		switch(c) {
+		case 'd':
+			return DIGIT;
+		case 'D':
+			return complement(DIGIT);
+		case 'w':
+			return WORD;
+		case 'W':
+			return complement(WORD);
+		case 's':
+			return SPACE;
+		case 'S':
+			return complement(SPACE);
+		case 'h':
+			return SPACE;
+		case 'p':
+		case 'P':
+			// \p{..} properties are approximated by letters
+			if(more() && peek() == '{') {
+				int close = regex.indexOf('}', pos);
+				pos = (close < 0)? regex.length() : close + 1;
+			} else if(more()) pos++;
+			BitSet letters = range('a', 'z');
+			letters.or(range('A', 'Z'));
+			return (c == 'p')? letters : DIGIT;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Parse character class, the opening '[' already consumed.
+	 * @return BitSet of characters in the class.
+	 */
+	private BitSet parseClass() {
+		boolean negate = false;
+		if(more() && peek() == '^') {
+			negate = true;
+			pos++;
+		}
+		BitSet set = new BitSet();
+		boolean first = true;
+		while(true) {
+			if(!more()) throw error("unclosed '['");
+			char c = regex.charAt(pos++);
+			if(c == ']' && !first) break;
+			first = false;
+			if(c == '[') { // union with nested class
+				set.or(parseClass());
+				continue;
+			}
+			if(c == '&' && more() && peek() == '&') { // intersection
+				pos++;
+				BitSet other;
+				if(more() && peek() == '[') {
+					pos++;
+					other = parseClass();
+				} else other = parseClassRest();
+				set.and(other);
+				continue;
+			}
+			int lo;
+			if(c == '\\') {
+				if(!more()) throw error("trailing '\\'");
+				char e = regex.charAt(pos++);
+				BitSet predefined = predefinedClass(e);
+				if(predefined != null) {
+					set.or(predefined);
+					continue;
+				}
+				lo = escapedChar(e);
+			} else lo = c;
+			if(more() && peek() == '-' && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+				pos++;
+				char h = regex.charAt(pos++);
+				int hi = (h == '\\')? escapedChar(regex.charAt(pos++)) : h;
+				if(hi < lo) throw error("bad class range");
+				set.set(lo, hi + 1);
+			} else set.set(lo);
+		}
+		return negate? complement(set) : set;
+	}
+
+	/**
+	 * Parse the rest of a character class after '&&' as a class of its own, up to but excluding the closing ']'.
+	 * @return BitSet
+	 */
+	private BitSet parseClassRest() {
+		int start = pos;
+		int depth = 0;
+		while(more()) {
+			char c = peek();
+			if(c == '\\') pos++;
+			else if(c == '[') depth++;
+			else if(c == ']') {
+				if(depth == 0) break;
+				depth--;
+			}
+			pos++;
+		}
+		String rest = regex.substring(start, pos);
+		return new RegexSampler("[" + rest + "]").firstClass();
+	}
+
+	/**
+	 * Get character class of a sampler parsed from a single class expression.
+	 * @return BitSet
+	 */
+	private BitSet firstClass() {
+		pos = 1;
+		return parseClass();
+	}
+
+	private static Node literal(char c) {
+		return new Literal(String.valueOf(c));
+	}
+
+	private Node charClass(BitSet set) {
+		int n = set.cardinality();
+		if(n == 0) throw error("empty character class");
+		char[] chars = new char[n];
+		for(int i = set.nextSetBit(0), j = 0; i >= 0; i = set.nextSetBit(i + 1)) chars[j++] = (char) i;
+		if(n == 1) return literal(chars[0]);
+		return (rnd, sb) -> sb.append(chars[rnd.nextInt(chars.length)]);
+	}
+
+	private static BitSet range(int lo, int hi) {
+		BitSet set = new BitSet();
+		set.set(lo, hi + 1);
+		return set;
+	}
+
+	private static BitSet chars(String s) {
+		BitSet set = new BitSet();
+		for(int i = 0; i < s.length(); i++) set.set(s.charAt(i));
+		return set;
+	}
+
+	private static BitSet word() {
+		BitSet set = range('a', 'z');
+		set.or(range('A', 'Z'));
+		set.or(DIGIT);
+		set.set('_');
+		return set;
+	}
+
+	private static BitSet complement(BitSet set) {
+		BitSet c = (BitSet) PRINTABLE.clone();
+		c.andNot(set);
+		return c;
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.dadfha.lod.csv;
+
+/**
+ * A CSV row cursor on a shared row stream which can go back to any row read since its last mark.
+ *
+ * Trial-and-error matching of schema tables needs to go back to the milestone row after a failed trial,
+ * and the probe-then-materialize matching needs to replay the rows of a matched table. Instead of
+ * re-creating the parser and skipping lines from the beginning of the file every time, the processor
+ * seeks the cursor back within the rows held by the stream.
+ *
+ * Row index of the cursor is the same as CSV row counting of the processor, i.e. the number of records
+ * returned by the parser (skipped blank rows and comments are not counted).
+ *
+ * A cursor is obtained from SharedRowStream.openCursor() and is meant to be used by one thread at a time.
+ *
+ * @author Wirawit
+ */
+public class RowCursor {
+
+	/**
+	 * The row stream this cursor reads from.
+	 */
+	private final SharedRowStream stream;
+
+	/**
+	 * Row index of the next row to be returned. Guarded by the stream.
+	 */
+	int pos = 0;
+
+	/**
+	 * Row index of the last mark. Guarded by the stream.
+	 */
+	int mark = 0;
+
+	/**
+	 * Whether the cursor has read any row. Guarded by the stream.
+	 */
+	boolean started = false;
+
+	/**
+	 * Whether the cursor has been closed. Guarded by the stream.
+	 */
+	boolean closed = false;
+
+	/**
+	 * Constructor.
+	 * @param stream
+	 */
+	RowCursor(SharedRowStream stream) {
+		this.stream = stream;
+	}
+
+	/**
+	 * Get next CSV row.
+	 * @return String[] of the row's values or null if there is no more row.
+	 * @throws InterruptedException if the thread is interrupted while waiting for other cursors of the stream.
+	 */
+	public String[] next() throws InterruptedException {
+		return stream.next(this);
+	}
+
+	/**
+	 * Check if there is another CSV row without moving the cursor.
+	 * @return boolean
+	 * @throws InterruptedException if the thread is interrupted while waiting for other cursors of the stream.
+	 */
+	public boolean hasNext() throws InterruptedException {
+		int row = getPosition();
+		if(next() == null) return false;
+		seek(row);
+		return true;
+	}
+
+	/**
+	 * Get row index of the next row to be returned.
+	 * @return int
+	 */
+	public int getPosition() {
+		synchronized(stream) {
+			return pos;
+		}
+	}
+
+	/**
+	 * Move the cursor to a row that has been read since the last mark, or the row right after them.
+	 * @param row the row index.
+	 */
+	public void seek(int row) {
+		stream.seek(this, row);
+	}
+
+	/**
+	 * Mark the current position. Rows before it can no longer be sought.
+	 */
+	public void mark() {
+		stream.mark(this);
+	}
+
+	/**
+	 * Close the cursor so that the stream no longer holds rows for it.
+	 */
+	public void close() {
+		stream.close(this);
+	}
+
+}
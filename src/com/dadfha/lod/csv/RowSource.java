@@ -0,0 +1,22 @@
+package com.dadfha.lod.csv;
+
+/**
+ * Source of CSV rows tokenized apart from the thread reading them, e.g. on other threads.
+ *
+ * @author Wirawit
+ */
+interface RowSource {
+
+	/**
+	 * Get next CSV row.
+	 * @return String[] of the row's values or null if there is no more row.
+	 * @throws InterruptedException if the thread is interrupted while waiting for a row.
+	 */
+	String[] next() throws InterruptedException;
+
+	/**
+	 * Stop tokenizing and release the resources of the source.
+	 */
+	void stop();
+
+}
@@ -1,14 +1,24 @@
 package com.dadfha.lod.csv;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
+import com.dadfha.lod.JsonLdWriter;
 import com.dadfha.lod.LodHelper;
+import com.dadfha.lod.NTriplesWriter;
 
 /**
  * A CSV-X schema are metadata describing unique syntactic, structural, contextual, and semantic information 
@@ -19,9 +29,13 @@ import com.dadfha.lod.LodHelper;
  * By giving each table a name via '@name' meta property one can give parser a hint through CSV comment annotation 
  * to reduce trial-n-errors, hence increase parsing performance.
  *     
+ * A schema is Serializable so that a loaded schema can be cached in binary form (see SchemaCache).
+ *     
  * @author Wirawit
  */
-public class Schema {
+public class Schema implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * CSV-X namespace.
@@ -33,6 +47,16 @@ public class Schema {
 	 */
 	public static final String NS_PREFIX = "csvx";
 	
+	/**
+	 * Namespace IRI the CSV-X prefix stands for in RDF output, i.e. csvx:value is NS#value.
+	 */
+	public static final String NS_PREFIX_IRI = NS + "#";
+	
+	/**
+	 * Prefix of base IRI minted from the schema ID, see getAbsoluteBase().
+	 */
+	public static final String MINTED_BASE_PREFIX = "urn:" + NS_PREFIX + ":";
+	
 	/**
 	 * User-defined namespace prefixes.
 	 */
@@ -116,7 +140,13 @@ public class Schema {
 	 * 
 	 * The schema keeps the collection as map between SERE and Function class.
 	 */
-	private Map<String, Function<String, Object>> userFuncs = new HashMap<String, Function<String, Object>>();
+	private transient Map<String, Function<String, Object>> userFuncs = new HashMap<String, Function<String, Object>>();
+	
+	/**
+	 * Metrics of the processor creating this data schema, or null. 
+	 * Output generation from the data schema accumulates into it.
+	 */
+	private transient volatile ProcessingMetrics metrics;
 	
 	/**
 	 * Schema template collection.
@@ -131,12 +161,17 @@ public class Schema {
 	/**
 	 * Map between ?varname in template(s) and UUID for this Schema.
 	 */
-	private Map<String, UUID> ttlVars = new HashMap<String, UUID>();
+	private Map<String, UUID> ttlVars = new ConcurrentHashMap<String, UUID>();
 	
 	/**
 	 * Remember lastly generated UUID to check for possible duplicate generation.
 	 */
-	private UUID lastUUID;
+	private final AtomicReference<UUID> lastUUID = new AtomicReference<UUID>();
+	
+	/**
+	 * Whether the schema has been frozen.
+	 */
+	private volatile boolean frozen = false;
 	
 	/**
 	 * Set base (IRI) for the whole schema. Existing value will be overwritten.
@@ -156,6 +191,35 @@ public class Schema {
 		return base;
 	}
 	
+	/**
+	 * Get base IRI for an output without base declaration, e.g. N-Triples, whose IRIs must all be absolute.
+	 * Without @base, it's the schema ID if that's an absolute IRI, or a "urn:csvx:" IRI minted from the schema ID 
+	 * otherwise, so that relative IRIs of the same schema are always resolved the same way.
+	 * @return String or empty String "" if there's neither base nor ID.
+	 */
+	public String getAbsoluteBase() {
+		String base = getBase();
+		String id = (String) properties.get(SchemaProcessor.METAPROP_ID);
+		if(!base.isEmpty() || id == null) return base;
+		if(id.matches("[a-zA-Z][a-zA-Z0-9+.-]*:.+")) return id;
+		StringBuilder sb = new StringBuilder(MINTED_BASE_PREFIX);
+		for(byte b : id.getBytes(StandardCharsets.UTF_8)) {
+			char c = (char) (b & 0xFF);
+			if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || "-._~".indexOf(c) != -1) sb.append(c);
+			else sb.append('%').append(String.format("%02X", (int) c));
+		}
+		return sb.append('/').toString();
+	}
+	
+	/**
+	 * Get IRI naming the graph of the statements of this schema, e.g. the graph of N-Quads by default.
+	 * @return String the schema ID if it's an absolute IRI, otherwise getAbsoluteBase().
+	 */
+	public String getGraphIri() {
+		String id = (String) properties.get(SchemaProcessor.METAPROP_ID);
+		return (id != null && id.matches("[a-zA-Z][a-zA-Z0-9+.-]*:.+"))? id : getAbsoluteBase();
+	}
+	
 	/**
 	 * Get the collection for all namespace prefixes.
 	 * @return
@@ -173,6 +237,60 @@ public class Schema {
 		this.prefixes.putAll(prefixes);
 	}
 	
+	/**
+	 * Freeze the schema, making it and all of its schema entities unmodifiable so that it can be shared 
+	 * between threads. A schema loaded by SchemaProcessor is frozen and only serves as a blueprint, 
+	 * while data schema created from it with createDataObject() stays modifiable. 
+	 * Any attempt to modify a frozen schema results in UnsupportedOperationException. 
+	 * Template variables are not part of the schema definition and can still be registered.
+	 */
+	public synchronized void freeze() {
+		if(frozen) return;
+		for(SchemaTable sTable : sTables.values()) sTable.freeze();
+		for(SchemaTemplate tmp : sTemplates.values()) tmp.freeze();
+		for(SchemaFunction func : sFuncs.values()) func.freeze();
+		prefixes = Collections.unmodifiableMap(prefixes);
+		sTables = Collections.unmodifiableMap(sTables);
+		targetCsvs = Collections.unmodifiableList(targetCsvs);
+		properties = Collections.unmodifiableMap(properties);
+		userFuncs = Collections.unmodifiableMap(userFuncs);
+		sTemplates = Collections.unmodifiableMap(sTemplates);
+		sFuncs = Collections.unmodifiableMap(sFuncs);
+		frozen = true;
+	}
+	
+	/**
+	 * Check whether the schema has been frozen.
+	 * @return boolean
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
+	/**
+	 * Get metrics of the processor creating this data schema.
+	 * @return ProcessingMetrics or null if the schema isn't created by a processor.
+	 */
+	public ProcessingMetrics getMetrics() {
+		return metrics;
+	}
+	
+	void setMetrics(ProcessingMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Restore transient fields after deserialization. User-defined functions are not serializable 
+	 * and must be registered again, if any.
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		userFuncs = (frozen)? Collections.<String, Function<String, Object>>emptyMap() : new HashMap<String, Function<String, Object>>();
+	}
+	
 	/**
 	 * Create data schema to hold actual data table(s).
 	 * Every attributes in original schema will be copied to this new data schema 
@@ -281,13 +399,14 @@ public class Schema {
 	
 	/**
 	 * Get default schema table. One will be created and registered if it hasn't been done yet.
+	 * For a frozen schema without default table, an empty one is returned without registering.
 	 * @return SchemaTable
 	 */
 	public SchemaTable getDefaultTable() {
 		SchemaTable sTable;
 		if((sTable = sTables.get(DEFAULT_TABLE_NAME)) == null) {
 			sTable = new SchemaTable(DEFAULT_TABLE_NAME, this);
-			sTables.put(DEFAULT_TABLE_NAME, sTable);
+			if(!frozen) sTables.put(DEFAULT_TABLE_NAME, sTable);
 		}
 		return sTable;
 	}
@@ -351,13 +470,8 @@ public class Schema {
 	 * @return newly generated UID of varName or existing one if the name has been added before. 
 	 */
 	public UUID addGlobalTemplateVar(String varName) {
-		if(ttlVars.containsKey(varName)) { // get previously generated UID
-			return ttlVars.get(varName);
-		} else { // or generate new UID
-			UUID id = generateSchemaUID();
-			ttlVars.put(varName, id);
-			return id; 
-		}
+		// get previously generated UID or generate new one, atomically
+		return ttlVars.computeIfAbsent(varName, k -> generateSchemaUID());
 	}
 	
 	/**
@@ -367,10 +481,11 @@ public class Schema {
 	 * @return UUID
 	 */
 	public UUID generateSchemaUID() {
-		UUID id;
+		UUID id, last;
 		do {
+			last = lastUUID.get();
 			id = UUID.randomUUID();								
-		} while(id.equals(lastUUID));		
+		} while(id.equals(last) || !lastUUID.compareAndSet(last, id));		
 		return id;
 	}
 	
@@ -398,57 +513,201 @@ public class Schema {
 	 */
 	public String serializeTtl() throws Exception {
 		StringBuilder ttl = new StringBuilder();
+		appendTtlHeader(ttl);
+		
+		for(Map.Entry<String, SchemaTable> tableE : sTables.entrySet()) {
+			appendTtl(tableE.getValue(), ttl);
+		} // end for each schema table
+		
+		// TODO in v1.x also serialize each @template & @function
 		
-		// declare base & prefixes
+		if(metrics != null) metrics.output(ttl.length());
+		return ttl.toString();
+	}
+	
+	/**
+	 * Serialize into RDF Turtle format, serializing data tables in segments of rows on an executor. 
+	 * The result is the same as serializeTtl().
+	 * @param executor executor serializing the segments or null to serialize on the calling thread.
+	 * @return
+	 * @throws Exception
+	 */
+	public String serializeTtl(ExecutorService executor) throws Exception {
+		if(executor == null) return serializeTtl();
+		StringBuilder ttl = new StringBuilder();
+		appendTtlHeader(ttl);
+		TableSerializer.append(sTables.values(), TTL_SEGMENTS, ttl, executor);
+		if(metrics != null) metrics.output(ttl.length());
+		return ttl.toString();
+	}
+	
+	/**
+	 * Write RDF Turtle to an output as the data tables are serialized, rather than building the whole string 
+	 * first as serializeTtl() does. The output is the same as serializeTtl().
+	 * @param out
+	 * @param executor executor serializing the segments or null to serialize on the calling thread.
+	 * @throws Exception
+	 */
+	public void writeTtl(Appendable out, ExecutorService executor) throws Exception {
+		SchemaProcessor.CountingAppendable counting = new SchemaProcessor.CountingAppendable(out);
+		try {
+			appendTtlHeader(counting);
+			if(executor != null) {
+				TableSerializer.append(sTables.values(), TTL_SEGMENTS, counting, executor);
+			} else {
+				for(SchemaTable sTable : sTables.values()) TableSerializer.append(sTable, TTL_SEGMENTS, counting);
+			}
+		} finally {
+			if(metrics != null) metrics.output(counting.count);
+		}
+	}
+	
+	/**
+	 * Write RDF N-Triples, or N-Quads when a graph is given, serializing data tables in segments of rows 
+	 * on an executor. Every statement is a line of its own with IRIs resolved against getAbsoluteBase(), so unlike 
+	 * Turtle there's neither base nor prefix declaration, and the output can be split at any line.
+	 * @param out
+	 * @param graph IRI of the graph of every statement, e.g. getGraphIri(), or null to write N-Triples. 
+	 * A relative IRI is resolved against the base IRI.
+	 * @param executor executor serializing the segments or null to serialize on the calling thread.
+	 * @throws Exception
+	 * @throws IllegalArgumentException if @base isn't absolute, or there's neither @base nor ID.
+	 */
+	public void writeNTriples(Appendable out, String graph, ExecutorService executor) throws Exception {
+		SchemaProcessor.CountingAppendable counting = new SchemaProcessor.CountingAppendable(out);
+		NTriplesWriter nt = new NTriplesWriter(counting, getAbsoluteBase(), getNsPrefixes(), graph);
+		TableSerializer.SegmentWriter writer = new EntitySegments((se, o) -> se.emitTriples(nt.to(o)));
+		try {
+			if(executor != null) {
+				TableSerializer.append(sTables.values(), writer, counting, executor);
+			} else {
+				for(SchemaTable sTable : sTables.values()) TableSerializer.append(sTable, writer, counting);
+			}
+		} finally {
+			if(metrics != null) metrics.output(counting.count);
+		}
+	}
+	
+	/**
+	 * Write JSON-LD, a node object for each schema entity, streamed to the output. A JSON-LD document has 
+	 * the base IRI and namespace prefixes as its context and the nodes in its graph. Newline-delimited JSON 
+	 * has a node with IRIs resolved against getAbsoluteBase() per line, so its data tables can be serialized 
+	 * in segments of rows on an executor, like N-Triples.
+	 * @param out
+	 * @param lines whether to write newline-delimited JSON rather than a JSON-LD document.
+	 * @param executor executor serializing the segments of newline-delimited JSON or null to serialize 
+	 * on the calling thread. A JSON-LD document is always serialized on the calling thread.
+	 * @throws Exception
+	 */
+	public void writeJsonLd(Appendable out, boolean lines, ExecutorService executor) throws Exception {
+		SchemaProcessor.CountingAppendable counting = new SchemaProcessor.CountingAppendable(out);
+		JsonLdWriter json = new JsonLdWriter(counting, lines? getAbsoluteBase() : getBase(), getNsPrefixes(), lines);
+		try {
+			if(lines && executor != null) {
+				TableSerializer.append(sTables.values(), new EntitySegments((se, o) -> {
+					JsonLdWriter w = json.to(o);
+					se.emitTriples(w);
+					w.endNode();
+				}), counting, executor);
+			} else {
+				TableSerializer.SegmentWriter writer = new EntitySegments((se, o) -> {
+					se.emitTriples(json);
+					json.endNode();
+				});
+				json.startDocument();
+				for(SchemaTable sTable : sTables.values()) TableSerializer.append(sTable, writer, counting);
+				json.endDocument();
+			}
+		} finally {
+			if(metrics != null) metrics.output(counting.count);
+		}
+	}
+	
+	/**
+	 * Append base and prefixes declaration of Turtle serialization. The CSV-X prefix used by the statements 
+	 * of schema entities is declared unless the schema declares it itself.
+	 * @param ttl
+	 * @throws IOException
+	 */
+	void appendTtlHeader(Appendable ttl) throws IOException {
 		String base = getBase();
 		if(!base.isEmpty()) {
 			assert(LodHelper.isURL(base)) : "@base must be in the IRI form.";
 			ttl.append("BASE <" + base + ">" + System.lineSeparator());
 		}
+		if(!getNsPrefixes().containsKey(NS_PREFIX)) ttl.append("PREFIX " + NS_PREFIX + ": <" + NS_PREFIX_IRI + ">" + System.lineSeparator());
 		for(Map.Entry<String, String> e : getNsPrefixes().entrySet()) {
 			String prefixName = e.getKey();
 			String prefixIri = e.getValue();
 			ttl.append("PREFIX " + prefixName + ": <" + prefixIri + ">" + System.lineSeparator());
 		}
+	}
+	
+	/**
+	 * Append Turtle serialization of a schema table with its rows, cells, cell ranges, properties and data.
+	 * @param sTable
+	 * @param ttl
+	 * @throws Exception
+	 */
+	static void appendTtl(SchemaTable sTable, StringBuilder ttl) throws Exception {
+		TableSerializer.append(sTable, TTL_SEGMENTS, ttl);
+	}
+	
+	/**
+	 * Turtle serialization of the parts of a schema table.
+	 */
+	private static final TableSerializer.SegmentWriter TTL_SEGMENTS = new EntitySegments((se, ttl) -> ttl.append(se.getTtl()));
+	
+	/**
+	 * Serialization of an entity to an output.
+	 */
+	private interface EntityWriter {
+		void append(SchemaEntity se, Appendable out) throws Exception;
+	}
+	
+	/**
+	 * Serialization of the parts of a schema table, entity by entity.
+	 */
+	private static final class EntitySegments implements TableSerializer.SegmentWriter {
+		
+		private final EntityWriter writer;
+		
+		EntitySegments(EntityWriter writer) {
+			this.writer = writer;
+		}
 		
-		for(Map.Entry<String, SchemaTable> tableE : sTables.entrySet()) {
-			String tableName = tableE.getKey();
-			SchemaTable sTable = tableE.getValue();			
-			ttl.append(sTable.getTtl());			
+		@Override
+		public void appendHead(SchemaTable sTable, Appendable out) throws Exception {
+			writer.append(sTable, out);
+		}
+		
+		@Override
+		public void appendRow(SchemaRow sRow, Appendable out) throws Exception {
+			writer.append(sRow, out);
 			
-			// for every row
-			for(Map.Entry<Integer, SchemaRow> rowE : sTable.getSchemaRows().entrySet()) {
-				Integer rowNum = rowE.getKey();
-				SchemaRow sRow = rowE.getValue();				
-				ttl.append(sRow.getTtl());
-				
-				// for every cell
-				for(Map.Entry<Integer, SchemaCell> cellE : sRow.getSchemaCells().entrySet()) {
-					Integer colNum = cellE.getKey();
-					SchemaCell sCell = cellE.getValue();
-					ttl.append(sCell.getTtl());
-				}
+			// for every cell
+			for(Map.Entry<Integer, SchemaCell> cellE : sRow.getSchemaCells().entrySet()) {
+				writer.append(cellE.getValue(), out);
+			}
+		}
+		
+		@Override
+		public void appendTail(SchemaTable sTable, Appendable out) throws Exception {
+			// for every cell range
+			for(SchemaCell range : sTable.getCellRanges()) {
+				writer.append(range, out);
 			}
 			
 			// for every schema property
 			for(Map.Entry<String, SchemaProperty> propE : sTable.getSchemaProperties().entrySet()) {
-				String propName = propE.getKey();
-				SchemaProperty sProp = propE.getValue();
-				ttl.append(sProp.getTtl());
+				writer.append(propE.getValue(), out);
 			}
 			
 			// for every schema data
 			for(Map.Entry<String, SchemaData> dataE : sTable.getSchemaDataMap().entrySet()) {
-				String dataName = dataE.getKey();
-				SchemaData sData = dataE.getValue();
-				ttl.append(sData.getTtl());
+				writer.append(dataE.getValue(), out);
 			}
-			
-		} // end for each schema table
-		
-		// TODO in v1.x also serialize each @template & @function
-		
-		return ttl.toString();
+		}
 	}
 	
 }
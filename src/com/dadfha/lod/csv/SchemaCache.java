@@ -0,0 +1,213 @@
+package com.dadfha.lod.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A directory of loaded schemas in binary form, to skip reading, minifying, and parsing of CSV-X JSON
+ * when the same schema file is loaded again.
+ *
+ * An entry is keyed by SHA-256 hash of the cache version, the schema file name (used as default '@id'),
+ * and the file content. A changed schema file thus never hits a stale entry, and bumping CACHE_VERSION
+ * whenever the schema model classes change invalidates all existing entries. An unreadable entry is treated
+ * as a cache miss and removed.
+ *
+ * Only frozen schemas are cached. User-defined functions are not part of the cached form. An entry is read
+ * resolving only classes of the schema model and the java.* classes it's made of (see isAllowedClass()), so that
+ * a tampered entry can't make the processor instantiate anything else.
+ *
+ * @author Wirawit
+ */
+public class SchemaCache {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	/**
+	 * Version of the cached form. Bump this whenever serialized form of the schema model changes.
+	 */
+	public static final String CACHE_VERSION = "csvx-schema-cache-3";
+
+	/**
+	 * Extension of cache entry files.
+	 */
+	public static final String ENTRY_EXT = ".schema";
+
+	/**
+	 * Size of stream buffer.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Classes outside com.dadfha.lod.csv a cached schema may be made of: property values, collections and 
+	 * the locks of ConcurrentHashMap's serialized form.
+	 */
+	private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(
+			"java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Double", "java.lang.Enum", 
+			"java.lang.Float", "java.lang.Integer", "java.lang.Long", "java.lang.Number", "java.lang.Object", 
+			"java.lang.Short", "java.lang.String", "java.math.BigDecimal", "java.math.BigInteger", 
+			"java.util.ArrayList", "java.util.Arrays$ArrayList", "java.util.HashMap", "java.util.HashSet", 
+			"java.util.LinkedHashMap", "java.util.LinkedHashSet", "java.util.LinkedList", "java.util.TreeMap", 
+			"java.util.TreeSet", "java.util.UUID", "java.util.regex.Pattern", 
+			"java.util.concurrent.ConcurrentHashMap", "java.util.concurrent.ConcurrentHashMap$Segment", 
+			"java.util.concurrent.atomic.AtomicInteger", "java.util.concurrent.atomic.AtomicLong", 
+			"java.util.concurrent.atomic.AtomicReference", "java.util.concurrent.locks.AbstractOwnableSynchronizer", 
+			"java.util.concurrent.locks.AbstractQueuedSynchronizer", "java.util.concurrent.locks.ReentrantLock", 
+			"java.util.concurrent.locks.ReentrantLock$Sync", "java.util.concurrent.locks.ReentrantLock$NonfairSync"));
+
+	/**
+	 * Package of the schema model.
+	 */
+	private static final String MODEL_PACKAGE = SchemaCache.class.getPackage().getName() + ".";
+
+	/**
+	 * The cache directory.
+	 */
+	private final Path dir;
+
+	/**
+	 * Constructor.
+	 * @param dir the cache directory, created if it doesn't exist.
+	 * @throws IOException if the directory can't be created.
+	 */
+	public SchemaCache(Path dir) throws IOException {
+		if(dir == null) throw new IllegalArgumentException("dir must not be null.");
+		this.dir = Files.createDirectories(dir);
+	}
+
+	/**
+	 * Get cached schema of a schema file.
+	 * @param fileName name of the schema file.
+	 * @param source content of the schema file.
+	 * @return Schema or null if it isn't cached.
+	 */
+	public Schema get(String fileName, byte[] source) {
+		Path entry = getEntryPath(fileName, source);
+		if(!Files.isRegularFile(entry)) return null;
+		try(ObjectInputStream in = new SchemaInputStream(new BufferedInputStream(Files.newInputStream(entry), BUFFER_SIZE))) {
+			Schema s = (Schema) in.readObject();
+			logger.debug("Schema {} is loaded from cache {}", s, entry);
+			return s;
+		} catch(IOException | ClassNotFoundException | ClassCastException e) {
+			logger.warn("Unable to read schema cache {}, it will be removed: {}", entry, e);
+			try {
+				Files.deleteIfExists(entry);
+			} catch(IOException ignored) {
+				// leave it, it'll be overwritten
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Put a schema into the cache. Failure to write the cache is logged and otherwise ignored.
+	 * @param fileName name of the schema file.
+	 * @param source content of the schema file.
+	 * @param s the schema loaded from the source, must be frozen.
+	 */
+	public void put(String fileName, byte[] source, Schema s) {
+		if(!s.isFrozen()) throw new IllegalArgumentException("Only frozen schema can be cached: " + s);
+		Path entry = getEntryPath(fileName, source);
+		Path tmp = null;
+		try {
+			// write to a temporary file first, so that a concurrent reader never sees a partial entry
+			tmp = Files.createTempFile(dir, "tmp-", ENTRY_EXT);
+			try(ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE))) {
+				out.writeObject(s);
+			}
+			Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			tmp = null;
+		} catch(IOException e) {
+			logger.warn("Unable to write schema cache {}: {}", entry, e);
+		} finally {
+			if(tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch(IOException ignored) {
+					// nothing more to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check if a class may be read from a cache entry, i.e. it's a class of the schema model, one of ALLOWED_CLASSES 
+	 * or the unmodifiable and empty collections of java.util.Collections, or an array of them or of a primitive type.
+	 * @param className name of the class as in its serialized form, e.g. "[Ljava.lang.Object;" for an array.
+	 * @return boolean
+	 */
+	static boolean isAllowedClass(String className) {
+		String name = className;
+		if(name.startsWith("[")) {
+			while(name.startsWith("[")) name = name.substring(1);
+			if(name.length() == 1) return true;
+			if(!name.startsWith("L") || !name.endsWith(";")) return false;
+			name = name.substring(1, name.length() - 1);
+		}
+		if(name.startsWith(MODEL_PACKAGE)) return name.indexOf('.', MODEL_PACKAGE.length()) == -1;
+		if(name.startsWith("java.util.Collections$")) return name.startsWith("java.util.Collections$Unmodifiable") || name.startsWith("java.util.Collections$Empty");
+		return ALLOWED_CLASSES.contains(name);
+	}
+
+	/**
+	 * Object input stream resolving only classes allowed by isAllowedClass().
+	 */
+	private static class SchemaInputStream extends ObjectInputStream {
+
+		SchemaInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			if(!isAllowedClass(desc.getName())) throw new InvalidClassException(desc.getName(), "Class isn't allowed in a schema cache entry.");
+			return super.resolveClass(desc);
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+			throw new InvalidClassException(Arrays.toString(interfaces), "Proxy class isn't allowed in a schema cache entry.");
+		}
+	}
+
+	/**
+	 * Get path of the cache entry for a schema file.
+	 * @param fileName
+	 * @param source
+	 * @return Path
+	 */
+	private Path getEntryPath(String fileName, byte[] source) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required by every Java platform.", e);
+		}
+		md.update(CACHE_VERSION.getBytes(StandardCharsets.UTF_8));
+		md.update((byte) 0);
+		md.update(fileName.getBytes(StandardCharsets.UTF_8));
+		md.update((byte) 0);
+		byte[] hash = md.digest(source);
+		StringBuilder sb = new StringBuilder(hash.length * 2 + ENTRY_EXT.length());
+		for(byte b : hash) sb.append(String.format("%02x", b));
+		return dir.resolve(sb.append(ENTRY_EXT).toString());
+	}
+
+}
@@ -1,8 +1,13 @@
 package com.dadfha.lod.csv;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class SchemaCell extends SchemaEntity {	
+
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * Class IRI for schema cell.
@@ -34,6 +39,26 @@ public class SchemaCell extends SchemaEntity {
 	 */
 	private int col;
 	
+	/**
+	 * Last row of a cell range, equals to row for a single cell.
+	 */
+	private int rowEnd;
+	
+	/**
+	 * Last column of a cell range, equals to col for a single cell.
+	 */
+	private int colEnd;
+	
+	/**
+	 * Compiled '@regex' of this cell, compiled on first validation.
+	 */
+	private transient volatile Pattern regExPattern;
+	
+	/**
+	 * Matcher of regExPattern per validating thread, reset for every value.
+	 */
+	private transient volatile ThreadLocal<Matcher> regExMatcher;
+	
 //	/**
 //	 * Copy constructor.
 //	 * @param c
@@ -53,8 +78,23 @@ public class SchemaCell extends SchemaEntity {
 	 * @param sTable
 	 */
 	public SchemaCell(int row, int col, SchemaTable sTable) {
+		this(row, col, row, col, sTable);
+	}
+	
+	/**
+	 * Create cell range, i.e. one cell definition shared by every cell in rectangular area [row-rowEnd, col-colEnd].
+	 * @param row first row.
+	 * @param col first column.
+	 * @param rowEnd last row.
+	 * @param colEnd last column.
+	 * @param sTable
+	 */
+	public SchemaCell(int row, int col, int rowEnd, int colEnd, SchemaTable sTable) {
+		if(rowEnd < row || colEnd < col) throw new IllegalArgumentException("Illegal cell range: [" + row + "-" + rowEnd + "," + col + "-" + colEnd + "]");
 		this.row = row;
 		this.col = col;
+		this.rowEnd = rowEnd;
+		this.colEnd = colEnd;
 		parentTable = sTable;
 	}
 	
@@ -81,7 +121,11 @@ public class SchemaCell extends SchemaEntity {
 	 */
 	public static SchemaCell createDataObject(SchemaCell schemaCell, int dataRow, int dataCol, SchemaTable parentDataTable, String value) {
 		SchemaCell dataCell = new SchemaCell(dataRow, dataCol, parentDataTable); 
-		dataCell.properties.putAll(schemaCell.properties);
+		// sized as putAll() would, so the properties iterate (and serialize) in the same order as a copy 
+		// made by putAll(), but forEach() walks them without the entry wrappers of an unmodifiable map
+		Map<String, String> props = new HashMap<String, String>((int) (schemaCell.properties.size() / 0.75f + 1.0f));
+		schemaCell.properties.forEach(props::put);
+		dataCell.properties = props;
 		if(value != null) dataCell.setValue(value);
 		return dataCell;
 	}
@@ -91,6 +135,7 @@ public class SchemaCell extends SchemaEntity {
 	}
 
 	public void setRow(int row) {
+		rowEnd += row - this.row;
 		this.row = row;
 	}
 	
@@ -107,9 +152,77 @@ public class SchemaCell extends SchemaEntity {
 	}
 
 	public void setCol(int col) {
+		colEnd += col - this.col;
 		this.col = col;
 	}
 	
+	public int getRowEnd() {
+		return rowEnd;
+	}
+	
+	public int getColEnd() {
+		return colEnd;
+	}
+	
+	/**
+	 * Check if this cell definition covers more than one cell.
+	 * @return boolean
+	 */
+	public boolean isRange() {
+		return (rowEnd != row || colEnd != col);
+	}
+	
+	/**
+	 * Check if this cell definition covers a cell.
+	 * @param r row
+	 * @param c column
+	 * @return boolean
+	 */
+	public boolean covers(int r, int c) {
+		return (r >= row && r <= rowEnd && c >= col && c <= colEnd);
+	}
+	
+	/**
+	 * Get compiled pattern of '@regex' property. The pattern is compiled once and kept with the cell, 
+	 * as it's used for every value validated against the cell.
+	 * @return Pattern or null if '@regex' isn't defined.
+	 */
+	public Pattern getRegExPattern() {
+		String regEx = getRegEx();
+		if(regEx == null) return null;
+		Pattern p = regExPattern;
+		if(p == null || !p.pattern().equals(regEx)) {
+			p = Pattern.compile(regEx, Pattern.DOTALL);
+			regExPattern = p;
+		}
+		return p;
+	}
+	
+	/**
+	 * Get matcher of '@regex' property for a value. The matcher is kept per thread and reset for each value, 
+	 * so it must not be used after the next call on the same thread.
+	 * @param val
+	 * @return Matcher or null if '@regex' isn't defined.
+	 */
+	public Matcher getRegExMatcher(CharSequence val) {
+		Pattern p = getRegExPattern();
+		if(p == null) return null;
+		ThreadLocal<Matcher> matchers = regExMatcher;
+		if(matchers == null) {
+			// a thread losing the race only loses its matcher
+			matchers = new ThreadLocal<Matcher>();
+			regExMatcher = matchers;
+		}
+		Matcher m = matchers.get();
+		if(m == null || m.pattern() != p) {
+			m = p.matcher(val);
+			matchers.set(m);
+		} else {
+			m.reset(val);
+		}
+		return m;
+	}
+	
 	/**
 	 * Check if this is an Empty Cell Schema.
 	 * 
@@ -180,6 +293,8 @@ public class SchemaCell extends SchemaEntity {
 		row = cell.row;
 		subRow = cell.subRow;
 		col = cell.col;
+		rowEnd = cell.rowEnd;
+		colEnd = cell.colEnd;
 		if(parentTable != cell.parentTable) throw new RuntimeException("Cell Schema of different Schema Table cannot be merged.");
 		properties.putAll(cell.properties);
 	}
@@ -197,7 +312,7 @@ public class SchemaCell extends SchemaEntity {
 	 * OPT may be compare performance (e.g. collision %) of this hash vs. eclipse auto-generated
 	 */
 	public int hashCode() {		
-	    int rowTopBits = row &= 0xFF00; 
+	    int rowTopBits = row & 0xFF00; 
 	    int distance = Math.abs(16 - Integer.numberOfLeadingZeros(rowTopBits));
 	    int hash = ( (rowTopBits >>> distance) | (row << 16) ) ^ col;
 	    return hash;
@@ -231,6 +346,7 @@ public class SchemaCell extends SchemaEntity {
 
 	@Override
 	public String getRefEx() {
+		if(isRange()) return parentTable.getRefEx() + ".@cell[" + row + "-" + rowEnd + "," + col + "-" + colEnd + "]";
 		return parentTable.getRefEx() + ".@cell[" + row + "," + col + "]";
 	}
 
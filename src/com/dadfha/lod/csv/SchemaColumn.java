@@ -1,6 +1,8 @@
 package com.dadfha.lod.csv;
 
 public class SchemaColumn extends SchemaEntity {
+
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * Class IRI for schema row.
@@ -9,6 +9,8 @@ package com.dadfha.lod.csv;
  *
  */
 public class SchemaData extends SchemaEntity {
+
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * Class IRI for schema data.
@@ -1,5 +1,7 @@
 package com.dadfha.lod.csv;
 
+import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,8 +9,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.dadfha.lod.LodHelper;
+import com.dadfha.lod.TripleSink;
 
-public abstract class SchemaEntity {
+public abstract class SchemaEntity implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
 	
 	private static final Logger logger = LogManager.getLogger();
 
@@ -172,6 +177,15 @@ public abstract class SchemaEntity {
 		properties = new HashMap<String, String>(se.getProperties());
 	}
 
+	/**
+	 * Make properties of this schema entity unmodifiable. 
+	 * Subclasses holding other collections should override this to freeze them as well.
+	 * This is called by Schema.freeze().
+	 */
+	void freeze() {
+		properties = Collections.unmodifiableMap(properties);
+	}
+
 	/**
 	 * Get parent schema of this schema entity.
 	 * 
@@ -391,8 +405,18 @@ public abstract class SchemaEntity {
 	 * @throws Exception 
 	 */
 	public String getTtl() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		emitTriples((s, p, o, datatype, langCode) -> sb.append(LodHelper.buildTtlTriple(s, p, o, datatype, langCode, true)));
+		return sb.toString();
+	}
+	
+	/**
+	 * Emit the RDF statements of this entity, the same ones serialized by getTtl(), to a triple sink.
+	 * @param sink
+	 * @throws Exception
+	 */
+	public void emitTriples(TripleSink sink) throws Exception {
 		
-		StringBuilder sb = new StringBuilder();		
 		String subject = null, predicate = null, object = null;		
 		Schema parentSchema = getParentSchema();
 		SchemaTable parentTable = getSchemaTable();		
@@ -428,7 +452,7 @@ public abstract class SchemaEntity {
 		}
 		
 		// add node type annotation
-		sb.append(LodHelper.buildTtlTriple(subject, predicate, object, true));
+		sink.triple(subject, predicate, object, null, null);
 		
 		// for each property inside a schema entity
 		for(Map.Entry<String, String> e : properties.entrySet()) {
@@ -485,9 +509,9 @@ public abstract class SchemaEntity {
 					// declare this property type
 					String propId = sProp.getProperty(METAPROP_ID);
 					if(propId != null) {						
-						sb.append(LodHelper.buildTtlTriple(predicate, "rdf:type", propId));
+						sink.triple(predicate, "rdf:type", propId, null, null);
 					} else {					
-						sb.append(LodHelper.buildTtlTriple(predicate, "rdf:type", sProp.getRefEx()));
+						sink.triple(predicate, "rdf:type", sProp.getRefEx(), null, null);
 					}					
 					datatype = sProp.getDatatype();
 					langCode = sProp.getLang();
@@ -510,11 +534,9 @@ public abstract class SchemaEntity {
 			//this.getProperty(propName)
 			
 			// add statement(s) for each property-value pair inside this schema entity
-			sb.append(LodHelper.buildTtlTriple(subject, predicate, object, datatype, langCode, true)); 
+			sink.triple(subject, predicate, object, datatype, langCode); 
 			
 		} // end for each property
-		
-		return sb.toString();
 	}
 
 }
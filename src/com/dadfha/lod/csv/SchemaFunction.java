@@ -1,9 +1,12 @@
 package com.dadfha.lod.csv;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class SchemaFunction extends SchemaEntity {
+
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * IRI for schema function entity.
@@ -74,6 +77,12 @@ public class SchemaFunction extends SchemaEntity {
 		properties.put(METAPROP_FUNC_SCRIPT, script);
 	}
 
+	@Override
+	void freeze() {
+		super.freeze();
+		params = Collections.unmodifiableList(params);
+	}
+
 	@Override
 	public Schema getParentSchema() {
 		return parentSchema;
@@ -1,23 +1,42 @@
 package com.dadfha.lod.csv;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -175,7 +194,13 @@ public class SchemaProcessor {
 	 * Processing mode to ignore error message, creating no log nor print.
 	 */
 	public static final int MODE_IGNORE_ERR_MSG = 0x01;
-	
+
+	/**
+	 * Processing mode to only validate CSV content and check its dimension against schema,
+	 * creating no data object nor registering any variable.
+	 */
+	public static final int MODE_PROBE = 0x02;
+
 	public enum ReturnType {
 		DATA_SCHEMA, TABLE_LIST
 	}
@@ -216,6 +241,9 @@ public class SchemaProcessor {
 	 * number of variables around, it's better to wrap it as one "Context" variable where the states update 
 	 * criteria are fixed and no global access is allowed to prevent false assumption on possibly staled context info.
 	 * 
+	 * A context also serves as the session of a processing call. Every call gets a new one, so that frozen  
+	 * schemas are the only state shared by concurrent calls on the same processor. 
+	 * 
 	 * @author Wirawit
 	 */
 	public final class Context {
@@ -223,22 +251,55 @@ public class SchemaProcessor {
 		SchemaTable currSchemaTable;
 	    /**
 	     * Current * to be processed.
+	     * Counters are primitive so that advancing them in per-cell processing never allocates. 
 	     */
-		Integer currRow = 0, currCol = 0, currSubRow = 0, currSubCol = 0, currSchemaRow = 0, currSchemaCol = 0;
+		int currRow = 0, currCol = 0, currSubRow = 0, currSubCol = 0, currSchemaRow = 0, currSchemaCol = 0;
 		
 		/**
 		 * Current schema row repeating times. 
 		 * TODO remove this var and rely on sRow.getRepeatTimes() instead.
 		 */
-		Integer repeatTimes = 0;
+		int repeatTimes = 0;
 	    /**
 	     * Current milestone row.
 	     */
-	    Integer milestoneRow = 0;
+	    int milestoneRow = 0;
 		String currVal = null;
 		boolean currRowConsumed = true;
 		boolean currCellConsumed = false;
 		String[] currRowData = null;
+		/**
+		 * Whether a matched table is left probed instead of materialized, to measure matching apart from data object creation.
+		 */
+		boolean probeOnly = false;
+		/**
+		 * Rows and cells processed by the passes kept, i.e. materializing the matched tables (or probing them 
+		 * if probeOnly). They're added to the metrics once the CSV matches the schema.
+		 */
+		long rowsProcessed = 0, cellsProcessed = 0;
+		/**
+		 * Handler of each data table as soon as it's materialized, e.g. a serializer stage, or null if none.
+		 */
+		Consumer<SchemaTable> tableHandler = null;
+		/**
+		 * Number of rows matched by each infinite repeating row in the probe phase, keyed by its first CSV row,
+		 * or null if regions are materialized one row after another.
+		 */
+		Map<Integer, RepeatRegion> repeatRegions = null;
+		/**
+		 * Data rows and entities with variable declared, in processing order, to be added to the data table 
+		 * later by the thread stitching chunks of a repeating region, or null to add them right away.
+		 */
+		List<SchemaRow> deferredRows = null;
+		List<SchemaEntity> deferredVars = null;
+		/**
+		 * Scratch buffer reused for literal substitution within the session.
+		 */
+		final StringBuffer scratch = new StringBuffer();
+		/**
+		 * Matcher of context {var} expression reused within the session.
+		 */
+		final Matcher contextVarMatcher = CONTEXT_VAR_PATTERN.matcher("");
 		/**
 		 * Reset context variables needed for parsing in new data table 
 		 * (preserving currRow, milestoneRow, and currSchema).
@@ -255,6 +316,24 @@ public class SchemaProcessor {
 		}
 	}
 	
+	/**
+	 * Region of CSV rows matched by an infinite repeating row.
+	 */
+	private static final class RepeatRegion {
+		final SchemaRow sRow;
+		final int rows;
+		RepeatRegion(SchemaRow sRow, int rows) {
+			this.sRow = sRow;
+			this.rows = rows;
+		}
+	}
+	
+	/**
+	 * Number of rows of a chunk of repeating region materialized by one task. A region is split into chunks only
+	 * if it has at least two of them.
+	 */
+	public static final int REPEATING_ROW_CHUNK_SIZE = 4096;
+	
 	/**
 	 * Parser buffer size in KB unit (multiple of 1024 bytes) for disk IO performance. 
 	 */
@@ -264,41 +343,102 @@ public class SchemaProcessor {
 	 * RegEx for variable expression: {var} and {var.attr} 
 	 */
 	private static final String VAR_REGEX = "(\\{)([@a-zA-Z_$][a-zA-Z0-9_]*)(?:(\\.)([@a-zA-Z_][a-zA-Z0-9_]*))?(\\})";
+	private static final Pattern VAR_PATTERN = Pattern.compile(VAR_REGEX, Pattern.DOTALL);
 	
 	/**
 	 * RegEx for function call expression: func('', '', ..) with possibly escape character \ (backslash) in front.
 	 * Each parameter is separated by ' (single-quote) which can also be escaped using \ (backslash).
 	 */
 	private static final String FUNC_REGEX = "(\\\\)*([a-zA-Z_][a-zA-Z0-9_]*)\\(((?:'(?:\\\\'|[^'])*'\\s*,\\s*)*\\s*(?:'(?:\\\\'|[^'])*'\\s*)*)\\)";
+	private static final Pattern FUNC_PATTERN = Pattern.compile(FUNC_REGEX, Pattern.DOTALL);
 	//private static final String FUNC_REGEX = "(?:(\\\\)|([a-zA-Z_][a-zA-Z0-9_]*)\\(((?:'(?:(?:\\\\'|[^'])*)'\\s*(?:,\\s*|(?=\\))))*))";
 	
 	/**
 	 * RegEx for context variable expression. E.g. {row}, {col}, and {subrow}
 	 */
 	private static final String CONTEXT_VAR_REGEX = "(\\{)(row|col|subrow|subcol)(\\})";
+	private static final Pattern CONTEXT_VAR_PATTERN = Pattern.compile(CONTEXT_VAR_REGEX, Pattern.DOTALL);
 	
 	/**
 	 * RegEx for template variable, e.g. ?x
 	 */
 	private static final String TURTLE_VAR_REGEX = "([\\?\\$])([a-z0-9]+)";
+	private static final Pattern TURTLE_VAR_PATTERN = Pattern.compile(TURTLE_VAR_REGEX, Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 	
 	/**
 	 * Template UID variable expression. E.g. {@uid}, {@uid1}, {@uid7} ..
 	 */
 	private static final String TMPUID_VAR_REGEX = "\\{@uid(\\d*)\\}";
+	private static final Pattern TMPUID_VAR_PATTERN = Pattern.compile(TMPUID_VAR_REGEX, Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
 	
 	// private static String cellRegEx = "(@cell)(\\[)([^,]+?)(,)([^,]+?)(\\])";  // @cell[row, col]
 	
 	/**
 	 * Setting flag whether or not to try all known schemas when parsing csv.
 	 */
-	private boolean tryAllSchemas = false;
+	private volatile boolean tryAllSchemas = false;
+	
+	/**
+	 * Number of threads to try schemas concurrently when the schema for a CSV isn't known.
+	 */
+	private volatile int matchingThreads = 1;
+	
+	/**
+	 * Thread pool trying schemas concurrently, created on first use.
+	 */
+	private ExecutorService matchingPool = null;
+	
+	/**
+	 * Number of threads to materialize large regions of an infinite repeating row in parallel chunks.
+	 */
+	private volatile int repeatingRowThreads = 1;
+	
+	/**
+	 * Fork/join pool materializing chunks of repeating regions, created on first use.
+	 */
+	private ForkJoinPool repeatingRowPool = null;
+	
+	/**
+	 * Number of threads to serialize data tables in parallel segments of rows.
+	 */
+	private volatile int serializingThreads = 1;
+	
+	/**
+	 * Thread pool serializing segments of data tables, created on first use.
+	 */
+	private ExecutorService serializingPool = null;
+	
+	/**
+	 * Number of threads to tokenize a large CSV file in parallel byte ranges.
+	 */
+	private volatile int parsingThreads = 1;
+	
+	/**
+	 * Number of bytes per chunk a CSV file is split into for parallel tokenization.
+	 */
+	private volatile int parsingChunkSize = ParallelTokenizer.DEFAULT_CHUNK_SIZE;
 	
 	/**
 	 * Each processor holds a set of schemas in memory for processing.
+	 * Loaded schemas are frozen, so they can be shared by concurrent processing calls.
 	 * IMP this could be scaled to a persistent repository. 
 	 */
-	private Map<String, Schema> schemas = new HashMap<String, Schema>();
+	private final Map<String, Schema> schemas = new ConcurrentHashMap<String, Schema>();
+	
+	/**
+	 * Index of target CSVs of loaded schemas.
+	 */
+	private final TargetCsvIndex targetCsvIndex = new TargetCsvIndex();
+	
+	/**
+	 * Cache of loaded schemas in binary form or null if not used.
+	 */
+	private volatile SchemaCache schemaCache = null;
+	
+	/**
+	 * Metrics of all processing calls on this processor.
+	 */
+	private final ProcessingMetrics metrics = new ProcessingMetrics();
 	
 	/**
 	 * A list of meta-property to be ignored in function call resolution. 
@@ -334,6 +474,153 @@ public class SchemaProcessor {
 		Configurator.setRootLevel(logLevel);
 	}
 
+	/**
+	 * @return the schemaCache
+	 */
+	public SchemaCache getSchemaCache() {
+		return schemaCache;
+	}
+
+	/**
+	 * Set cache of loaded schemas in binary form. Schema files loaded afterward are read from 
+	 * the cache when their content hasn't changed.
+	 * @param schemaCache the cache or null to disable caching.
+	 */
+	public void setSchemaCache(SchemaCache schemaCache) {
+		this.schemaCache = schemaCache;
+	}
+	
+	/**
+	 * Get metrics of all processing calls on this processor, e.g. to register it through JMX.
+	 * @return ProcessingMetrics
+	 */
+	public ProcessingMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the matchingThreads
+	 */
+	public int getMatchingThreads() {
+		return matchingThreads;
+	}
+
+	/**
+	 * Set number of threads used to try loaded schemas concurrently when the schema for a CSV isn't known. 
+	 * @param matchingThreads the matchingThreads to set, 1 or less means trying schemas one after another.
+	 */
+	public synchronized void setMatchingThreads(int matchingThreads) {
+		if(matchingThreads == this.matchingThreads) return;
+		this.matchingThreads = matchingThreads;
+		if(matchingPool != null) {
+			matchingPool.shutdown();
+			matchingPool = null;
+		}
+	}
+	
+	private synchronized ExecutorService getMatchingPool() {
+		if(matchingPool == null) {
+			AtomicInteger n = new AtomicInteger();
+			matchingPool = Executors.newFixedThreadPool(Math.max(1, matchingThreads), r -> {
+				Thread t = new Thread(r, "csvx-match-" + n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return matchingPool;
+	}
+
+	public int getRepeatingRowThreads() {
+		return repeatingRowThreads;
+	}
+
+	/**
+	 * Set number of threads to materialize large regions of an infinite repeating row. 
+	 * Once a table is matched, the rows of such region are known to be independent of each other but for 
+	 * their {row}/{subrow} numbering, so a region of at least two chunks (REPEATING_ROW_CHUNK_SIZE rows each) 
+	 * is split into chunks materialized in parallel and stitched back in order.
+	 * @param repeatingRowThreads 1 or less means materializing rows one after another.
+	 */
+	public synchronized void setRepeatingRowThreads(int repeatingRowThreads) {
+		if(repeatingRowThreads == this.repeatingRowThreads) return;
+		this.repeatingRowThreads = repeatingRowThreads;
+		if(repeatingRowPool != null) {
+			repeatingRowPool.shutdown();
+			repeatingRowPool = null;
+		}
+	}
+	
+	public int getSerializingThreads() {
+		return serializingThreads;
+	}
+
+	/**
+	 * Set number of threads to serialize data tables with serializeTtl() or generate RDF from mapped templates. 
+	 * Data tables are split into segments of rows serialized in parallel, and the output is written in the 
+	 * same order as serializing sequentially (see TableSerializer).
+	 * @param serializingThreads 1 or less means serializing on the calling thread.
+	 */
+	public synchronized void setSerializingThreads(int serializingThreads) {
+		if(serializingThreads == this.serializingThreads) return;
+		this.serializingThreads = serializingThreads;
+		if(serializingPool != null) {
+			serializingPool.shutdown();
+			serializingPool = null;
+		}
+	}
+	
+	/**
+	 * Get thread pool serializing segments of data tables.
+	 * @return ExecutorService or null if serializing threads aren't set.
+	 */
+	public synchronized ExecutorService getSerializingPool() {
+		if(serializingThreads <= 1) return null;
+		if(serializingPool == null) {
+			AtomicInteger n = new AtomicInteger();
+			serializingPool = Executors.newFixedThreadPool(serializingThreads, r -> {
+				Thread t = new Thread(r, "csvx-serialize-" + n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return serializingPool;
+	}
+	
+	public int getParsingThreads() {
+		return parsingThreads;
+	}
+
+	/**
+	 * Set number of threads to tokenize a CSV file in parallel. A file of at least two chunks is split into 
+	 * byte ranges starting at row boundaries, found with quoted values and comment lines taken into account, 
+	 * and each range is tokenized by its own parser. Rows are read in file order, so results are the same as 
+	 * a single parser. Only files in an encoding like UTF-8 or ISO-8859-1 are tokenized in parallel 
+	 * (see ParallelTokenizer).
+	 * @param parsingThreads 1 or less means tokenizing with a single parser.
+	 */
+	public void setParsingThreads(int parsingThreads) {
+		this.parsingThreads = parsingThreads;
+	}
+	
+	public int getParsingChunkSize() {
+		return parsingChunkSize;
+	}
+
+	/**
+	 * Set number of bytes per chunk a CSV file is split into for parallel tokenization. Each range 
+	 * tokenized by a thread is made of one or more chunks.
+	 * @param parsingChunkSize
+	 */
+	public void setParsingChunkSize(int parsingChunkSize) {
+		if(parsingChunkSize < 1) throw new IllegalArgumentException("parsingChunkSize must be positive.");
+		this.parsingChunkSize = parsingChunkSize;
+	}
+	
+	private synchronized ForkJoinPool getRepeatingRowPool() {
+		if(repeatingRowPool == null) repeatingRowPool = new ForkJoinPool(Math.max(1, repeatingRowThreads));
+		return repeatingRowPool;
+	}
+	
 	/**
 	 * @return the tryAllSchemas
 	 */
@@ -370,8 +657,12 @@ public class SchemaProcessor {
 		if(schema.getProperty(METAPROP_COMMENT_PREFIX) != null) settings.getFormat().setComment(((String) schema.getProperty(METAPROP_COMMENT_PREFIX)).charAt(0)); 
 		else settings.getFormat().setComment('\0');
 		
-		// CSV quote format (default: ")
-		if(schema.getProperty(METAPROP_QUOTE_CHAR) != null) settings.getFormat().setQuote(((String) schema.getProperty(METAPROP_QUOTE_CHAR)).charAt(0));
+		// CSV quote format (default: "), a quote within a quoted value is escaped by doubling it
+		if(schema.getProperty(METAPROP_QUOTE_CHAR) != null) {
+			char quote = ((String) schema.getProperty(METAPROP_QUOTE_CHAR)).charAt(0);
+			settings.getFormat().setQuote(quote);
+			settings.getFormat().setQuoteEscape(quote);
+		}
 		
 		// skip blank rows (default: true)
 		if(schema.getProperty(METAPROP_SKIP_BLANK_ROWS) != null) settings.setSkipEmptyLines((Boolean) schema.getProperty(METAPROP_SKIP_BLANK_ROWS)); 
@@ -396,7 +687,8 @@ public class SchemaProcessor {
 	
 	/**
 	 * Load CSV-X schema at specified path into the memory. The processor keeps a collection of loaded schemas 
-	 * indexed by its ID ('@id'). 
+	 * indexed by its ID ('@id'). A loaded schema is frozen and replaces the one with the same ID, if any.
+	 * This can be called while other threads are processing CSV with the processor. 
 	 * 
 	 * @param schemaPath
 	 * @return Schema object of loaded schema if the operation is success or null otherwise.
@@ -404,7 +696,20 @@ public class SchemaProcessor {
 	public Schema loadSchema(String schemaPath) {
 		Schema s = null;
 		try {
-			s = parseCsvXSchema(schemaPath);
+			SchemaCache cache = schemaCache;
+			if(cache == null) {
+				s = parseCsvXSchema(schemaPath);
+				s.freeze();
+			} else {
+				byte[] source = Files.readAllBytes(Paths.get(schemaPath));
+				String fileName = Paths.get(schemaPath).getFileName().toString();
+				if((s = cache.get(fileName, source)) == null) {
+					s = parseCsvXSchema(schemaPath, source);
+					s.freeze();
+					cache.put(fileName, source, s);
+				}
+			}
+			targetCsvIndex.register((String) s.getProperty(METAPROP_ID), s.getTargetCsvs());
 			schemas.put((String) s.getProperty(METAPROP_ID), s);
 		} catch(Exception e) {
 			String errMsg = "There's a problem in loading/parsing schema file " + schemaPath + ": \n " + e.getMessage();
@@ -416,8 +721,27 @@ public class SchemaProcessor {
 		return s;
 	}
 	
+	/**
+	 * Get a loaded schema by its ID.
+	 * @param schemaId
+	 * @return Schema or null if no schema with the ID has been loaded.
+	 */
+	public Schema getSchema(String schemaId) {
+		return schemas.get(schemaId);
+	}
+	
+	/**
+	 * Get IDs of all loaded schemas.
+	 * @return Set of schema ID.
+	 */
+	public Set<String> getSchemaIds() {
+		return Collections.unmodifiableSet(schemas.keySet());
+	}
+	
 	/**
 	 * Check if input csv ID matches with any of target csv in all schema(s).
+	 * A target csv can be an exact csv ID, a glob pattern, or a "regex:" prefixed regular expression 
+	 * (see TargetCsvIndex). An exact match always wins, otherwise the pattern with the longest literal prefix wins.
 	 * Note that this does not guarantee that the csv is valid for the matched schema.
 	 * @param csvId
 	 * @return String of schema ID that has target csv matched or null if none matched.  
@@ -426,34 +750,38 @@ public class SchemaProcessor {
 		
 		if(csvId == null || schemas.size() == 0) return null;
 		
-		// check for each schema
-		for(Schema s : schemas.values()) {
-			
-			if(s.getTargetCsvs() != null) { // check if this schema has csv target defined
-				
-				for(String targetCsvId : s.getTargetCsvs()) { // for each target
-					
-					if(targetCsvId.equals(csvId)) { // if target csv matched csv id, return matched schema id
-						logger.info("Found csv id specified in a schema id: {}", s.getProperty(METAPROP_ID));
-						return (String) s.getProperty(METAPROP_ID);
-					} else continue; // if not matched (yet), continue checking the next target
-
-				} // end loop through all csv target(s)
-				
-			} else { // there is no target csv defined in this schema
-				continue; // check next schema
-			}
-			
-		} // end for each schema	
-		
-		return null;
+		String sId = targetCsvIndex.lookup(csvId);
+		if(sId != null) logger.info("Found csv id specified in a schema id: {}", sId);
+		return sId;
 	}
 	
 	//private CsvParser prepareCsvParser(Schema schema, String csvPath, int startFromLine) {
-	private AbstractParser prepareCsvParser(Schema schema, String csvPath, int startFromLine) {
+	AbstractParser prepareCsvParser(Schema schema, String csvPath, int startFromLine) {
+		return prepareCsvParser(schema, csvPath, startFromLine, false);
+	}
+	
+	/**
+	 * Create a parser with parser settings of a schema, yet to begin parsing.
+	 * @param schema
+	 * @return AbstractParser
+	 */
+	private AbstractParser createCsvParser(Schema schema) {
+		return createCsvParser(schema, null);
+	}
+	
+	/**
+	 * Create a parser with parser settings of a schema and a given line separator, yet to begin parsing.
+	 * @param schema
+	 * @param lineSeparator line separator overriding the one of the schema or its detection, can be null.
+	 * @return AbstractParser
+	 */
+	private AbstractParser createCsvParser(Schema schema, String lineSeparator) {
 		
-		// Prepare parser & settings according to schema table
 		CsvParserSettings settings = getCsvParserSettings(schema);
+		if(lineSeparator != null) {
+			settings.setLineSeparatorDetectionEnabled(false);
+			settings.getFormat().setLineSeparator(lineSeparator);
+		}
 		
 		AbstractParser parser = null;
 		
@@ -472,6 +800,21 @@ public class SchemaProcessor {
 		} else {
 			parser = new CsvParser(settings);
 		}
+		return parser;
+	}
+	
+	/**
+	 * Prepare a parser for CSV with parser settings of a schema, began parsing from a line.
+	 * @param schema
+	 * @param csvPath
+	 * @param startFromLine number of rows to skip.
+	 * @param readAhead whether the CSV is read and decoded ahead on its own thread.
+	 * @return AbstractParser or null if the CSV can't be read.
+	 */
+	AbstractParser prepareCsvParser(Schema schema, String csvPath, int startFromLine, boolean readAhead) {
+		
+		// Prepare parser & settings according to schema table
+		AbstractParser parser = createCsvParser(schema);
 		
 		//CsvParser parser = new CsvParser(settings);
 		
@@ -483,7 +826,12 @@ public class SchemaProcessor {
 		try {
 			fs = new FileInputStream(csvPath);
 			//fc = fs.getChannel();
-			csvReader = new BufferedReader(new InputStreamReader(fs, csvEncoding), CSV_PARSER_BUFFER_SIZE);	
+			if(readAhead) {
+				csvReader = new ReadAheadReader(new InputStreamReader(new CountingInputStream(fs, metrics), csvEncoding), 
+						ReadAheadReader.DEFAULT_CHUNK_SIZE, ReadAheadReader.DEFAULT_CAPACITY);
+			} else {
+				csvReader = new BufferedReader(new InputStreamReader(new CountingInputStream(fs, metrics), csvEncoding), CSV_PARSER_BUFFER_SIZE);
+			}
 		} catch (FileNotFoundException|UnsupportedEncodingException e) {
 			System.err.println(e);
 			e.printStackTrace();
@@ -501,13 +849,130 @@ public class SchemaProcessor {
 		return parser;
 	}
 	
+	/**
+	 * Begin parsing CSV with parser settings of a schema and wrap the parser in a row stream.
+	 * @param schema
+	 * @param csvPath
+	 * @return SharedRowStream
+	 * @throws Exception if the CSV can't be read.
+	 */
+	SharedRowStream openRowStream(Schema schema, String csvPath) throws Exception {
+		RowSource tokenizer = openParallelTokenizer(schema, csvPath, TokenizerStage.DEFAULT_BATCH_SIZE, TokenizerStage.DEFAULT_CAPACITY);
+		if(tokenizer != null) return new SharedRowStream(tokenizer, SharedRowStream.DEFAULT_LEAD_WINDOW);
+		AbstractParser parser = prepareCsvParser(schema, csvPath, 0);
+		if(parser == null) throw new Exception("Unable to read csv: " + csvPath);
+		return new SharedRowStream(parser);
+	}
+	
+	/**
+	 * Begin parsing CSV with parser settings of a schema in a pipeline of stages, each on its own thread: 
+	 * reading and decoding the CSV, then tokenizing it into batches of rows read by the row stream.
+	 * @param schema
+	 * @param csvPath
+	 * @param batchSize number of rows per batch handed by the tokenizer stage.
+	 * @param capacity number of chunks and batches each stage may be ahead of the next.
+	 * @return SharedRowStream
+	 * @throws Exception if the CSV can't be read.
+	 */
+	SharedRowStream openPipelinedRowStream(Schema schema, String csvPath, int batchSize, int capacity) throws Exception {
+		RowSource tokenizer = openParallelTokenizer(schema, csvPath, batchSize, capacity);
+		if(tokenizer != null) return new SharedRowStream(tokenizer, SharedRowStream.DEFAULT_LEAD_WINDOW);
+		AbstractParser parser = prepareCsvParser(schema, csvPath, 0, true);
+		if(parser == null) throw new Exception("Unable to read csv: " + csvPath);
+		return new SharedRowStream(new TokenizerStage(parser, batchSize, capacity), SharedRowStream.DEFAULT_LEAD_WINDOW);
+	}
+	
+	/**
+	 * Begin tokenizing CSV with parser settings of a schema in parallel byte ranges, if parsing threads are set 
+	 * and the file is large enough.
+	 * @param schema
+	 * @param csvPath
+	 * @param batchSize number of rows per batch handed by each range.
+	 * @param capacity number of batches of a range tokenized ahead.
+	 * @return RowSource or null if the CSV is to be tokenized by a single parser.
+	 * @throws Exception if the CSV can't be read.
+	 */
+	private RowSource openParallelTokenizer(Schema schema, String csvPath, int batchSize, int capacity) throws Exception {
+		int threads = parsingThreads, chunkSize = parsingChunkSize;
+		if(threads <= 1) return null;
+		
+		String csvEncoding = (String) schema.getProperty(METAPROP_ENCODING);
+		if(csvEncoding == null) csvEncoding = "UTF-8";
+		Charset charset;
+		try {
+			charset = Charset.forName(csvEncoding);
+		} catch(IllegalArgumentException e) {
+			return null;
+		}
+		if(!ParallelTokenizer.isSupported(charset)) {
+			logger.debug("Encoding {} isn't supported for parallel tokenization.", csvEncoding);
+			return null;
+		}
+		
+		Path file = Paths.get(csvPath);
+		if(!Files.isRegularFile(file) || Files.size(file) < 2L * chunkSize) return null;
+		
+		String delimiter = (String) schema.getProperty(METAPROP_DELIMITER);
+		String lineSeparator = (String) schema.getProperty(METAPROP_LINE_SEPARATOR);
+		String commentPrefix = (String) schema.getProperty(METAPROP_COMMENT_PREFIX);
+		String quoteChar = (String) schema.getProperty(METAPROP_QUOTE_CHAR);
+		boolean tsv = "\t".equals(delimiter);
+		// a range would detect its own line separator, e.g. of a quoted value, rather than the one of the file
+		String separator = (lineSeparator != null)? lineSeparator : detectLineSeparator(file);
+		
+		ParallelTokenizer tokenizer = new ParallelTokenizer(file, charset, () -> createCsvParser(schema, separator), 
+				(delimiter != null)? delimiter.charAt(0) : ',', 
+				tsv? '\0' : (quoteChar != null)? quoteChar.charAt(0) : '"', 
+				(commentPrefix != null && !tsv)? commentPrefix.charAt(0) : '\0', 
+				separator.charAt(separator.length() - 1), 
+				threads, chunkSize, batchSize, capacity, metrics);
+		logger.debug("Tokenizing {} in {} ranges on {} threads.", csvPath, tokenizer.getRangeCount(), threads);
+		return tokenizer;
+	}
+	
+	/**
+	 * Detect the line separator of a file the way the parser does, i.e. from its first line end whether or not 
+	 * it's within a quoted value.
+	 * @param file
+	 * @return String "\n", "\r\n" or "\r", or "\n" if the file has no line end.
+	 * @throws IOException
+	 */
+	private static String detectLineSeparator(Path file) throws IOException {
+		try(InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			int b;
+			while((b = in.read()) != -1) {
+				if(b == '\n') return "\n";
+				if(b == '\r') return (in.read() == '\n')? "\r\n" : "\r";
+			}
+		}
+		return "\n";
+	}
+	
+	/**
+	 * Get a key identifying the parser settings of a schema. Schemas with the same key tokenize a CSV 
+	 * into the same rows and thus can share a row stream. 
+	 * @param schema
+	 * @return String
+	 */
+	private String getParserSettingsKey(Schema schema) {
+		String[] metaProps = { METAPROP_DELIMITER, METAPROP_LINE_SEPARATOR, METAPROP_COMMENT_PREFIX, 
+				METAPROP_QUOTE_CHAR, METAPROP_SKIP_BLANK_ROWS, METAPROP_ENCODING };
+		StringBuilder sb = new StringBuilder();
+		for(String metaProp : metaProps) {
+			sb.append(metaProp).append('=').append(schema.getProperty(metaProp)).append(';');
+		}
+		return sb.toString();
+	}
+	
 	/**
 	 * Parse CSV with CSV-X Schema.
 	 *  
 	 * Remark:
-	 * Due to limitation in usage of current univo-CsvParser API, a new parser will be recreated, 
-	 * with proper starting line, every time a schema table has been tried for parsing, 
-	 * no matter the parse is success or not. 
+	 * The CSV is read only once through a row cursor. Each schema table is tried in two phases. 
+	 * The probe phase only validates CSV content and checks its dimension against the schema table,  
+	 * creating no data object. Only if the probe matches, the cursor is rewound to the milestone row and 
+	 * the buffered rows are parsed again in the materialize phase which creates data table, rows, and cells 
+	 * and registers variables. This way a failed trial costs little more than the validation itself.
 	 * 
 	 * @param csvPath path to csv file
 	 * @param schema schema to be parsed against with
@@ -518,20 +983,19 @@ public class SchemaProcessor {
 	 * 
  		Algorithm Summary:
  			
- 		 declare variable for data table and parser
+ 		 declare variable for data table and prepare a row cursor over the CSV 
 		 prepare a collection to hold output dataTables
 		 while(true)
-			 Prepare a new parser with its settings from schema, starting from milestoneRow of CSV
 			 for each schema table
-				 dTable = parseCsvWithSchemaTable(parser, sTable, context)
-				 check if the parse yield result (dTable != null)
-					 yes, save result in output collection 
+				 probe the schema table starting from milestoneRow: matchCsvWithSchemaTable(cursor, sTable, null, context, MODE_PROBE)
+				 rewind starting row: context.currRow = context.milestoneRow; seek cursor back to milestoneRow
+				 	reset parsing context vars for new table
+				 check if the probe matched
+					 yes, materialize: dTable = parseCsvWithSchemaTable(cursor, dSchema, sTable, context)
+						 save result in output collection 
 						 update milestoneRow
 						 break from for each schema table loop 
-					 no, rewind starting row: context.currRow = context.milestoneRow;
-						 reset parsing context vars for new table
-						 stop current parser to release resource
-						 continue trying with other schema table from milestoneRow
+					 no, continue trying with other schema table from milestoneRow
 			 end for each schema table
 
 			 if dTable == null, meaning none is matched after trials of all schemas
@@ -539,7 +1003,7 @@ public class SchemaProcessor {
 
 			 check if there're more CSV line to parse
 				 yes, reset parsing context vars for new table
-					 stop current parser to release resource
+				 	 mark cursor at milestoneRow to release rows before it
 					 continue next while(true) loop
 				 no, break while(true) loop
 
@@ -551,61 +1015,121 @@ public class SchemaProcessor {
 		
 		if(schema == null) throw new IllegalArgumentException("schema must not be null.");
 		
+		SharedRowStream stream = openRowStream(schema, csvPath);
+		try {
+			return parseCsvWithSchema(stream.openCursor(), csvPath, schema, context, retType);
+		} finally {
+			stream.close();
+		}
+	}
+	
+	/**
+	 * Parse CSV with CSV-X Schema, reading CSV rows through a cursor of a shared row stream.
+	 * The cursor is closed when the parsing is done.
+	 * @param cursor cursor positioned at the first CSV row.
+	 * @param csvPath path to csv file
+	 * @param schema schema to be parsed against with
+	 * @param context context variable
+	 * @param retType the desire return type
+	 * @return Object
+	 * @throws Exception
+	 */
+	private Object parseCsvWithSchema(RowCursor cursor, String csvPath, Schema schema, Context context, ReturnType retType) throws Exception {
+		
+		if(schema == null) throw new IllegalArgumentException("schema must not be null.");
+		
 		// Initialize variables & prepare collection to hold result		
 		context.currSchema = schema;
 		SchemaTable dTable = null;
-		//CsvParser parser = null;
-		AbstractParser parser = null;
 		List<SchemaTable> dataTables = new ArrayList<SchemaTable>();		
 		Schema dSchema = Schema.createDataObject(schema); // schema object holding all expanded table schema 
+		dSchema.setMetrics(metrics);
 
-		while(true) {						
-			// for each schema table
-			for(SchemaTable sTable : schema.getSchemaTables().values()) {				
-				context.currSchemaTable = sTable;								
-				// Create new parser to restart from milestoneRow
-				parser = prepareCsvParser(schema, csvPath, context.milestoneRow);
-				
-				logger.trace("Try matching schema table {} with csv {} starting from row {}", sTable, csvPath, context.milestoneRow);
-				
-				// try parsing with a schema table
-				// IMP In case where there are more than one pattern (schema table) inside a CSV,  
-				// CSV comment should have directive annotation to which schema table it's applicable to
-				// to reduce trial'n'error effort.				
-				dTable = parseCsvWithSchemaTable(parser, dSchema, sTable, context);
-				
-				// check if the parse yield result
-				if(dTable != null) {
-					if(context.milestoneRow == context.currRow) {
+		try {
+			while(true) {
+				dTable = null;
+				// for each schema table
+				for(SchemaTable sTable : schema.getSchemaTables().values()) {				
+					context.currSchemaTable = sTable;								
+					
+					if(Diagnostics.isLogEnabled()) logger.trace("Try matching schema table {} with csv {} starting from row {}", sTable, csvPath, context.milestoneRow);
+					
+					// probe the schema table, validating CSV content without creating any data object
+					// IMP In case where there are more than one pattern (schema table) inside a CSV,  
+					// CSV comment should have directive annotation to which schema table it's applicable to
+					// to reduce trial'n'error effort.				
+					if(repeatingRowThreads > 1) {
+						if(context.repeatRegions == null) context.repeatRegions = new HashMap<Integer, RepeatRegion>();
+						else context.repeatRegions.clear();
+					}
+					JfrEvents.TableTrial trial = JfrEvents.isEnabled()? JfrEvents.beginTableTrial() : null;
+					long trialStart = metrics.startTiming();
+					long rowsProcessed = context.rowsProcessed, cellsProcessed = context.cellsProcessed;
+					boolean matched = matchCsvWithSchemaTable(cursor, sTable, null, context, MODE_PROBE);
+					if(trial != null) JfrEvents.commitTableTrial(trial, sTable, csvPath, context.milestoneRow, matched, cursor.getPosition() - context.milestoneRow);
+					if(matched && context.milestoneRow == context.currRow) {
 						throw new Exception("Schema table that doesn't match any CSV content is not allowed: milestoneRow = " + context.milestoneRow + " current CSV row = " + context.currRow);
 					}
+					metrics.tableTrial(sTable, matched, trialStart, cursor.getPosition() - context.milestoneRow);
+					
+					// the probe leaves the context where materializing the table would
+					if(matched && context.probeOnly) {
+						dTable = sTable;
+						break;
+					}
+					
+					if(cursor.getPosition() != context.milestoneRow) metrics.rewound();
+					
+					// rewind to milestoneRow, either to materialize the matched table or to try other schema table(s)
+					context.currRow = context.milestoneRow;
+					context.reset4NewTable();
+					context.currSchemaTable = sTable;
+					cursor.seek(context.milestoneRow);
+					
+					if(!matched) {
+						context.rowsProcessed = rowsProcessed;
+						context.cellsProcessed = cellsProcessed;
+						Diagnostics.record(Diagnostics.Event.TABLE_TRIAL_FAILED, sTable, context.milestoneRow, -1, null);
+						if(Diagnostics.isLogEnabled()) logger.trace("Trial on matching csv {} with schema table {} failed.", csvPath, sTable);
+						continue;
+					}
+					Diagnostics.record(Diagnostics.Event.TABLE_TRIAL_MATCHED, sTable, context.milestoneRow, -1, null);
+					
+					// materialize the matched table from buffered rows
+					dTable = parseCsvWithSchemaTable(cursor, dSchema, sTable, context);
+					if(dTable == null) {
+						throw new Exception("Schema table " + sTable + " matched csv " + csvPath + " from row " + context.milestoneRow + " in probe phase but failed to materialize.");
+					}
 					logger.trace("Matching csv {} with schema table {} yields schema table data {}", csvPath, sTable, dTable);
 					dataTables.add(dTable);
-					context.milestoneRow = context.currRow;
+					if(context.tableHandler != null) context.tableHandler.accept(dTable);
 					break;
-				} else { // if this parse fails, try other schema table(s)
-					logger.trace("Trial on matching csv {} with schema table {} failed.", csvPath, sTable);
-					context.currRow = context.milestoneRow;
+				} // end for each schema table			
+				
+				if(dTable == null) { // check if schemas trials yield result
+					Diagnostics.record(Diagnostics.Event.CSV_UNMATCHED, null, context.milestoneRow, -1, null);
+					logger.warn("Can't matched this CSV with the schema: {}", schema);
+					return null;
+				}
+				
+				// check if there're more CSV line to parse, looking past the row left unconsumed by the table (if any)
+				int lookAheadRow = (!context.currRowConsumed && context.currRowData != null)? context.currRow + 1 : context.currRow;
+				cursor.seek(lookAheadRow);
+				boolean hasMoreRow = cursor.hasNext();
+				context.milestoneRow = context.currRow;
+				cursor.seek(context.milestoneRow);
+				if(hasMoreRow) { 
 					context.reset4NewTable();
-					parser.stopParsing(); // this is needed before creating new parser to release resources
+					cursor.mark();
 					continue;
+				} else {
+					break;
 				}
-			} // end for each schema table			
-			
-			if(dTable == null) { // check if schemas trials yield result
-				logger.warn("Can't matched this CSV with the schema: {}", schema);
-				return null;
-			}
-			
-			// check if there're more CSV line to parse
-			if(parser.parseNext() != null) { 
-				context.reset4NewTable();
-				parser.stopParsing();
-				continue;
-			} else {
-				break;
-			}
-		} // end while(true)
+			} // end while(true)
+		} finally {
+			cursor.close();
+		}
+		metrics.processed(context.rowsProcessed, context.cellsProcessed);
 		
 		switch(retType) {
 		case DATA_SCHEMA:
@@ -618,93 +1142,124 @@ public class SchemaProcessor {
 	}
 	
 	/**
-	 * Parse CSV against a schema table.
-	 * @param parser
+	 * Parse CSV against a schema table, creating data table object for the matched content. 
+	 * The table should have been probed with matchCsvWithSchemaTable() in MODE_PROBE beforehand.
+	 * @param cursor
 	 * @param dSchema
 	 * @param sTable
 	 * @param context
 	 * @return SchemaTable data table object containing parsed CSV data in the form of schema table 
 	 * or null if the parse is failed.
 	 * @throws Exception 
+	 */
+	private SchemaTable parseCsvWithSchemaTable(RowCursor cursor, Schema dSchema, SchemaTable sTable, Context context) throws Exception {
+		
+		// create dataTable from schemaTable with naming pattern: schema table name followed by row number
+		SchemaTable dTable = SchemaTable.createDataObject(dSchema, sTable, sTable.getTableName() + context.currRow);
+		
+		// error message of the row ending an infinite repeating row has already been given in probe phase
+		if(!matchCsvWithSchemaTable(cursor, sTable, dTable, context, MODE_IGNORE_ERR_MSG)) return null;
+		
+		// add successfully parsed data table to data schema
+		dSchema.addSchemaTable(dTable);
+		return dTable;
+	}
+	
+	/**
+	 * Match CSV against a schema table.
+	 * 
+	 * Applicable mode are:
+	 * - MODE_IGNORE_ERR_MSG - ignore error message. By default, error message is printed/logged.
+	 * - MODE_PROBE - only validate and check dimension, dTable is not used and can be null.
+	 * 
+	 * @param cursor
+	 * @param sTable
+	 * @param dTable data table object to hold parsing data row and cell, or null in MODE_PROBE.
+	 * @param context
+	 * @param mode
+	 * @return boolean true if the CSV content matches with the schema table, false otherwise.
+	 * @throws Exception 
 	 * 
   		Algorithm Summary:
   		
- 		create temporary data table object from schema table blueprint
 		 get the first schema row from input schema table
 		 while there is more CSV row, parse in a row
 			 check if this is a repeating row
-				 yes, call parseRepeatingRow(), return null if the parse is unsuccessful
-				 no, call processCsvRow(), return null if the parse is unsuccessful
+				 yes, call parseRepeatingRow(), return false if the parse is unsuccessful
+				 no, call processCsvRow(), return false if the parse is unsuccessful
 			 get next schema row object
 			 check if the end of schema table is reached (schema row object == null)
-				 yes, return data table object
+				 yes, return true
 				 no, continue parsing in next CSV line
 		 (end for each CSV row)
 		 since there's no more CSV row to process, check if there's no more next schema row as well
-			 yes, return data table object
-			 no, return null to indicate schema mismatched.
+			 yes, return true
+			 no, return false to indicate schema mismatched.
 	 * 
 	 */
-	private SchemaTable parseCsvWithSchemaTable(AbstractParser parser, Schema dSchema, SchemaTable sTable, Context context) throws Exception {
+	private boolean matchCsvWithSchemaTable(RowCursor cursor, SchemaTable sTable, SchemaTable dTable, Context context, int mode) throws Exception {
 		
-		// create dataTable from schemaTable with naming pattern: schema table name followed by row number
-		SchemaTable dTable = SchemaTable.createDataObject(dSchema, sTable, sTable.getTableName() + context.currRow);
 		String[] row;
 		
 		// get first SchemaRow object, a schema table MUST have at least one schema row
 		SchemaRow sRow = sTable.getRow(context.currSchemaRow);
-		if(sRow == null) return null;
+		if(sRow == null) return false;
 		
 		// read in CSV & schema line-by-line
-	    //while ((row = parser.parseNext()) != null) {	    
 		while(true) {
 			
-			if(context.currRowConsumed) {
-				row = parser.parseNext();
-				context.currRowData = row;
-				context.currRowConsumed = false;
-				if(row == null) {
-					context.currSchemaRow++;
-					break;
-				}
-			} else row = context.currRowData;
+			if((row = readCsvRow(cursor, context)) == null) {
+				context.currSchemaRow++;
+				break;
+			}
 
 			// check if this row is a repeating row
 			if(sRow.isRepeat()) {
-				if(!parseRepeatingRow(row, parser, dTable, sRow, context)) return null;
+				if(!parseRepeatingRow(row, cursor, dTable, sRow, context, mode)) return false;
 				// reset repeating row context vars
 				context.currSubRow = 0;
 				context.repeatTimes = 0;
 			} else { //for normal schema row, call processCsvRow()
-				if(!processCsvRow(row, dTable, sRow, context, 0)) return null;
+				if(!processCsvRow(row, dTable, sRow, context, mode)) return false;
 			}
 
-			// if the end of schema table is reached, add successfully parsed data table to data schema & return data table object
-			if((sRow = sTable.getRow(context.currSchemaRow)) == null) {
-				dSchema.addSchemaTable(dTable);
-				return dTable;
-			}
+			// if the end of schema table is reached, the table is matched
+			if((sRow = sTable.getRow(context.currSchemaRow)) == null) return true;
 			
 	    } // end for each row
 	    
 		// if there's no more CSV row to process, check if there's no more next schema row as well
 		// TODO need to add exception check for indefinite repeating row even after the data is running out.
 		assert(context.currSchemaRow == (sRow.getRowNum() + 1)) : "context.currSchemaRow (" + context.currSchemaRow + ") is not equal to sRow.getRowNum() + 1 (" + (sRow.getRowNum() + 1) + ")";
-		if(sTable.getRow(context.currSchemaRow) == null) {
-			dSchema.addSchemaTable(dTable);
-			return dTable;
-		} else {
-			return null;
-		}
+		return (sTable.getRow(context.currSchemaRow) == null);
+	}
+	
+	/**
+	 * Read in CSV row to be processed. The row left unconsumed by previous processing, if any, 
+	 * will be returned again instead of reading a new one.
+	 * @param cursor
+	 * @param context
+	 * @return String[] of the row's values or null if there is no more CSV row.
+	 * @throws InterruptedException if the processing thread is interrupted.
+	 */
+	private String[] readCsvRow(RowCursor cursor, Context context) throws InterruptedException {
+		if(!context.currRowConsumed) return context.currRowData;
+		// stop as soon as possible when a concurrent trial is cancelled
+		if(Thread.currentThread().isInterrupted()) throw new InterruptedException("CSV parsing with schema " + context.currSchema + " is cancelled.");
+		String[] row = cursor.next();
+		context.currRowData = row;
+		context.currRowConsumed = false;
+		return row;
 	}
 	
 	/**
 	 * Parse CSV row(s) for a schema row with 'repeatTimes' property specified as non-zero integer. 
 	 * @param firstRow array of String for the first CSV row's values.  
-	 * @param parser the CSV parser.
-	 * @param dTable data table object to hold parsing data row and cell.
+	 * @param cursor the CSV row cursor.
+	 * @param dTable data table object to hold parsing data row and cell, or null in MODE_PROBE.
 	 * @param sRow schema row object of the repeating row.
 	 * @param context parsing context variable. 
+	 * @param mode processing mode.
 	 * @return boolean true if the parse is successful, false otherwise.
 	 * @throws Exception 
 	 * 
@@ -735,7 +1290,7 @@ public class SchemaProcessor {
 		 there's no more next schema row in the schema table. if yes, return true or false otherwise.		
 
 	 */
-	private boolean parseRepeatingRow(String[] firstRow, AbstractParser parser, SchemaTable dTable, SchemaRow sRow, Context context) throws Exception {
+	private boolean parseRepeatingRow(String[] firstRow, RowCursor cursor, SchemaTable dTable, SchemaRow sRow, Context context, int mode) throws Exception {
 		
 		// Initialize subRow & context vars
 		SchemaTable sTable = sRow.getSchemaTable();
@@ -743,10 +1298,13 @@ public class SchemaProcessor {
 		context.repeatTimes = sRow.getRepeatTimes();
 		assert(sRow.getRepeatTimes() != 0) : "RepeatTimes = 0 should never enter this method.";
 		String[] row;
+		int firstRowNum = context.currRow;
 		
-		// check if the first CSV row matches with repeating row schema
-		//if(!processCsvRow(firstRow, dTable, sRow, context, 0)) return false;
-		if(!processCsvRow(firstRow, dTable, sRow, context, 0)) {
+		// the extent of an infinite repeating region is known from the probe phase, a large one is materialized in chunks
+		RepeatRegion region = (dTable != null && context.repeatRegions != null)? context.repeatRegions.get(firstRowNum) : null;
+		if(region != null && region.sRow == sRow && region.rows >= 2 * REPEATING_ROW_CHUNK_SIZE) {
+			materializeRepeatingRegion(firstRow, cursor, dTable, sRow, region.rows, context, mode);
+		} else if(!processCsvRow(firstRow, dTable, sRow, context, mode)) {
 			// if the row has infinite repeating times, then it's NOT absolutely required to match [0..Inf] 			
 			if(context.repeatTimes < 0) {
 				context.currSchemaRow++;
@@ -754,25 +1312,21 @@ public class SchemaProcessor {
 			} else return false;
 		}
 		
-		//while((row = parser.parseNext()) != null) {
 		while(true) {
 			
-			if(context.currRowConsumed) {
-				row = parser.parseNext();
-				context.currRowData = row;
-				context.currRowConsumed = false;
-				if(row == null) {
-					context.currSchemaRow++;
-					break;
-				}
-			} else row = context.currRowData;			
+			if((row = readCsvRow(cursor, context)) == null) {
+				context.currSchemaRow++;
+				if(context.repeatTimes < 0) recordRepeatRegion(sRow, firstRowNum, context, mode);
+				break;
+			}
 			
 			// if a CSV row doesn't match with repeating row schema
-			if(!processCsvRow(row, dTable, sRow, context, 0)) { //if(!processCsvRow(row, dTable, sRow, context, MODE_IGNORE_ERR_MSG)) { // temporarily commented out for development			
+			if(!processCsvRow(row, dTable, sRow, context, mode)) {			
 				// again, if it's NOT infinite repeating row, then it's certainly schema mismatch.
 				if(context.repeatTimes > 0) return false;
 				else {
 					context.currSchemaRow++;
+					recordRepeatRegion(sRow, firstRowNum, context, mode);
 					return true;
 				}
 			}
@@ -781,7 +1335,7 @@ public class SchemaProcessor {
 			if(context.repeatTimes < 0) { // for infinite repeating row: wait until mismatched is found!
 				continue;
 			} else { 
-				logger.trace("context.currSubRow {} VS context.repeatTimes {}", context.currSubRow, context.repeatTimes);
+				if(Diagnostics.isLogEnabled()) logger.trace("context.currSubRow {} VS context.repeatTimes {}", context.currSubRow, context.repeatTimes);
 				if(context.currSubRow >= context.repeatTimes) {
 					context.currSchemaRow++;
 					return true;	
@@ -799,6 +1353,125 @@ public class SchemaProcessor {
 		return ((context.currSubRow >= context.repeatTimes) && (sTable.getRow(context.currSchemaRow) == null))? true : false;
 	}
 		
+	/**
+	 * Record the rows matched by an infinite repeating row in the probe phase, for materializing them in chunks.
+	 * @param sRow
+	 * @param firstRowNum first CSV row of the region.
+	 * @param context
+	 * @param mode
+	 */
+	private void recordRepeatRegion(SchemaRow sRow, int firstRowNum, Context context, int mode) {
+		if(context.repeatRegions != null && (MODE_PROBE & mode) != 0 && context.currSubRow > 0) {
+			context.repeatRegions.put(firstRowNum, new RepeatRegion(sRow, context.currSubRow));
+		}
+	}
+	
+	/**
+	 * Materialize a region of CSV rows matched by an infinite repeating row in the probe phase. 
+	 * The region is split into chunks, each processed with processCsvRow() in its own context by a fork/join task, 
+	 * deferring the addition of data rows and variables to the data table. They're then added chunk by chunk in 
+	 * row order, so the data table is the same as processing the rows one after another.
+	 * The context is left as processing the last row of the region would.
+	 * @param firstRow the first CSV row of the region, already read.
+	 * @param cursor
+	 * @param dTable
+	 * @param sRow
+	 * @param rows number of CSV rows in the region.
+	 * @param context
+	 * @param mode
+	 * @throws Exception if a row of the region fails to materialize, which means it doesn't match as probed.
+	 */
+	private void materializeRepeatingRegion(String[] firstRow, RowCursor cursor, SchemaTable dTable, SchemaRow sRow, int rows, Context context, int mode) throws Exception {
+		String[][] region = new String[rows][];
+		region[0] = firstRow;
+		for(int i = 1; i < rows; i++) {
+			context.currRowConsumed = true;
+			if((region[i] = readCsvRow(cursor, context)) == null) {
+				throw new Exception("Repeating row " + sRow + " ran out of CSV row at " + (context.currRow + i) + " while " + rows + " rows were probed.");
+			}
+		}
+		
+		int chunkNum = (rows + REPEATING_ROW_CHUNK_SIZE - 1) / REPEATING_ROW_CHUNK_SIZE;
+		Context[] chunks = new Context[chunkNum];
+		Exception[] errors = new Exception[chunkNum];
+		getRepeatingRowPool().invoke(new RepeatingRowTask(region, dTable, sRow, context, mode, chunks, errors, 0, chunkNum));
+		
+		for(int c = 0; c < chunkNum; c++) {
+			if(errors[c] != null) throw errors[c];
+			for(SchemaRow dRow : chunks[c].deferredRows) dTable.addRow(dRow);
+			for(SchemaEntity se : chunks[c].deferredVars) declareVarInTable(dTable, se);
+			context.rowsProcessed += chunks[c].rowsProcessed;
+			context.cellsProcessed += chunks[c].cellsProcessed;
+		}
+		
+		context.currRow += rows;
+		context.currSubRow += rows;
+		context.currRowData = region[rows - 1];
+		context.currRowConsumed = true;
+		context.currCol = 0;
+		context.currVal = null;
+	}
+	
+	/**
+	 * Fork/join task materializing a range of chunks of a repeating region.
+	 */
+	@SuppressWarnings("serial")
+	private final class RepeatingRowTask extends RecursiveAction {
+		private final String[][] region;
+		private final SchemaTable dTable;
+		private final SchemaRow sRow;
+		private final Context context;
+		private final int mode;
+		private final Context[] chunks;
+		private final Exception[] errors;
+		private final int from, to;
+		
+		RepeatingRowTask(String[][] region, SchemaTable dTable, SchemaRow sRow, Context context, int mode, Context[] chunks, Exception[] errors, int from, int to) {
+			this.region = region;
+			this.dTable = dTable;
+			this.sRow = sRow;
+			this.context = context;
+			this.mode = mode;
+			this.chunks = chunks;
+			this.errors = errors;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new RepeatingRowTask(region, dTable, sRow, context, mode, chunks, errors, from, mid), 
+						new RepeatingRowTask(region, dTable, sRow, context, mode, chunks, errors, mid, to));
+				return;
+			}
+			int first = from * REPEATING_ROW_CHUNK_SIZE;
+			int last = Math.min(first + REPEATING_ROW_CHUNK_SIZE, region.length);
+			Context c = new Context();
+			c.currSchema = context.currSchema;
+			c.currSchemaTable = context.currSchemaTable;
+			c.currSchemaRow = context.currSchemaRow;
+			c.repeatTimes = context.repeatTimes;
+			c.currRow = context.currRow + first;
+			c.currSubRow = context.currSubRow + first;
+			c.deferredRows = new ArrayList<SchemaRow>(last - first);
+			c.deferredVars = new ArrayList<SchemaEntity>();
+			chunks[from] = c;
+			try {
+				for(int i = first; i < last; i++) {
+					c.currRowData = region[i];
+					c.currRowConsumed = false;
+					if(!processCsvRow(region[i], dTable, sRow, c, mode)) {
+						throw new Exception("Repeating row " + sRow + " failed to materialize CSV row " + c.currRow + " which matched in probe phase.");
+					}
+				}
+			} catch(Exception e) {
+				errors[from] = e;
+			}
+		}
+	}
+	
 	/**
 	 * Process CSV row by:
 	 * 1. Substitute cell value and Empty Cell value according to schema definition.
@@ -809,6 +1482,7 @@ public class SchemaProcessor {
 	 * 
 	 * Applicable mode are:
 	 * - MODE_IGNORE_ERR_MSG - ignore error message. By default, error message is printed/logged.
+	 * - MODE_PROBE - only do 2., no data object is created and dTable can be null.
 	 * 
 	 * @param row an array of CSV data row.
 	 * @param dTable data table object.
@@ -822,17 +1496,22 @@ public class SchemaProcessor {
 		
 		// initialize processing mode
 		boolean ignoreErrMsg = ((MODE_IGNORE_ERR_MSG & mode) != 0)? true : false;
+		boolean probe = ((MODE_PROBE & mode) != 0)? true : false;
+		if(!probe || context.probeOnly) context.rowsProcessed++;
 		
 		// get schema row's parent schema table & schema
 		SchemaTable sTable = sRow.getSchemaTable();
 		Schema schema = sTable.getParentSchema();
 		
-		// create data row object
-		SchemaRow dRow = SchemaRow.createDataObject(sRow, context.currRow, dTable);
-		assert(dRow.properties.equals(sRow.properties)) : "Data row must always have same properties as schema row after creation.";
-		
-		//process context {var} for data row & register row variable in this data table, if declared 
-		procSchmEntPropRuntime(dRow, context);		
+		SchemaRow dRow = null;
+		if(!probe) {
+			// create data row object
+			dRow = SchemaRow.createDataObject(sRow, context.currRow, dTable);
+			assert(dRow.properties.equals(sRow.properties)) : "Data row must always have same properties as schema row after creation.";
+			
+			//process context {var} for data row & register row variable in this data table, if declared 
+			procSchmEntPropRuntime(dRow, context);
+		}
 		
 		//assert(context.currSchemaCol == 0) : "Schema column index must be 0 at the beginning of new row processing.";
 		context.currSchemaCol = 0;
@@ -871,7 +1550,8 @@ public class SchemaProcessor {
 					continue;
 				}
 			}
-			if(!ignoreErrMsg) logger.warn("Dimension MISMATCHED at CSV [{},{}]: more cell definition available: ", context.currRow, context.currCol, nextSchemaCell);
+			Diagnostics.record(Diagnostics.Event.DIMENSION_MISMATCH, nextSchemaCell, context.currRow, context.currCol, null);
+			if(!ignoreErrMsg && Diagnostics.isLogEnabled()) logger.warn("Dimension MISMATCHED at CSV [{},{}]: more cell definition available: ", context.currRow, context.currCol, nextSchemaCell);
 			return false;
 		}	
 
@@ -882,7 +1562,10 @@ public class SchemaProcessor {
 		context.currRow++;
 		context.currRowConsumed = true;
 		// save data row to data table
-		dTable.addRow(dRow);
+		if(!probe) {
+			if(context.deferredRows != null) context.deferredRows.add(dRow);
+			else dTable.addRow(dRow);
+		}
 		// reset row parsing context vars
 		context.currCol = 0;
 		context.currVal = null;
@@ -908,6 +1591,7 @@ public class SchemaProcessor {
 		
 		// initialize processing mode
 		boolean ignoreErrMsg = ((MODE_IGNORE_ERR_MSG & mode) != 0)? true : false;		
+		if((MODE_PROBE & mode) == 0 || context.probeOnly) context.cellsProcessed++;
 		
 		// check if cell with only whitespace characters are treated as empty value, a.k.a. null
 		Boolean spaceIsEmpty = (Boolean) schema.getProperty(METAPROP_SPACE_IS_EMPTY);
@@ -932,8 +1616,9 @@ public class SchemaProcessor {
 					
 		// validate a CSV cell value against CSV-X schema at its corresponding "schema position" 	
 		//if(!sTable.validate(sRow.getRowNum(), context.currCol, context.currVal, mode)) {
-		if(!sTable.validate(sRow.getRowNum(), context.currSchemaCol, context.currVal, mode)) {
-			if(!ignoreErrMsg) {
+		if(!sTable.validate(sRow.getRowNum(), context.currSchemaCol, context.currVal, mode, metrics)) {
+			// the specific cause has been recorded by validate()
+			if(!ignoreErrMsg && Diagnostics.isLogEnabled()) {
 				logger.warn("Validation Failure for schema {} against csv row {} column {} with value '{}'.", sRow.getCell(context.currCol), context.currRow, context.currCol, context.currVal);
 			}
 			return false; 
@@ -944,16 +1629,18 @@ public class SchemaProcessor {
 		SchemaCell sCell = sRow.getCell(context.currSchemaCol);
 		assert(sCell != null) : "The SchemaCell object can't be null after successful validation.";
 		
-		// create actual data cell object
-		SchemaCell dCell = SchemaCell.createDataObject(sCell, context.currRow, context.currCol, dTable, context.currVal);
-		//System.out.print(dCell.getSchemaTable() + " --> ");
-		//System.out.println(dCell.getName());
-									
-		// for all cell's properties, process literal for context {var}, variable registration & etc.
-		if(!dCell.isEmpty()) procSchmEntPropRuntime(dCell, context);
-		
-		// save data cell to data row
-		dRow.addCell(dCell);
+		if((MODE_PROBE & mode) == 0) {
+			// create actual data cell object
+			SchemaCell dCell = SchemaCell.createDataObject(sCell, context.currRow, context.currCol, dTable, context.currVal);
+			//System.out.print(dCell.getSchemaTable() + " --> ");
+			//System.out.println(dCell.getName());
+										
+			// for all cell's properties, process literal for context {var}, variable registration & etc.
+			if(!dCell.isEmpty()) procSchmEntPropRuntime(dCell, context);
+			
+			// save data cell to data row
+			dRow.addCell(dCell);
+		}
 		
 		context.currCellConsumed = true;
 		return true;
@@ -974,12 +1661,13 @@ public class SchemaProcessor {
 	 * @throws Exception
 	 */
 	private boolean parseRepeatingCol(String[] row, Schema schema, SchemaTable sTable, SchemaRow sRow, SchemaColumn sCol, SchemaTable dTable, SchemaRow dRow, Context context, int mode) throws Exception {
-		logger.trace("Entered parseRepeatingCol()");
+		if(Diagnostics.isLogEnabled()) logger.trace("Entered parseRepeatingCol()");
 		context.currSubCol = 0;
 		
 		if(sCol.getRepeatTimes() > 0) { // if it's finite parsing times TODO need functional testing 
 			if(context.currCol + sCol.getRepeatTimes() >= row.length) {
-				logger.warn("Dimension MISMATCHED: schema column repeating times {} from current CSV column {} exceed actual CSV column length of {} at row {}", sCol.getRepeatTimes(), context.currCol, row.length, context.currRow);
+				Diagnostics.record(Diagnostics.Event.DIMENSION_MISMATCH, sCol, context.currRow, context.currCol, null);
+				if(Diagnostics.isLogEnabled()) logger.warn("Dimension MISMATCHED: schema column repeating times {} from current CSV column {} exceed actual CSV column length of {} at row {}", sCol.getRepeatTimes(), context.currCol, row.length, context.currRow);
 				return false;  
 			}
 			for(int i = 0; i < sCol.getRepeatTimes(); i++) {
@@ -988,14 +1676,14 @@ public class SchemaProcessor {
 				context.currCol++;
 				context.currSubCol++;
 			}			
-			logger.trace("context.currSubCol {} VS sCol.repeatTimes {}", context.currSubCol, sCol.getRepeatTimes());
+			if(Diagnostics.isLogEnabled()) logger.trace("context.currSubCol {} VS sCol.repeatTimes {}", context.currSubCol, sCol.getRepeatTimes());
 			assert(context.currSubCol == sCol.getRepeatTimes()) : "SubCol must reach sCol repeating times at this point.";			
 			return true;
 		} else { // if it's indefinite repeating column [0..Inf] (or unknown column number with the same schema, to be specific) 
 			while(true) {
 				// if the data in this row has run out
 				if(context.currCol >= row.length) {
-					logger.debug("No more CSV column to process at schema {} and CSV[{},{}]", sCol, context.currRow, context.currCol);
+					if(Diagnostics.isLogEnabled()) logger.debug("No more CSV column to process at schema {} and CSV[{},{}]", sCol, context.currRow, context.currCol);
 					// Schema column won't be used to evaluate CSV dimension if there's no data nor
 					// schema cell at the location. Just as schema row doesn't need to be declared for every row. 
 					// The dimensionality check is relied solely upon schema cell declaration.  
@@ -1027,32 +1715,25 @@ public class SchemaProcessor {
 	 * @param context
 	 */
 	private void procSchmEntPropRuntime(SchemaEntity se, Context context) {
+		long start = metrics.startTiming();
 		SchemaTable dTable = se.getSchemaTable();
 		
-		for(Entry<String,String> propEntry : se.getProperties().entrySet()) {
-			String propName = propEntry.getKey();
-			String propVal = propEntry.getValue();
-			
+		// replace context {var} expression in each property's literal, in place without an entry iterator
+		se.getProperties().replaceAll((propName, propVal) -> {
 			assert(propVal != null) : "The assignment of null value for a property is not allowed in CSV-X";
-			
-			// replace context {var} expression in property's literal		
-			propVal = processContextVarLiteral(propVal, context);
-			propEntry.setValue(propVal);
-			
-			switch(propName) {
-			case SchemaEntity.METAPROP_NAME:
-				declareVarInTable(dTable, se);
-				break;
-			}
-			
-			// IMP (saved for future version) 
-			// if specified, delegate to user-defined property handling function
-			//Function<String, Object> userFn;
-			//if((userFn = schema.getUserPropHandlingFn(se, propName)) != null) userFn.apply(propVal);				
-			
-			// finally, update the property value
-			se.addProperty(propName, propVal);
-		}		
+			return processContextVarLiteral(propVal, context);
+		});
+		
+		if(se.getProperty(SchemaEntity.METAPROP_NAME) != null) {
+			if(context.deferredVars != null) context.deferredVars.add(se);
+			else declareVarInTable(dTable, se);
+		}
+		
+		// IMP (saved for future version) 
+		// if specified, delegate to user-defined property handling function
+		//Function<String, Object> userFn;
+		//if((userFn = schema.getUserPropHandlingFn(se, propName)) != null) userFn.apply(propVal);				
+		metrics.varRegistered(start);
 	}
 	
 	/**
@@ -1086,7 +1767,17 @@ public class SchemaProcessor {
 	//}
 	
 	/**
-	 * Get datasets from processing CSV against CSV-X.  
+	 * Get datasets from processing CSV against CSV-X.
+	 * 
+	 * If no target CSV of the loaded schemas matches the csv ID (or tryAllSchemas is set), every loaded schema  
+	 * is tried, each with its own parsing context. Schemas having the same parser settings read shared rows 
+	 * through a cursor of their own, opened when their trial starts. With matchingThreads > 1, the schemas are 
+	 * tried concurrently in lockstep and the first successful result is returned, the CSV being tokenized once 
+	 * for the trials sharing a stream. Otherwise, they're tried one after another, a trial replaying the rows 
+	 * kept by previous trials if none has been released yet, or reading the CSV again otherwise.
+	 * 
+	 * This method is thread-safe, each call runs in its own session and returns its own data objects.
+	 *   
 	 * @param csvPath
 	 * @param csvId the ID of input CSV, can be null if not known.
 	 * @param schemaPaths 
@@ -1095,8 +1786,6 @@ public class SchemaProcessor {
 	 */
 	public Object getDatasets(String csvPath, String csvId, String[] schemaPaths, ReturnType retType) {
 		
-		Context context = new Context();
-		
 		// load schema(s), if specified
 		if(schemaPaths != null) loadSchemas(schemaPaths);
 
@@ -1109,24 +1798,12 @@ public class SchemaProcessor {
 			Schema schema = schemas.get(sId);
 			assert(schema != null) : "Impossible case of unrecognized schema ID : " + sId;
 			try {
-				data = parseCsvWithSchema(csvPath, schema, context, retType);	
+				data = parseCsvWithSchema(csvPath, schema, new Context(), retType);	
 			} catch(Exception e) {
 				logger.error("There's an exception in processing csv {} with schema {}:", csvPath, schema, e);
 			}			
-		} else { 			
-			// The processor loops through known schemas until it successfully parse the CSV.
-			for(Schema schema : schemas.values()) {		
-				try {
-					data = parseCsvWithSchema(csvPath, schema, context, retType);
-				} catch(Exception e) {
-					logger.warn("There's an exception in processing csv {} with schema {}: {}", csvPath, schema, e);
-					logger.debug("", e);
-				}									
-				if(data != null) {
-					logger.info("Successfully validated a csv {} with csv-x {}.", csvPath, schema);
-					break;
-				}
-			} 			
+		} else if(schemas.size() > 0) {
+			data = parseCsvWithSchemas(csvPath, new ArrayList<Schema>(schemas.values()), retType);
 		}		
 
 		if(data != null) {
@@ -1138,6 +1815,147 @@ public class SchemaProcessor {
 				
 	}
 	
+	/**
+	 * Row streams of a CSV shared by trials of candidate schemas with the same parser settings.
+	 * 
+	 * A trial opens its cursor when it starts, so a schema not tried yet holds no row. The cursor is opened 
+	 * on the current stream of its parser settings while the stream still has every row, replaying the rows 
+	 * read by earlier trials, or else on a new stream reading the CSV again.
+	 */
+	private class TrialStreams implements AutoCloseable {
+		
+		private final String csvPath;
+		
+		private final Map<String, SharedRowStream> current = new HashMap<String, SharedRowStream>();
+		
+		private final List<SharedRowStream> opened = new ArrayList<SharedRowStream>();
+		
+		private boolean closed = false;
+		
+		TrialStreams(String csvPath) {
+			this.csvPath = csvPath;
+		}
+		
+		/**
+		 * Open a cursor positioned at the first CSV row for a trial of a schema.
+		 * @param schema
+		 * @return RowCursor
+		 * @throws Exception if the CSV can't be read or the streams have been closed.
+		 */
+		synchronized RowCursor openCursor(Schema schema) throws Exception {
+			if(closed) throw new IllegalStateException("The row streams have been closed.");
+			String key = getParserSettingsKey(schema);
+			SharedRowStream stream = current.get(key);
+			RowCursor cursor = (stream == null)? null : stream.tryOpenCursor();
+			if(cursor == null) {
+				stream = openRowStream(schema, csvPath);
+				current.put(key, stream);
+				opened.add(stream);
+				cursor = stream.openCursor();
+			}
+			return cursor;
+		}
+		
+		@Override
+		public synchronized void close() {
+			closed = true;
+			for(SharedRowStream stream : opened) stream.close();
+		}
+	}
+	
+	/**
+	 * Try parsing CSV with each of candidate schemas until one of them succeeds. 
+	 * Candidates with the same parser settings share reads of the CSV (see TrialStreams).
+	 * @param csvPath
+	 * @param candidates schemas to try.
+	 * @param retType desired data return type (ReturnType).
+	 * @return data Object as defined by ReturnType retType or null if none of the schemas matched.
+	 */
+	private Object parseCsvWithSchemas(String csvPath, List<Schema> candidates, ReturnType retType) {
+		try(TrialStreams streams = new TrialStreams(csvPath)) {
+			if(matchingThreads > 1 && candidates.size() > 1) return parseCsvWithSchemasConcurrently(csvPath, candidates, streams, retType);
+			
+			// The processor loops through known schemas until it successfully parse the CSV.
+			for(Schema schema : candidates) {
+				Object data = null;
+				try {
+					data = parseCsvWithSchema(streams, csvPath, schema, retType);
+				} catch(Exception ex) {
+					logger.warn("There's an exception in processing csv {} with schema {}: {}", csvPath, schema, ex);
+					logger.debug("", ex);
+				}
+				if(data != null) {
+					logger.info("Successfully validated a csv {} with csv-x {}.", csvPath, schema);
+					return data;
+				}
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Run a trial of a schema with a cursor of the trial streams, closing the cursor when done.
+	 * @param streams
+	 * @param csvPath
+	 * @param schema
+	 * @param retType desired data return type (ReturnType).
+	 * @return data Object as defined by ReturnType retType or null if the CSV doesn't match the schema.
+	 * @throws Exception
+	 */
+	private Object parseCsvWithSchema(TrialStreams streams, String csvPath, Schema schema, ReturnType retType) throws Exception {
+		RowCursor cursor = streams.openCursor(schema);
+		try {
+			return parseCsvWithSchema(cursor, csvPath, schema, new Context(), retType);
+		} finally {
+			// a finished trial drops out of the race, no longer holding back the others
+			cursor.close();
+		}
+	}
+	
+	/**
+	 * Try parsing CSV with each of candidate schemas on the matching pool, each with its own parsing context. 
+	 * The first successful result is returned and the remaining trials are cancelled.
+	 * 
+	 * Trials waiting for a thread hold no row. Trials running at the same time advance in lockstep on a 
+	 * shared stream, holding rows within its lead window.
+	 *  
+	 * @param csvPath
+	 * @param candidates schemas to try.
+	 * @param streams row streams the trials open their cursor on.
+	 * @param retType desired data return type (ReturnType).
+	 * @return data Object as defined by ReturnType retType or null if none of the schemas matched.
+	 */
+	private Object parseCsvWithSchemasConcurrently(String csvPath, List<Schema> candidates, TrialStreams streams, ReturnType retType) {
+		CompletionService<Object> ecs = new ExecutorCompletionService<Object>(getMatchingPool());
+		Map<Future<Object>, Schema> trials = new HashMap<Future<Object>, Schema>();
+		try {
+			for(Schema schema : candidates) {
+				trials.put(ecs.submit(() -> parseCsvWithSchema(streams, csvPath, schema, retType)), schema);
+			}
+			for(int i = 0; i < trials.size(); i++) {
+				Future<Object> trial = ecs.take();
+				Schema schema = trials.get(trial);
+				try {
+					Object data = trial.get();
+					if(data != null) {
+						logger.info("Successfully validated a csv {} with csv-x {}.", csvPath, schema);
+						return data;
+					}
+				} catch(ExecutionException e) {
+					logger.warn("There's an exception in processing csv {} with schema {}: {}", csvPath, schema, e.getCause());
+					logger.debug("", e.getCause());
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// cancel the trials still running or waiting, their cursors are closed with the streams
+			for(Future<Object> trial : trials.keySet()) trial.cancel(true);
+			streams.close();
+		}
+		return null;
+	}
+	
 	@SuppressWarnings("unchecked")
 	public List<SchemaTable> getDataTableList(String csvPath, String csvId, String[] schemaPaths) {
 		return (List<SchemaTable>) getDatasets(csvPath, csvId, schemaPaths, ReturnType.TABLE_LIST);
@@ -1147,18 +1965,82 @@ public class SchemaProcessor {
 		return (Schema) getDatasets(csvPath, csvId, schemaPaths, ReturnType.DATA_SCHEMA);
 	}
 	
+	/**
+	 * Get data schema from processing CSV against a loaded schema. 
+	 * Unlike getDataSchema(), no other loaded schema is tried. This method is thread-safe.
+	 * @param csvPath
+	 * @param schemaId ID of a loaded schema.
+	 * @return Schema data schema or null if the CSV doesn't match the schema.
+	 * @throws IllegalArgumentException if no schema with the ID has been loaded.
+	 * @throws Exception if there's a problem processing the CSV. 
+	 */
+	public Schema getDataSchemaWithSchema(String csvPath, String schemaId) throws Exception {
+		Schema schema = schemas.get(schemaId);
+		if(schema == null) throw new IllegalArgumentException("Unknown schema ID: " + schemaId);
+		return (Schema) parseCsvWithSchema(csvPath, schema, new Context(), ReturnType.DATA_SCHEMA);
+	}
+	
+	/**
+	 * Match CSV against a loaded schema as getDataSchemaWithSchema() does, but only probing each table so that 
+	 * no data object is created. 
+	 * @param csvPath
+	 * @param schemaId ID of a loaded schema.
+	 * @return boolean whether the CSV matches the schema.
+	 * @throws Exception if there's a problem processing the CSV.
+	 * @see LayerOverhead
+	 */
+	boolean probeWithSchema(String csvPath, String schemaId) throws Exception {
+		Schema schema = schemas.get(schemaId);
+		if(schema == null) throw new IllegalArgumentException("Unknown schema ID: " + schemaId);
+		Context context = new Context();
+		context.probeOnly = true;
+		return parseCsvWithSchema(csvPath, schema, context, ReturnType.DATA_SCHEMA) != null;
+	}
+	
+	/**
+	 * Get data schema from processing CSV against a schema, reading rows from a row stream and handing each 
+	 * data table to a handler as soon as it's materialized.
+	 * The stream is closed when the processing is done.
+	 * @param stream
+	 * @param csvPath
+	 * @param schema
+	 * @param tableHandler
+	 * @return Schema data schema or null if the CSV doesn't match the schema.
+	 * @throws Exception if there's a problem processing the CSV.
+	 * @see PipelinedProcessor
+	 */
+	Schema getDataSchemaWithSchema(SharedRowStream stream, String csvPath, Schema schema, Consumer<SchemaTable> tableHandler) throws Exception {
+		Context context = new Context();
+		context.tableHandler = tableHandler;
+		try {
+			return (Schema) parseCsvWithSchema(stream.openCursor(), csvPath, schema, context, ReturnType.DATA_SCHEMA);
+		} finally {
+			stream.close();
+		}
+	}
+	
 	/**
 	 * Parse in CSV-X Schema file.
 	 * @param schemaPath
 	 * @return Schema
 	 */
-	@SuppressWarnings("unchecked")
 	public Schema parseCsvXSchema(String schemaPath) throws Exception {
+		return parseCsvXSchema(schemaPath, Files.readAllBytes(Paths.get(schemaPath)));
+	}
+	
+	/**
+	 * Parse in CSV-X Schema file content.
+	 * @param schemaPath path of the schema file, its file name is the default schema ID.
+	 * @param source content of the schema file.
+	 * @return Schema
+	 */
+	@SuppressWarnings("unchecked")
+	private Schema parseCsvXSchema(String schemaPath, byte[] source) throws Exception {
 		
 		Schema s = new Schema();
 		
 		// read in the csv schema file and strip out all comments
-		String schemaStr = JSONMinify.minify(new String(Files.readAllBytes(Paths.get(schemaPath)), StandardCharsets.UTF_8));		
+		String schemaStr = JSONMinify.minify(new String(source, StandardCharsets.UTF_8));		
 		logger.trace(schemaStr);			
 		
 		Map<String, Object> csvSchemaMap = null;
@@ -1485,8 +2367,10 @@ public class SchemaProcessor {
 			CellIndexRange rowRange = processCellIndexRange(pos[0]);
 			CellIndexRange colRange = processCellIndexRange(pos[1]);
 									
-			// create cell representation with its properties for every intersection of row and col and put into schema table!			
-			forMarkedRowAndCol(rowRange, colRange, (int i, int j, Object o, SchemaTable st) -> cellCreation(i, j, (Map<String, String>) o, st) , cellProperties, sTable);
+			// create one cell representation with its properties for the whole intersection of rows and cols and put into schema table!
+			int rowEnd = (rowRange.ceiling != -1)? rowRange.ceiling : rowRange.floor;
+			int colEnd = (colRange.ceiling != -1)? colRange.ceiling : colRange.floor;
+			cellCreation(rowRange.floor, colRange.floor, rowEnd, colEnd, cellProperties, sTable);
 		}
 
 	}
@@ -1579,14 +2463,16 @@ public class SchemaProcessor {
 	}
 	
 	/**
-	 * Create cell schema for [row, col], assign each cell cellProperty, and add to input schema table.
+	 * Create cell schema for [row-rowEnd, col-colEnd], assign each cell cellProperty, and add to input schema table.
 	 * @param row
 	 * @param col
+	 * @param rowEnd
+	 * @param colEnd
 	 * @param cellProps
 	 * @param sTable
 	 */
-	private void cellCreation(int row, int col, Map<String, String> cellProps, SchemaTable sTable) {		
-		SchemaCell c = new SchemaCell(row, col, sTable);
+	private void cellCreation(int row, int col, int rowEnd, int colEnd, Map<String, String> cellProps, SchemaTable sTable) {		
+		SchemaCell c = new SchemaCell(row, col, rowEnd, colEnd, sTable);
 		processCellDef(c, cellProps);
 		sTable.addCell(c);	
 	}	
@@ -1757,30 +2643,28 @@ public class SchemaProcessor {
 	 * @return String of context {var} replaced literal.
 	 */
 	private String processContextVarLiteral(String literal, Context context) {
-		String retVal = literal;		
-	    // detect context {var} expression	    
-	    Pattern p = Pattern.compile(CONTEXT_VAR_REGEX, Pattern.DOTALL);
-	    Matcher m = p.matcher(literal);
-	    StringBuffer sb = new StringBuffer();
+		String retVal = literal;
+		// most literals have no {var} expression at all, skip matching for them
+		if(literal.indexOf('{') < 0) return retVal;
+	    // detect context {var} expression, reusing the session's matcher and buffer
+	    Matcher m = context.contextVarMatcher.reset(literal);
+	    StringBuffer sb = context.scratch;
+	    sb.setLength(0);
 	    while(m.find()) {
 	    	String varName = m.group(2);
 	    	
     		switch(varName) {
     		case "row":
-    			if(context.currRow != null) m.appendReplacement(sb, context.currRow.toString());
-    			else throw new IllegalArgumentException("Referring to null value for currRow.");
+    			m.appendReplacement(sb, Integer.toString(context.currRow));
     			break;
     		case "col":
-    			if(context.currCol != null) m.appendReplacement(sb, context.currCol.toString());
-    			else throw new IllegalArgumentException("Referring to null value for currCol.");
+    			m.appendReplacement(sb, Integer.toString(context.currCol));
     			break;
     		case "subrow":
-    			if(context.currSubRow != null) m.appendReplacement(sb, context.currSubRow.toString());
-    			else throw new IllegalArgumentException("Referring to null value for currSubRow.");
+    			m.appendReplacement(sb, Integer.toString(context.currSubRow));
     			break;
     		case "subcol":
-    			if(context.currSubCol != null) m.appendReplacement(sb, context.currSubCol.toString());
-    			else throw new IllegalArgumentException("Referring to null value for currSubCol.");
+    			m.appendReplacement(sb, Integer.toString(context.currSubCol));
     			break;    			
     		default:
     			assert(false) : "non-context var shouldn't get matched here: " + varName; 
@@ -1789,7 +2673,7 @@ public class SchemaProcessor {
 	    
 	    	m.appendTail(sb);
 	    	retVal = sb.toString();
-	    	m = p.matcher(retVal);
+	    	m.reset(retVal);
 	    	sb.setLength(0);	    		    		    	
 	    } // END OF  while(m.find()) {..	    	    
 	    return retVal;
@@ -1801,7 +2685,7 @@ public class SchemaProcessor {
 	 * @return boolean
 	 */
 	public boolean hasVarInLiteral(String literal) {
-	    Pattern p = Pattern.compile(VAR_REGEX, Pattern.DOTALL);	    
+	    Pattern p = VAR_PATTERN;
 	    Matcher m = p.matcher(literal);
 	    return m.find();
 	}
@@ -1863,7 +2747,7 @@ public class SchemaProcessor {
 		rrs.add(se.getRefEx() + "." + propName);
 		
 	    // detect {var} and {var.prop} expression	    
-	    Pattern p = Pattern.compile(VAR_REGEX, Pattern.DOTALL);
+	    Pattern p = VAR_PATTERN;
 	    Matcher m = p.matcher(literal);
 	    StringBuffer sb = new StringBuffer();
 	    while(m.find()) { // foreach {var}:
@@ -1951,7 +2835,7 @@ public class SchemaProcessor {
 	public static String resolveFunctionCall(String literal, Schema s) throws Exception {
 		String retVal = literal;
 		// find func('', '', ..) expression
-	    Pattern p = Pattern.compile(FUNC_REGEX, Pattern.DOTALL);
+	    Pattern p = FUNC_PATTERN;
 	    Matcher m = p.matcher(literal);
 	    StringBuffer sb = new StringBuffer();
 	    while(m.find()) { // foreach func():
@@ -2016,6 +2900,9 @@ public class SchemaProcessor {
 			}
 			nashorn.setBindings(bindings, ScriptContext.GLOBAL_SCOPE);
 			
+			ProcessingMetrics pm = s.getMetrics();
+			long start = (pm != null)? pm.startTiming() : 0;
+			JfrEvents.FunctionCall call = JfrEvents.isEnabled()? JfrEvents.beginFunctionCall() : null;
 			try {
 				nashorn.eval(script);
 				String eval = (String) nashorn.get("$return");
@@ -2025,6 +2912,9 @@ public class SchemaProcessor {
 				logger.error(errMsg);
 				logger.debug(ex1.getMessage());
 				throw new Exception(errMsg, ex1);
+			} finally {
+				if(pm != null) pm.functionCalled(start, sf);
+				if(call != null) JfrEvents.commitFunctionCall(call, s, funcName);
 			}
 	    	
 	    	m.appendTail(sb);
@@ -2035,6 +2925,59 @@ public class SchemaProcessor {
 	    return retVal;
 	}
 	
+    /**
+     * Input stream counting bytes read into processing metrics.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+    	private final ProcessingMetrics metrics;
+    	CountingInputStream(InputStream in, ProcessingMetrics metrics) {
+    		super(in);
+    		this.metrics = metrics;
+    	}
+    	@Override
+    	public int read() throws IOException {
+    		int b = super.read();
+    		if(b >= 0) metrics.bytesRead(1);
+    		return b;
+    	}
+    	@Override
+    	public int read(byte[] b, int off, int len) throws IOException {
+    		int n = super.read(b, off, len);
+    		if(n > 0) metrics.bytesRead(n);
+    		return n;
+    	}
+    }
+    
+    /**
+     * Appendable counting characters appended.
+     */
+    static class CountingAppendable implements Appendable {
+    	private final Appendable out;
+    	long count = 0;
+    	CountingAppendable(Appendable out) {
+    		this.out = out;
+    	}
+    	@Override
+    	public Appendable append(CharSequence csq) throws IOException {
+    		CharSequence cs = (csq != null)? csq : "null";
+    		out.append(cs);
+    		count += cs.length();
+    		return this;
+    	}
+    	@Override
+    	public Appendable append(CharSequence csq, int start, int end) throws IOException {
+    		out.append(csq, start, end);
+    		count += end - start;
+    		return this;
+    	}
+    	@Override
+    	public Appendable append(char c) throws IOException {
+    		out.append(c);
+    		count++;
+    		return this;
+    	}
+    }
+    
     @SuppressWarnings("restriction")
 	private static class NoJavaFilter implements ClassFilter{
         @Override
@@ -2135,29 +3078,6 @@ public class SchemaProcessor {
 		return cir;
 	}	
 	
-	/**
-	 * Loop through rows and columns specified in rowRange and colRange and perform cell process for a schema table.
-	 * @param rowRange
-	 * @param colRange
-	 * @param cp
-	 * @param obj
-	 * @param sTable
-	 */
-	private void forMarkedRowAndCol(CellIndexRange rowRange, CellIndexRange colRange, CellProcess cp, Object obj, SchemaTable sTable) {
-		int rowLimit = 0, colLimit = 0;
-		if(rowRange.ceiling != -1) rowLimit = rowRange.ceiling;  
-		else rowLimit = rowRange.floor;
-		
-		for(int i = rowRange.floor; i <= rowLimit; i++) {
-			if(colRange.ceiling != -1) colLimit = colRange.ceiling;  
-			else colLimit = colRange.floor;			
-			
-			for(int j = colRange.floor; j <= colLimit; j++) {				
-				cp.process(i, j, obj, sTable);
-			}			
-		}		
-	}
-	
 	/**
 	 * Dump a schema table data into CSV format. 
 	 * @param dTable
@@ -2228,61 +3148,18 @@ public class SchemaProcessor {
 	 * @param dSchema
 	 */
 	public static void generateRdfFromTemplate(Schema dSchema) {		
+		generateRdfFromTemplate(dSchema, null);
+	}
+	
+	/**
+	 * Generate RDF in Turtle format from mapped template, applying templates of data tables in segments of rows 
+	 * on an executor.
+	 * @param dSchema
+	 * @param executor executor applying the templates or null to apply them on the calling thread.
+	 */
+	public static void generateRdfFromTemplate(Schema dSchema, ExecutorService executor) {		
 		try {
-
-			Map<String, SchemaTable> dTables = dSchema.getSchemaTables();
-			
-			for(Map.Entry<String, SchemaTable> tableE : dTables.entrySet()) {
-				String tableName = tableE.getKey();
-				SchemaTable dTable = tableE.getValue();
-				
-				//System.out.println(dTable);
-				//System.out.println(dTable.getVarMap());			
-				
-				if(dTable.hasTemplateMapping()) System.out.println(applyRdfTemplate(dTable));
-				
-				// for every row
-				for(Map.Entry<Integer, SchemaRow> rowE : dTable.getSchemaRows().entrySet()) {
-					Integer rowNum = rowE.getKey();
-					SchemaRow dRow = rowE.getValue();
-					
-					//System.out.println(dRow);				
-					
-					if(dRow.hasTemplateMapping()) System.out.println(applyRdfTemplate(dRow));
-					
-					// for every cell
-					for(Map.Entry<Integer, SchemaCell> cellE : dRow.getSchemaCells().entrySet()) {
-						Integer colNum = cellE.getKey();
-						SchemaCell dCell = cellE.getValue();
-						
-						//System.out.print(dCell);
-						assert(dCell.getSchemaTable() == dTable) : "dCell : " + dCell + " has inconsistent parent table.";					
-						
-						if(dCell.hasTemplateMapping()) System.out.println(applyRdfTemplate(dCell));
-						
-					}
-				}
-				
-				// for every schema property
-				for(Map.Entry<String, SchemaProperty> propE : dTable.getSchemaProperties().entrySet()) {
-					String propName = propE.getKey();
-					SchemaProperty sProp = propE.getValue();
-					
-					//System.out.println(sProp);
-					if(sProp.hasTemplateMapping()) System.out.println(applyRdfTemplate(sProp));
-				}
-				
-				// for every schema data
-				for(Map.Entry<String, SchemaData> dataE : dTable.getSchemaDataMap().entrySet()) {
-					String dataName = dataE.getKey();
-					SchemaData sData = dataE.getValue();
-					
-					//System.out.println(sData);
-					if(sData.hasTemplateMapping()) System.out.println(applyRdfTemplate(sData));
-				}
-				
-			} // end for every schema tables			
-			
+			writeRdfFromTemplate(dSchema, System.out, executor);
 		} catch(Exception ex) {
 			String errMsg = "There's an error generating RDF from schema " + dSchema + ":" + System.lineSeparator() + ex.getMessage();
 			System.err.println(errMsg);
@@ -2293,6 +3170,106 @@ public class SchemaProcessor {
 
 	}
 	
+	/**
+	 * Generate RDF in Turtle format from mapped template, writing the result of each mapped schema entity 
+	 * to an output as soon as it's generated.
+	 * @param dSchema
+	 * @param out the output, e.g. System.out, a Writer, or a StringBuilder.
+	 * @throws Exception
+	 */
+	public static void writeRdfFromTemplate(Schema dSchema, Appendable out) throws Exception {
+		writeRdfFromTemplate(dSchema, out, null);
+	}
+	
+	/**
+	 * Generate RDF in Turtle format from mapped template, applying templates of data tables in segments of rows 
+	 * on an executor. Results are written to the output in the same order as applying them on the calling thread.
+	 * @param dSchema
+	 * @param out
+	 * @param executor executor applying the templates or null to apply them on the calling thread.
+	 * @throws Exception
+	 */
+	public static void writeRdfFromTemplate(Schema dSchema, Appendable out, ExecutorService executor) throws Exception {
+		ProcessingMetrics pm = dSchema.getMetrics();
+		if(pm != null) {
+			CountingAppendable counting = new CountingAppendable(out);
+			try {
+				writeMappedTemplates(dSchema, counting, executor);
+			} finally {
+				pm.output(counting.count);
+			}
+		} else writeMappedTemplates(dSchema, out, executor);
+	}
+	
+	/**
+	 * Write result of every mapped template in a data schema.
+	 * @param dSchema
+	 * @param out
+	 * @param executor
+	 * @throws Exception
+	 */
+	private static void writeMappedTemplates(Schema dSchema, Appendable out, ExecutorService executor) throws Exception {
+		Map<String, SchemaTable> dTables = dSchema.getSchemaTables();
+		
+		if(executor != null) {
+			TableSerializer.append(dTables.values(), MAPPED_TEMPLATE_SEGMENTS, out, executor);
+			return;
+		}
+		
+		for(Map.Entry<String, SchemaTable> tableE : dTables.entrySet()) {
+			writeMappedTemplates(tableE.getValue(), out);
+		} // end for every schema tables			
+		
+	}
+	
+	/**
+	 * Write result of every mapped template in a data table.
+	 * @param dTable
+	 * @param out
+	 * @throws Exception
+	 */
+	static void writeMappedTemplates(SchemaTable dTable, Appendable out) throws Exception {
+		TableSerializer.append(dTable, MAPPED_TEMPLATE_SEGMENTS, out);
+	}
+	
+	/**
+	 * Result of mapped templates of the parts of a data table.
+	 */
+	private static final TableSerializer.SegmentWriter MAPPED_TEMPLATE_SEGMENTS = new TableSerializer.SegmentWriter() {
+		
+		@Override
+		public void appendHead(SchemaTable dTable, Appendable out) throws Exception {
+			if(dTable.hasTemplateMapping()) out.append(applyRdfTemplate(dTable)).append(System.lineSeparator());
+		}
+		
+		@Override
+		public void appendRow(SchemaRow dRow, Appendable out) throws Exception {
+			if(dRow.hasTemplateMapping()) out.append(applyRdfTemplate(dRow)).append(System.lineSeparator());
+			
+			// for every cell
+			for(Map.Entry<Integer, SchemaCell> cellE : dRow.getSchemaCells().entrySet()) {
+				SchemaCell dCell = cellE.getValue();
+				assert(dCell.getSchemaTable() == dRow.getSchemaTable()) : "dCell : " + dCell + " has inconsistent parent table.";					
+				if(dCell.hasTemplateMapping()) out.append(applyRdfTemplate(dCell)).append(System.lineSeparator());
+			}
+		}
+		
+		@Override
+		public void appendTail(SchemaTable dTable, Appendable out) throws Exception {
+			// for every schema property
+			for(Map.Entry<String, SchemaProperty> propE : dTable.getSchemaProperties().entrySet()) {
+				SchemaProperty sProp = propE.getValue();
+				if(sProp.hasTemplateMapping()) out.append(applyRdfTemplate(sProp)).append(System.lineSeparator());
+			}
+			
+			// for every schema data
+			for(Map.Entry<String, SchemaData> dataE : dTable.getSchemaDataMap().entrySet()) {
+				SchemaData sData = dataE.getValue();
+				if(sData.hasTemplateMapping()) out.append(applyRdfTemplate(sData)).append(System.lineSeparator());
+			}
+		}
+	};
+	
 	/**
 	 * Generate RDF by applying mapping definition in a schema entity.
 	 * @param se SchemaEntity.
@@ -2301,6 +3278,27 @@ public class SchemaProcessor {
 	 */
 	public static String applyRdfTemplate(SchemaEntity se) throws Exception {
 		Schema s = se.getParentSchema();
+		ProcessingMetrics pm = s.getMetrics();
+		long start = (pm != null)? pm.startTiming() : 0;
+		JfrEvents.TemplateApplication app = JfrEvents.isEnabled()? JfrEvents.beginTemplateApplication() : null;
+		String res = null;
+		try {
+			res = applyRdfTemplate(se, s);
+			return res;
+		} finally {
+			if(pm != null) pm.templateApplied(start, se);
+			if(app != null) JfrEvents.commitTemplateApplication(app, se, res);
+		}
+	}
+	
+	/**
+	 * Generate RDF by applying mapping definition in a schema entity of a schema.
+	 * @param se
+	 * @param s parent schema of se.
+	 * @return String after templated.
+	 * @throws Exception
+	 */
+	private static String applyRdfTemplate(SchemaEntity se, Schema s) throws Exception {
 		
 		String mapping = se.getTemplateMapping();
 		if(mapping == null) throw new Exception("The schema entity '" + se + "' doesn't have RDF mapping.");
@@ -2335,7 +3333,7 @@ public class SchemaProcessor {
 				Map<String, UUID> localTtlVars = new HashMap<String, UUID>();
 				
 			    // find & replace all ?x/$x expression(s) in ttl template (? and $ keyword are not allowed in Turtle anyway)    
-			    Pattern p = Pattern.compile(TURTLE_VAR_REGEX, Pattern.CASE_INSENSITIVE | Pattern.DOTALL);			    
+			    Pattern p = TURTLE_VAR_PATTERN;
 			    Matcher m = p.matcher(ttl);
 			    StringBuffer sb = new StringBuffer();			    
 			    while(m.find()) {
@@ -2390,7 +3388,7 @@ public class SchemaProcessor {
 	 */
 	private static String fillUID(Schema s, String tmp) {		
 	    // detect {@uid#}	    
-	    Pattern p = Pattern.compile(TMPUID_VAR_REGEX, Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+	    Pattern p = TMPUID_VAR_PATTERN;
 	    Matcher m = p.matcher(tmp);
 	    StringBuffer sb = new StringBuffer();
 	    Map<Integer, String> uidTable = new HashMap<Integer, String>();
@@ -20,6 +20,8 @@ package com.dadfha.lod.csv;
  *
  */
 public class SchemaProperty extends SchemaEntity {
+
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * Class IRI for schema property.
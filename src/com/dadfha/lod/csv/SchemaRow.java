@@ -1,9 +1,15 @@
 package com.dadfha.lod.csv;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class SchemaRow extends SchemaEntity {
+
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * Class IRI for schema row.
@@ -25,6 +31,24 @@ public class SchemaRow extends SchemaEntity {
 	 */
 	private Map<Integer, SchemaCell> cells = new HashMap<Integer, SchemaCell>(INIT_COL_NUM);
 	
+	/**
+	 * Cell ranges of parent table covering this row, in order of definition. 
+	 * Ranges are shared by all rows they cover and never overlap on a cell without explicit cell definition. 
+	 */
+	private List<SchemaCell> cellRanges = Collections.emptyList();
+	
+	/**
+	 * Lookup of cell by column number built when the row is frozen, or null before that.
+	 * When it's a grid of cell ranges (see rangeGrid), it also resolves cell ranges.
+	 */
+	private IntIndex<SchemaCell> cellIndex = null;
+	
+	/**
+	 * Whether cellIndex is a grid resolving cell ranges as well as explicit cells. 
+	 * Otherwise ranges are resolved by getRangeCell() even if the index of explicit cells happens to be dense.
+	 */
+	private boolean rangeGrid = false;
+	
 	/**
 	 * Row number. -1 indicates uninitialized state.
 	 */
@@ -47,15 +71,37 @@ public class SchemaRow extends SchemaEntity {
 	
 	/**
 	 * Get schema for a cell in this row at a specified column.
+	 * An explicit cell definition takes precedence over cell ranges covering the cell.
 	 * @param col column number.
 	 * @return SchemaCell of specified column (col) or null if the schema for cell doesn't exist. 
 	 */
 	public SchemaCell getCell(int col) {
-		return cells.get(col);
+		SchemaCell cell;
+		if(cellIndex != null) {
+			cell = cellIndex.get(col);
+			if(cell != null || rangeGrid) return cell;
+		} else {
+			cell = cells.get(col);
+			if(cell != null) return cell;
+		}
+		return getRangeCell(col);
 	}
 	
 	/**
-	 * Get all schema cells within this schema row.
+	 * Get cell range covering a column.
+	 * @param col
+	 * @return SchemaCell or null if no range covers the column.
+	 */
+	private SchemaCell getRangeCell(int col) {
+		for(int i = cellRanges.size() - 1; i >= 0; i--) {
+			SchemaCell range = cellRanges.get(i);
+			if(col >= range.getCol() && col <= range.getColEnd()) return range;
+		}
+		return null;
+	}
+	
+	/**
+	 * Get all explicit schema cells within this schema row. Cell ranges covering the row are not included.
 	 * @return Map<Integer, SchemaCell> between column number and its corresponding schema cell object.
 	 */
 	public Map<Integer, SchemaCell> getSchemaCells() {
@@ -65,6 +111,23 @@ public class SchemaRow extends SchemaEntity {
 	public void addCell(SchemaCell cell) {
 		cells.put(cell.getCol(), cell);
 	}
+	
+	/**
+	 * Get cell ranges covering this row.
+	 * @return List<SchemaCell>
+	 */
+	public List<SchemaCell> getCellRanges() {
+		return cellRanges;
+	}
+	
+	/**
+	 * Add a cell range covering this row. It's used by SchemaTable.addCell().
+	 * @param range
+	 */
+	void addCellRange(SchemaCell range) {
+		if(cellRanges.isEmpty()) cellRanges = new ArrayList<SchemaCell>(2);
+		cellRanges.add(range);
+	}
 
 	/**
 	 * Check whether this row's schema is repeating.
@@ -104,7 +167,7 @@ public class SchemaRow extends SchemaEntity {
 	}
 	
 	public boolean isEmpty() {
-		return (cells.size() == 0);
+		return (cells.size() == 0 && cellRanges.isEmpty());
 	}
 	
 	/**
@@ -146,6 +209,39 @@ public class SchemaRow extends SchemaEntity {
 		}	
 	}
 
+	@Override
+	void freeze() {
+		super.freeze();
+		for(SchemaCell cell : cells.values()) cell.freeze();
+		cells = Collections.unmodifiableMap(cells);
+		cellRanges = Collections.unmodifiableList(cellRanges);
+		cellIndex = buildCellIndex();
+	}
+	
+	/**
+	 * Build lookup of cell by column number. If the cells and ranges are dense enough, it's a grid resolving 
+	 * both explicit cells and cell ranges and rangeGrid is set. Otherwise it resolves only explicit cells 
+	 * leaving ranges to getRangeCell().
+	 * @return IntIndex
+	 */
+	private IntIndex<SchemaCell> buildCellIndex() {
+		rangeGrid = false;
+		long length = 0, used = cells.size();
+		for(Integer col : cells.keySet()) length = Math.max(length, col + 1L);
+		for(SchemaCell range : cellRanges) {
+			length = Math.max(length, range.getColEnd() + 1L);
+			used += range.getColEnd() - range.getCol() + 1L;
+		}
+		if(cellRanges.isEmpty() || !IntIndex.isDense(length, used)) return IntIndex.of(cells);
+		SchemaCell[] grid = new SchemaCell[(int) length];
+		for(SchemaCell range : cellRanges) Arrays.fill(grid, range.getCol(), range.getColEnd() + 1, range);
+		for(Map.Entry<Integer, SchemaCell> e : cells.entrySet()) {
+			if(e.getKey() >= 0) grid[e.getKey()] = e.getValue();
+		}
+		rangeGrid = true;
+		return IntIndex.dense(grid);
+	}
+
 	@Override
 	public Schema getParentSchema() {
 		return parentTable.getParentSchema();
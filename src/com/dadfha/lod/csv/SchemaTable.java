@@ -1,12 +1,14 @@
 package com.dadfha.lod.csv;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -39,6 +41,8 @@ import org.apache.xerces.impl.dv.xs.YearMonthDV;
  * @author Wirawit
  */
 public class SchemaTable extends SchemaEntity {
+
+	private static final long serialVersionUID = 1L;
 	
 	private static final Logger logger = LogManager.getLogger();
 
@@ -123,6 +127,17 @@ public class SchemaTable extends SchemaEntity {
 	 */
 	private Map<Integer, SchemaColumn> schemaCols = new HashMap<Integer, SchemaColumn>(INIT_COL_NUM);
 	
+	/**
+	 * Cell ranges, i.e. cell definitions shared by every cell in a rectangular area, in order of definition.
+	 * Each range is also indexed by every schema row it covers. 
+	 */
+	private List<SchemaCell> cellRanges = new ArrayList<SchemaCell>();
+	
+	/**
+	 * Lookup of schema row by row number built when the table is frozen, or null before that.
+	 */
+	private IntIndex<SchemaRow> rowIndex = null;
+	
 	/**
 	 * This collection serves as property name-schema property mapping.
 	 * It's shared among all schema entity in this schema table. 
@@ -206,6 +221,26 @@ public class SchemaTable extends SchemaEntity {
 		return newTable;
 	}
 	
+	@Override
+	void freeze() {
+		super.freeze();
+		for(SchemaRow sRow : schemaRows.values()) sRow.freeze();
+		for(SchemaCell range : cellRanges) range.freeze();
+		for(SchemaColumn sCol : schemaCols.values()) sCol.freeze();
+		for(SchemaProperty sProp : sProps.values()) sProp.freeze();
+		for(SchemaData sData : sDataMap.values()) sData.freeze();
+		replaceValueMap = Collections.unmodifiableMap(replaceValueMap);
+		ignoreValues = Collections.unmodifiableSet(ignoreValues);
+		varMap = Collections.unmodifiableMap(varMap);
+		commonProps = Collections.unmodifiableMap(commonProps);
+		schemaRows = Collections.unmodifiableMap(schemaRows);
+		rowIndex = IntIndex.of(schemaRows);
+		cellRanges = Collections.unmodifiableList(cellRanges);
+		schemaCols = Collections.unmodifiableMap(schemaCols);
+		sProps = Collections.unmodifiableMap(sProps);
+		sDataMap = Collections.unmodifiableMap(sDataMap);
+	}
+	
 	/**
 	 * Get parent schema that has this schema table as a member.
 	 * @return Schema parent schema
@@ -301,7 +336,7 @@ public class SchemaTable extends SchemaEntity {
 	 * @return SchemaRow or null if not available.
 	 */
 	public SchemaRow getRow(int rowNum) {
-		return schemaRows.get(rowNum);
+		return (rowIndex != null)? rowIndex.get(rowNum) : schemaRows.get(rowNum);
 	}
 	
 	/**
@@ -338,14 +373,23 @@ public class SchemaTable extends SchemaEntity {
 	}		
 	
 	/**
-	 * Get cell.
+	 * Get cell. An explicit cell definition takes precedence over cell ranges covering the cell.
+	 * Once the table is frozen, the lookup goes through array-backed indexes without boxing row and column.
 	 * @param row
 	 * @param col
 	 * @return Cell or null if not available.
 	 */
 	public SchemaCell getCell(int row, int col) {
-		SchemaRow sr = schemaRows.get(row);
-		return sr.getCell(col);
+		SchemaRow sr = getRow(row);
+		return (sr != null)? sr.getCell(col) : null;
+	}
+	
+	/**
+	 * Get all cell ranges inside this schema table.
+	 * @return List<SchemaCell> in order of definition.
+	 */
+	public List<SchemaCell> getCellRanges() {
+		return cellRanges;
 	}
 	
 	/**
@@ -355,15 +399,30 @@ public class SchemaTable extends SchemaEntity {
 	 * as needed if there is none before. This way, user doesn't need to write schema row definition if there's
 	 * no particular reason because a schema cell already implies an existence of a schema row it resides in.  
 	 * 
+	 * A cell range (see SchemaCell.isRange()) is kept as one object indexed by every row it covers, rather than 
+	 * a cell per position. The merge semantics stay the same as if the range were expanded: an explicit cell 
+	 * inherits properties of ranges defined before it, and a range defined later overwrites properties of explicit 
+	 * cells it covers. Where ranges overlap each other, the overlapped cells are made explicit. 
+	 * 
 	 * @param cell
 	 */
 	public void addCell(SchemaCell cell) {
+		if(cell.isRange()) {
+			addCellRange(cell);
+			return;
+		}
 		SchemaRow sr = schemaRows.get(cell.getRow());
 		if(sr != null) { // if schema object for the row is already there
-			SchemaCell c = sr.getCell(cell.getCol()); // check if there is already schema for the cell
+			SchemaCell c = sr.getSchemaCells().get(cell.getCol()); // check if there is already explicit schema for the cell
 			if(c != null) { // update schema info
 				c.merge(cell);
 			} else { // create new cell schema!
+				SchemaCell range = sr.getCell(cell.getCol());
+				if(range != null) { // inherit properties of the covering range
+					Map<String, String> props = new HashMap<String, String>(range.properties);
+					props.putAll(cell.properties);
+					cell.properties.putAll(props);
+				}
 				sr.addCell(cell);
 			}
 		} else { // if there is no schema object for the row yet, create one
@@ -373,6 +432,37 @@ public class SchemaTable extends SchemaEntity {
 		}
 	}
 	
+	/**
+	 * Add a cell range, indexing it by every row it covers. 
+	 * @param range
+	 */
+	private void addCellRange(SchemaCell range) {
+		for(int r = range.getRow(); r <= range.getRowEnd(); r++) {
+			SchemaRow sr = schemaRows.get(r);
+			if(sr == null) {
+				sr = new SchemaRow(r, this);
+				schemaRows.put(r, sr);
+			}
+			// make cells overlapped with earlier ranges explicit
+			for(SchemaCell prior : sr.getCellRanges()) {
+				int from = Math.max(prior.getCol(), range.getCol());
+				int to = Math.min(prior.getColEnd(), range.getColEnd());
+				for(int c = from; c <= to; c++) {
+					if(sr.getSchemaCells().containsKey(c)) continue;
+					SchemaCell cell = new SchemaCell(r, c, this);
+					cell.properties.putAll(sr.getCell(c).properties);
+					sr.addCell(cell);
+				}
+			}
+			// later range overwrites properties of explicit cells it covers
+			for(SchemaCell cell : sr.getSchemaCells().values()) {
+				if(range.covers(r, cell.getCol())) cell.properties.putAll(range.properties);
+			}
+			sr.addCellRange(range);
+		}
+		cellRanges.add(range);
+	}
+	
 	/**
 	 * Check if this schema table contains schema property with the name.
 	 * @param name
@@ -501,9 +591,39 @@ public class SchemaTable extends SchemaEntity {
 	 * @throws Exception 
 	 */
 	public boolean validate(int sRow, int sCol, String val, int mode) throws Exception {
+		return validate(sRow, sCol, val, mode, null);
+	}
+	
+	/**
+	 * To validate a CSV cell against its schema definition, accumulating datatype and regex validation 
+	 * counts and times into processing metrics.
+	 * @param sRow schema row number
+	 * @param sCol schema column number
+	 * @param val CSV's cell value
+	 * @param mode
+	 * @param metrics processing metrics or null.
+	 * @return boolean true if the validate is success or false otherwise.
+	 * @throws Exception
+	 * @see #validate(int, int, String, int)
+	 */
+	public boolean validate(int sRow, int sCol, String val, int mode, ProcessingMetrics metrics) throws Exception {
+		if(!JfrEvents.isEnabled()) return validateCell(sRow, sCol, val, mode, metrics);
+		JfrEvents.Validation e = JfrEvents.beginValidation();
+		boolean valid = false;
+		try {
+			valid = validateCell(sRow, sCol, val, mode, metrics);
+			return valid;
+		} finally {
+			JfrEvents.commitValidation(e, this, sRow, sCol, valid);
+		}
+	}
+	
+	private boolean validateCell(int sRow, int sCol, String val, int mode, ProcessingMetrics metrics) throws Exception {
 		
 		// initialize processing mode
 		boolean ignoreErrMsg = ((SchemaProcessor.MODE_IGNORE_ERR_MSG & mode) != 0)? true : false;
+		// log lines are only emitted at LOG diagnostics level, otherwise the outcome is just counted
+		boolean log = Diagnostics.isLogEnabled();
 		
 		// check inputs
 		if(sRow < 0 || sCol < 0) throw new IllegalArgumentException("Row and Col value must NOT be negative.");
@@ -511,35 +631,39 @@ public class SchemaTable extends SchemaEntity {
 		// check dimension, whether there is schema cell definition at specified row and column
 		SchemaCell c = getCell(sRow, sCol);		
 		if(c == null) {
-			if(!ignoreErrMsg) {
+			Diagnostics.record(Diagnostics.Event.DIMENSION_MISMATCH, this, sRow, sCol, val);
+			if(!ignoreErrMsg && log) {
 				logger.warn("Dimension MISMATCHED - There is no schema definition in {} at: [{},{}]", this, sRow, sCol);
 			}
 			return false;
 		} else {
-			logger.debug("Dimension MATCHED with schema definition at: {}", c);
+			if(log) logger.debug("Dimension MATCHED with schema definition at: {}", c);
 		}
 		
 		// search in ignore values set, exit if found
 		if(isIgnoreValue(val)) {
-			logger.info("Ignoring validation of value '{}' since it's in the ignore list of {}", val, this);
+			Diagnostics.record(Diagnostics.Event.VALUE_IGNORED, c, sRow, sCol, val);
+			if(log) logger.info("Ignoring validation of value '{}' since it's in the ignore list of {}", val, this);
 			return true;
 		}
 		
 		// check if the cell is a valid Empty Cell
 		if(c.isEmpty()) {
 			if(val == null) {
-				logger.debug("Schema MATCHED: Empty Cell meets null value");
+				if(log) logger.debug("Schema MATCHED: Empty Cell meets null value");
 				return true;
 			}
 			else {
-				if(!ignoreErrMsg) {
+				Diagnostics.record(Diagnostics.Event.EMPTY_CELL_MISMATCH, c, sRow, sCol, val);
+				if(!ignoreErrMsg && log) {
 					logger.warn("Schema MISMATCHED: Expecting EmptyCell at schema {} but found cell value '{}'", c, val);
 				}
 				return false;		
 			}
 		} else { // in case the schema cell is not Empty Cell, the value must not be null
 			if(val == null) {
-				if(!ignoreErrMsg) {
+				Diagnostics.record(Diagnostics.Event.VALUE_MISSING, c, sRow, sCol, val);
+				if(!ignoreErrMsg && log) {
 					logger.warn("Schema MISMATCHED: There is no cell value, i.e. null, to validate against schema {}", c);
 				}
 				return false;
@@ -552,7 +676,7 @@ public class SchemaTable extends SchemaEntity {
 		// our key point is to design CSV-X schema syntax to be able to express all datatype & restrictions
 		String datatype = c.getDatatype();
 		if(datatype != null) {		
-			
+			long start = (metrics != null)? metrics.startTiming() : 0;
 			try {
 				
 				switch(datatype) {
@@ -645,25 +769,31 @@ public class SchemaTable extends SchemaEntity {
 				}				
 				
 			} catch(Exception e) {
-				logger.warn("Invalid value '{}' for declared datatype '{}' at schema {}", val, datatype, c);
+				Diagnostics.record(Diagnostics.Event.DATATYPE_MISMATCH, c, sRow, sCol, val);
+				if(log) logger.warn("Invalid value '{}' for declared datatype '{}' at schema {}", val, datatype, c);
 				return false;
-			}						
+			} finally {
+				if(metrics != null) metrics.datatypeValidated(start, c);
+			}
 		} // end if datatype validation
 		
 		// validate parsed CSV record against CSV-X cell schema's regular expression.
-		String regEx = c.getRegEx();
-		if(regEx != null) {
-		    Pattern p = Pattern.compile(regEx, Pattern.DOTALL);
-		    Matcher m = p.matcher(val);
-		    if(!m.find()) {
-		    	if(!ignoreErrMsg) {
+		Matcher m = c.getRegExMatcher(val);
+		if(m != null) {
+		    String regEx = m.pattern().pattern();
+		    long start = (metrics != null)? metrics.startTiming() : 0;
+		    boolean found = m.find();
+		    if(metrics != null) metrics.regexValidated(start, c);
+		    if(!found) {
+		    	Diagnostics.record(Diagnostics.Event.REGEX_MISMATCH, c, sRow, sCol, val);
+		    	if(!ignoreErrMsg && log) {
 		    		logger.warn("RegEx MISMATCHED for trial with schema cell: {} \n Expecting pattern: '{}' but found '{}'.", c, regEx, val);
 		    		// IMP we need to also provide actual location of value in csv too for context, this's one of the reason to move validation() to SchemaProcessor
 		    		//logger.debug("Regular expression mismatched for trial with schema cell: {} \n Expecting pattern: '{}' but found '{}' at row {} col {} of the csv.", c, regEx, val);
 		    	}
 		    	return false;			
 		    }
-		    logger.debug("RegEx '{}' MATCHED for schema {} with value '{}'.", regEx, c, val);
+		    if(log) logger.debug("RegEx '{}' MATCHED for schema {} with value '{}'.", regEx, c, val);
 		}
 		
 		return true;
@@ -1,10 +1,13 @@
 package com.dadfha.lod.csv;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class SchemaTemplate extends SchemaEntity {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * IRI for schema template entity.
 	 */
@@ -103,6 +106,12 @@ public class SchemaTemplate extends SchemaEntity {
 		return isTurtleTemplate;
 	}
 
+	@Override
+	void freeze() {
+		super.freeze();
+		params = Collections.unmodifiableList(params);
+	}
+
 	/**
 	 * @return the parentSchema
 	 */
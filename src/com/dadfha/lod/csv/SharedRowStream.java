@@ -0,0 +1,286 @@
+package com.dadfha.lod.csv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.univocity.parsers.common.AbstractParser;
+
+/**
+ * A stream of CSV rows parsed once and shared by several row cursors.
+ *
+ * When the target schema of a CSV is unknown, every candidate schema has to be matched against the same
+ * CSV content. Instead of re-reading and re-tokenizing the file once per schema, the rows are parsed once
+ * by this stream and served to a cursor of each candidate. Rows are kept until every open cursor has
+ * marked past them, and a cursor that has dropped out of the race (closed) no longer holds any row.
+ *
+ * Cursors reading on their own threads advance in lockstep: a cursor that needs a new row from the parser
+ * waits while it is leadWindow rows or more ahead of the slowest started cursor. A row is parsed outside
+ * the lock of the stream, so cursors reading rows already parsed don't wait for the parser.
+ *
+ * A cursor can only be opened while no row has been released, so cursors should be opened when their
+ * trial starts rather than up front, as a cursor that hasn't read any row yet holds every row from the
+ * beginning of the CSV. Rows read are kept after the last cursor is closed as long as none has been
+ * released, so a trial started after a failed one replays them (see tryOpenCursor()). Once rows have
+ * been released, a later trial has to read the CSV with a new stream.
+ *
+ * @author Wirawit
+ */
+public class SharedRowStream {
+
+	/**
+	 * Default number of rows a cursor may be ahead of the slowest started cursor.
+	 */
+	public static final int DEFAULT_LEAD_WINDOW = 1024;
+
+	/**
+	 * The underlying parser, already began parsing, or null if rows come from a row source.
+	 */
+	private final AbstractParser<?> parser;
+
+	/**
+	 * Source tokenizing rows on other thread(s), or null if rows are pulled from the parser directly.
+	 */
+	private final RowSource source;
+
+	/**
+	 * Number of rows a cursor may be ahead of the slowest started cursor.
+	 */
+	private final int leadWindow;
+
+	/**
+	 * Rows read and still held by at least one cursor.
+	 */
+	private final List<String[]> rows = new ArrayList<String[]>();
+
+	/**
+	 * Open cursors.
+	 */
+	private final List<RowCursor> cursors = new ArrayList<RowCursor>();
+
+	/**
+	 * Row index of the first row in the buffer.
+	 */
+	private int base = 0;
+
+	/**
+	 * Whether the parser has run out of CSV row.
+	 */
+	private boolean eof = false;
+
+	/**
+	 * Whether the stream has been closed.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Number of cursors waiting for the slowest cursor to catch up or for a row being parsed.
+	 */
+	private int waiting = 0;
+
+	/**
+	 * Whether a cursor is parsing the next row outside the lock.
+	 */
+	private boolean parsing = false;
+
+	/**
+	 * Whether the parser (or row source) has been stopped.
+	 */
+	private boolean stopped = false;
+
+	/**
+	 * Constructor.
+	 * @param parser a parser that has already begun parsing.
+	 */
+	public SharedRowStream(AbstractParser<?> parser) {
+		this(parser, DEFAULT_LEAD_WINDOW);
+	}
+
+	/**
+	 * Constructor.
+	 * @param parser a parser that has already begun parsing.
+	 * @param leadWindow number of rows a cursor may be ahead of the slowest started cursor.
+	 */
+	public SharedRowStream(AbstractParser<?> parser, int leadWindow) {
+		if(parser == null) throw new IllegalArgumentException("parser must not be null.");
+		if(leadWindow < 1) throw new IllegalArgumentException("leadWindow must be at least 1.");
+		this.parser = parser;
+		this.source = null;
+		this.leadWindow = leadWindow;
+	}
+
+	/**
+	 * Constructor of a stream reading rows tokenized on other thread(s).
+	 * @param source
+	 * @param leadWindow number of rows a cursor may be ahead of the slowest started cursor.
+	 */
+	SharedRowStream(RowSource source, int leadWindow) {
+		if(source == null) throw new IllegalArgumentException("source must not be null.");
+		if(leadWindow < 1) throw new IllegalArgumentException("leadWindow must be at least 1.");
+		this.parser = null;
+		this.source = source;
+		this.leadWindow = leadWindow;
+	}
+
+	/**
+	 * Open a new cursor positioned at the first CSV row.
+	 * All cursors should be opened before any row is released.
+	 * @return RowCursor
+	 */
+	public synchronized RowCursor openCursor() {
+		if(closed) throw new IllegalStateException("The row stream has been closed.");
+		if(base > 0) throw new IllegalStateException("Rows before " + base + " have already been released.");
+		RowCursor cursor = new RowCursor(this);
+		cursors.add(cursor);
+		return cursor;
+	}
+
+	/**
+	 * Open a new cursor positioned at the first CSV row, if no row has been released yet.
+	 * @return RowCursor or null if the stream has been closed or rows have been released.
+	 */
+	synchronized RowCursor tryOpenCursor() {
+		if(closed || base > 0) return null;
+		return openCursor();
+	}
+
+	/**
+	 * Get next CSV row for a cursor.
+	 * @param cursor
+	 * @return String[] of the row's values or null if there is no more row.
+	 * @throws InterruptedException if the thread is interrupted while waiting for other cursors.
+	 */
+	String[] next(RowCursor cursor) throws InterruptedException {
+		while(true) {
+			synchronized(this) {
+				cursor.started = true;
+				int row = cursor.pos;
+				// only a cursor that needs a new row from the parser has to wait for the others
+				while(row >= base + rows.size() && !eof && !closed && !cursor.closed && (parsing || isTooFarAhead(cursor, row))) {
+					waiting++;
+					try {
+						wait();
+					} finally {
+						waiting--;
+					}
+				}
+				if(closed || cursor.closed) return null;
+				if(row < base + rows.size()) {
+					cursor.pos++;
+					if(waiting > 0) notifyAll();
+					return rows.get(row - base);
+				}
+				if(eof) return null;
+				parsing = true;
+			}
+			parseNext();
+		}
+	}
+
+	/**
+	 * Parse the next row outside the lock and add it to the buffer. Only one cursor parses at a time.
+	 * @throws InterruptedException if the thread is interrupted while waiting for the row source.
+	 */
+	private void parseNext() throws InterruptedException {
+		String[] r = null;
+		boolean parsed = false;
+		try {
+			r = (source != null)? source.next() : parser.parseNext();
+			parsed = true;
+		} finally {
+			synchronized(this) {
+				parsing = false;
+				if(closed) {
+					// closed while parsing, the parser is stopped by the thread using it
+					stopParser();
+				} else if(parsed) {
+					if(r == null) eof = true;
+					else rows.add(r);
+				}
+				if(waiting > 0) notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Check if a row is leadWindow rows or more ahead of the slowest of the other started cursors.
+	 * @param cursor
+	 * @param row
+	 * @return boolean
+	 */
+	private boolean isTooFarAhead(RowCursor cursor, int row) {
+		for(RowCursor c : cursors) {
+			if(c != cursor && c.started && row - c.pos >= leadWindow) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Move a cursor to a row after its mark that has been read, or the row right after them.
+	 * @param cursor
+	 * @param row the row index.
+	 */
+	synchronized void seek(RowCursor cursor, int row) {
+		if(closed || cursor.closed) return;
+		if(row < cursor.mark || row > base + rows.size()) {
+			throw new IllegalArgumentException("Cannot seek to row " + row + ", only rows " + cursor.mark + " to " + (base + rows.size()) + " are available.");
+		}
+		cursor.pos = row;
+		if(waiting > 0) notifyAll();
+	}
+
+	/**
+	 * Mark the current position of a cursor. Rows before it can no longer be sought by the cursor
+	 * and are released once no other cursor holds them.
+	 * @param cursor
+	 */
+	synchronized void mark(RowCursor cursor) {
+		cursor.mark = cursor.pos;
+		release();
+	}
+
+	/**
+	 * Close a cursor, releasing the rows it holds.
+	 * @param cursor
+	 */
+	synchronized void close(RowCursor cursor) {
+		if(!cursors.remove(cursor)) return;
+		cursor.closed = true;
+		release();
+		if(waiting > 0) notifyAll();
+	}
+
+	/**
+	 * Release rows before the lowest mark of open cursors. Rows are kept for cursors opened later if none 
+	 * has been released when the last cursor is closed.
+	 */
+	private void release() {
+		if(cursors.isEmpty() && base == 0) return;
+		int lowest = base + rows.size();
+		for(RowCursor c : cursors) {
+			if(c.mark < lowest) lowest = c.mark;
+		}
+		if(lowest > base) {
+			rows.subList(0, lowest - base).clear();
+			base = lowest;
+		}
+	}
+
+	/**
+	 * Stop the underlying parser (or row source) and release all rows. Open cursors will see no more row.
+	 */
+	public synchronized void close() {
+		if(closed) return;
+		closed = true;
+		if(!parsing) stopParser();
+		rows.clear();
+		notifyAll();
+	}
+
+	private void stopParser() {
+		if(stopped) return;
+		stopped = true;
+		if(source != null) source.stop();
+		else parser.stopParsing();
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.dadfha.lod.csv;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Serialization of data tables in segments on an executor, written to the output in table order.
+ *
+ * The output of a data table is made of a head (the table itself), its rows and a tail (cell ranges, properties
+ * and data). Entities of a data table are already materialized, and variable and {@uid} IDs are minted by
+ * the schema atomically, so every segment of SEGMENT_ROWS rows can be serialized on its own into a buffer.
+ * Buffers are appended to the output in order as they're done, with at most SEGMENTS_AHEAD segments serialized
+ * ahead, so the output is the same as serializing sequentially.
+ *
+ * @author Wirawit
+ */
+class TableSerializer {
+
+	/**
+	 * Number of rows per segment.
+	 */
+	static final int SEGMENT_ROWS = 1024;
+
+	/**
+	 * Number of segments serialized ahead of the output.
+	 */
+	static final int SEGMENTS_AHEAD = 64;
+
+	/**
+	 * Writer of the parts of a data table.
+	 */
+	interface SegmentWriter {
+
+		/**
+		 * Append the output of a data table before its rows.
+		 * @param dTable
+		 * @param out
+		 * @throws Exception
+		 */
+		void appendHead(SchemaTable dTable, Appendable out) throws Exception;
+
+		/**
+		 * Append the output of a data row with its cells.
+		 * @param dRow
+		 * @param out
+		 * @throws Exception
+		 */
+		void appendRow(SchemaRow dRow, Appendable out) throws Exception;
+
+		/**
+		 * Append the output of a data table after its rows.
+		 * @param dTable
+		 * @param out
+		 * @throws Exception
+		 */
+		void appendTail(SchemaTable dTable, Appendable out) throws Exception;
+	}
+
+	private TableSerializer() {}
+
+	/**
+	 * Append the output of a data table, on the calling thread.
+	 * @param dTable
+	 * @param writer
+	 * @param out
+	 * @throws Exception
+	 */
+	static void append(SchemaTable dTable, SegmentWriter writer, Appendable out) throws Exception {
+		writer.appendHead(dTable, out);
+		for(SchemaRow dRow : dTable.getSchemaRows().values()) writer.appendRow(dRow, out);
+		writer.appendTail(dTable, out);
+	}
+
+	/**
+	 * Append the output of data tables serialized in segments on an executor, in table order.
+	 * @param dTables
+	 * @param writer
+	 * @param out
+	 * @param executor
+	 * @throws Exception of the first failed segment, the segments after it are cancelled.
+	 */
+	static void append(Collection<SchemaTable> dTables, SegmentWriter writer, Appendable out, ExecutorService executor) throws Exception {
+		ArrayDeque<Future<StringBuilder>> pending = new ArrayDeque<Future<StringBuilder>>();
+		try {
+			for(SchemaTable dTable : dTables) {
+				List<SchemaRow> dRows = new ArrayList<SchemaRow>(dTable.getSchemaRows().values());
+				int segments = Math.max(1, (dRows.size() + SEGMENT_ROWS - 1) / SEGMENT_ROWS);
+				for(int i = 0; i < segments; i++) {
+					int from = i * SEGMENT_ROWS, to = Math.min(dRows.size(), from + SEGMENT_ROWS);
+					boolean head = (i == 0), tail = (i == segments - 1);
+					if(pending.size() == SEGMENTS_AHEAD) out.append(get(pending.poll()));
+					pending.add(executor.submit(() -> {
+						StringBuilder sb = new StringBuilder();
+						if(head) writer.appendHead(dTable, sb);
+						for(int r = from; r < to; r++) writer.appendRow(dRows.get(r), sb);
+						if(tail) writer.appendTail(dTable, sb);
+						return sb;
+					}));
+				}
+			}
+			while(!pending.isEmpty()) out.append(get(pending.poll()));
+		} finally {
+			for(Future<StringBuilder> f : pending) f.cancel(true);
+		}
+	}
+
+	private static StringBuilder get(Future<StringBuilder> f) throws Exception {
+		try {
+			return f.get();
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception) throw (Exception) cause;
+			if(cause instanceof Error) throw (Error) cause;
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,282 @@
+package com.dadfha.lod.csv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * An index of '@targetCSVs' of loaded schemas for finding the schema describing a CSV by its ID.
+ *
+ * A target can be:
+ * - an exact CSV ID, e.g. "http://example.org/Q3-2015.csv", looked up in a hash map.
+ * - a glob pattern where '*' matches any sequence of characters and '?' matches a single character,
+ *   e.g. "http://example.org/Q*-2015.csv". In a URL, i.e. a target with "://", '?' is literal as it begins
+ *   the query string, e.g. "http://example.org/data?year=*".
+ * - a regular expression prefixed with "regex:", e.g. "regex:http://example\\.org/Q[1-4]-\\d{4}\\.csv".
+ *
+ * Patterns are kept in a trie keyed by their literal prefix, i.e. the characters before the first wildcard
+ * or regex construct. A lookup walks the trie along the CSV ID and only tests the patterns found on the way,
+ * so its cost depends on the length of the ID, not on the number of registered schemas.
+ * An exact target always wins over patterns, and among matching patterns the one with the longest
+ * literal prefix wins. Ties are broken by registration order, as are exact targets registered by more
+ * than one schema: the earliest schema still registered keeps the target.
+ *
+ * The index is thread-safe. Lookups run concurrently and only wait for registering/unregistering.
+ *
+ * @author Wirawit
+ */
+public class TargetCsvIndex {
+
+	/**
+	 * Prefix of a target which is a regular expression.
+	 */
+	public static final String REGEX_PREFIX = "regex:";
+
+	/**
+	 * A compiled target pattern.
+	 */
+	private static class TargetPattern {
+		final String schemaId;
+		final Pattern pattern;
+		TargetPattern(String schemaId, Pattern pattern) {
+			this.schemaId = schemaId;
+			this.pattern = pattern;
+		}
+	}
+
+	/**
+	 * A trie node holding patterns whose literal prefix ends at this node.
+	 */
+	private static class Node {
+		final Map<Character, Node> children = new HashMap<Character, Node>();
+		final List<TargetPattern> patterns = new ArrayList<TargetPattern>(1);
+	}
+
+	/**
+	 * Map of exact target CSV ID to IDs of the schemas registering it, in registration order.
+	 */
+	private final Map<String, List<String>> exactTargets = new HashMap<String, List<String>>();
+
+	/**
+	 * Root of the pattern trie.
+	 */
+	private final Node root = new Node();
+
+	/**
+	 * Targets registered per schema ID, for unregistering.
+	 */
+	private final Map<String, List<String>> targetsBySchema = new HashMap<String, List<String>>();
+
+	/**
+	 * Lock guarding the index.
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Register target CSVs of a schema, replacing the ones previously registered with the same schema ID.
+	 * @param schemaId
+	 * @param targetCsvs exact CSV IDs or patterns.
+	 * @throws java.util.regex.PatternSyntaxException if a "regex:" target is not a valid regular expression.
+	 */
+	public void register(String schemaId, List<String> targetCsvs) {
+		if(schemaId == null) throw new IllegalArgumentException("schemaId must not be null.");
+		List<String> targets = (targetCsvs == null)? new ArrayList<String>() : new ArrayList<String>(targetCsvs);
+		// compile outside the lock, an invalid pattern leaves the index untouched
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		for(String target : targets) {
+			if(isPattern(target)) patterns.add(compile(target));
+		}
+		lock.writeLock().lock();
+		try {
+			unregisterTargets(schemaId);
+			if(targets.isEmpty()) return;
+			int i = 0;
+			for(String target : targets) {
+				if(isPattern(target)) {
+					String prefix = getLiteralPrefix(target);
+					getNode(prefix, true).patterns.add(new TargetPattern(schemaId, patterns.get(i++)));
+				} else {
+					// the first schema registering an exact target keeps it, the others are behind it
+					List<String> owners = exactTargets.computeIfAbsent(target, k -> new ArrayList<String>(1));
+					if(!owners.contains(schemaId)) owners.add(schemaId);
+				}
+			}
+			targetsBySchema.put(schemaId, targets);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Unregister all target CSVs of a schema.
+	 * @param schemaId
+	 */
+	public void unregister(String schemaId) {
+		lock.writeLock().lock();
+		try {
+			unregisterTargets(schemaId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Unregister all target CSVs of a schema. The caller must hold the write lock.
+	 * @param schemaId
+	 */
+	private void unregisterTargets(String schemaId) {
+		List<String> targets = targetsBySchema.remove(schemaId);
+		if(targets == null) return;
+		for(String target : targets) {
+			if(isPattern(target)) {
+				Node node = getNode(getLiteralPrefix(target), false);
+				if(node == null) continue;
+				for(int i = node.patterns.size() - 1; i >= 0; i--) {
+					if(node.patterns.get(i).schemaId.equals(schemaId)) node.patterns.remove(i);
+				}
+			} else {
+				List<String> owners = exactTargets.get(target);
+				if(owners == null) continue;
+				owners.remove(schemaId);
+				if(owners.isEmpty()) exactTargets.remove(target);
+			}
+		}
+	}
+
+	/**
+	 * Find the schema whose target CSVs match a CSV ID.
+	 * @param csvId
+	 * @return String of schema ID or null if none matched.
+	 */
+	public String lookup(String csvId) {
+		if(csvId == null) return null;
+		lock.readLock().lock();
+		try {
+			List<String> owners = exactTargets.get(csvId);
+			if(owners != null) return owners.get(0);
+	
+			// collect nodes along the CSV ID, then test from the deepest one
+			List<Node> path = new ArrayList<Node>();
+			Node node = root;
+			path.add(node);
+			for(int i = 0; i < csvId.length(); i++) {
+				node = node.children.get(csvId.charAt(i));
+				if(node == null) break;
+				path.add(node);
+			}
+			for(int i = path.size() - 1; i >= 0; i--) {
+				for(TargetPattern tp : path.get(i).patterns) {
+					if(tp.pattern.matcher(csvId).matches()) return tp.schemaId;
+				}
+			}
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Check if a target is a pattern rather than an exact CSV ID.
+	 * @param target
+	 * @return boolean
+	 */
+	public static boolean isPattern(String target) {
+		return target.startsWith(REGEX_PREFIX) || target.indexOf('*') >= 0 || (target.indexOf('?') >= 0 && !isUrl(target));
+	}
+
+	/**
+	 * Check if a target is a URL, in which '?' begins the query string rather than being a wildcard.
+	 * @param target
+	 * @return boolean
+	 */
+	private static boolean isUrl(String target) {
+		return target.indexOf("://") >= 0;
+	}
+
+	/**
+	 * Check if a character of a glob pattern is a wildcard.
+	 * @param target
+	 * @param c
+	 * @return boolean
+	 */
+	private static boolean isWildcard(String target, char c) {
+		return c == '*' || (c == '?' && !isUrl(target));
+	}
+
+	/**
+	 * Compile a target pattern into a regular expression.
+	 * @param target glob pattern or "regex:" prefixed regular expression.
+	 * @return Pattern
+	 */
+	private static Pattern compile(String target) {
+		if(target.startsWith(REGEX_PREFIX)) return Pattern.compile(target.substring(REGEX_PREFIX.length()));
+		StringBuilder sb = new StringBuilder();
+		int literalStart = 0;
+		for(int i = 0; i < target.length(); i++) {
+			char c = target.charAt(i);
+			if(isWildcard(target, c)) {
+				if(i > literalStart) sb.append(Pattern.quote(target.substring(literalStart, i)));
+				sb.append((c == '*')? ".*" : ".");
+				literalStart = i + 1;
+			}
+		}
+		if(literalStart < target.length()) sb.append(Pattern.quote(target.substring(literalStart)));
+		return Pattern.compile(sb.toString());
+	}
+
+	/**
+	 * Get the literal characters every CSV ID matching a target pattern must begin with.
+	 * @param target glob pattern or "regex:" prefixed regular expression.
+	 * @return String, possibly empty.
+	 */
+	private static String getLiteralPrefix(String target) {
+		if(!target.startsWith(REGEX_PREFIX)) {
+			int end = 0;
+			while(end < target.length() && !isWildcard(target, target.charAt(end))) end++;
+			return target.substring(0, end);
+		}
+		String regex = target.substring(REGEX_PREFIX.length());
+		int i = (regex.startsWith("^"))? 1 : 0;
+		StringBuilder sb = new StringBuilder();
+		for(; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if(c == '\\') {
+				// an escaped punctuation is literal, other escapes (\d, \Q, ...) are not
+				if(i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+					c = regex.charAt(++i);
+				} else break;
+			} else if(".[]{}()*+?^$|".indexOf(c) >= 0) break;
+			// a literal followed by a quantifier may not be there
+			if(i + 1 < regex.length() && "*?{".indexOf(regex.charAt(i + 1)) >= 0) break;
+			sb.append(c);
+		}
+		// an alternation anywhere may take another branch
+		if(regex.indexOf('|') >= 0) return "";
+		return sb.toString();
+	}
+
+	/**
+	 * Get the trie node for a literal prefix.
+	 * @param prefix
+	 * @param create whether to create missing nodes.
+	 * @return Node or null if it doesn't exist and create is false.
+	 */
+	private Node getNode(String prefix, boolean create) {
+		Node node = root;
+		for(int i = 0; i < prefix.length(); i++) {
+			Node child = node.children.get(prefix.charAt(i));
+			if(child == null) {
+				if(!create) return null;
+				child = new Node();
+				node.children.put(prefix.charAt(i), child);
+			}
+			node = child;
+		}
+		return node;
+	}
+
+}
@@ -0,0 +1,122 @@
+package com.dadfha.lod.csv;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.univocity.parsers.common.AbstractParser;
+
+/**
+ * Tokenization of CSV rows on its own thread, handing batches of rows over a bounded queue.
+ *
+ * The parser is pulled on the tokenizer thread as fast as the queue allows, so that the thread matching
+ * and validating the rows doesn't spend its time in the parser. Rows are handed in batches to keep the
+ * cost of the queue small compared to the rows.
+ *
+ * @author Wirawit
+ */
+class TokenizerStage implements RowSource {
+
+	/**
+	 * Default number of rows per batch.
+	 */
+	static final int DEFAULT_BATCH_SIZE = 256;
+
+	/**
+	 * Default number of batches tokenized ahead.
+	 */
+	static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * Batch marking the end of the CSV.
+	 */
+	private static final String[][] EOF = new String[0][];
+
+	private final AbstractParser<?> parser;
+
+	private final BlockingQueue<String[][]> batches;
+
+	private final Thread thread;
+
+	/**
+	 * Exception of the tokenizer thread, thrown to the reader once the rows before it are read.
+	 */
+	private volatile RuntimeException error;
+
+	/**
+	 * Batch being read and the read position in it.
+	 */
+	private String[][] batch = null;
+	private int pos = 0;
+
+	private volatile boolean stopped = false;
+
+	/**
+	 * Constructor. The tokenizer thread is started right away.
+	 * @param parser a parser that has already begun parsing.
+	 * @param batchSize number of rows per batch.
+	 * @param capacity number of batches tokenized ahead.
+	 */
+	TokenizerStage(AbstractParser<?> parser, int batchSize, int capacity) {
+		if(batchSize < 1 || capacity < 1) throw new IllegalArgumentException("batchSize and capacity must be positive.");
+		this.parser = parser;
+		this.batches = new ArrayBlockingQueue<String[][]>(capacity);
+		this.thread = new Thread(() -> tokenize(batchSize), "csvx-tokenize");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void tokenize(int batchSize) {
+		try {
+			while(!stopped) {
+				String[][] rows = new String[batchSize][];
+				int n = 0;
+				String[] row = null;
+				while(n < batchSize && (row = parser.parseNext()) != null) rows[n++] = row;
+				if(n > 0) batches.put((n < batchSize)? Arrays.copyOf(rows, n) : rows);
+				if(row == null) break;
+			}
+		} catch(InterruptedException e) {
+			return;
+		} catch(RuntimeException e) {
+			if(!stopped) error = e;
+		} finally {
+			parser.stopParsing();
+		}
+		try {
+			batches.put(EOF);
+		} catch(InterruptedException e) {
+			// stopped while the queue is full, nobody reads the end
+		}
+	}
+
+	/**
+	 * Get next CSV row.
+	 * @return String[] of the row's values or null if there is no more row.
+	 * @throws InterruptedException if the thread is interrupted while waiting for the tokenizer thread.
+	 */
+	@Override
+	public String[] next() throws InterruptedException {
+		if(batch == null || pos == batch.length) {
+			if(batch == EOF) return null;
+			batch = batches.take();
+			pos = 0;
+			if(batch == EOF) {
+				if(error != null) throw error;
+				return null;
+			}
+		}
+		return batch[pos++];
+	}
+
+	/**
+	 * Stop the tokenizer thread, which then stops the parser.
+	 */
+	@Override
+	public void stop() {
+		stopped = true;
+		thread.interrupt();
+		batches.clear();
+	}
+
+}
@@ -1,16 +1,133 @@
 package com.dadfha.lod.csv.testng;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 
+import com.dadfha.lod.csv.BatchProcessor;
+import com.dadfha.lod.csv.CsvGenerator;
+import com.dadfha.lod.csv.CsvxServer;
+import com.dadfha.lod.csv.LayerOverhead;
 import com.dadfha.lod.csv.Log4jConfig;
+import com.dadfha.lod.csv.PipelinedProcessor;
+import com.dadfha.lod.csv.ProcessingMetrics;
+import com.dadfha.lod.csv.RowCursor;
 import com.dadfha.lod.csv.Schema;
+import com.dadfha.lod.csv.SchemaCache;
+import com.dadfha.lod.csv.SchemaCell;
 import com.dadfha.lod.csv.SchemaProcessor;
+import com.dadfha.lod.csv.SchemaRow;
+import com.dadfha.lod.csv.SchemaTable;
+import com.dadfha.lod.csv.SharedRowStream;
+import com.dadfha.lod.csv.TargetCsvIndex;
+import com.github.jsonldjava.utils.JsonUtils;
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.config.ConfigurationFactory;
+import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 
 public class SchemaProcessorTest {
+	
+	/**
+	 * A processor shared by concurrent test invocations.
+	 */
+	private SchemaProcessor sharedSp;
+	
+	/**
+	 * Turtle of the CSV processed by the shared processor, serialized from a fresh processor run sequentially.
+	 */
+	private String sequentialTtl;
+	
+	/**
+	 * Budget of bytes allocated per validated cell. Validating a value against '@datatype' and '@regex'
+	 * shouldn't allocate at all once the pattern is compiled.
+	 */
+	private static final long ALLOC_BUDGET_PER_VALIDATED_CELL = 16;
+	
+	/**
+	 * Budget of bytes allocated per cell processed by getDataSchemaWithSchema(), i.e. tokenizing, probing and 
+	 * materializing the cell. The data cell object with its properties takes most of this.
+	 */
+	private static final long ALLOC_BUDGET_PER_CELL = 512;
+	
+	/**
+	 * UUID minted for template variables and {@uid}.
+	 */
+	private static final Pattern UUID_PATTERN = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+	
+	/**
+	 * CSV tried against TRIAL_SCHEMAS: a table of 4 rows of integers followed by 2 rows ending it.
+	 */
+	private static final String TRIAL_CSV = "1,2,3\n4,5,6\n7,8,9\n10,11,12\nend\nend\n";
+	
+	/**
+	 * Candidate schemas of TRIAL_CSV, only the last one matches it.
+	 */
+	private static final String[] TRIAL_SCHEMAS = {
+		// fails on the first row
+		"{ \"@id\" : \"early.csvx\", \"@table[head]\" : { \"@cell[0,0]\" : { \"@regex\" : \"^id$\" } } }",
+		// fails on the last row of the table
+		"{ \"@id\" : \"late-row.csvx\", \"@table[rows]\" : { \"@cell[0-4,0-2]\" : { \"@datatype\" : \"int\" } } }",
+		// fails on the second table after the first one is materialized
+		"{ \"@id\" : \"late-table.csvx\", \"@table[rows]\" : { \"@cell[0-3,0-2]\" : { \"@datatype\" : \"int\" } }, "
+				+ "\"@table[end]\" : { \"@cell[0-1,0]\" : { \"@regex\" : \"^nope$\" } } }",
+		"{ \"@id\" : \"matched.csvx\", \"@table[rows]\" : { \"@cell[0-3,0-2]\" : { \"@datatype\" : \"int\" } }, "
+				+ "\"@table[end]\" : { \"@cell[0-1,0]\" : { \"@regex\" : \"^end$\" } } }"
+	};
+	
+	@BeforeClass
+	public void beforeClass() throws Exception {
+		ConfigurationFactory.setConfigurationFactory(new Log4jConfig());
+		sharedSp = new SchemaProcessor(true);
+		sharedSp.loadSchemas(new String[] {"data/uktelecom.csvx", "data/airp.csvx"});
+		Schema dSchema = new SchemaProcessor(true).getDataSchema("data/uktelecom.csv", null, new String[] {"data/uktelecom.csvx"});
+		if(dSchema == null) throw new RuntimeException("Error Processing: " + "data/uktelecom.csv");
+		sequentialTtl = normalizeUuids(dSchema.serializeTtl());
+	}
 
 	@BeforeMethod
 	public void beforeMethod() {
@@ -54,6 +171,89 @@ public class SchemaProcessorTest {
 		System.out.println(dSchema.serializeTtl());
 	}
 	
+	@Test
+	public void nTriples() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		String[] schemaPaths = {"data/uktelecom.csvx"};
+		Schema dSchema = sp.getDataSchema("data/uktelecom.csv", null, schemaPaths);
+		if(dSchema == null) throw new RuntimeException("Error Processing: " + "data/uktelecom.csv");
+		StringBuilder nt = new StringBuilder(), nq = new StringBuilder();
+		dSchema.writeNTriples(nt, null, null);
+		sp.setSerializingThreads(4);
+		dSchema.writeNTriples(nq, dSchema.getGraphIri(), sp.getSerializingPool());
+		String[] triples = nt.toString().split("\n"), quads = nq.toString().split("\n");
+		String ttl = dSchema.serializeTtl();
+		long statements = Arrays.stream(ttl.split(System.lineSeparator())).filter(l -> l.endsWith(" .")).count();
+		if(!ttl.contains("PREFIX " + Schema.NS_PREFIX + ": <" + Schema.NS_PREFIX_IRI + ">") || !nt.toString().contains(" <" + Schema.NS_PREFIX_IRI + "SchemaTable> .")) throw new RuntimeException("Turtle and N-Triples differ in CSV-X namespace.");
+		if(triples.length != statements || quads.length != statements) throw new RuntimeException("Expected " + statements + " statements but got " + triples.length + " triples and " + quads.length + " quads.");
+		// the schema ID isn't an IRI, so the graph is the base IRI
+		String graph = " <" + dSchema.getBase() + "> .";
+		for(int i = 0; i < triples.length; i++) {
+			if(!triples[i].startsWith("<http://") || !triples[i].endsWith(" .")) throw new RuntimeException("Not an N-Triples statement: " + triples[i]);
+			if(!quads[i].equals(triples[i].substring(0, triples[i].length() - 2) + graph)) throw new RuntimeException("Not an N-Quads statement of the triple: " + quads[i]);
+		}
+	}
+	
+	@Test
+	public void nTriplesWithoutBase() throws Exception {
+		Path csvx = Files.createTempFile("nobase", ".csvx");
+		Path csv = Files.createTempFile("nobase", ".csv");
+		try {
+			Files.write(csvx, ("{ \"@id\" : \"no base.csvx\", \"@table[my rows]\" : { \"@cell[0-1,0-2]\" : { \"@datatype\" : \"int\" }, "
+					+ "\"@cell[0,0]\" : { \"@name\" : \"first\", \"cell title\" : \"First cell\" } } }").getBytes(StandardCharsets.UTF_8));
+			Files.write(csv, "1,2,3\n4,5,6\n".getBytes(StandardCharsets.UTF_8));
+			SchemaProcessor sp = new SchemaProcessor(true);
+			String schemaId = (String) sp.loadSchema(csvx.toString()).getProperty(SchemaProcessor.METAPROP_ID);
+			Schema dSchema = sp.getDataSchemaWithSchema(csv.toString(), schemaId);
+			if(dSchema == null) throw new RuntimeException("Error Processing: " + csv);
+			if(!dSchema.getBase().isEmpty()) throw new RuntimeException("The schema must not have @base: " + dSchema.getBase());
+			StringBuilder nt = new StringBuilder(), nq = new StringBuilder(), nd = new StringBuilder();
+			dSchema.writeNTriples(nt, null, null);
+			dSchema.writeNTriples(nq, dSchema.getGraphIri(), null);
+			dSchema.writeJsonLd(nd, true, null);
+			String iri = "<[a-zA-Z][a-zA-Z0-9+.-]*:[^\\x00-\\x20<>\"{}|^`\\\\]*>";
+			String literal = "\"(?:[^\"\\\\\\n\\r]|\\\\[tbnrf\"'\\\\])*\"(?:@[a-zA-Z]+(?:-[a-zA-Z0-9]+)*|\\^\\^" + iri + ")?";
+			Pattern triple = Pattern.compile(iri + " " + iri + " (?:" + iri + "|" + literal + ") \\.");
+			Pattern quad = Pattern.compile(iri + " " + iri + " (?:" + iri + "|" + literal + ") " + iri + " \\.");
+			String[] triples = nt.toString().split("\n"), quads = nq.toString().split("\n");
+			if(triples.length < 10 || triples.length != quads.length) throw new RuntimeException("Got " + triples.length + " triples and " + quads.length + " quads.");
+			for(int i = 0; i < triples.length; i++) {
+				if(!triple.matcher(triples[i]).matches()) throw new RuntimeException("Not an N-Triples statement with absolute IRIs: " + triples[i]);
+				if(!quad.matcher(quads[i]).matches()) throw new RuntimeException("Not an N-Quads statement with absolute IRIs: " + quads[i]);
+				if(!quads[i].endsWith(" <" + dSchema.getAbsoluteBase() + "> .")) throw new RuntimeException("Not in the graph of the minted base IRI: " + quads[i]);
+			}
+			for(String line : nd.toString().split("\n")) {
+				Map<?, ?> node = (Map<?, ?>) JsonUtils.fromString(line);
+				if(!((String) node.get("@id")).startsWith(Schema.MINTED_BASE_PREFIX)) throw new RuntimeException("Node without absolute @id: " + line);
+			}
+		} finally {
+			Files.delete(csvx);
+			Files.delete(csv);
+		}
+	}
+	
+	@Test
+	public void jsonLd() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		String[] schemaPaths = {"data/uktelecom.csvx"};
+		Schema dSchema = sp.getDataSchema("data/uktelecom.csv", null, schemaPaths);
+		if(dSchema == null) throw new RuntimeException("Error Processing: " + "data/uktelecom.csv");
+		StringBuilder doc = new StringBuilder(), seq = new StringBuilder(), par = new StringBuilder();
+		dSchema.writeJsonLd(doc, false, null);
+		dSchema.writeJsonLd(seq, true, null);
+		sp.setSerializingThreads(4);
+		dSchema.writeJsonLd(par, true, sp.getSerializingPool());
+		if(!seq.toString().equals(par.toString())) throw new RuntimeException("Newline-delimited JSON serialized in parallel segments differs from sequential serialization.");
+		Map<?, ?> jsonLd = (Map<?, ?>) JsonUtils.fromString(doc.toString());
+		if(((Map<?, ?>) jsonLd.get("@context")).get("@base") == null) throw new RuntimeException("No @base in @context: " + jsonLd.get("@context"));
+		String[] lines = seq.toString().split("\n");
+		if(((List<?>) jsonLd.get("@graph")).size() != lines.length) throw new RuntimeException("JSON-LD and newline-delimited JSON differ in number of nodes.");
+		for(String line : lines) {
+			Map<?, ?> node = (Map<?, ?>) JsonUtils.fromString(line);
+			if(!((String) node.get("@id")).startsWith("http://")) throw new RuntimeException("Node without absolute @id: " + line);
+		}
+	}
+	
 	@Test
 	public void csvTriple() throws Exception {
 		SchemaProcessor sp = new SchemaProcessor(true);
@@ -99,4 +299,660 @@ public class SchemaProcessorTest {
 		System.out.println(dSchema.serializeTtl());
 	}	
 	
+	@Test(threadPoolSize = 4, invocationCount = 8)
+	public void concurrentSharedProcessor() throws Exception {
+		Schema dSchema = sharedSp.getDataSchema("data/uktelecom.csv", "http://stakeholders.ofcom.org.uk/binaries/research/cmr/telecoms/Q3-2015.csv", null);
+		if(dSchema == null) throw new RuntimeException("Error Processing: " + "data/uktelecom.csv");
+		assertEquals(normalizeUuids(dSchema.serializeTtl()), sequentialTtl, "Turtle of the shared processor differs from sequential processing.");
+	}
+	
+	@Test
+	public void processingMetrics() throws Exception {
+		Path unmatched = Files.createTempFile("metrics", ".csvx");
+		Path matched = Files.createTempFile("metrics", ".csvx");
+		Path csv = Files.createTempFile("metrics", ".csv");
+		SchemaProcessor sp = new SchemaProcessor(true);
+		ObjectName on = sp.getMetrics().register("test");
+		try {
+			String rows = "\"@table[rows]\" : { \"@cell[0-3,0-2]\" : { \"@datatype\" : \"int\" } }";
+			Files.write(unmatched, ("{ \"@id\" : \"unmatched.csvx\", " + rows + " }").getBytes(StandardCharsets.UTF_8));
+			Files.write(matched, ("{ \"@id\" : \"matched.csvx\", " + rows + ", \"@table[end]\" : { \"@cell[0-1,0]\" : { \"@regex\" : \"^end$\" } } }").getBytes(StandardCharsets.UTF_8));
+			Files.write(csv, "1,2,3\n4,5,6\n7,8,9\n10,11,12\nend\nend\n".getBytes(StandardCharsets.UTF_8));
+			String unmatchedId = (String) sp.loadSchema(unmatched.toString()).getProperty(SchemaProcessor.METAPROP_ID);
+			String matchedId = (String) sp.loadSchema(matched.toString()).getProperty(SchemaProcessor.METAPROP_ID);
+			// the unmatched schema materializes the first table before failing on the last rows
+			if(sp.getDataSchemaWithSchema(csv.toString(), unmatchedId) != null) throw new RuntimeException("The csv must not match " + unmatchedId);
+			Schema dSchema = sp.getDataSchemaWithSchema(csv.toString(), matchedId);
+			if(dSchema == null) throw new RuntimeException("Error Processing: " + csv);
+			String ttl = dSchema.serializeTtl();
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			// rows and cells are counted once for the matched schema, neither probing nor the failed schema count
+			if((Long) server.getAttribute(on, "RowsProcessed") != 6) throw new AssertionError("Rows counted: " + server.getAttribute(on, "RowsProcessed"));
+			if((Long) server.getAttribute(on, "CellsProcessed") != 14) throw new AssertionError("Cells counted: " + server.getAttribute(on, "CellsProcessed"));
+			if((Long) server.getAttribute(on, "TableTrialsSucceeded") != 3) throw new AssertionError("Table trials succeeded: " + server.getAttribute(on, "TableTrialsSucceeded"));
+			if((Long) server.getAttribute(on, "TableTrialsFailed") != 2) throw new AssertionError("Table trials failed: " + server.getAttribute(on, "TableTrialsFailed"));
+			if((Long) server.getAttribute(on, "BytesRead") != 2 * Files.size(csv)) throw new AssertionError("Bytes read: " + server.getAttribute(on, "BytesRead"));
+			if((Long) server.getAttribute(on, "OutputChars") != ttl.length()) throw new AssertionError("Output counted: " + server.getAttribute(on, "OutputChars"));
+		} finally {
+			ProcessingMetrics.unregister(on);
+			Files.delete(unmatched);
+			Files.delete(matched);
+			Files.delete(csv);
+		}
+	}
+	
+	@Test
+	public void probeThenMaterialize() throws Exception {
+		// a cursor goes back to any row read since its last mark
+		CsvParser parser = new CsvParser(new CsvParserSettings());
+		parser.beginParsing(new StringReader("a,1\nb,2\nc,3\nd,4\n"));
+		SharedRowStream stream = new SharedRowStream(parser);
+		RowCursor cursor = stream.openCursor();
+		String[] a = cursor.next(), b = cursor.next();
+		cursor.seek(0);
+		if(cursor.next() != a || cursor.next() != b) throw new RuntimeException("Rewound cursor doesn't replay the rows read.");
+		if(!cursor.hasNext() || cursor.getPosition() != 2) throw new RuntimeException("hasNext() must not move the cursor.");
+		cursor.mark();
+		try {
+			cursor.seek(1);
+			throw new RuntimeException("Cursor sought a row before its mark.");
+		} catch(IllegalArgumentException e) {}
+		String[] c = cursor.next();
+		cursor.seek(2);
+		if(cursor.next() != c || !"d".equals(cursor.next()[0]) || cursor.next() != null) throw new RuntimeException("Cursor doesn't replay the rows after its mark.");
+		stream.close();
+		
+		Path csv = Files.createTempFile("trials", ".csv");
+		Path[] csvx = new Path[TRIAL_SCHEMAS.length];
+		try {
+			Files.write(csv, TRIAL_CSV.getBytes(StandardCharsets.UTF_8));
+			SchemaProcessor sp = new SchemaProcessor(true);
+			for(int i = 0; i < TRIAL_SCHEMAS.length; i++) {
+				csvx[i] = Files.createTempFile("trials", ".csvx");
+				Files.write(csvx[i], TRIAL_SCHEMAS[i].getBytes(StandardCharsets.UTF_8));
+				String schemaId = (String) sp.loadSchema(csvx[i].toString()).getProperty(SchemaProcessor.METAPROP_ID);
+				Schema dSchema = sp.getDataSchemaWithSchema(csv.toString(), schemaId);
+				if(i < TRIAL_SCHEMAS.length - 1) {
+					if(dSchema != null) throw new RuntimeException("The csv must not match " + schemaId);
+					continue;
+				}
+				// only the matched tables are materialized, from the rows replayed after probing
+				List<String[]> expected;
+				try(Reader r = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+					expected = new CsvParser(new CsvParserSettings()).parseAll(r);
+				}
+				int row = 0;
+				for(SchemaTable dTable : dSchema.getSchemaTables().values()) {
+					for(SchemaRow dRow : new TreeMap<Integer, SchemaRow>(dTable.getSchemaRows()).values()) {
+						String[] vals = new String[dRow.getSchemaCells().size()];
+						for(int col = 0; col < vals.length; col++) vals[col] = dRow.getCell(col).getValue();
+						if(!Arrays.equals(expected.get(row), vals)) throw new RuntimeException("Row " + row + " differs from the csv: " + Arrays.toString(vals));
+						row++;
+					}
+				}
+				assertEquals(row, expected.size(), "Rows materialized.");
+			}
+		} finally {
+			Files.delete(csv);
+			for(Path p : csvx) if(p != null) Files.delete(p);
+		}
+	}
+	
+	@Test
+	public void sharedRowStream() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 10; i++) sb.append(i).append(',').append(i * i).append('\n');
+		CsvParser parser = new CsvParser(new CsvParserSettings());
+		parser.beginParsing(new StringReader(sb.toString()));
+		SharedRowStream stream = new SharedRowStream(parser, 2);
+		RowCursor slow = stream.openCursor(), fast = stream.openCursor();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			slow.next();
+			// milestone of the slow cursor
+			slow.mark();
+			for(int i = 0; i < 3; i++) fast.next();
+			fast.mark();
+			// a new row would put the fast cursor a lead window ahead of the slow one
+			Future<String[]> ahead = executor.submit(() -> fast.next());
+			try {
+				ahead.get(200, TimeUnit.MILLISECONDS);
+				throw new RuntimeException("Cursor read past the lead window.");
+			} catch(TimeoutException e) {}
+			// rows already parsed are read without waiting
+			String[] milestone = slow.next();
+			assertEquals(ahead.get(5, TimeUnit.SECONDS)[0], "3", "Row read once the slow cursor moved.");
+			// the slow cursor goes back to its milestone, kept although the fast one marked past it
+			slow.next();
+			slow.seek(1);
+			if(slow.next() != milestone) throw new RuntimeException("Rewound cursor doesn't replay its milestone row.");
+			try {
+				stream.openCursor();
+				throw new RuntimeException("Cursor opened after rows were released.");
+			} catch(IllegalStateException e) {}
+			// a closed cursor no longer holds back the others
+			slow.close();
+			int rows = 0;
+			while(executor.submit(() -> fast.next()).get(5, TimeUnit.SECONDS) != null) rows++;
+			assertEquals(rows, 6, "Rows read after the slow cursor is closed.");
+		} finally {
+			executor.shutdownNow();
+			stream.close();
+		}
+		
+		Path csv = Files.createTempFile("trials", ".csv");
+		String[] csvx = new String[TRIAL_SCHEMAS.length];
+		try {
+			Files.write(csv, TRIAL_CSV.getBytes(StandardCharsets.UTF_8));
+			for(int i = 0; i < TRIAL_SCHEMAS.length; i++) {
+				csvx[i] = Files.createTempFile("trials", ".csvx").toString();
+				Files.write(Paths.get(csvx[i]), TRIAL_SCHEMAS[i].getBytes(StandardCharsets.UTF_8));
+			}
+			SchemaProcessor sp = new SchemaProcessor(true);
+			String matchedId = (String) sp.loadSchema(csvx[csvx.length - 1]).getProperty(SchemaProcessor.METAPROP_ID);
+			String expected = normalizeUuids(sp.getDataSchemaWithSchema(csv.toString(), matchedId).serializeTtl());
+			
+			// candidates read the csv once, one after another or in lockstep, with waiting trials opening late
+			for(int threads : new int[] { 1, 2, 4 }) {
+				sp = new SchemaProcessor(true);
+				sp.setMatchingThreads(threads);
+				Schema dSchema = sp.getDataSchema(csv.toString(), null, csvx);
+				if(dSchema == null) throw new RuntimeException("Error Processing: " + csv + " with " + threads + " matching thread(s)");
+				assertEquals(normalizeUuids(dSchema.serializeTtl()), expected, "Turtle of shared reads with " + threads + " matching thread(s).");
+			}
+			
+			// late-table.csvx is tried before matched.csvx, releasing rows of its first table, so the matched 
+			// schema opening late reads the csv again
+			sp = new SchemaProcessor(true);
+			Schema dSchema = sp.getDataSchema(csv.toString(), null, new String[] { csvx[2], csvx[3] });
+			if(dSchema == null) throw new RuntimeException("Error Processing: " + csv);
+			assertEquals(normalizeUuids(dSchema.serializeTtl()), expected, "Turtle of the trial opening late.");
+			assertEquals(sp.getMetrics().getBytesRead(), 2 * Files.size(csv), "Bytes read.");
+		} finally {
+			Files.delete(csv);
+			for(String p : csvx) if(p != null) Files.delete(Paths.get(p));
+		}
+	}
+	
+	@Test
+	public void cellRange() throws Exception {
+		Schema s = new Schema();
+		SchemaTable t = s.getDefaultTable();
+		SchemaCell range = new SchemaCell(0, 0, 9, 999, t);
+		range.setDatatype("int");
+		t.addCell(range);
+		SchemaCell cell = new SchemaCell(2, 5, t);
+		cell.setRegEx("^1");
+		t.addCell(cell);
+		s.freeze();
+		if(t.getCell(3, 500) != range) throw new RuntimeException("Cell range is not resolved: " + t.getCell(3, 500));
+		if(t.getCell(2, 5) != cell || !"int".equals(cell.getDatatype())) throw new RuntimeException("Explicit cell must take precedence and inherit range properties: " + t.getCell(2, 5));
+		if(t.getCell(10, 0) != null || t.getCell(0, 1000) != null) throw new RuntimeException("Cell out of range is resolved.");
+		if(!t.validate(2, 5, "12", SchemaProcessor.MODE_IGNORE_ERR_MSG) || t.validate(2, 5, "21", SchemaProcessor.MODE_IGNORE_ERR_MSG)) throw new RuntimeException("Explicit cell is not validated.");
+	}
+	
+	@Test
+	public void sparseCellRange() throws Exception {
+		Schema s = new Schema();
+		SchemaTable t = s.getDefaultTable();
+		SchemaCell cell = new SchemaCell(0, 0, t);
+		t.addCell(cell);
+		SchemaCell range = new SchemaCell(0, 2000, 0, 2300, t);
+		t.addCell(range);
+		s.freeze();
+		if(t.getCell(0, 0) != cell) throw new RuntimeException("Explicit cell is not resolved: " + t.getCell(0, 0));
+		if(t.getCell(0, 2000) != range || t.getCell(0, 2300) != range) throw new RuntimeException("Sparse cell range is not resolved after freeze.");
+		if(t.getCell(0, 1) != null || t.getCell(0, 2301) != null) throw new RuntimeException("Cell out of range is resolved.");
+	}
+	
+	@Test
+	public void targetCsvIndex() throws Exception {
+		TargetCsvIndex index = new TargetCsvIndex();
+		index.register("a", Arrays.asList("http://example.org/data.csv?year=2015"));
+		index.register("b", Arrays.asList("http://example.org/data.csv?year=2015", "http://example.org/Q?-2015.csv"));
+		if(!"a".equals(index.lookup("http://example.org/data.csv?year=2015"))) throw new RuntimeException("The first schema must keep an exact target.");
+		if(index.lookup("http://example.org/data.csvXyear=2015") != null) throw new RuntimeException("'?' of a URL must be literal.");
+		if(index.lookup("http://example.org/Q3-2015.csv") != null) throw new RuntimeException("'?' of a URL must be literal.");
+		index.unregister("a");
+		if(!"b".equals(index.lookup("http://example.org/data.csv?year=2015"))) throw new RuntimeException("Unregistering must restore the other owner of an exact target.");
+		index.register("c", Arrays.asList("Q?-2015.csv"));
+		if(!"c".equals(index.lookup("Q3-2015.csv"))) throw new RuntimeException("'?' must match a single character.");
+	}
+	
+	@Test
+	public void generatedCsv() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		Schema schema = sp.loadSchema("data/test_template.csvx");
+		StringWriter a = new StringWriter(), b = new StringWriter();
+		new CsvGenerator(schema, 42).generate(a, 4096);
+		new CsvGenerator(schema, 42).generate(b, 4096);
+		if(a.getBuffer().length() < 4096 || !a.toString().equals(b.toString())) throw new RuntimeException("Generation is not sized or not deterministic.");
+		Path csv = Files.createTempFile("generated", ".csv");
+		try {
+			try(Writer w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+				w.write(a.toString());
+			}
+			Schema dSchema = sp.getDataSchema(csv.toString(), null, new String[] {"data/test_template.csvx"});
+			if(dSchema == null) throw new RuntimeException("Generated csv doesn't match its schema.");
+		} finally {
+			Files.delete(csv);
+		}
+	}
+	
+	@Test
+	public void layerOverhead() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		Schema schema = sp.loadSchema("data/uktelecom.csvx");
+		LayerOverhead o = LayerOverhead.measure(sp, "data/uktelecom.csv", (String) schema.getProperty(SchemaProcessor.METAPROP_ID), 1);
+		System.out.println(o.toTable());
+		if(o.getRows() == 0 || o.getNanos(LayerOverhead.Layer.TOKENIZE) <= 0 || o.getTotalNanos() < o.getNanos(LayerOverhead.Layer.TOKENIZE)) {
+			throw new RuntimeException("Layer overhead is not measured: " + o.toTable());
+		}
+	}
+	
+	@Test
+	public void pipelinedSerialize() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		String schemaId = (String) sp.loadSchema("data/uktelecom.csvx").getProperty(SchemaProcessor.METAPROP_ID);
+		PipelinedProcessor pp = new PipelinedProcessor(sp);
+		pp.setBatchSize(7);
+		pp.setCapacity(2);
+		StringBuilder out = new StringBuilder();
+		Schema dSchema = pp.process("data/uktelecom.csv", schemaId, BatchProcessor.Operation.SERIALIZE, out);
+		if(dSchema == null) throw new RuntimeException("Pipelined processing doesn't match the csv.");
+		String expected = sp.getDataSchemaWithSchema("data/uktelecom.csv", schemaId).serializeTtl();
+		if(!expected.equals(out.toString())) throw new RuntimeException("Pipelined output differs from sequential serialization.");
+	}
+
+	@Test
+	public void parallelRepeatingRows() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		Schema schema = sp.loadSchema("data/test_template.csvx");
+		String schemaId = (String) schema.getProperty(SchemaProcessor.METAPROP_ID);
+		CsvGenerator gen = new CsvGenerator(schema, 7);
+		gen.setRepeatTimes(2 * SchemaProcessor.REPEATING_ROW_CHUNK_SIZE + 5);
+		Path csv = Files.createTempFile("repeating", ".csv");
+		try {
+			try(Writer w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+				gen.generate(w, 0);
+			}
+			String expected = sp.getDataSchemaWithSchema(csv.toString(), schemaId).serializeTtl();
+			sp.setRepeatingRowThreads(4);
+			Schema dSchema = sp.getDataSchemaWithSchema(csv.toString(), schemaId);
+			if(dSchema == null || !expected.equals(dSchema.serializeTtl())) throw new RuntimeException("Repeating rows materialized in chunks differ from sequential processing.");
+			SchemaTable dTable = dSchema.getSchemaTables().values().iterator().next();
+			if(!dTable.hasVar("name_" + (2 * SchemaProcessor.REPEATING_ROW_CHUNK_SIZE))) throw new RuntimeException("Variable of the last chunk is not registered: " + dTable);
+		} finally {
+			Files.delete(csv);
+		}
+	}
+
+	@Test
+	public void parallelTokenization() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		Schema schema = sp.loadSchema("data/test_template.csvx");
+		String schemaId = (String) schema.getProperty(SchemaProcessor.METAPROP_ID);
+		CsvGenerator gen = new CsvGenerator(schema, 11);
+		gen.setRepeatTimes(2000);
+		Path csv = Files.createTempFile("parallel", ".csv");
+		try {
+			try(Writer w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+				gen.generate(w, 0);
+			}
+			String expected = sp.getDataSchemaWithSchema(csv.toString(), schemaId).serializeTtl();
+			sp.setParsingChunkSize(4096);
+			sp.setParsingThreads(4);
+			Schema dSchema = sp.getDataSchemaWithSchema(csv.toString(), schemaId);
+			if(dSchema == null || !expected.equals(dSchema.serializeTtl())) throw new RuntimeException("Rows tokenized in parallel ranges differ from a single parser.");
+		} finally {
+			Files.delete(csv);
+		}
+		
+		// quoted values with line ends and escaped quotes, some longer than a chunk, across range splits
+		Path csvx = Files.createTempFile("quoted", ".csvx");
+		try {
+			for(char quote : new char[] { '"', '\'' }) {
+				// the quote char of a schema is escaped by doubling it, as the range splits assume
+				String quoteChar = (quote == '"')? "" : "\"@quoteChar\" : \"" + quote + "\", ";
+				Files.write(csvx, ("{ " + quoteChar + "\"@row[0]\" : { \"@repeatTimes\" : -1 }, \"@cell[0,0-2]\" : { \"@datatype\" : \"string\" } }").getBytes(StandardCharsets.UTF_8));
+				schemaId = (String) sp.loadSchema(csvx.toString()).getProperty(SchemaProcessor.METAPROP_ID);
+				for(String rowEnd : new String[] { "\n", "\r\n" }) {
+					StringBuilder sb = new StringBuilder();
+					for(int i = 0; i < 3000; i++) {
+						sb.append("\"row ").append(i).append(" said \"\"hi\"\"\nnext line\r\nlast, line\",").append(i).append(',');
+						if(i % 500 == 7) {
+							sb.append('"');
+							for(int n = 0; n < 1000; n++) sb.append("x\"\"\n");
+							sb.append('"');
+						} else {
+							sb.append("\"\"\"quoted\"\"\n\"\"").append(i % 7).append("\"\"\"");
+						}
+						sb.append(rowEnd);
+					}
+					Files.write(csv, sb.toString().replace('"', quote).getBytes(StandardCharsets.UTF_8));
+					CsvParserSettings settings = new CsvParserSettings();
+					settings.getFormat().setQuote(quote);
+					settings.getFormat().setQuoteEscape(quote);
+					settings.setLineSeparatorDetectionEnabled(true);
+					settings.getFormat().setComment('\0');
+					settings.setEmptyValue("");
+					List<String[]> expected;
+					try(Reader r = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+						expected = new CsvParser(settings).parseAll(r);
+					}
+					if(expected.size() != 3000) throw new RuntimeException("Fixture isn't parsed into 3000 rows: " + expected.size());
+					sp.setParsingThreads(1);
+					assertRows(expected, sp.getDataSchemaWithSchema(csv.toString(), schemaId));
+					sp.setParsingChunkSize(512);
+					sp.setParsingThreads(4);
+					assertRows(expected, sp.getDataSchemaWithSchema(csv.toString(), schemaId));
+				}
+			}
+		} finally {
+			Files.delete(csvx);
+			Files.deleteIfExists(csv);
+		}
+	}
+	
+	/**
+	 * Send an HTTP request and check its status.
+	 * @param method
+	 * @param url
+	 * @param body request body, can be null.
+	 * @param status expected status.
+	 * @return String response body.
+	 * @throws IOException
+	 */
+	private static String request(String method, String url, byte[] body, int status) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+		con.setRequestMethod(method);
+		if(body != null) {
+			con.setDoOutput(true);
+			try(OutputStream out = con.getOutputStream()) {
+				out.write(body);
+			}
+		}
+		int code = con.getResponseCode();
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		try(InputStream in = (code < 400)? con.getInputStream() : con.getErrorStream()) {
+			byte[] buf = new byte[8192];
+			for(int n; (n = in.read(buf)) != -1;) response.write(buf, 0, n);
+		}
+		String text = new String(response.toByteArray(), StandardCharsets.UTF_8);
+		assertEquals(code, status, method + " " + url + " answered " + text);
+		return text;
+	}
+	
+	/**
+	 * Send GET /schemas with raw headers, e.g. ones HttpURLConnection doesn't let set.
+	 * @param port
+	 * @param headers
+	 * @return int response status.
+	 * @throws IOException
+	 */
+	private static int rawStatus(int port, String headers) throws IOException {
+		try(Socket s = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			s.getOutputStream().write(("GET /schemas HTTP/1.1\r\n" + headers + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			String statusLine = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+			return Integer.parseInt(statusLine.split(" ")[1]);
+		}
+	}
+	
+	private static String writeTemp(byte[] csv) throws IOException {
+		Path tmp = Files.createTempFile("csvx", ".csv");
+		tmp.toFile().deleteOnExit();
+		Files.write(tmp, csv);
+		return tmp.toString();
+	}
+	
+	/**
+	 * Replace every UUID by its number in order of first appearance.
+	 * @param s
+	 * @return String
+	 */
+	private static String normalizeUuids(CharSequence s) {
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		Matcher m = UUID_PATTERN.matcher(s);
+		StringBuffer sb = new StringBuffer();
+		while(m.find()) {
+			Integer n = ids.get(m.group());
+			if(n == null) ids.put(m.group(), n = ids.size());
+			m.appendReplacement(sb, "uuid-" + n);
+		}
+		return m.appendTail(sb).toString();
+	}
+	
+	private static void assertRows(List<String[]> expected, Schema dSchema) {
+		if(dSchema == null) throw new RuntimeException("Fixture doesn't match its schema.");
+		Map<Integer, SchemaRow> dRows = new TreeMap<Integer, SchemaRow>(dSchema.getSchemaTables().values().iterator().next().getSchemaRows());
+		if(dRows.size() != expected.size()) throw new RuntimeException("Rows read: " + dRows.size() + ", expected: " + expected.size());
+		int i = 0;
+		for(SchemaRow dRow : dRows.values()) {
+			String[] vals = new String[dRow.getSchemaCells().size()];
+			for(int col = 0; col < vals.length; col++) vals[col] = dRow.getCell(col).getValue();
+			if(!Arrays.equals(expected.get(i), vals)) throw new RuntimeException("Row " + i + " differs from a single parser: " + Arrays.toString(vals));
+			i++;
+		}
+	}
+
+	@Test
+	public void parallelSerialization() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		Schema schema = sp.loadSchema("data/test_template.csvx");
+		String schemaId = (String) schema.getProperty(SchemaProcessor.METAPROP_ID);
+		CsvGenerator gen = new CsvGenerator(schema, 13);
+		gen.setRepeatTimes(3000);
+		Path csv = Files.createTempFile("serialize", ".csv");
+		try {
+			try(Writer w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+				gen.generate(w, 0);
+			}
+			Schema dSchema = sp.getDataSchemaWithSchema(csv.toString(), schemaId);
+			sp.setSerializingThreads(4);
+			String ttl = dSchema.serializeTtl();
+			if(!ttl.equals(dSchema.serializeTtl(sp.getSerializingPool()))) throw new RuntimeException("Tables serialized in parallel segments differ from sequential serialization.");
+			StringBuilder written = new StringBuilder(), writtenPar = new StringBuilder();
+			dSchema.writeTtl(written, null);
+			dSchema.writeTtl(writtenPar, sp.getSerializingPool());
+			if(!ttl.equals(written.toString()) || !ttl.equals(writtenPar.toString())) throw new RuntimeException("Turtle written to an output differs from serializeTtl().");
+			// IDs minted for ?x and {@uid} differ, but not where they appear
+			StringBuilder seq = new StringBuilder(), par = new StringBuilder();
+			SchemaProcessor.writeRdfFromTemplate(dSchema, seq);
+			SchemaProcessor.writeRdfFromTemplate(dSchema, par, sp.getSerializingPool());
+			if(seq.length() == 0 || !normalizeUuids(seq).equals(normalizeUuids(par))) throw new RuntimeException("Templates applied in parallel segments differ from sequential application.");
+		} finally {
+			Files.delete(csv);
+		}
+	}
+
+	@Test
+	public void schemaCacheRoundTrip() throws Exception {
+		Path dir = Files.createTempDirectory("csvx-cache");
+		Path csv = Files.createTempFile("cache", ".csv");
+		try {
+			SchemaProcessor plain = new SchemaProcessor(true), writing = new SchemaProcessor(true), reading = new SchemaProcessor(true);
+			writing.setSchemaCache(new SchemaCache(dir));
+			reading.setSchemaCache(new SchemaCache(dir));
+			
+			// cells validated with @regex and @datatype
+			String ukId = (String) plain.loadSchema("data/uktelecom.csvx").getProperty(SchemaProcessor.METAPROP_ID);
+			writing.loadSchema("data/uktelecom.csvx");
+			if(new SchemaCache(dir).get("uktelecom.csvx", Files.readAllBytes(Paths.get("data/uktelecom.csvx"))) == null) throw new RuntimeException("The schema isn't cached.");
+			reading.loadSchema("data/uktelecom.csvx");
+			String ttl = plain.getDataSchemaWithSchema("data/uktelecom.csv", ukId).serializeTtl();
+			assertEquals(reading.getDataSchemaWithSchema("data/uktelecom.csv", ukId).serializeTtl(), ttl, "Schema read from cache serializes differently.");
+			
+			// infinite repeating row with mapped templates
+			Schema template = plain.loadSchema("data/test_template.csvx");
+			String templateId = (String) template.getProperty(SchemaProcessor.METAPROP_ID);
+			CsvGenerator gen = new CsvGenerator(template, 19);
+			gen.setRepeatTimes(100);
+			try(Writer w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+				gen.generate(w, 0);
+			}
+			writing.loadSchema("data/test_template.csvx");
+			reading.loadSchema("data/test_template.csvx");
+			Schema expected = plain.getDataSchemaWithSchema(csv.toString(), templateId), cached = reading.getDataSchemaWithSchema(csv.toString(), templateId);
+			assertEquals(cached.serializeTtl(), expected.serializeTtl(), "Schema read from cache serializes differently.");
+			StringBuilder expectedRdf = new StringBuilder(), cachedRdf = new StringBuilder();
+			SchemaProcessor.writeRdfFromTemplate(expected, expectedRdf);
+			SchemaProcessor.writeRdfFromTemplate(cached, cachedRdf);
+			assertEquals(normalizeUuids(cachedRdf), normalizeUuids(expectedRdf), "Schema read from cache applies templates differently.");
+			
+			// a schema holding any other class is a cache miss
+			byte[] source = Files.readAllBytes(Paths.get("data/uktelecom.csvx"));
+			Schema tampered = new Schema();
+			tampered.addProperty("tampered", new java.io.File("tampered"));
+			tampered.freeze();
+			try(Stream<Path> entries = Files.list(dir)) {
+				for(Path entry : (Iterable<Path>) entries::iterator) {
+					try(ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(entry))) {
+						out.writeObject(tampered);
+					}
+				}
+			}
+			if(new SchemaCache(dir).get("uktelecom.csvx", source) != null) throw new RuntimeException("A tampered cache entry is read.");
+		} finally {
+			try(Stream<Path> entries = Files.list(dir)) {
+				for(Path entry : (Iterable<Path>) entries::iterator) Files.delete(entry);
+			}
+			Files.delete(dir);
+			Files.delete(csv);
+		}
+	}
+	
+	@Test
+	public void server() throws Exception {
+		SchemaProcessor sp = new SchemaProcessor(true);
+		String ukId = (String) sp.loadSchema("data/uktelecom.csvx").getProperty(SchemaProcessor.METAPROP_ID);
+		Schema template = sp.loadSchema("data/test_template.csvx");
+		String templateId = (String) template.getProperty(SchemaProcessor.METAPROP_ID);
+		CsvGenerator gen = new CsvGenerator(template, 17);
+		gen.setRepeatTimes(50);
+		StringWriter generated = new StringWriter();
+		gen.generate(generated, 0);
+		byte[] templateCsv = generated.toString().getBytes(StandardCharsets.UTF_8);
+		byte[] ukCsv = Files.readAllBytes(Paths.get("data/uktelecom.csv"));
+		byte[] badCsv = "no,such\nrows,here\n".getBytes(StandardCharsets.UTF_8);
+		String ttl = sp.getDataSchemaWithSchema("data/uktelecom.csv", ukId).serializeTtl();
+		
+		CsvxServer server = new CsvxServer(sp, 0, 2, Paths.get("data"));
+		server.start();
+		try {
+			int port = server.getAddress().getPort();
+			String url = "http://localhost:" + port;
+			String uk = "?schema=" + URLEncoder.encode(ukId, "UTF-8"), tmp = "?schema=" + URLEncoder.encode(templateId, "UTF-8");
+			
+			assertEquals(new TreeSet<String>(Arrays.asList(request("GET", url + "/schemas", null, 200).split("\n"))), new TreeSet<String>(Arrays.asList(ukId, templateId)), "/schemas");
+			
+			assertEquals(request("POST", url + "/validate" + uk, ukCsv, 200), "Valid against " + ukId);
+			assertEquals(request("POST", url + "/validate" + uk + "&csv=uktelecom.csv", null, 200), "Valid against " + ukId);
+			assertEquals(request("POST", url + "/validate" + uk, badCsv, 422), "The csv doesn't match the schema.");
+			assertEquals(request("POST", url + "/validate?schema=unknown", ukCsv, 400), "Unknown schema ID: unknown");
+			assertEquals(request("GET", url + "/validate" + uk, null, 405), "Use POST.");
+			
+			assertEquals(request("POST", url + "/serialize" + uk, ukCsv, 200), ttl);
+			assertEquals(request("POST", url + "/serialize" + uk, badCsv, 422), "The csv doesn't match the schema.");
+			// neither a path outside the csv root nor a missing file is echoed back
+			assertEquals(request("POST", url + "/serialize" + uk + "&csv=../pom.xml", null, 400), "No such csv file under the csv root.");
+			assertEquals(request("POST", url + "/serialize" + uk + "&csv=" + URLEncoder.encode(Paths.get("pom.xml").toAbsolutePath().toString(), "UTF-8"), null, 400), "No such csv file under the csv root.");
+			assertEquals(request("GET", url + "/serialize" + uk, null, 405), "Use POST.");
+			
+			String rdf = request("POST", url + "/transform" + tmp, templateCsv, 200);
+			StringBuilder expectedRdf = new StringBuilder();
+			SchemaProcessor.writeRdfFromTemplate(sp.getDataSchemaWithSchema(writeTemp(templateCsv), templateId), expectedRdf);
+			assertEquals(normalizeUuids(rdf), normalizeUuids(expectedRdf), "/transform");
+			assertEquals(request("POST", url + "/transform" + uk, badCsv, 422), "The csv doesn't match the schema.");
+			assertEquals(request("POST", url + "/transform" + tmp + "&csv=missing.csv", null, 400), "No such csv file under the csv root.");
+			assertEquals(request("GET", url + "/transform" + tmp, null, 405), "Use POST.");
+			
+			// a web page of another site can't reach the server
+			assertEquals(rawStatus(port, "Host: localhost:" + port + "\r\n"), 200);
+			assertEquals(rawStatus(port, "Host: localhost:" + port + "\r\nOrigin: http://localhost:" + port + "\r\n"), 200);
+			assertEquals(rawStatus(port, "Host: attacker.example:" + port + "\r\n"), 403);
+			assertEquals(rawStatus(port, "Host: localhost:" + port + "\r\nOrigin: http://attacker.example\r\n"), 403);
+		} finally {
+			server.stop(0);
+		}
+		
+		CsvxServer noRoot = new CsvxServer(sp, 0, 1);
+		noRoot.start();
+		try {
+			String url = "http://localhost:" + noRoot.getAddress().getPort();
+			assertEquals(request("POST", url + "/validate?csv=uktelecom.csv", null, 400), "The csv parameter isn't allowed, send the csv as request body.");
+		} finally {
+			noRoot.stop(0);
+		}
+	}
+	
+	@Test
+	public void validateAllocationBudget() throws Exception {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if(!(mx instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported()) {
+			throw new SkipException("Thread allocated memory measurement is not supported.");
+		}
+		com.sun.management.ThreadMXBean amx = (com.sun.management.ThreadMXBean) mx;
+		amx.setThreadAllocatedMemoryEnabled(true);
+		new SchemaProcessor(true); // logging must not count
+		long tid = Thread.currentThread().getId();
+		
+		Schema s = new Schema();
+		SchemaTable t = s.getDefaultTable();
+		SchemaCell range = new SchemaCell(0, 0, 99, 99, t);
+		range.setDatatype("int");
+		range.setRegEx("^[0-9]+$");
+		t.addCell(range);
+		s.freeze();
+		String[] vals = new String[100];
+		for(int i = 0; i < vals.length; i++) vals[i] = Integer.toString(i * 7);
+		
+		// warm up, then measure validating on this thread
+		for(int n = 0; n < 50; n++) validateAll(t, vals);
+		long before = amx.getThreadAllocatedBytes(tid);
+		int rounds = 10;
+		for(int n = 0; n < rounds; n++) validateAll(t, vals);
+		long perCell = (amx.getThreadAllocatedBytes(tid) - before) / (rounds * 100L * vals.length);
+		System.out.println("Allocated bytes per validated cell: " + perCell);
+		if(perCell > ALLOC_BUDGET_PER_VALIDATED_CELL) throw new RuntimeException("Allocation per validated cell " + perCell + " bytes exceeds budget of " + ALLOC_BUDGET_PER_VALIDATED_CELL);
+		
+		Path csvx = Files.createTempFile("alloc", ".csvx");
+		Path csv = Files.createTempFile("alloc", ".csv");
+		try {
+			Files.write(csvx, ("{ \"@id\" : \"alloc.csvx\", \"@row[0]\" : { \"@repeatTimes\" : -1 }, "
+					+ "\"@cell[0,0-9]\" : { \"@datatype\" : \"int\", \"@regex\" : \"^[0-9]+$\" } }").getBytes(StandardCharsets.UTF_8));
+			SchemaProcessor sp = new SchemaProcessor(true);
+			Schema schema = sp.loadSchema(csvx.toString());
+			String schemaId = (String) schema.getProperty(SchemaProcessor.METAPROP_ID);
+			CsvGenerator gen = new CsvGenerator(schema, 5);
+			gen.setRepeatTimes(2000);
+			try(Writer w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+				gen.generate(w, 0);
+			}
+			long cells = 0;
+			for(String line : Files.readAllLines(csv, StandardCharsets.UTF_8)) cells += line.split(",", -1).length;
+			
+			// warm up, then measure probing and materializing on this thread
+			for(int n = 0; n < 20; n++) sp.getDataSchemaWithSchema(csv.toString(), schemaId);
+			before = amx.getThreadAllocatedBytes(tid);
+			rounds = 5;
+			for(int n = 0; n < rounds; n++) {
+				if(sp.getDataSchemaWithSchema(csv.toString(), schemaId) == null) throw new RuntimeException("Generated csv doesn't match its schema.");
+			}
+			perCell = (amx.getThreadAllocatedBytes(tid) - before) / (rounds * cells);
+			System.out.println("Allocated bytes per processed cell: " + perCell);
+			if(perCell > ALLOC_BUDGET_PER_CELL) throw new RuntimeException("Allocation per processed cell " + perCell + " bytes exceeds budget of " + ALLOC_BUDGET_PER_CELL);
+		} finally {
+			Files.delete(csvx);
+			Files.delete(csv);
+		}
+	}
+	
+	private static void validateAll(SchemaTable t, String[] vals) throws Exception {
+		for(int row = 0; row < 100; row++) {
+			for(int col = 0; col < vals.length; col++) {
+				if(!t.validate(row, col, vals[col], SchemaProcessor.MODE_IGNORE_ERR_MSG)) throw new RuntimeException("Validation failed at [" + row + "," + col + "]");
+			}
+		}
+	}
+	
 }